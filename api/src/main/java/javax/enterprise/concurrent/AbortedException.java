@@ -47,6 +47,8 @@ import java.util.concurrent.ExecutionException;
  * because the task failed to run for some reason other than being cancelled.
  * <p>
  * Use the {@link Throwable#getCause()} method to determine why the task was aborted.
+ * If the task was rejected by the executor, {@link #getRejectionReason()} 
+ * tells why.
  *
  * @since 1.0
  */
@@ -54,6 +56,8 @@ public class AbortedException extends ExecutionException implements java.io.Seri
 
   private static final long serialVersionUID = -8248124070283019190L;
 
+  private RejectionReason rejectionReason;
+
 /**
    * Constructs an AbortedException with <code>null</code> as its detail message. 
    * 
@@ -102,4 +106,34 @@ public class AbortedException extends ExecutionException implements java.io.Seri
   public AbortedException(Throwable cause) {
 	super(cause);  
   }
+
+  /**
+   * Constructs an AbortedException exception for a task that the executor
+   * rejected, or dropped before it ran.
+   *  
+   * @param message the detail message (which is saved for later retrieval by the {@link Throwable#getMessage()}
+   *                method).
+   * @param cause the cause (which is saved for later retrieval by the {@link Throwable#getCause()} method). 
+   *              (A null value is permitted, and indicates that the cause is nonexistent or unknown.)
+   * @param rejectionReason why the task was rejected (which is saved for later retrieval by the 
+   *                        {@link #getRejectionReason()} method).
+   * @since 1.1
+   */
+  public AbortedException(String message, Throwable cause, RejectionReason rejectionReason) {
+	super(message, cause);
+	this.rejectionReason = rejectionReason;
+  }
+
+  /**
+   * Returns why the executor rejected the task, or dropped it before it 
+   * ran.
+   * 
+   * @return the reason, or null if the task was aborted for another reason,
+   *         such as a failure of its {@link ManagedTaskListener} or 
+   *         {@link Trigger}.
+   * @since 1.1
+   */
+  public RejectionReason getRejectionReason() {
+	return rejectionReason;
+  }
 }
@@ -0,0 +1,419 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.enterprise.concurrent.spi.ExecutorMetrics;
+import javax.enterprise.concurrent.spi.TaskMetrics;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+
+/**
+ * Provides default implementations of the {@link ManagedExecutorService}
+ * task submission methods.
+ * <p>
+ * Every task submitted through {@code execute}, {@code submit}, 
+ * {@code invokeAny} or {@code invokeAll} is wrapped in a {@code Future} that
+ * notifies the {@link ManagedTaskListener} of the task, if the task implements
+ * {@link ManagedTask}, of the lifecycle events described in 
+ * {@code ManagedTaskListener}. The {@code Future} is then handed to 
+ * {@link #dispatch(java.util.concurrent.RunnableFuture, java.lang.Object) dispatch()},
+ * which decides where the task is run.
+ * <p>
+ * If {@code dispatch} throws {@link RejectedExecutionException}, the 
+ * {@code Future} is completed with an {@link AbortedException} before a
+ * {@link ManagedRejectedExecutionException} with the same cause is thrown
+ * to the caller, which tells whether the executor was shut down.
+ * <p>
+ * If the executor is created with an {@link AdmissionPolicy}, a task is 
+ * admitted after the listener is notified that it was submitted and before
+ * it is dispatched, and the policy decides whether it is refused, or 
+ * whether waiting tasks are dropped, when too many tasks are waiting.
+ * <p>
+ * If the executor is created with {@link ThreadContextProvider}s, the 
+ * context of the submitting thread is captured when a task is submitted,
+ * with the execution properties of the task, and applied while the task 
+ * runs. {@link #submitAll(java.util.Collection) submitAll} and 
+ * {@code invokeAll} capture the context once for consecutive tasks that 
+ * share the same execution properties instance, as the tasks wrapped by 
+ * {@link ManagedExecutors#managedTask(java.lang.Runnable, java.util.Map, ManagedTaskListener)}
+ * with the same {@link ExecutionProperties} do, and hand the whole batch to
+ * {@link #dispatchAll(java.util.List, java.util.List) dispatchAll()}.
+ * {@link #newIncompleteFuture() newIncompleteFuture} captures the context 
+ * once for the whole chain of {@link ManagedCompletableFuture} stages, 
+ * and the asynchronous stages are dispatched as tasks that run in it.
+ * <p>
+ * If the executor is created with {@link ExecutorMetrics}, the lifecycle
+ * events of every task are also reported to the {@link TaskMetrics} for 
+ * its {@link ManagedTask#IDENTITY_NAME}.
+ *
+ * @since 1.1
+ */
+public abstract class AbstractManagedExecutorService extends AbstractExecutorService 
+    implements ManagedExecutorService {
+
+    private final ExecutorMetrics metrics;
+    private final ThreadContextProvider[] providers;
+    // null unless the executor has an admission policy
+    final AdmissionController admission;
+
+    /**
+     * Constructor for subclasses.
+     */
+    protected AbstractManagedExecutorService() {
+        this(null);
+    }
+
+    /**
+     * Constructor for subclasses whose tasks are measured, or run with the
+     * context of the thread that submits them.
+     * 
+     * @param metrics the metrics to report the tasks to, or null.
+     * @param providers the providers of the thread context to capture when
+     *                  a task is submitted and apply when it runs.
+     */
+    protected AbstractManagedExecutorService(ExecutorMetrics metrics, ThreadContextProvider... providers) {
+        this(null, metrics, providers);
+    }
+
+    /**
+     * Constructor for subclasses that bound the number of waiting tasks.
+     * 
+     * @param admissionPolicy the policy that bounds the tasks waiting to 
+     *                        run, or null for no bound.
+     * @param metrics the metrics to report the tasks to, or null.
+     * @param providers the providers of the thread context to capture when
+     *                  a task is submitted and apply when it runs.
+     */
+    protected AbstractManagedExecutorService(AdmissionPolicy admissionPolicy, ExecutorMetrics metrics, 
+            ThreadContextProvider... providers) {
+        this.admission = admissionPolicy == null? null: new AdmissionController(admissionPolicy);
+        this.metrics = metrics;
+        this.providers = providers.clone();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        execute(command instanceof ManagedFutureTask 
+                && ((ManagedFutureTask<?>) command).executor == this?
+                    (ManagedFutureTask<?>) command: 
+                    new ManagedFutureTask<Object>(this, command, null));
+    }
+
+    /**
+     * Runs a command in the given context, which was captured earlier.
+     */
+    void execute(Runnable command, ThreadContext context) {
+        execute(new ManagedFutureTask<Object>(this, Executors.callable(command), command, context));
+    }
+
+    private void execute(ManagedFutureTask<?> future) {
+        future.submitted();
+        if (future.isDone()) {
+            // cancelled from within taskSubmitted
+            return;
+        }
+        try {
+            if (admission != null) {
+                admission.admit(future);
+            }
+            dispatch(future, future.task);
+        } catch (RejectedExecutionException e) {
+            RejectedExecutionException rejection = rejection(e);
+            future.reject(rejection);
+            throw rejection;
+        }
+    }
+
+    @Override
+    public <T> List<Future<T>> submitAll(Collection<? extends Callable<T>> tasks) {
+        List<RunnableFuture<T>> futures = new ArrayList<RunnableFuture<T>>(tasks.size());
+        List<Callable<T>> submitted = new ArrayList<Callable<T>>(tasks.size());
+        ThreadContext context = null;
+        Map<String, String> contextProperties = null;
+        for (Callable<T> task : tasks) {
+            if (task == null) {
+                throw new NullPointerException();
+            }
+            Map<String, String> executionProperties = executionPropertiesOf(task);
+            if (context == null || executionProperties != contextProperties) {
+                context = captureContext(executionProperties);
+                contextProperties = executionProperties;
+            }
+            futures.add(new ManagedFutureTask<T>(this, task, task, context));
+            submitted.add(task);
+        }
+        for (RunnableFuture<T> future : futures) {
+            ((ManagedFutureTask<T>) future).submitted();
+        }
+        try {
+            if (admission != null) {
+                for (RunnableFuture<T> future : futures) {
+                    if (!future.isDone()) {
+                        admission.admit((ManagedFutureTask<T>) future);
+                    }
+                }
+            }
+            dispatchAll(futures, submitted);
+        } catch (RejectedExecutionException e) {
+            RejectedExecutionException rejection = rejection(e);
+            for (RunnableFuture<T> future : futures) {
+                ((ManagedFutureTask<T>) future).rejectUnlessStarted(rejection);
+            }
+            throw rejection;
+        }
+        return new ArrayList<Future<T>>(futures);
+    }
+
+    /**
+     * Gives a rejection by the underlying pool a {@link RejectionReason}.
+     */
+    RejectedExecutionException rejection(RejectedExecutionException e) {
+        if (e instanceof ManagedRejectedExecutionException) {
+            return e;
+        }
+        return new ManagedRejectedExecutionException(isShutdown()? RejectionReason.SHUTDOWN: RejectionReason.OTHER, 
+                e.getMessage(), e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The context is captured from the current thread when this method is
+     * called, and every asynchronous stage of the chain is dispatched to 
+     * this executor as a task that runs in it.
+     */
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new ManagedCompletableFuture<U>(new ContextExecutor(this, captureContext(null)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The tasks are submitted with {@link #submitAll(java.util.Collection) submitAll}.
+     */
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        List<Future<T>> futures = submitAll(tasks);
+        boolean done = false;
+        try {
+            for (Future<T> future : futures) {
+                try {
+                    future.get();
+                } catch (CancellationException e) {
+                    // reported by the future
+                } catch (ExecutionException e) {
+                    // reported by the future
+                }
+            }
+            done = true;
+            return futures;
+        } finally {
+            if (!done) {
+                cancelAll(futures);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The tasks are submitted with {@link #submitAll(java.util.Collection) submitAll}.
+     */
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) 
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Future<T>> futures = submitAll(tasks);
+        boolean done = false;
+        try {
+            for (Future<T> future : futures) {
+                try {
+                    future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (CancellationException e) {
+                    // reported by the future
+                } catch (ExecutionException e) {
+                    // reported by the future
+                } catch (TimeoutException e) {
+                    return futures;
+                }
+            }
+            done = true;
+            return futures;
+        } finally {
+            if (!done) {
+                cancelAll(futures);
+            }
+        }
+    }
+
+    private static <T> void cancelAll(List<Future<T>> futures) {
+        for (Future<T> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Captures the context in which a task submitted by the current thread
+     * runs.
+     */
+    ThreadContext captureContext(Object task) {
+        return captureContext(executionPropertiesOf(task));
+    }
+
+    private ThreadContext captureContext(Map<String, String> executionProperties) {
+        return ThreadContext.capture(providers, executionProperties);
+    }
+
+    private static Map<String, String> executionPropertiesOf(Object task) {
+        return task instanceof ManagedTask? ((ManagedTask) task).getExecutionProperties(): null;
+    }
+
+    /**
+     * Returns the metrics to report the events of a task to, or null if 
+     * this executor has no metrics.
+     */
+    TaskMetrics taskMetrics(Object task) {
+        if (metrics == null) {
+            return null;
+        }
+        return metrics.getTaskMetrics(ManagedExecutors.getExecutionProperty(task, ExecutionProperty.IDENTITY_NAME));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new ManagedFutureTask<T>(this, runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new ManagedFutureTask<T>(this, callable);
+    }
+
+    /**
+     * Arranges for the given {@code Future} to be run by a thread of this 
+     * executor.
+     * 
+     * @param future the {@code Future} to be run.
+     * @param task the task as it was submitted, which can be inspected for
+     *             {@link ManagedTask} execution properties.
+     * @throws RejectedExecutionException if the task cannot be accepted for
+     *         execution.
+     */
+    protected abstract void dispatch(RunnableFuture<?> future, Object task)
+        throws RejectedExecutionException;
+
+    /**
+     * Arranges for a batch of {@code Future}s to be run by the threads of 
+     * this executor. Futures that are already done, because they were 
+     * cancelled when they were submitted, need not be run.
+     * <p>
+     * The default implementation calls {@link #dispatch(java.util.concurrent.RunnableFuture, java.lang.Object) dispatch}
+     * for each future that is not done. Subclasses can override it to 
+     * enqueue the batch with a single queue operation.
+     * 
+     * @param futures the {@code Future}s to be run.
+     * @param tasks the tasks as they were submitted, in the same order.
+     * @throws RejectedExecutionException if the tasks cannot be accepted for
+     *         execution, in which case the futures that have not started 
+     *         are aborted.
+     */
+    protected void dispatchAll(List<? extends RunnableFuture<?>> futures, List<?> tasks)
+        throws RejectedExecutionException {
+        for (int i = 0; i < futures.size(); i++) {
+            RunnableFuture<?> future = futures.get(i);
+            if (!future.isDone()) {
+                dispatch(future, tasks.get(i));
+            }
+        }
+    }
+
+    /**
+     * Called by a thread of this executor when it takes a dispatched 
+     * future, before the future runs or finds that it is done.
+     * 
+     * @param future the future that was taken.
+     */
+    void taken(ManagedFutureTask<?> future) {
+    }
+
+    /**
+     * Runs the asynchronous stages of a chain of 
+     * {@link ManagedCompletableFuture}s in the context captured for the 
+     * chain.
+     */
+    private static final class ContextExecutor implements Executor {
+
+        private final AbstractManagedExecutorService executor;
+        private final ThreadContext context;
+
+        ContextExecutor(AbstractManagedExecutorService executor, ThreadContext context) {
+            this.executor = executor;
+            this.context = context;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command == null) {
+                throw new NullPointerException();
+            }
+            executor.execute(command, context);
+        }
+    }
+}
@@ -0,0 +1,569 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.enterprise.concurrent.spi.ExecutorMetrics;
+import javax.enterprise.concurrent.spi.TaskMetrics;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Resizes the thread pool of a managed executor, within bounds, from the 
+ * throughput, queue wait and blocking ratio of its tasks.
+ * <p>
+ * The sizer is the {@link ExecutorMetrics} of the executor, so it sees 
+ * every task start and end, and forwards them to another 
+ * {@code ExecutorMetrics}, such as a {@link DefaultExecutorMetrics}, if 
+ * one is given. For one task in {@value #SAMPLE_PERIOD} on each thread it
+ * also measures the CPU time of the thread while the task runs; the 
+ * fraction of the run time that is not CPU time is the blocking ratio of 
+ * the tasks.
+ * <p>
+ * At each interval, the sizer compares the pool size with two estimates:
+ * <ul>
+ * <li>the ceiling, {@code cpus / (1 - blockingRatio)}, beyond which more
+ *     threads would only compete for the CPUs. Until a blocking ratio has 
+ *     been measured, the ceiling is the maximum pool size.</li>
+ * <li>the number of busy threads by Little's law, the throughput times 
+ *     the mean run time.</li>
+ * </ul>
+ * While tasks are queued and wait longer than a quarter of their run 
+ * time, or none started in the interval, the pool grows by a quarter, 
+ * up to the ceiling. Otherwise it shrinks by an eighth towards the 
+ * ceiling, or towards the number of busy threads plus a quarter of 
+ * headroom. Growing fast and shrinking slowly keeps the pool from 
+ * oscillating with bursts of load.
+ * <p>
+ * The measurements and the last decision are available through 
+ * {@link AdaptivePoolSizerMXBean}, which is published as an MBean if the
+ * sizer is created with a name and an {@code MBeanServer}.
+ * <p>
+ * Example:
+ * <pre>
+ * AdaptivePoolSizer sizer = new AdaptivePoolSizer(2, 64, 1, TimeUnit.SECONDS);
+ * PriorityManagedExecutorService executor = new PriorityManagedExecutorService(
+ *     2, 50, TimeUnit.MILLISECONDS, threadFactory, sizer);
+ * sizer.control(executor);
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class AdaptivePoolSizer implements ExecutorMetrics, AdaptivePoolSizerMXBean, AutoCloseable {
+
+    /**
+     * A thread pool that an {@link AdaptivePoolSizer} can resize.
+     */
+    public interface Pool {
+
+        /**
+         * Returns the number of threads the pool is sized to.
+         * 
+         * @return the pool size.
+         */
+        int getPoolSize();
+
+        /**
+         * Resizes the pool. Threads beyond the new size end when they are 
+         * idle.
+         * 
+         * @param poolSize the new number of threads, greater than zero.
+         */
+        void setPoolSize(int poolSize);
+
+        /**
+         * Returns the number of tasks waiting to run.
+         * 
+         * @return the number of waiting tasks.
+         */
+        int getQueueSize();
+    }
+
+    /**
+     * The number of tasks run by a thread for each one whose CPU time is
+     * measured.
+     */
+    public static final int SAMPLE_PERIOD = 8;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final double MAX_BLOCKING_RATIO = 0.99;
+    private static final double HEADROOM = 1.25;
+
+    private final String name;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long intervalNanos;
+    private final ExecutorMetrics delegate;
+    private final MBeanServer server;
+    private final ThreadFactory threadFactory;
+    private final int cpus = Runtime.getRuntime().availableProcessors();
+    private final boolean cpuTimeSupported;
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder queueWait = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder runTime = new LongAdder();
+    private final LongAdder sampledRunTime = new LongAdder();
+    private final LongAdder sampledCpuTime = new LongAdder();
+    // per thread: the number of tasks started, and the CPU time when the 
+    // sampled task started, or -1
+    private final ThreadLocal<long[]> samples = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[] { 0L, -1L };
+        }
+    };
+    private final Recorder recorder = new Recorder(null);
+    private final ConcurrentMap<TaskMetrics, Recorder> recorders = new ConcurrentHashMap<TaskMetrics, Recorder>();
+
+    // only used by the thread that adjusts the pool
+    private long lastNanos = System.nanoTime();
+    private long lastStarted;
+    private long lastQueueWait;
+    private long lastCompleted;
+    private long lastRunTime;
+    private long lastSampledRunTime;
+    private long lastSampledCpuTime;
+    private boolean blockingMeasured;
+
+    private volatile Pool pool;
+    private volatile Thread thread;
+    private volatile ObjectName objectName;
+    private volatile boolean closed;
+    private volatile int queueSize;
+    private volatile double throughput;
+    private volatile long meanQueueWaitNanos;
+    private volatile long meanRunTimeNanos;
+    private volatile double blockingRatio;
+    private volatile int ceilingPoolSize;
+    private volatile long growCount;
+    private volatile long shrinkCount;
+    private volatile String lastDecision = "none";
+
+    /**
+     * Creates a sizer that adjusts the pool on a daemon thread, and is not
+     * published as an MBean.
+     * 
+     * @param minPoolSize the least number of threads.
+     * @param maxPoolSize the greatest number of threads.
+     * @param interval how often the pool is adjusted.
+     * @param unit the unit of {@code interval}.
+     * @throws IllegalArgumentException if {@code minPoolSize} or 
+     *         {@code interval} is less than or equal to zero, or 
+     *         {@code maxPoolSize} is less than {@code minPoolSize}.
+     * @throws NullPointerException if {@code unit} is null.
+     */
+    public AdaptivePoolSizer(int minPoolSize, int maxPoolSize, long interval, TimeUnit unit) {
+        this(null, minPoolSize, maxPoolSize, interval, unit, null, null, new SizerThreadFactory());
+    }
+
+    /**
+     * Creates a sizer.
+     * 
+     * @param name the name of the executor, under which the sizer is 
+     *             published, or null.
+     * @param minPoolSize the least number of threads.
+     * @param maxPoolSize the greatest number of threads.
+     * @param interval how often the pool is adjusted.
+     * @param unit the unit of {@code interval}.
+     * @param delegate the metrics to forward the events of the tasks to, 
+     *                 or null. It should return the same {@code TaskMetrics}
+     *                 each time for the same identity name.
+     * @param server the server to publish the sizer to as an MBean, or 
+     *               null.
+     * @param threadFactory the factory used to create the thread that 
+     *                      adjusts the pool.
+     * @throws IllegalArgumentException if {@code minPoolSize} or 
+     *         {@code interval} is less than or equal to zero, if 
+     *         {@code maxPoolSize} is less than {@code minPoolSize}, or if the
+     *         sizer cannot be published.
+     * @throws NullPointerException if {@code unit} or {@code threadFactory}
+     *         is null, or {@code server} is given without a {@code name}.
+     */
+    public AdaptivePoolSizer(String name, int minPoolSize, int maxPoolSize, long interval, TimeUnit unit, 
+            ExecutorMetrics delegate, MBeanServer server, ThreadFactory threadFactory) {
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize) {
+            throw new IllegalArgumentException("pool size " + minPoolSize + " to " + maxPoolSize);
+        }
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("interval " + interval);
+        }
+        if (threadFactory == null || (server != null && name == null)) {
+            throw new NullPointerException();
+        }
+        this.name = name;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.intervalNanos = unit.toNanos(interval);
+        this.delegate = delegate;
+        this.server = server;
+        this.threadFactory = threadFactory;
+        this.cpuTimeSupported = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() 
+                && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        this.ceilingPoolSize = maxPoolSize;
+        if (server != null) {
+            try {
+                objectName = server.registerMBean(this, new ObjectName(DefaultExecutorMetrics.DOMAIN 
+                        + ":type=AdaptivePoolSizer,name=" + ObjectName.quote(name))).getObjectName();
+            } catch (JMException e) {
+                throw new IllegalArgumentException("cannot register pool sizer of " + name, e);
+            }
+        }
+    }
+
+    /**
+     * Starts adjusting the size of a pool. The pool should be the executor
+     * that reports its tasks to this sizer.
+     * 
+     * @param pool the pool to resize.
+     * @throws IllegalStateException if the sizer already controls a pool,
+     *         or is closed.
+     * @throws NullPointerException if {@code pool} is null.
+     */
+    public synchronized void control(Pool pool) {
+        if (pool == null) {
+            throw new NullPointerException();
+        }
+        if (this.pool != null || closed) {
+            throw new IllegalStateException(closed? "closed": "already controls a pool");
+        }
+        this.pool = pool;
+        thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                while (!closed) {
+                    next += intervalNanos;
+                    long delay;
+                    while (!closed && (delay = next - System.nanoTime()) > 0L) {
+                        LockSupport.parkNanos(this, delay);
+                    }
+                    if (!closed) {
+                        adjust();
+                    }
+                }
+            }
+        });
+        thread.start();
+    }
+
+    @Override
+    public TaskMetrics getTaskMetrics(String identityName) {
+        if (delegate == null) {
+            return recorder;
+        }
+        TaskMetrics metrics = delegate.getTaskMetrics(identityName);
+        if (metrics == null) {
+            return recorder;
+        }
+        Recorder forwarding = recorders.get(metrics);
+        if (forwarding == null) {
+            forwarding = new Recorder(metrics);
+            Recorder existing = recorders.putIfAbsent(metrics, forwarding);
+            if (existing != null) {
+                forwarding = existing;
+            }
+        }
+        return forwarding;
+    }
+
+    /**
+     * Measures the last interval and resizes the pool.
+     */
+    void adjust() {
+        Pool pool = this.pool;
+        long now = System.nanoTime();
+        long startedNow = started.sum();
+        long queueWaitNow = queueWait.sum();
+        long completedNow = completed.sum();
+        long runTimeNow = runTime.sum();
+        long sampledRunTimeNow = sampledRunTime.sum();
+        long sampledCpuTimeNow = sampledCpuTime.sum();
+        long startedCount = startedNow - lastStarted;
+        long completedCount = completedNow - lastCompleted;
+        long sampledRun = sampledRunTimeNow - lastSampledRunTime;
+        double seconds = Math.max(1L, now - lastNanos) / 1e9;
+        double throughput = completedCount / seconds;
+        long meanQueueWait = startedCount == 0L? 0L: (queueWaitNow - lastQueueWait) / startedCount;
+        long meanRunTime = completedCount == 0L? 0L: (runTimeNow - lastRunTime) / completedCount;
+        if (sampledRun > 0L) {
+            double cpuRatio = (double) (sampledCpuTimeNow - lastSampledCpuTime) / sampledRun;
+            blockingRatio = Math.max(0.0, Math.min(MAX_BLOCKING_RATIO, 1.0 - cpuRatio));
+            blockingMeasured = true;
+        }
+        lastNanos = now;
+        lastStarted = startedNow;
+        lastQueueWait = queueWaitNow;
+        lastCompleted = completedNow;
+        lastRunTime = runTimeNow;
+        lastSampledRunTime = sampledRunTimeNow;
+        lastSampledCpuTime = sampledCpuTimeNow;
+
+        int ceiling = blockingMeasured? 
+                bound((int) Math.ceil(cpus / (1.0 - blockingRatio))): maxPoolSize;
+        int size = pool.getPoolSize();
+        int queued = pool.getQueueSize();
+        // Little's law: the mean number of tasks being run
+        double busy = throughput * meanRunTime / 1e9;
+        boolean backlog = queued > 0 && (startedCount == 0L || meanQueueWait > meanRunTime / 4);
+        int target;
+        String reason;
+        if (backlog && size < ceiling) {
+            target = Math.min(ceiling, size + Math.max(1, size / 4));
+            reason = queued + " tasks queued, mean queue wait " + millis(meanQueueWait) + " ms";
+        } else if (backlog) {
+            target = size;
+            reason = queued + " tasks queued, at the ceiling of " + ceiling + " threads";
+        } else if (size > ceiling) {
+            target = Math.max(ceiling, size - Math.max(1, size / 8));
+            reason = "blocking ratio " + Math.round(blockingRatio * 100) + "% needs " + ceiling + " threads";
+        } else if (Math.ceil(busy * HEADROOM) < size) {
+            target = Math.max((int) Math.ceil(busy * HEADROOM), size - Math.max(1, size / 8));
+            reason = Math.round(busy * 10) / 10.0 + " threads busy";
+        } else {
+            target = size;
+            reason = Math.round(busy * 10) / 10.0 + " threads busy, no backlog";
+        }
+        target = bound(target);
+        if (target > size) {
+            growCount++;
+            pool.setPoolSize(target);
+        } else if (target < size) {
+            shrinkCount++;
+            pool.setPoolSize(target);
+        }
+        this.queueSize = queued;
+        this.throughput = throughput;
+        this.meanQueueWaitNanos = meanQueueWait;
+        this.meanRunTimeNanos = meanRunTime;
+        this.ceilingPoolSize = ceiling;
+        this.lastDecision = (target > size? "grow ": target < size? "shrink ": "hold ") 
+                + size + " -> " + target + ": " + reason;
+    }
+
+    private int bound(int poolSize) {
+        return Math.max(minPoolSize, Math.min(maxPoolSize, poolSize));
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(Math.round(nanos / 1e5) / 10.0);
+    }
+
+    /**
+     * Stops resizing the pool, and unpublishes the sizer. The tasks are 
+     * still forwarded to the delegate metrics.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        Thread thread = this.thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        ObjectName objectName = this.objectName;
+        if (objectName != null) {
+            this.objectName = null;
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+        }
+    }
+
+    /**
+     * Returns whether {@link #close()} has been called.
+     * 
+     * @return true if the sizer is closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the name of the executor, or null.
+     * 
+     * @return the name the sizer was created with.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getPoolSize() {
+        Pool pool = this.pool;
+        return pool == null? 0: pool.getPoolSize();
+    }
+
+    @Override
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    @Override
+    public double getThroughput() {
+        return throughput;
+    }
+
+    @Override
+    public long getMeanQueueWaitNanos() {
+        return meanQueueWaitNanos;
+    }
+
+    @Override
+    public long getMeanRunTimeNanos() {
+        return meanRunTimeNanos;
+    }
+
+    @Override
+    public double getBlockingRatio() {
+        return blockingRatio;
+    }
+
+    @Override
+    public int getCeilingPoolSize() {
+        return ceilingPoolSize;
+    }
+
+    @Override
+    public long getGrowCount() {
+        return growCount;
+    }
+
+    @Override
+    public long getShrinkCount() {
+        return shrinkCount;
+    }
+
+    @Override
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * Records the events the sizer measures, and forwards every event to the
+     * metrics of the delegate, if any.
+     */
+    private final class Recorder implements TaskMetrics {
+
+        private final TaskMetrics delegate;
+
+        Recorder(TaskMetrics delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void taskSubmitted() {
+            if (delegate != null) {
+                delegate.taskSubmitted();
+            }
+        }
+
+        @Override
+        public void taskStarted(long queueWaitNanos) {
+            started.increment();
+            queueWait.add(queueWaitNanos);
+            long[] sample = samples.get();
+            sample[1] = cpuTimeSupported && ++sample[0] % SAMPLE_PERIOD == 0L? 
+                    THREAD_MX_BEAN.getCurrentThreadCpuTime(): -1L;
+            if (delegate != null) {
+                delegate.taskStarted(queueWaitNanos);
+            }
+        }
+
+        @Override
+        public void taskCompleted(long runNanos, boolean failed) {
+            completed.increment();
+            runTime.add(runNanos);
+            long[] sample = samples.get();
+            if (sample[1] >= 0L) {
+                sampledCpuTime.add(THREAD_MX_BEAN.getCurrentThreadCpuTime() - sample[1]);
+                sampledRunTime.add(runNanos);
+                sample[1] = -1L;
+            }
+            if (delegate != null) {
+                delegate.taskCompleted(runNanos, failed);
+            }
+        }
+
+        @Override
+        public void taskAborted(boolean pending) {
+            if (delegate != null) {
+                delegate.taskAborted(pending);
+            }
+        }
+
+        @Override
+        public void taskRejected() {
+            if (delegate != null) {
+                delegate.taskRejected();
+            }
+        }
+    }
+
+    private static final class SizerThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "AdaptivePoolSizer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
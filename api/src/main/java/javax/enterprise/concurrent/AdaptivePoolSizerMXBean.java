@@ -0,0 +1,117 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+/**
+ * Management interface of an {@link AdaptivePoolSizer}, which shows the 
+ * measurements it took over the last interval and the decision it made 
+ * from them.
+ *
+ * @since 1.1
+ */
+public interface AdaptivePoolSizerMXBean {
+
+  /**
+   * Returns the number of threads of the pool.
+   */
+  public int getPoolSize();
+
+  /**
+   * Returns the least number of threads the pool is sized to.
+   */
+  public int getMinPoolSize();
+
+  /**
+   * Returns the greatest number of threads the pool is sized to.
+   */
+  public int getMaxPoolSize();
+
+  /**
+   * Returns the number of tasks waiting to run when the pool was last sized.
+   */
+  public int getQueueSize();
+
+  /**
+   * Returns the number of task runs per second that ended in the last 
+   * interval.
+   */
+  public double getThroughput();
+
+  /**
+   * Returns the mean time in nanoseconds that the tasks that started in 
+   * the last interval waited to run.
+   */
+  public long getMeanQueueWaitNanos();
+
+  /**
+   * Returns the mean time in nanoseconds that the task runs that ended in 
+   * the last interval took.
+   */
+  public long getMeanRunTimeNanos();
+
+  /**
+   * Returns the fraction of their run time that sampled tasks spent not 
+   * using CPU, such as waiting for I/O or locks, from 0 to 1.
+   */
+  public double getBlockingRatio();
+
+  /**
+   * Returns the number of threads that the pool can use before the tasks 
+   * compete for CPU, given the blocking ratio, within the bounds of the
+   * pool size.
+   */
+  public int getCeilingPoolSize();
+
+  /**
+   * Returns the number of times the pool was grown.
+   */
+  public long getGrowCount();
+
+  /**
+   * Returns the number of times the pool was shrunk.
+   */
+  public long getShrinkCount();
+
+  /**
+   * Returns a description of the last decision and the reason for it.
+   */
+  public String getLastDecision();
+}
@@ -0,0 +1,213 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces the {@link AdmissionPolicy} of an executor on the tasks 
+ * submitted to it.
+ * <p>
+ * The number of waiting tasks is a single counter, which a task reserves a
+ * place in by compare-and-set when it is admitted, and which is released 
+ * by whichever of starting, cancellation or completion clears the 
+ * admitted bit of the {@link ManagedFutureTask}. With the reject oldest 
+ * discipline, admitted tasks are also kept in arrival order, and the tasks
+ * at the head that are no longer waiting are trimmed on each admission.
+ * <p>
+ * The CoDel state follows the dequeue logic of RFC 8289, evaluated when a 
+ * task is about to start: nothing is dropped until the queue delay has 
+ * stayed above the target for a whole interval, and then the next drop is
+ * scheduled after {@code interval / sqrt(count)}.
+ */
+final class AdmissionController {
+
+    private final AdmissionPolicy policy;
+    private final int capacity;
+    private final AtomicInteger pending = new AtomicInteger();
+    // admitted tasks in arrival order, for the reject oldest discipline
+    private final Queue<ManagedFutureTask<?>> admitted;
+    private final long targetNanos;
+    private final long intervalNanos;
+    // CoDel state, guarded by this
+    private volatile long firstAboveNanos;
+    private volatile boolean dropping;
+    private long dropNextNanos;
+    private int count;
+    private int lastCount;
+
+    AdmissionController(AdmissionPolicy policy) {
+        this.policy = policy;
+        this.capacity = policy.getCapacity();
+        this.admitted = policy.getDiscipline() == AdmissionPolicy.Discipline.REJECT_OLDEST? 
+                new ConcurrentLinkedQueue<ManagedFutureTask<?>>(): null;
+        this.targetNanos = policy.targetNanos();
+        this.intervalNanos = policy.intervalNanos();
+    }
+
+    AdmissionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the number of admitted tasks that are waiting to start.
+     */
+    int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Admits a submitted task, dropping the oldest waiting task first if 
+     * the discipline allows it.
+     * 
+     * @throws ManagedRejectedExecutionException if there is no room for the
+     *         task.
+     */
+    void admit(ManagedFutureTask<?> future) throws ManagedRejectedExecutionException {
+        if (admitted != null) {
+            trim();
+        }
+        while (!reserve()) {
+            if (admitted == null || !evictOldest()) {
+                throw new ManagedRejectedExecutionException(RejectionReason.QUEUE_FULL, 
+                        capacity + " tasks are waiting");
+            }
+        }
+        if (!future.markAdmitted()) {
+            // completed meanwhile
+            released();
+            return;
+        }
+        if (admitted != null) {
+            admitted.offer(future);
+        }
+    }
+
+    private boolean reserve() {
+        int n;
+        do {
+            n = pending.get();
+            if (n >= capacity) {
+                return false;
+            }
+        } while (!pending.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    /**
+     * Called once for each admitted task when it stops waiting.
+     */
+    void released() {
+        pending.decrementAndGet();
+    }
+
+    private void trim() {
+        ManagedFutureTask<?> head;
+        while ((head = admitted.peek()) != null && !head.isAdmitted()) {
+            admitted.remove(head);
+        }
+    }
+
+    /**
+     * Drops the waiting task that was admitted first.
+     * 
+     * @return true if a task was dropped, false if none is waiting.
+     */
+    private boolean evictOldest() {
+        ManagedFutureTask<?> oldest;
+        while ((oldest = admitted.poll()) != null) {
+            if (oldest.rejectUnlessStarted(new ManagedRejectedExecutionException(RejectionReason.EVICTED, 
+                    "dropped from the full queue"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decides whether a task that is about to start after waiting for 
+     * {@code sojournNanos} is dropped instead.
+     */
+    boolean shouldDrop(long sojournNanos, long nowNanos) {
+        if (intervalNanos == 0L) {
+            return false;
+        }
+        if (sojournNanos < targetNanos || pending.get() <= 1) {
+            if (firstAboveNanos != 0L || dropping) {
+                synchronized (this) {
+                    firstAboveNanos = 0L;
+                    dropping = false;
+                }
+            }
+            return false;
+        }
+        synchronized (this) {
+            if (dropping) {
+                if (nowNanos - dropNextNanos < 0L) {
+                    return false;
+                }
+                count++;
+                dropNextNanos = controlLaw(dropNextNanos);
+                return true;
+            }
+            if (firstAboveNanos == 0L) {
+                firstAboveNanos = nowNanos + intervalNanos;
+                return false;
+            }
+            if (nowNanos - firstAboveNanos < 0L) {
+                return false;
+            }
+            dropping = true;
+            // start near the last drop rate if dropping stopped recently
+            int delta = count - lastCount;
+            count = delta > 1 && nowNanos - dropNextNanos < 16 * intervalNanos? delta: 1;
+            lastCount = count;
+            dropNextNanos = controlLaw(nowNanos);
+            return true;
+        }
+    }
+
+    private long controlLaw(long nanos) {
+        return nanos + (long) (intervalNanos / Math.sqrt(count));
+    }
+}
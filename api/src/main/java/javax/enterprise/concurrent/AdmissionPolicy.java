@@ -0,0 +1,221 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of tasks waiting to run on a managed executor, and 
+ * decides which tasks are shed when the executor is overloaded.
+ * <p>
+ * A task holds a place in the bound from the time it is submitted until 
+ * it starts, is cancelled, or is shed. When all places are taken, the 
+ * executor either refuses the new task, with a 
+ * {@link ManagedRejectedExecutionException} whose reason is 
+ * {@link RejectionReason#QUEUE_FULL}, or drops the task that was admitted
+ * first, whose {@code Future} then fails with an {@link AbortedException}
+ * whose reason is {@link RejectionReason#EVICTED}.
+ * <p>
+ * A {@linkplain #codel(int, long, long, java.util.concurrent.TimeUnit) CoDel}
+ * policy also keeps the time tasks wait near a target, as the CoDel 
+ * (controlled delay) queue management algorithm does: once tasks have 
+ * waited longer than the target for a whole interval, tasks are dropped 
+ * when they are about to run, at a rate that grows with the square root of
+ * the number of drops until the wait falls below the target again. Their 
+ * {@code Future} fails with an {@link AbortedException} whose reason is 
+ * {@link RejectionReason#QUEUE_DELAY}. This sheds a standing queue 
+ * without reacting to short bursts.
+ * <p>
+ * The bound applies to tasks submitted to the executor for immediate 
+ * execution. Delayed and periodic tasks are not counted until they are 
+ * due, and are never shed.
+ * <p>
+ * Example:
+ * <pre>
+ * ManagedExecutorService executor = new DefaultManagedExecutorService(8, 4, 
+ *     threadFactory, AdmissionPolicy.codel(10000, 5, 100, TimeUnit.MILLISECONDS), null);
+ * </pre>
+ *
+ * @since 1.1
+ */
+public final class AdmissionPolicy {
+
+    /**
+     * How an {@link AdmissionPolicy} sheds tasks.
+     */
+    public enum Discipline {
+        /**
+         * New tasks are refused when the bound is reached.
+         */
+        REJECT_NEWEST,
+        /**
+         * The waiting task that was admitted first is dropped to make room
+         * for a new task when the bound is reached.
+         */
+        REJECT_OLDEST,
+        /**
+         * New tasks are refused when the bound is reached, and waiting tasks
+         * are dropped when the queue delay stays above the target.
+         */
+        CODEL
+    }
+
+    private final Discipline discipline;
+    private final int capacity;
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    private AdmissionPolicy(Discipline discipline, int capacity, long targetNanos, long intervalNanos) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        this.discipline = discipline;
+        this.capacity = capacity;
+        this.targetNanos = targetNanos;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Returns a policy that refuses new tasks when {@code capacity} tasks 
+     * are waiting.
+     * 
+     * @param capacity the greatest number of waiting tasks.
+     * @return the policy.
+     * @throws IllegalArgumentException if {@code capacity} is less than or
+     *         equal to zero.
+     */
+    public static AdmissionPolicy rejectNewest(int capacity) {
+        return new AdmissionPolicy(Discipline.REJECT_NEWEST, capacity, 0L, 0L);
+    }
+
+    /**
+     * Returns a policy that drops the task that has waited longest to make
+     * room for a new task when {@code capacity} tasks are waiting.
+     * 
+     * @param capacity the greatest number of waiting tasks.
+     * @return the policy.
+     * @throws IllegalArgumentException if {@code capacity} is less than or
+     *         equal to zero.
+     */
+    public static AdmissionPolicy rejectOldest(int capacity) {
+        return new AdmissionPolicy(Discipline.REJECT_OLDEST, capacity, 0L, 0L);
+    }
+
+    /**
+     * Returns a policy that refuses new tasks when {@code capacity} tasks 
+     * are waiting, and drops waiting tasks while the time tasks wait has 
+     * stayed above {@code target} for longer than {@code interval}.
+     * 
+     * @param capacity the greatest number of waiting tasks.
+     * @param target the acceptable time for tasks to wait, typically 5 to 
+     *               10 percent of {@code interval}.
+     * @param interval how long the wait must exceed the target before tasks
+     *                 are dropped, typically longer than most tasks run.
+     * @param unit the unit of {@code target} and {@code interval}.
+     * @return the policy.
+     * @throws IllegalArgumentException if {@code capacity}, {@code target}
+     *         or {@code interval} is less than or equal to zero.
+     * @throws NullPointerException if {@code unit} is null.
+     */
+    public static AdmissionPolicy codel(int capacity, long target, long interval, TimeUnit unit) {
+        if (target <= 0L || interval <= 0L) {
+            throw new IllegalArgumentException("target " + target + ", interval " + interval);
+        }
+        return new AdmissionPolicy(Discipline.CODEL, capacity, unit.toNanos(target), unit.toNanos(interval));
+    }
+
+    /**
+     * Returns how tasks are shed.
+     * 
+     * @return the discipline of this policy.
+     */
+    public Discipline getDiscipline() {
+        return discipline;
+    }
+
+    /**
+     * Returns the greatest number of waiting tasks.
+     * 
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the acceptable time for tasks to wait, for a CoDel policy.
+     * 
+     * @param unit the unit of the result.
+     * @return the target, or zero if this is not a CoDel policy.
+     */
+    public long getTarget(TimeUnit unit) {
+        return unit.convert(targetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns how long the wait must exceed the target before tasks are 
+     * dropped, for a CoDel policy.
+     * 
+     * @param unit the unit of the result.
+     * @return the interval, or zero if this is not a CoDel policy.
+     */
+    public long getInterval(TimeUnit unit) {
+        return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    long targetNanos() {
+        return targetNanos;
+    }
+
+    long intervalNanos() {
+        return intervalNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(discipline.name()).append('(').append(capacity);
+        if (discipline == Discipline.CODEL) {
+            text.append(", target ").append(targetNanos).append(" ns, interval ")
+                    .append(intervalNanos).append(" ns");
+        }
+        return text.append(')').toString();
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers {@link ManagedTaskListener} events asynchronously, so that the
+ * cost of a listener is removed from the threads that submit and run tasks.
+ * <p>
+ * {@link #wrap(ManagedTaskListener) wrap} returns a listener that publishes
+ * each event into a bounded ring buffer and returns immediately. A single 
+ * dispatcher thread, created by the supplied {@code ThreadFactory} 
+ * (typically a {@link ManagedThreadFactory}), delivers the events to the 
+ * wrapped listeners in the order in which they were published, so the 
+ * events of each task are always delivered in order. Any number of 
+ * listeners can share one dispatcher.
+ * <p>
+ * The dispatcher delivers events in batches: it takes every event that has
+ * been published, and after each batch calls {@link Flushable#flush()} on 
+ * each listener of the batch that implements {@code Flushable}. A listener
+ * that writes to a log can therefore buffer its output and write it once 
+ * per batch.
+ * <p>
+ * When the ring buffer is full, the {@link OverflowPolicy} determines 
+ * whether a publishing thread waits for room or the event is discarded.
+ * Events published by a listener that is itself running on the dispatcher
+ * thread are discarded rather than waiting, as waiting would never end.
+ * <p>
+ * Because events are delivered after the fact, a listener that cancels the 
+ * task's {@code Future} from {@code taskSubmitted} or {@code taskStarting}
+ * cannot prevent the task from starting. Exceptions thrown by a listener 
+ * are passed to the dispatcher thread's uncaught exception handler, and
+ * delivery continues.
+ * <p>
+ * Example:
+ * <pre>
+ * AsyncListenerDispatcher dispatcher = new AsyncListenerDispatcher(8192, 
+ *     AsyncListenerDispatcher.OverflowPolicy.BLOCK, managedThreadFactory);
+ * ManagedTaskListener auditListener = dispatcher.wrap(new AuditListener(log));
+ *
+ * executor.submit(ManagedExecutors.managedTask(task, auditListener));
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class AsyncListenerDispatcher {
+
+    /**
+     * What to do with an event when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The publishing thread waits until there is room for the event.
+         */
+        BLOCK,
+        /**
+         * The event is discarded and counted in 
+         * {@link AsyncListenerDispatcher#getDiscardedEventCount()}.
+         */
+        DISCARD
+    }
+
+    private static final int SUBMITTED = 0;
+    private static final int STARTING = 1;
+    private static final int ABORTED = 2;
+    private static final int DONE = 3;
+    // how long a publishing thread waits before checking again for room
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Event[] ring;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread thread;
+    // the sequence of the next event to be published
+    private final AtomicLong tail = new AtomicLong();
+    // the sequence of the next event to be delivered, written only by the 
+    // dispatcher thread
+    private volatile long head;
+    private volatile boolean dispatcherWaiting;
+    private volatile boolean shutdown;
+    private volatile boolean terminated;
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Creates a dispatcher that blocks when the ring buffer is full, and 
+     * delivers events on a daemon thread.
+     * 
+     * @param capacity the minimum number of events that the ring buffer holds.
+     * @throws IllegalArgumentException if {@code capacity} is less than or 
+     *         equal to zero.
+     */
+    public AsyncListenerDispatcher(int capacity) {
+        this(capacity, OverflowPolicy.BLOCK, new DispatcherThreadFactory());
+    }
+
+    /**
+     * Creates a dispatcher.
+     * 
+     * @param capacity the minimum number of events that the ring buffer 
+     *                 holds. It is rounded up to a power of two.
+     * @param overflowPolicy what to do with an event when the ring buffer is
+     *                       full.
+     * @param threadFactory the factory used to create the dispatcher thread,
+     *                      typically a {@link ManagedThreadFactory}.
+     * @throws IllegalArgumentException if {@code capacity} is less than or 
+     *         equal to zero, or greater than 2<sup>30</sup>.
+     * @throws NullPointerException if {@code overflowPolicy} or 
+     *         {@code threadFactory} is null.
+     */
+    public AsyncListenerDispatcher(int capacity, OverflowPolicy overflowPolicy, ThreadFactory threadFactory) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        if (overflowPolicy == null || threadFactory == null) {
+            throw new NullPointerException();
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new Event[Math.max(size, 1)];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = ring.length - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        });
+        if (thread == null) {
+            throw new IllegalStateException("thread factory did not create a thread");
+        }
+        thread.start();
+    }
+
+    /**
+     * Returns a listener that publishes its events to this dispatcher for
+     * asynchronous delivery to {@code listener}.
+     * 
+     * @param listener the listener to which events are delivered.
+     * @return the asynchronous listener.
+     * @throws NullPointerException if {@code listener} is null.
+     */
+    public ManagedTaskListener wrap(ManagedTaskListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        return new AsyncListener(listener);
+    }
+
+    /**
+     * Returns the number of events that have been discarded because the 
+     * ring buffer was full or the dispatcher was shut down.
+     * 
+     * @return the number of discarded events.
+     */
+    public long getDiscardedEventCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Waits until every event published before this method was called has 
+     * been delivered to its listener, or discarded.
+     * 
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of {@code timeout}.
+     * @return true if the events were delivered, false if the timeout 
+     *         elapsed first or the dispatcher terminated without delivering 
+     *         them.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (head < target) {
+            long remaining = deadline - System.nanoTime();
+            if (terminated || remaining <= 0) {
+                return head >= target;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, BLOCK_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting events. Events that have already been published are 
+     * delivered before the dispatcher thread ends; events published later,
+     * or concurrently with this method, are discarded.
+     */
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns true if this dispatcher has been shut down.
+     * 
+     * @return true if this dispatcher has been shut down.
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Waits for the dispatcher thread to end after a shutdown request.
+     * 
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of {@code timeout}.
+     * @return true if the dispatcher thread ended, false if the timeout 
+     *         elapsed first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        unit.timedJoin(thread, timeout);
+        return !thread.isAlive();
+    }
+
+    private void publish(int kind, ManagedTaskListener listener, Future<?> future, ManagedExecutorService executor, 
+            Object task, Throwable exception) {
+        boolean interrupted = false;
+        long sequence;
+        while (true) {
+            if (shutdown || terminated) {
+                discarded.incrementAndGet();
+                return;
+            }
+            sequence = tail.get();
+            if (sequence - head >= ring.length) {
+                if (overflowPolicy == OverflowPolicy.DISCARD || Thread.currentThread() == thread) {
+                    discarded.incrementAndGet();
+                    return;
+                }
+                LockSupport.parkNanos(this, BLOCK_NANOS);
+                // keep waiting, but restore the interrupt when done
+                interrupted |= Thread.interrupted();
+            } else if (tail.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        Event event = ring[(int) sequence & mask];
+        event.kind = kind;
+        event.listener = listener;
+        event.future = future;
+        event.executor = executor;
+        event.task = task;
+        event.exception = exception;
+        event.sequence = sequence;
+        if (dispatcherWaiting) {
+            LockSupport.unpark(thread);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The dispatcher thread's loop.
+     */
+    private void dispatch() {
+        Set<Flushable> flushables = Collections.newSetFromMap(new IdentityHashMap<Flushable, Boolean>());
+        long next = head;
+        int batched = 0;
+        try {
+            while (true) {
+                Event event = ring[(int) next & mask];
+                if (event.sequence != next || batched == ring.length) {
+                    flush(flushables);
+                    batched = 0;
+                }
+                if (event.sequence != next) {
+                    if (shutdown && tail.get() == next) {
+                        return;
+                    }
+                    dispatcherWaiting = true;
+                    if (event.sequence != next && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                    dispatcherWaiting = false;
+                    continue;
+                }
+                deliver(event);
+                if (event.listener instanceof Flushable) {
+                    flushables.add((Flushable) event.listener);
+                }
+                event.listener = null;
+                event.future = null;
+                event.executor = null;
+                event.task = null;
+                event.exception = null;
+                head = ++next;
+                batched++;
+            }
+        } finally {
+            terminated = true;
+        }
+    }
+
+    private static void deliver(Event event) {
+        try {
+            switch (event.kind) {
+                case SUBMITTED:
+                    event.listener.taskSubmitted(event.future, event.executor, event.task);
+                    break;
+                case STARTING:
+                    event.listener.taskStarting(event.future, event.executor, event.task);
+                    break;
+                case ABORTED:
+                    event.listener.taskAborted(event.future, event.executor, event.task, event.exception);
+                    break;
+                default:
+                    event.listener.taskDone(event.future, event.executor, event.task, event.exception);
+            }
+        } catch (RuntimeException e) {
+            uncaught(e);
+        }
+    }
+
+    private static void flush(Set<Flushable> flushables) {
+        if (flushables.isEmpty()) {
+            return;
+        }
+        for (Flushable flushable : flushables) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                uncaught(e);
+            } catch (RuntimeException e) {
+                uncaught(e);
+            }
+        }
+        flushables.clear();
+    }
+
+    private static void uncaught(Throwable e) {
+        Thread current = Thread.currentThread();
+        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+    }
+
+    /**
+     * A slot of the ring buffer. The fields other than {@code sequence} are
+     * written before {@code sequence} is set to the sequence of the event,
+     * which publishes them to the dispatcher thread.
+     */
+    private static final class Event {
+
+        volatile long sequence = -1;
+        int kind;
+        ManagedTaskListener listener;
+        Future<?> future;
+        ManagedExecutorService executor;
+        Object task;
+        Throwable exception;
+    }
+
+    private final class AsyncListener implements ManagedTaskListener {
+
+        private final ManagedTaskListener listener;
+
+        AsyncListener(ManagedTaskListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            publish(SUBMITTED, listener, future, executor, task, null);
+        }
+
+        @Override
+        public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            publish(ABORTED, listener, future, executor, task, exception);
+        }
+
+        @Override
+        public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            publish(DONE, listener, future, executor, task, exception);
+        }
+
+        @Override
+        public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            publish(STARTING, listener, future, executor, task, null);
+        }
+    }
+
+    private static final class DispatcherThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "AsyncListenerDispatcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
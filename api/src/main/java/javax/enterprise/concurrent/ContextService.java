@@ -40,6 +40,8 @@
 
 package javax.enterprise.concurrent;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -306,4 +308,55 @@ public interface ContextService {
    *                                            {@code createContextualProxy} method.
    */
   public Map<String, String> getExecutionProperties(Object contextualProxy);
+
+  /**
+   * Captures the context of the current thread once, so that many contextual
+   * proxies can be created for it without capturing it again.
+   * <p>
+   * Proxies created from the returned snapshot behave as if they had been 
+   * created with {@code createContextualProxy} on the current thread with
+   * the same execution properties, and are accepted by 
+   * {@link #getExecutionProperties(java.lang.Object) getExecutionProperties}.
+   * For example, to fan a request out to many subtasks that all run with the
+   * context of the request:
+   * <pre>
+   * ContextSnapshot snapshot = ctxService.captureContext(null);
+   * for (Subtask subtask : subtasks) {
+   *     executor.submit(snapshot.createContextualProxy(subtask, Callable.class));
+   * }
+   * </pre>
+   * 
+   * <p>
+   * The default implementation does not capture anything itself: each proxy
+   * created from the returned snapshot is created with 
+   * {@code createContextualProxy}, which captures the context of the thread
+   * that creates the proxy. Implementations should override it to capture 
+   * the context once, on the current thread.
+   * 
+   * @param executionProperties the properties to use when capturing the context
+   *                          and running the contextual objects, or null.
+   * @return an immutable snapshot of the context of the current thread.
+   * 
+   * @since 1.1
+   */
+  public default ContextSnapshot captureContext(Map<String, String> executionProperties) {
+    final Map<String, String> properties = executionProperties == null? null: 
+        Collections.unmodifiableMap(new HashMap<String, String>(executionProperties));
+    return new ContextSnapshot() {
+      @Override
+      public <T> T createContextualProxy(T instance, Class<T> intf) {
+        return intf.cast(createContextualProxy(instance, new Class<?>[] { intf }));
+      }
+
+      @Override
+      public Object createContextualProxy(Object instance, Class<?>... interfaces) {
+        return ContextService.this.createContextualProxy(instance, properties, interfaces);
+      }
+
+      @Override
+      public Map<String, String> getExecutionProperties() {
+        return properties == null? null: new HashMap<String, String>(properties);
+      }
+    };
+  }
 }
@@ -0,0 +1,91 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Map;
+
+/**
+ * An immutable snapshot of thread context captured by 
+ * {@link ContextService#captureContext(java.util.Map) ContextService.captureContext()}.
+ * <p>
+ * A snapshot can be bound to any number of instances, from any thread, so 
+ * that the cost of capturing the context is paid once. Every proxy created
+ * from a snapshot runs with the same captured context and shares the same
+ * execution properties.
+ *
+ * @since 1.1
+ */
+public interface ContextSnapshot {
+
+  /**
+   * Creates a new contextual object proxy for the input object instance that
+   * runs with the context of this snapshot.
+   * 
+   * @param instance the instance of the object to proxy.
+   * @param intf the interface that the proxy should implement.
+   * @return a proxy for the input object that implements the specified interface.
+   * @throws java.lang.IllegalArgumentException - if the {@code intf} argument 
+   * is null or the instance does not implement the specified interface.
+   */
+  public <T> T createContextualProxy(T instance, Class<T> intf);
+
+  /**
+   * Creates a new contextual object proxy for the input object instance that
+   * runs with the context of this snapshot and implements multiple interfaces.
+   * 
+   * @param instance the instance of the object to proxy.
+   * @param interfaces the interfaces that the proxy should implement.
+   * @return a proxy for the input object that implements all of the specified
+   *         interfaces.
+   * @throws java.lang.IllegalArgumentException - if the {@code interfaces}
+   * argument is null or the instance does not implement all the specified 
+   * interfaces.
+   */
+  public Object createContextualProxy(Object instance, Class<?>... interfaces);
+
+  /**
+   * Gets the execution properties the snapshot was captured with.
+   * 
+   * @return A copy of the execution properties, or null if the snapshot was
+   *         captured without specifying any execution properties.
+   */
+  public Map<String, String> getExecutionProperties();
+}
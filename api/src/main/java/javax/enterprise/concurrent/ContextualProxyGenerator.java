@@ -0,0 +1,786 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.enterprise.concurrent.spi.ThreadContextRestorer;
+
+/**
+ * Creates contextual proxy objects for {@link DefaultContextService}.
+ * <p>
+ * For each distinct set of public interfaces, a proxy class is generated that
+ * extends {@link ContextualProxy} and implements every interface method 
+ * with a direct {@code invokeinterface} call on the proxied instance, 
+ * bracketed by applying and restoring the captured thread context. Unlike 
+ * {@link java.lang.reflect.Proxy}, invoking a method allocates no argument
+ * array, boxes no primitives and involves no reflective call.
+ * <p>
+ * Generated classes are cached per interface set on the interface whose 
+ * class loader defines them, so they are unloaded together with the 
+ * application that owns the interfaces. The thread context and execution 
+ * properties are per proxy instance and do not affect the generated class.
+ * <p>
+ * Interface sets that cannot be implemented by a generated class, such as
+ * non-public interfaces, fall back to {@code java.lang.reflect.Proxy}.
+ */
+final class ContextualProxyGenerator {
+
+    private ContextualProxyGenerator() {
+    }
+
+    private static final String BASE_CLASS = ContextualProxy.class.getName();
+    private static final String BASE_INTERNAL_NAME = BASE_CLASS.replace('.', '/');
+    private static final String GENERATED_PACKAGE = "javax/enterprise/concurrent/generated/";
+    private static final AtomicLong classCount = new AtomicLong();
+
+    private static final ClassValue<ProxyClasses> proxyClasses = new ClassValue<ProxyClasses>() {
+        @Override
+        protected ProxyClasses computeValue(Class<?> type) {
+            return new ProxyClasses();
+        }
+    };
+
+    /**
+     * Creates a contextual proxy.
+     * 
+     * @param instance the proxied instance, which implements all of the 
+     *                 interfaces.
+     * @param context the thread context to run interface methods with.
+     * @param executionProperties the execution properties of the proxy, or null.
+     * @param interfaces the interfaces the proxy implements.
+     */
+    static Object newProxy(Object instance, ThreadContext context, ExecutionProperties executionProperties, 
+            Class<?>[] interfaces) {
+        Constructor<?> constructor = proxyConstructor(interfaces);
+        if (constructor == null) {
+            return Proxy.newProxyInstance(loaderFor(interfaces), interfaces,
+                    new ContextualInvocationHandler(instance, context, executionProperties));
+        }
+        try {
+            return constructor.newInstance(instance, context, executionProperties);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns whether {@code proxy} was created by {@link #newProxy}.
+     */
+    static boolean isContextualProxy(Object proxy) {
+        return proxy instanceof ContextualProxy || handlerOf(proxy) != null;
+    }
+
+    /**
+     * Returns the execution properties of a proxy created by 
+     * {@link #newProxy}, or null if it has none.
+     */
+    static ExecutionProperties executionPropertiesOf(Object proxy) {
+        if (proxy instanceof ContextualProxy) {
+            return ((ContextualProxy) proxy).executionProperties;
+        }
+        ContextualInvocationHandler handler = handlerOf(proxy);
+        return handler == null? null: handler.executionProperties;
+    }
+
+    private static ContextualInvocationHandler handlerOf(Object proxy) {
+        if (proxy != null && Proxy.isProxyClass(proxy.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(proxy);
+            if (handler instanceof ContextualInvocationHandler) {
+                return (ContextualInvocationHandler) handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the constructor of the generated proxy class for the 
+     * interfaces, generating the class if necessary, or null if a generated
+     * class cannot implement the interfaces.
+     */
+    private static Constructor<?> proxyConstructor(Class<?>[] interfaces) {
+        Class<?> owner = ownerOf(interfaces);
+        if (owner == null) {
+            return null;
+        }
+        ProxyClasses classes = proxyClasses.get(owner);
+        if (interfaces.length == 1) {
+            Constructor<?> constructor = classes.single;
+            if (constructor == null) {
+                constructor = generate(owner.getClassLoader(), interfaces);
+                classes.single = constructor;
+            }
+            return constructor == ProxyClasses.UNSUPPORTED? null: constructor;
+        }
+        List<Class<?>> key = Arrays.asList(interfaces.clone());
+        Constructor<?> constructor = classes.multiple.get(key);
+        if (constructor == null) {
+            constructor = generate(owner.getClassLoader(), interfaces);
+            Constructor<?> existing = classes.multiple.putIfAbsent(key, constructor);
+            if (existing != null) {
+                constructor = existing;
+            }
+        }
+        return constructor == ProxyClasses.UNSUPPORTED? null: constructor;
+    }
+
+    /**
+     * Returns the interface whose class loader can see all of the interfaces
+     * and the proxy base class, or null if there is none or any of the 
+     * interfaces is not public.
+     */
+    private static Class<?> ownerOf(Class<?>[] interfaces) {
+        for (Class<?> intf : interfaces) {
+            if (!Modifier.isPublic(intf.getModifiers())) {
+                return null;
+            }
+        }
+        for (Class<?> candidate : interfaces) {
+            if (canSee(candidate.getClassLoader(), interfaces)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean canSee(ClassLoader loader, Class<?>[] interfaces) {
+        for (Class<?> intf : interfaces) {
+            try {
+                if (Class.forName(intf.getName(), false, loader) != intf) {
+                    return false;
+                }
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ClassLoader loaderFor(Class<?>[] interfaces) {
+        for (Class<?> intf : interfaces) {
+            if (canSee(intf.getClassLoader(), interfaces)) {
+                return intf.getClassLoader();
+            }
+        }
+        return interfaces[0].getClassLoader();
+    }
+
+    private static Constructor<?> generate(ClassLoader parent, Class<?>[] interfaces) {
+        Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        for (Class<?> intf : interfaces) {
+            for (Method method : intf.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers()) || isObjectMethod(method)) {
+                    continue;
+                }
+                if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                    return ProxyClasses.UNSUPPORTED;
+                }
+                String key = method.getName() + parametersDescriptor(method.getParameterTypes());
+                Method existing = methods.get(key);
+                if (existing == null) {
+                    methods.put(key, method);
+                } else if (existing.getReturnType() != method.getReturnType()) {
+                    return ProxyClasses.UNSUPPORTED;
+                }
+            }
+        }
+        String className = GENERATED_PACKAGE + "ContextualProxy$" + classCount.incrementAndGet();
+        byte[] classFile;
+        try {
+            classFile = new ClassFileWriter(className, interfaces, methods.values()).toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            Class<?> proxyClass = new ProxyClassLoader(parent).define(className.replace('/', '.'), classFile);
+            return proxyClass.getConstructor(Object.class, Object.class, Object.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        } catch (LinkageError e) {
+            return ProxyClasses.UNSUPPORTED;
+        }
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        try {
+            Object.class.getMethod(method.getName(), method.getParameterTypes());
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static String parametersDescriptor(Class<?>[] parameterTypes) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> type : parameterTypes) {
+            descriptor.append(descriptor(type));
+        }
+        return descriptor.append(')').toString();
+    }
+
+    static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        }
+        if (type == void.class) {
+            return "V";
+        }
+        if (type == boolean.class) {
+            return "Z";
+        }
+        if (type == byte.class) {
+            return "B";
+        }
+        if (type == char.class) {
+            return "C";
+        }
+        if (type == short.class) {
+            return "S";
+        }
+        if (type == int.class) {
+            return "I";
+        }
+        if (type == long.class) {
+            return "J";
+        }
+        if (type == float.class) {
+            return "F";
+        }
+        if (type == double.class) {
+            return "D";
+        }
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    /**
+     * Generated proxy classes of the interface sets owned by one interface.
+     */
+    private static final class ProxyClasses {
+
+        static final Constructor<?> UNSUPPORTED = ProxyClasses.class.getDeclaredConstructors()[0];
+
+        volatile Constructor<?> single;
+        final ConcurrentMap<List<Class<?>>, Constructor<?>> multiple = 
+                new ConcurrentHashMap<List<Class<?>>, Constructor<?>>();
+    }
+
+    /**
+     * Defines a generated proxy class. Classes are resolved through the class 
+     * loader of the proxied interfaces, except the proxy base class.
+     */
+    private static final class ProxyClassLoader extends ClassLoader {
+
+        ProxyClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length, ContextualProxy.class.getProtectionDomain());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(BASE_CLASS)) {
+                return ContextualProxy.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    /**
+     * Superclass of generated contextual proxies. It is public so that the 
+     * generated classes, which are defined by another class loader, can 
+     * extend it.
+     */
+    public abstract static class ContextualProxy implements Serializable {
+
+        private static final long serialVersionUID = 5283390460389557521L;
+
+        protected final transient Object instance;
+        final transient ThreadContext context;
+        final transient ExecutionProperties executionProperties;
+
+        /**
+         * Constructor for generated subclasses. The parameters are declared as
+         * {@code Object} so that the descriptor of the constructor does not
+         * reference any package-private class.
+         */
+        protected ContextualProxy(Object instance, Object context, Object executionProperties) {
+            this.instance = instance;
+            this.context = (ThreadContext) context;
+            this.executionProperties = (ExecutionProperties) executionProperties;
+        }
+
+        /**
+         * Applies the captured context to the current thread.
+         * 
+         * @return the value to pass to {@link #endContext(java.lang.Object)}.
+         */
+        protected final Object beginContext() {
+            return context.begin();
+        }
+
+        /**
+         * Restores the previous context of the current thread.
+         * 
+         * @param restorers the value returned by {@link #beginContext()}.
+         */
+        protected final void endContext(Object restorers) {
+            ThreadContext.end((ThreadContextRestorer[]) restorers);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return instance.equals(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return instance.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return instance.toString();
+        }
+
+        /**
+         * Generated classes do not exist in other processes, so proxies are 
+         * serialized in a form from which they can be recreated.
+         * 
+         * @return the serialized form of this proxy.
+         * @throws ObjectStreamException never.
+         */
+        protected final Object writeReplace() throws ObjectStreamException {
+            return new SerializedForm(instance, context, executionProperties, getClass().getInterfaces());
+        }
+    }
+
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = -1645325880520522740L;
+
+        private final Object instance;
+        private final ThreadContext context;
+        private final ExecutionProperties executionProperties;
+        private final Class<?>[] interfaces;
+
+        SerializedForm(Object instance, ThreadContext context, ExecutionProperties executionProperties, 
+                Class<?>[] interfaces) {
+            this.instance = instance;
+            this.context = context;
+            this.executionProperties = executionProperties;
+            this.interfaces = interfaces;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return newProxy(instance, context, executionProperties, interfaces);
+        }
+    }
+
+    /**
+     * Fallback for interface sets that a generated class cannot implement.
+     */
+    private static final class ContextualInvocationHandler implements InvocationHandler, Serializable {
+
+        private static final long serialVersionUID = -3034163400478000807L;
+
+        final Object instance;
+        final ThreadContext context;
+        final ExecutionProperties executionProperties;
+
+        ContextualInvocationHandler(Object instance, ThreadContext context, 
+                ExecutionProperties executionProperties) {
+            this.instance = instance;
+            this.context = context;
+            this.executionProperties = executionProperties;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(instance, args);
+            }
+            ThreadContextRestorer[] restorers = context.begin();
+            try {
+                return method.invoke(instance, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                ThreadContext.end(restorers);
+            }
+        }
+    }
+
+    /**
+     * Writes the class file of a generated proxy class. The class file 
+     * version is 49, which is verified by type inference and therefore does
+     * not need stack map frames.
+     */
+    private static final class ClassFileWriter {
+
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_FINAL = 0x0010;
+        private static final int ACC_SUPER = 0x0020;
+
+        private static final int ALOAD_0 = 0x2a;
+        private static final int ILOAD = 0x15;
+        private static final int LLOAD = 0x16;
+        private static final int FLOAD = 0x17;
+        private static final int DLOAD = 0x18;
+        private static final int ALOAD = 0x19;
+        private static final int ISTORE = 0x36;
+        private static final int LSTORE = 0x37;
+        private static final int FSTORE = 0x38;
+        private static final int DSTORE = 0x39;
+        private static final int ASTORE = 0x3a;
+        private static final int IRETURN = 0xac;
+        private static final int LRETURN = 0xad;
+        private static final int FRETURN = 0xae;
+        private static final int DRETURN = 0xaf;
+        private static final int ARETURN = 0xb0;
+        private static final int RETURN = 0xb1;
+        private static final int GETFIELD = 0xb4;
+        private static final int INVOKEVIRTUAL = 0xb6;
+        private static final int INVOKESPECIAL = 0xb7;
+        private static final int INVOKEINTERFACE = 0xb9;
+        private static final int ATHROW = 0xbf;
+        private static final int CHECKCAST = 0xc0;
+        private static final int WIDE = 0xc4;
+
+        private final Map<String, Integer> constants = new HashMap<String, Integer>();
+        private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(constantPool);
+        private int constantCount = 1;
+
+        private final String className;
+        private final Class<?>[] interfaces;
+        private final List<Method> methods;
+
+        ClassFileWriter(String className, Class<?>[] interfaces, Collection<Method> methods) {
+            this.className = className;
+            this.interfaces = interfaces;
+            this.methods = new ArrayList<Method>(methods);
+        }
+
+        byte[] toByteArray() throws IOException {
+            int thisClass = classConstant(className);
+            int superClass = classConstant(BASE_INTERNAL_NAME);
+            int[] interfaceConstants = new int[interfaces.length];
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaceConstants[i] = classConstant(interfaces[i].getName().replace('.', '/'));
+            }
+            ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(methodBytes);
+            writeConstructor(out);
+            for (Method method : methods) {
+                writeMethod(out, method);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream classFile = new DataOutputStream(bytes);
+            classFile.writeInt(0xCAFEBABE);
+            classFile.writeShort(0);
+            classFile.writeShort(49);
+            classFile.writeShort(constantCount);
+            pool.flush();
+            constantPool.writeTo(classFile);
+            classFile.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            classFile.writeShort(thisClass);
+            classFile.writeShort(superClass);
+            classFile.writeShort(interfaceConstants.length);
+            for (int interfaceConstant : interfaceConstants) {
+                classFile.writeShort(interfaceConstant);
+            }
+            classFile.writeShort(0); // fields
+            classFile.writeShort(methods.size() + 1);
+            out.flush();
+            methodBytes.writeTo(classFile);
+            classFile.writeShort(0); // attributes
+            classFile.flush();
+            return bytes.toByteArray();
+        }
+
+        private void writeConstructor(DataOutputStream out) throws IOException {
+            String descriptor = "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)V";
+            ByteArrayOutputStream code = new ByteArrayOutputStream();
+            code.write(ALOAD_0);
+            code.write(ALOAD_0 + 1);
+            code.write(ALOAD_0 + 2);
+            code.write(ALOAD_0 + 3);
+            code.write(INVOKESPECIAL);
+            writeShort(code, methodConstant(BASE_INTERNAL_NAME, "<init>", descriptor, false));
+            code.write(RETURN);
+            writeMethodInfo(out, "<init>", descriptor, 4, 4, code.toByteArray(), null);
+        }
+
+        /**
+         * Writes:
+         * <pre>
+         * Object restorers = beginContext();
+         * try {
+         *     return ((Interface) instance).method(args);
+         * } finally {
+         *     endContext(restorers);
+         * }
+         * </pre>
+         */
+        private void writeMethod(DataOutputStream out, Method method) throws IOException {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            Class<?> returnType = method.getReturnType();
+            String descriptor = parametersDescriptor(parameterTypes) + descriptor(returnType);
+            String owner = method.getDeclaringClass().getName().replace('.', '/');
+            int argumentSlots = 0;
+            for (Class<?> type : parameterTypes) {
+                argumentSlots += slots(type);
+            }
+            int restorersLocal = 1 + argumentSlots;
+            int resultLocal = restorersLocal + 1;
+            int exceptionLocal = resultLocal + slots(returnType);
+            int beginContext = methodConstant(BASE_INTERNAL_NAME, "beginContext", "()Ljava/lang/Object;", false);
+            int endContext = methodConstant(BASE_INTERNAL_NAME, "endContext", "(Ljava/lang/Object;)V", false);
+
+            ByteArrayOutputStream code = new ByteArrayOutputStream();
+            code.write(ALOAD_0);
+            code.write(INVOKEVIRTUAL);
+            writeShort(code, beginContext);
+            writeLocal(code, ASTORE, restorersLocal);
+            int tryStart = code.size();
+            code.write(ALOAD_0);
+            code.write(GETFIELD);
+            writeShort(code, fieldConstant(BASE_INTERNAL_NAME, "instance", "Ljava/lang/Object;"));
+            code.write(CHECKCAST);
+            writeShort(code, classConstant(owner));
+            int local = 1;
+            for (Class<?> type : parameterTypes) {
+                writeLocal(code, loadOpcode(type), local);
+                local += slots(type);
+            }
+            code.write(INVOKEINTERFACE);
+            writeShort(code, methodConstant(owner, method.getName(), descriptor, true));
+            code.write(1 + argumentSlots);
+            code.write(0);
+            if (returnType != void.class) {
+                writeLocal(code, storeOpcode(returnType), resultLocal);
+            }
+            int tryEnd = code.size();
+            code.write(ALOAD_0);
+            writeLocal(code, ALOAD, restorersLocal);
+            code.write(INVOKEVIRTUAL);
+            writeShort(code, endContext);
+            if (returnType == void.class) {
+                code.write(RETURN);
+            } else {
+                writeLocal(code, loadOpcode(returnType), resultLocal);
+                code.write(returnOpcode(returnType));
+            }
+            int handler = code.size();
+            writeLocal(code, ASTORE, exceptionLocal);
+            code.write(ALOAD_0);
+            writeLocal(code, ALOAD, restorersLocal);
+            code.write(INVOKEVIRTUAL);
+            writeShort(code, endContext);
+            writeLocal(code, ALOAD, exceptionLocal);
+            code.write(ATHROW);
+
+            int maxStack = Math.max(2 + argumentSlots, 2);
+            int maxLocals = exceptionLocal + 1;
+            writeMethodInfo(out, method.getName(), descriptor, maxStack, maxLocals, code.toByteArray(), 
+                    new int[] {tryStart, tryEnd, handler});
+        }
+
+        private void writeMethodInfo(DataOutputStream out, String name, String descriptor, int maxStack, 
+                int maxLocals, byte[] code, int[] finallyBlock) throws IOException {
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8Constant("Code"));
+            out.writeInt(2 + 2 + 4 + code.length + 2 + (finallyBlock == null? 0: 8) + 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            if (finallyBlock == null) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                out.writeShort(finallyBlock[0]);
+                out.writeShort(finallyBlock[1]);
+                out.writeShort(finallyBlock[2]);
+                out.writeShort(0); // any exception
+            }
+            out.writeShort(0); // attributes
+        }
+
+        private static void writeLocal(ByteArrayOutputStream code, int opcode, int local) {
+            if (local < 256) {
+                code.write(opcode);
+                code.write(local);
+            } else {
+                code.write(WIDE);
+                code.write(opcode);
+                writeShort(code, local);
+            }
+        }
+
+        private static void writeShort(ByteArrayOutputStream code, int value) {
+            code.write(value >>> 8);
+            code.write(value);
+        }
+
+        private static int slots(Class<?> type) {
+            return type == void.class? 0: type == long.class || type == double.class? 2: 1;
+        }
+
+        private static int loadOpcode(Class<?> type) {
+            return typedOpcode(type, ILOAD, LLOAD, FLOAD, DLOAD, ALOAD);
+        }
+
+        private static int storeOpcode(Class<?> type) {
+            return typedOpcode(type, ISTORE, LSTORE, FSTORE, DSTORE, ASTORE);
+        }
+
+        private static int returnOpcode(Class<?> type) {
+            return typedOpcode(type, IRETURN, LRETURN, FRETURN, DRETURN, ARETURN);
+        }
+
+        private static int typedOpcode(Class<?> type, int intOpcode, int longOpcode, int floatOpcode,
+                int doubleOpcode, int referenceOpcode) {
+            if (!type.isPrimitive()) {
+                return referenceOpcode;
+            }
+            if (type == long.class) {
+                return longOpcode;
+            }
+            if (type == float.class) {
+                return floatOpcode;
+            }
+            if (type == double.class) {
+                return doubleOpcode;
+            }
+            return intOpcode;
+        }
+
+        private int utf8Constant(String value) throws IOException {
+            Integer index = constants.get("U" + value);
+            if (index == null) {
+                pool.writeByte(1);
+                pool.writeUTF(value);
+                index = constantCount++;
+                constants.put("U" + value, index);
+            }
+            return index;
+        }
+
+        private int classConstant(String internalName) throws IOException {
+            Integer index = constants.get("C" + internalName);
+            if (index == null) {
+                int name = utf8Constant(internalName);
+                pool.writeByte(7);
+                pool.writeShort(name);
+                index = constantCount++;
+                constants.put("C" + internalName, index);
+            }
+            return index;
+        }
+
+        private int nameAndTypeConstant(String name, String descriptor) throws IOException {
+            String key = "N" + name + " " + descriptor;
+            Integer index = constants.get(key);
+            if (index == null) {
+                int nameIndex = utf8Constant(name);
+                int descriptorIndex = utf8Constant(descriptor);
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(descriptorIndex);
+                index = constantCount++;
+                constants.put(key, index);
+            }
+            return index;
+        }
+
+        private int fieldConstant(String owner, String name, String descriptor) throws IOException {
+            return memberConstant(9, owner, name, descriptor);
+        }
+
+        private int methodConstant(String owner, String name, String descriptor, boolean isInterface) 
+                throws IOException {
+            return memberConstant(isInterface? 11: 10, owner, name, descriptor);
+        }
+
+        private int memberConstant(int tag, String owner, String name, String descriptor) throws IOException {
+            String key = tag + owner + "." + name + " " + descriptor;
+            Integer index = constants.get(key);
+            if (index == null) {
+                int ownerIndex = classConstant(owner);
+                int nameAndType = nameAndTypeConstant(name, descriptor);
+                pool.writeByte(tag);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+                index = constantCount++;
+                constants.put(key, index);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A {@link Trigger} that runs a task at the times matched by a cron 
+ * expression.
+ * <p>
+ * The expression has five fields, separated by whitespace: minute (0-59),
+ * hour (0-23), day of month (1-31), month (1-12 or JAN-DEC) and day of week 
+ * (0-7 or SUN-SAT, where both 0 and 7 are Sunday). An optional sixth field,
+ * seconds (0-59), may be given before the minute. Each field is {@code *}, 
+ * a value, a range {@code a-b}, or a comma separated list of these, and 
+ * values and ranges may be followed by a step {@code /n}. As in the 
+ * traditional cron, if both the day of month and the day of week are 
+ * restricted (neither starts with {@code *} or {@code ?}), a day matches if
+ * either field matches; otherwise it must match both. The macros 
+ * {@code @yearly}, {@code @annually}, {@code @monthly}, {@code @weekly}, 
+ * {@code @daily}, {@code @midnight} and {@code @hourly} are also accepted.
+ * <p>
+ * The expression is compiled into one bitset per field when the trigger is
+ * created. The next run time is then found by scanning the bitsets for the 
+ * next set bit of each field in turn, without iterating over minutes or 
+ * days and without allocating anything but the returned date/time. A
+ * {@code CronTrigger} is immutable, so one instance can be shared by any 
+ * number of tasks.
+ * <p>
+ * Times are matched in the trigger's time zone. A time that does not exist
+ * because of a daylight saving time transition runs at the equivalent 
+ * instant after the transition; a time that occurs twice runs once.
+ * <p>
+ * Example:
+ * <pre>
+ * // every 15 minutes during business hours
+ * Trigger trigger = new CronTrigger("0/15 9-17 * * MON-FRI", TimeZone.getTimeZone("Europe/Paris"));
+ * ScheduledFuture&lt;?&gt; future = executor.schedule(report, trigger);
+ * </pre>
+ * 
+ * @since 1.1
+ */
+public class CronTrigger implements ZonedTrigger {
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final long NONE = Long.MIN_VALUE;
+    // the Gregorian calendar repeats every 400 years, so an expression that
+    // does not match within that many years never matches
+    private static final int SEARCH_YEARS = 400;
+    private static final String[] MONTH_NAMES = {
+        null, "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+    private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    private final String expression;
+    private final TimeZone timeZone;
+    private final ZoneId zoneId;
+    private final long seconds;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+    // for each weekday of the first day of a month, the days of that month
+    // that match the day of week field
+    private final long[] daysOfWeekByFirstDay = new long[7];
+
+    /**
+     * Creates a trigger for a cron expression, in the default time zone.
+     * 
+     * @param expression the cron expression.
+     * @throws IllegalArgumentException if the expression is not valid, or 
+     *         can never match.
+     */
+    public CronTrigger(String expression) {
+        this(expression, TimeZone.getDefault());
+    }
+
+    /**
+     * Creates a trigger for a cron expression.
+     * 
+     * @param expression the cron expression.
+     * @param timeZone the time zone in which to match the expression.
+     * @throws IllegalArgumentException if the expression is not valid, or 
+     *         can never match.
+     */
+    public CronTrigger(String expression, TimeZone timeZone) {
+        if (expression == null || timeZone == null) {
+            throw new NullPointerException();
+        }
+        this.expression = expression;
+        this.timeZone = (TimeZone) timeZone.clone();
+        this.zoneId = timeZone.toZoneId();
+        String[] fields = expandMacro(expression.trim()).split("\\s+");
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException("Cron expression must have 5 or 6 fields: " + expression);
+        }
+        int i = fields.length - 5;
+        this.seconds = i == 0? 1L: parseField(fields[0], 0, 59, null, false);
+        this.minutes = parseField(fields[i], 0, 59, null, false);
+        this.hours = parseField(fields[i + 1], 0, 23, null, false);
+        this.daysOfMonth = parseField(fields[i + 2], 1, 31, null, true);
+        this.months = parseField(fields[i + 3], 1, 12, MONTH_NAMES, false);
+        long daysOfWeek = parseField(fields[i + 4], 0, 7, DAY_NAMES, true);
+        if ((daysOfWeek & (1L << 7)) != 0) {
+            daysOfWeek = (daysOfWeek | 1L) & ~(1L << 7);
+        }
+        this.anyDayOfMonth = isAny(fields[i + 2]);
+        this.anyDayOfWeek = isAny(fields[i + 4]);
+        for (int first = 0; first < 7; first++) {
+            for (int day = 1; day <= 31; day++) {
+                if ((daysOfWeek & (1L << ((first + day - 1) % 7))) != 0) {
+                    daysOfWeekByFirstDay[first] |= 1L << day;
+                }
+            }
+        }
+        if (anyDayOfMonth || anyDayOfWeek) {
+            boolean possible = false;
+            for (int month = 1; month <= 12; month++) {
+                if ((months & (1L << month)) != 0 
+                        && (daysOfMonth & validDays(month == 2? 29: monthLength(2001, month))) != 0) {
+                    possible = true;
+                }
+            }
+            if (!possible) {
+                throw new IllegalArgumentException("Cron expression never matches: " + expression);
+            }
+        }
+    }
+
+    /**
+     * Creates a trigger for a cron expression.
+     * 
+     * @param expression the cron expression.
+     * @param zoneId the time zone in which to match the expression.
+     * @throws IllegalArgumentException if the expression is not valid, or 
+     *         can never match.
+     */
+    public CronTrigger(String expression, ZoneId zoneId) {
+        this(expression, TimeZone.getTimeZone(zoneId));
+    }
+
+    /**
+     * Returns the first time after the end of the last execution, or after 
+     * {@code taskScheduledTime} if the task has not run yet, that matches 
+     * the cron expression. A run that ended before its scheduled time, 
+     * because the clock was set back or the run started early, counts as 
+     * ending at its scheduled time, so that the same time is not returned 
+     * again.
+     */
+    @Override
+    public Date getNextRunTime(LastExecution lastExecutionInfo, Date taskScheduledTime) {
+        Date after = taskScheduledTime;
+        if (lastExecutionInfo != null) {
+            after = lastExecutionInfo.getScheduledStart();
+            Date runEnd = lastExecutionInfo.getRunEnd();
+            if (runEnd != null && runEnd.after(after)) {
+                after = runEnd;
+            }
+        }
+        return getNextFireTime(after);
+    }
+
+    /**
+     * Returns the first time after the end of the last execution, or after 
+     * {@code taskScheduledTime} if the task has not run yet, that matches 
+     * the cron expression. A run that ended before its scheduled time counts
+     * as ending at its scheduled time.
+     */
+    @Override
+    public ZonedDateTime getNextRunTime(LastExecution lastExecutionInfo, ZonedDateTime taskScheduledTime) {
+        ZonedDateTime after = taskScheduledTime;
+        if (lastExecutionInfo != null) {
+            after = lastExecutionInfo.getScheduledStart(zoneId);
+            ZonedDateTime runEnd = lastExecutionInfo.getRunEnd(zoneId);
+            if (runEnd != null && runEnd.isAfter(after)) {
+                after = runEnd;
+            }
+        }
+        long next = nextFireTime(after.toInstant().toEpochMilli());
+        return next == NONE? null: ZonedDateTime.ofInstant(Instant.ofEpochMilli(next), zoneId);
+    }
+
+    /**
+     * Returns false; runs are never skipped.
+     */
+    @Override
+    public boolean skipRun(LastExecution lastExecutionInfo, Date scheduledRunTime) {
+        return false;
+    }
+
+    /**
+     * Returns the first time strictly after the given time that matches the
+     * cron expression.
+     * 
+     * @param after the time after which to search.
+     * @return the next matching time, or null if there is none within the 
+     *         range of dates that can be represented.
+     */
+    public Date getNextFireTime(Date after) {
+        long next = nextFireTime(after.getTime());
+        return next == NONE? null: new Date(next);
+    }
+
+    private long nextFireTime(long afterMillis) {
+        long local = (floorDiv(afterMillis + timeZone.getOffset(afterMillis), 1000L) + 1) * 1000L;
+        while (true) {
+            long match = nextLocalMatch(local);
+            if (match == NONE) {
+                return NONE;
+            }
+            // the offsets in effect a day before and a day after the match 
+            // differ if it is near a daylight saving time transition
+            int offsetBefore = timeZone.getOffset(match - timeZone.getRawOffset() - MILLIS_PER_DAY);
+            int offsetAfter = timeZone.getOffset(match - timeZone.getRawOffset() + MILLIS_PER_DAY);
+            int largerOffset = Math.max(offsetBefore, offsetAfter);
+            int smallerOffset = Math.min(offsetBefore, offsetAfter);
+            long earlier = match - largerOffset;
+            long later = match - smallerOffset;
+            boolean earlierExists = timeZone.getOffset(earlier) == largerOffset;
+            boolean laterExists = timeZone.getOffset(later) == smallerOffset;
+            if (earlierExists && earlier > afterMillis) {
+                return earlier;
+            }
+            if (laterExists && later > afterMillis) {
+                return later;
+            }
+            if (!earlierExists && !laterExists) {
+                // in a gap, so run at the same offset from the transition 
+                long shifted = match - offsetBefore;
+                if (shifted > afterMillis) {
+                    return shifted;
+                }
+            }
+            // a local time that occurs twice runs only once
+            local = match + 1000L;
+        }
+    }
+
+    /**
+     * Returns the cron expression.
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the time zone in which the expression is matched.
+     */
+    public TimeZone getTimeZone() {
+        return (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * Returns the time zone in which the expression is matched.
+     */
+    @Override
+    public ZoneId getZoneId() {
+        return zoneId;
+    }
+
+    @Override
+    public String toString() {
+        return "CronTrigger[" + expression + ", " + timeZone.getID() + "]";
+    }
+
+    /**
+     * Returns the first local time, in milliseconds since the epoch as if 
+     * local time were UTC, at or after {@code local} that matches the 
+     * expression, or {@link #NONE} if there is none.
+     */
+    private long nextLocalMatch(long local) {
+        long days = floorDiv(local, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((local - days * MILLIS_PER_DAY) / 1000L);
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+
+        // civil date of days since the epoch
+        long z = days + 719468;
+        long era = (z >= 0? z: z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10? mp + 3: mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2? 1: 0);
+        long lastYear = year + SEARCH_YEARS;
+
+        while (true) {
+            if (second > 59) {
+                second = 0;
+                minute++;
+            }
+            if (minute > 59) {
+                minute = 0;
+                hour++;
+            }
+            if (hour > 23) {
+                hour = 0;
+                day++;
+            }
+            int length = monthLength(year, month);
+            if (day > length) {
+                day = 1;
+                month++;
+            }
+            if (month > 12) {
+                month = 1;
+                year++;
+            }
+            if (year > lastYear) {
+                return NONE;
+            }
+
+            int next = nextBit(months, month);
+            if (next != month) {
+                if (next < 0) {
+                    year++;
+                    month = nextBit(months, 1);
+                } else {
+                    month = next;
+                }
+                day = 1;
+                hour = minute = second = 0;
+                continue;
+            }
+            length = monthLength(year, month);
+            next = nextBit(matchingDays(year, month, length), day);
+            if (next != day) {
+                if (next < 0) {
+                    day = length + 1;
+                } else {
+                    day = next;
+                }
+                hour = minute = second = 0;
+                continue;
+            }
+            next = nextBit(hours, hour);
+            if (next != hour) {
+                if (next < 0) {
+                    hour = 24;
+                } else {
+                    hour = next;
+                }
+                minute = second = 0;
+                continue;
+            }
+            next = nextBit(minutes, minute);
+            if (next != minute) {
+                if (next < 0) {
+                    minute = 60;
+                } else {
+                    minute = next;
+                }
+                second = 0;
+                continue;
+            }
+            next = nextBit(seconds, second);
+            if (next < 0) {
+                second = 60;
+                continue;
+            }
+            second = next;
+            return daysFromCivil(year, month, day) * MILLIS_PER_DAY 
+                    + (hour * 3600L + minute * 60L + second) * 1000L;
+        }
+    }
+
+    /**
+     * Returns the days of the given month that match the day of month and
+     * day of week fields, as a bitset.
+     */
+    private long matchingDays(long year, int month, int length) {
+        long valid = validDays(length);
+        long firstDay = daysFromCivil(year, month, 1);
+        int firstDayOfWeek = (int) (((firstDay + 4) % 7 + 7) % 7);
+        long byWeek = daysOfWeekByFirstDay[firstDayOfWeek] & valid;
+        long byMonth = daysOfMonth & valid;
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return byMonth & byWeek;
+        }
+        return byMonth | byWeek;
+    }
+
+    private static long validDays(int length) {
+        return (1L << (length + 1)) - 2;
+    }
+
+    private static int nextBit(long bits, int from) {
+        long remaining = bits & (-1L << from);
+        return remaining == 0? -1: Long.numberOfTrailingZeros(remaining);
+    }
+
+    private static int monthLength(long year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))? 29: 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static long daysFromCivil(long year, int month, int day) {
+        long y = month <= 2? year - 1: year;
+        long era = (y >= 0? y: y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2? month - 3: month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0))? q - 1: q;
+    }
+
+    private static String expandMacro(String expression) {
+        String macro = expression.toLowerCase(Locale.ROOT);
+        if (macro.equals("@yearly") || macro.equals("@annually")) {
+            return "0 0 1 1 *";
+        }
+        if (macro.equals("@monthly")) {
+            return "0 0 1 * *";
+        }
+        if (macro.equals("@weekly")) {
+            return "0 0 * * 0";
+        }
+        if (macro.equals("@daily") || macro.equals("@midnight")) {
+            return "0 0 * * *";
+        }
+        if (macro.equals("@hourly")) {
+            return "0 * * * *";
+        }
+        return expression;
+    }
+
+    private static boolean isAny(String field) {
+        return field.startsWith("*") || field.equals("?");
+    }
+
+    private long parseField(String field, int min, int max, String[] names, boolean allowAny) {
+        if (field.equals("?")) {
+            if (!allowAny) {
+                throw new IllegalArgumentException("'?' is only allowed for days: " + expression);
+            }
+            return range(min, max, 1);
+        }
+        long bits = 0;
+        for (String part : field.split(",", -1)) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            String base = part;
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max);
+                base = part.substring(0, slash);
+            }
+            int low;
+            int high;
+            int dash = base.indexOf('-');
+            if (base.equals("*")) {
+                low = min;
+                high = max;
+            } else if (dash > 0) {
+                low = parseValue(base.substring(0, dash), min, max, names);
+                high = parseValue(base.substring(dash + 1), min, max, names);
+                if (low > high) {
+                    throw new IllegalArgumentException("Invalid range '" + base + "': " + expression);
+                }
+            } else {
+                low = parseValue(base, min, max, names);
+                high = slash >= 0? max: low;
+            }
+            bits |= range(low, high, step);
+        }
+        return bits;
+    }
+
+    private static long range(int low, int high, int step) {
+        long bits = 0;
+        for (int i = low; i <= high; i += step) {
+            bits |= 1L << i;
+        }
+        return bits;
+    }
+
+    private int parseValue(String value, int min, int max, String[] names) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (value.equalsIgnoreCase(names[i])) {
+                    return i;
+                }
+            }
+        }
+        return parseNumber(value, min, max);
+    }
+
+    private int parseNumber(String value, int min, int max) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value '" + value + "': " + expression);
+        }
+        if (number < min || number > max) {
+            throw new IllegalArgumentException("Value " + number + " out of range " + min + "-" + max 
+                    + ": " + expression);
+        }
+        return number;
+    }
+}
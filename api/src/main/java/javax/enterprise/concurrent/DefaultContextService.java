@@ -0,0 +1,171 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+
+/**
+ * A reference {@link ContextService} that captures thread context with the 
+ * supplied {@link ThreadContextProvider}s.
+ * <p>
+ * Contextual proxies are instances of classes generated for each distinct
+ * set of proxied interfaces. Their methods call the proxied instance 
+ * directly, without the argument arrays, boxing and reflective invocation of
+ * a {@link java.lang.reflect.Proxy}, so that proxies can be used for callbacks
+ * on hot paths. Proxies for non-public interfaces are implemented with
+ * {@link java.lang.reflect.Proxy}.
+ * <p>
+ * The {@code equals}, {@code hashCode} and {@code toString} methods of a
+ * proxy are invoked on the proxied instance without applying the context.
+ * A proxy is serializable if the proxied instance and all of the captured 
+ * context are serializable.
+ * 
+ * @since 1.1
+ */
+public class DefaultContextService implements ContextService {
+
+    private final ThreadContextProvider[] providers;
+
+    /**
+     * Creates a context service.
+     * 
+     * @param providers the providers of the thread context to capture.
+     */
+    public DefaultContextService(ThreadContextProvider... providers) {
+        this.providers = providers.clone();
+    }
+
+    @Override
+    public <T> T createContextualProxy(T instance, Class<T> intf) {
+        return createContextualProxy(instance, null, intf);
+    }
+
+    @Override
+    public Object createContextualProxy(Object instance, Class<?>... interfaces) {
+        return createContextualProxy(instance, null, interfaces);
+    }
+
+    @Override
+    public <T> T createContextualProxy(T instance, Map<String, String> executionProperties, Class<T> intf) {
+        if (intf == null) {
+            throw new IllegalArgumentException("intf is null");
+        }
+        return intf.cast(createContextualProxy(instance, executionProperties, new Class<?>[] {intf}));
+    }
+
+    @Override
+    public Object createContextualProxy(Object instance, Map<String, String> executionProperties, 
+            Class<?>... interfaces) {
+        checkInterfaces(instance, interfaces);
+        ExecutionProperties properties = executionProperties == null? null: 
+                ExecutionProperties.copyOf(executionProperties);
+        ThreadContext context = ThreadContext.capture(providers, properties);
+        return ContextualProxyGenerator.newProxy(instance, context, properties, interfaces);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Proxies created from the snapshot are serializable under the same
+     * conditions as proxies created directly.
+     */
+    @Override
+    public ContextSnapshot captureContext(Map<String, String> executionProperties) {
+        ExecutionProperties properties = executionProperties == null? null: 
+                ExecutionProperties.copyOf(executionProperties);
+        return new Snapshot(ThreadContext.capture(providers, properties), properties);
+    }
+
+    @Override
+    public Map<String, String> getExecutionProperties(Object contextualProxy) {
+        if (!ContextualProxyGenerator.isContextualProxy(contextualProxy)) {
+            throw new IllegalArgumentException(contextualProxy + " is not a contextual proxy");
+        }
+        ExecutionProperties executionProperties = ContextualProxyGenerator.executionPropertiesOf(contextualProxy);
+        return executionProperties == null? null: new HashMap<String, String>(executionProperties);
+    }
+
+    private static void checkInterfaces(Object instance, Class<?>[] interfaces) {
+        if (interfaces == null || interfaces.length == 0) {
+            throw new IllegalArgumentException("no interfaces");
+        }
+        for (Class<?> intf : interfaces) {
+            if (intf == null || !intf.isInterface()) {
+                throw new IllegalArgumentException(intf + " is not an interface");
+            }
+            if (!intf.isInstance(instance)) {
+                throw new IllegalArgumentException(instance + " does not implement " + intf.getName());
+            }
+        }
+    }
+
+    private static final class Snapshot implements ContextSnapshot {
+
+        private final ThreadContext context;
+        private final ExecutionProperties executionProperties;
+
+        Snapshot(ThreadContext context, ExecutionProperties executionProperties) {
+            this.context = context;
+            this.executionProperties = executionProperties;
+        }
+
+        @Override
+        public <T> T createContextualProxy(T instance, Class<T> intf) {
+            if (intf == null) {
+                throw new IllegalArgumentException("intf is null");
+            }
+            return intf.cast(createContextualProxy(instance, new Class<?>[] {intf}));
+        }
+
+        @Override
+        public Object createContextualProxy(Object instance, Class<?>... interfaces) {
+            checkInterfaces(instance, interfaces);
+            return ContextualProxyGenerator.newProxy(instance, context, executionProperties, interfaces);
+        }
+
+        @Override
+        public Map<String, String> getExecutionProperties() {
+            return executionProperties == null? null: new HashMap<String, String>(executionProperties);
+        }
+    }
+}
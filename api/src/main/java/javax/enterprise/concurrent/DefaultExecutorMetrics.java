@@ -0,0 +1,440 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.enterprise.concurrent.spi.ExecutorMetrics;
+import javax.enterprise.concurrent.spi.TaskMetrics;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A reference {@link ExecutorMetrics} that counts the tasks of an executor
+ * and records their queue wait and run times in histograms, for each 
+ * {@link ManagedTask#IDENTITY_NAME} and for the executor as a whole, and 
+ * publishes them as {@link ExecutorMetricsMXBean}s.
+ * <p>
+ * Counts are kept in {@link LongAdder}s and times in fixed-size, 
+ * logarithmically bucketed histograms, so recording an event takes no lock
+ * and allocates nothing once the identity name has been seen. Each 
+ * identity name costs about 5 KB of memory per stripe of the histograms, 
+ * with one stripe per processor up to four. Tasks of identity names beyond
+ * the configured limit are measured as tasks without an identity name.
+ * <p>
+ * The executor as a whole is registered under the object name
+ * <code>javax.enterprise.concurrent:type=ManagedExecutorService,name=</code><i>name</i>,
+ * and each identity name under the same object name with an additional
+ * <code>identity=</code><i>identityName</i> key, when the first task with
+ * that identity name is submitted.
+ * <p>
+ * Example:
+ * <pre>
+ * DefaultExecutorMetrics metrics = new DefaultExecutorMetrics("reports");
+ * ManagedExecutorService executor = 
+ *     new DefaultManagedExecutorService(8, 4, threadFactory, metrics);
+ * ...
+ * executor.shutdown();
+ * metrics.close();
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class DefaultExecutorMetrics implements ExecutorMetrics, AutoCloseable {
+
+    /**
+     * The domain of the object names of the MBeans.
+     */
+    public static final String DOMAIN = "javax.enterprise.concurrent";
+
+    private static final int DEFAULT_MAX_IDENTITIES = 256;
+
+    private final String name;
+    private final int maxIdentities;
+    // null if the metrics are not published
+    private final MBeanServer server;
+    private final ConcurrentMap<String, Metrics> identities = new ConcurrentHashMap<String, Metrics>();
+    private final AtomicInteger identityCount = new AtomicInteger();
+    private final Metrics anonymous = new Metrics(null);
+    private final ExecutorMetricsMXBean total = new Total();
+    private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<ObjectName>());
+    private volatile boolean closed;
+
+    /**
+     * Creates metrics for up to 256 identity names, published in the 
+     * platform MBean server.
+     * 
+     * @param name the name of the executor in the object names.
+     * @throws IllegalArgumentException if an executor with the same name is
+     *         already registered.
+     * @throws NullPointerException if {@code name} is null.
+     */
+    public DefaultExecutorMetrics(String name) {
+        this(name, DEFAULT_MAX_IDENTITIES, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Creates metrics.
+     * 
+     * @param name the name of the executor in the object names.
+     * @param maxIdentities the maximum number of identity names that are 
+     *                      measured separately.
+     * @param server the MBean server to publish the metrics in, or null to
+     *               only make them available through {@link #getMetrics()}.
+     * @throws IllegalArgumentException if {@code maxIdentities} is negative,
+     *         or an executor with the same name is already registered.
+     * @throws NullPointerException if {@code name} is null.
+     */
+    public DefaultExecutorMetrics(String name, int maxIdentities, MBeanServer server) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        if (maxIdentities < 0) {
+            throw new IllegalArgumentException("maxIdentities " + maxIdentities);
+        }
+        this.name = name;
+        this.maxIdentities = maxIdentities;
+        this.server = server;
+        if (server != null) {
+            try {
+                register(total, null);
+            } catch (JMException e) {
+                throw new IllegalArgumentException("cannot register metrics of " + name, e);
+            }
+        }
+    }
+
+    @Override
+    public TaskMetrics getTaskMetrics(String identityName) {
+        if (identityName == null) {
+            return anonymous;
+        }
+        Metrics metrics = identities.get(identityName);
+        return metrics != null? metrics: addIdentity(identityName);
+    }
+
+    private Metrics addIdentity(String identityName) {
+        if (identityCount.incrementAndGet() > maxIdentities) {
+            identityCount.decrementAndGet();
+            return anonymous;
+        }
+        Metrics metrics = new Metrics(identityName);
+        Metrics existing = identities.putIfAbsent(identityName, metrics);
+        if (existing != null) {
+            identityCount.decrementAndGet();
+            return existing;
+        }
+        if (server != null && !closed) {
+            try {
+                register(metrics, identityName);
+            } catch (JMException e) {
+                // the metrics remain available through getMetrics(identityName)
+            }
+        }
+        return metrics;
+    }
+
+    private void register(ExecutorMetricsMXBean mbean, String identityName) throws JMException {
+        StringBuilder objectName = new StringBuilder(DOMAIN)
+                .append(":type=ManagedExecutorService,name=").append(ObjectName.quote(name));
+        if (identityName != null) {
+            objectName.append(",identity=").append(ObjectName.quote(identityName));
+        }
+        ObjectName registeredName = server.registerMBean(mbean, new ObjectName(objectName.toString())).getObjectName();
+        registered.add(registeredName);
+    }
+
+    /**
+     * Returns the measurements of all tasks.
+     */
+    public ExecutorMetricsMXBean getMetrics() {
+        return total;
+    }
+
+    /**
+     * Returns the measurements of the tasks with the given identity name.
+     * 
+     * @param identityName the identity name, or null for tasks without an 
+     *                     identity name or beyond the limit.
+     * @return the measurements, or null if no task with the given identity 
+     *         name has been submitted.
+     */
+    public ExecutorMetricsMXBean getMetrics(String identityName) {
+        return identityName == null? anonymous: identities.get(identityName);
+    }
+
+    /**
+     * Returns the identity names that are measured separately.
+     */
+    public Set<String> getIdentityNames() {
+        return Collections.unmodifiableSet(new TreeSet<String>(identities.keySet()));
+    }
+
+    /**
+     * Unregisters the MBeans. Tasks are still measured afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (registered) {
+            for (ObjectName objectName : registered) {
+                try {
+                    server.unregisterMBean(objectName);
+                } catch (JMException e) {
+                    // already unregistered
+                }
+            }
+            registered.clear();
+        }
+    }
+
+    /**
+     * Reads the measurements, which are counters or histograms.
+     */
+    private abstract static class View implements ExecutorMetricsMXBean {
+
+        static final int SUBMITTED = 0;
+        static final int STARTED = 1;
+        static final int COMPLETED = 2;
+        static final int FAILED = 3;
+        static final int ABORTED = 4;
+        static final int ABORTED_PENDING = 5;
+        static final int REJECTED = 6;
+        static final int COUNTERS = 7;
+
+        abstract long count(int counter);
+
+        abstract LatencyHistogram.Snapshot snapshot(boolean runTime);
+
+        @Override
+        public long getSubmittedCount() {
+            return count(SUBMITTED);
+        }
+
+        @Override
+        public long getStartedCount() {
+            return count(STARTED);
+        }
+
+        @Override
+        public long getCompletedCount() {
+            return count(COMPLETED);
+        }
+
+        @Override
+        public long getFailedCount() {
+            return count(FAILED);
+        }
+
+        @Override
+        public long getAbortedCount() {
+            return count(ABORTED);
+        }
+
+        @Override
+        public long getRejectedCount() {
+            return count(REJECTED);
+        }
+
+        @Override
+        public long getPendingCount() {
+            // the counters are read one after the other
+            return Math.max(0L, count(SUBMITTED) - count(STARTED) - count(ABORTED_PENDING));
+        }
+
+        @Override
+        public long getQueueWaitMeanNanos() {
+            return snapshot(false).mean();
+        }
+
+        @Override
+        public long getQueueWaitP50Nanos() {
+            return queueWaitPercentileNanos(50.0);
+        }
+
+        @Override
+        public long getQueueWaitP99Nanos() {
+            return queueWaitPercentileNanos(99.0);
+        }
+
+        @Override
+        public long getQueueWaitMaxNanos() {
+            return snapshot(false).max;
+        }
+
+        @Override
+        public long getRunTimeMeanNanos() {
+            return snapshot(true).mean();
+        }
+
+        @Override
+        public long getRunTimeP50Nanos() {
+            return runTimePercentileNanos(50.0);
+        }
+
+        @Override
+        public long getRunTimeP99Nanos() {
+            return runTimePercentileNanos(99.0);
+        }
+
+        @Override
+        public long getRunTimeMaxNanos() {
+            return snapshot(true).max;
+        }
+
+        @Override
+        public long queueWaitPercentileNanos(double percentile) {
+            return snapshot(false).percentile(percentile);
+        }
+
+        @Override
+        public long runTimePercentileNanos(double percentile) {
+            return snapshot(true).percentile(percentile);
+        }
+    }
+
+    /**
+     * The measurements of the tasks with one identity name.
+     */
+    private static final class Metrics extends View implements TaskMetrics {
+
+        private final String identityName;
+        private final LongAdder[] counters = new LongAdder[COUNTERS];
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram runTime = new LatencyHistogram();
+
+        Metrics(String identityName) {
+            this.identityName = identityName;
+            for (int i = 0; i < COUNTERS; i++) {
+                counters[i] = new LongAdder();
+            }
+        }
+
+        @Override
+        public void taskSubmitted() {
+            counters[SUBMITTED].increment();
+        }
+
+        @Override
+        public void taskStarted(long queueWaitNanos) {
+            counters[STARTED].increment();
+            queueWait.record(queueWaitNanos);
+        }
+
+        @Override
+        public void taskCompleted(long runNanos, boolean failed) {
+            counters[COMPLETED].increment();
+            if (failed) {
+                counters[FAILED].increment();
+            }
+            runTime.record(runNanos);
+        }
+
+        @Override
+        public void taskAborted(boolean pending) {
+            counters[ABORTED].increment();
+            if (pending) {
+                counters[ABORTED_PENDING].increment();
+            }
+        }
+
+        @Override
+        public void taskRejected() {
+            counters[REJECTED].increment();
+        }
+
+        @Override
+        public String getIdentityName() {
+            return identityName;
+        }
+
+        @Override
+        long count(int counter) {
+            return counters[counter].sum();
+        }
+
+        @Override
+        LatencyHistogram.Snapshot snapshot(boolean runTime) {
+            LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+            (runTime? this.runTime: queueWait).addTo(snapshot);
+            return snapshot;
+        }
+    }
+
+    /**
+     * The measurements of all tasks, added up when they are read.
+     */
+    private final class Total extends View {
+
+        @Override
+        public String getIdentityName() {
+            return null;
+        }
+
+        @Override
+        long count(int counter) {
+            long count = anonymous.count(counter);
+            for (Metrics metrics : identities.values()) {
+                count += metrics.count(counter);
+            }
+            return count;
+        }
+
+        @Override
+        LatencyHistogram.Snapshot snapshot(boolean runTime) {
+            LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+            (runTime? anonymous.runTime: anonymous.queueWait).addTo(snapshot);
+            for (Metrics metrics : identities.values()) {
+                (runTime? metrics.runTime: metrics.queueWait).addTo(snapshot);
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.spi.ExecutorMetrics;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+
+/**
+ * A reference {@link ManagedExecutorService} that keeps long-running tasks
+ * from starving short-duration tasks.
+ * <p>
+ * Tasks that implement {@link ManagedTask} and specify the
+ * {@link ManagedTask#LONGRUNNING_HINT} execution property with a value of 
+ * "true" are run on a dedicated, separately sized pool of threads. All other 
+ * tasks are run on a work-stealing {@link ForkJoinPool} whose worker threads 
+ * implement {@link ManageableThread}.
+ * <p>
+ * The worker threads report the identity name and start time of the task 
+ * they are running through {@code ManageableThread}, and can be watched by
+ * a {@link HungThreadDetector}. Long-running threads do so too if they are
+ * platform threads created by a {@link DefaultManagedThreadFactory}.
+ * <p>
+ * The short-duration tasks of a batch submitted with 
+ * {@link #submitAll(java.util.Collection) submitAll} or {@code invokeAll} 
+ * are enqueued as a single segment, which the worker that takes it splits 
+ * in halves for other workers to steal.
+ * <p>
+ * {@link #shutdownNow()} aborts the tasks that no thread has taken yet, 
+ * so that their futures complete and their listeners are notified, and 
+ * returns them.
+ * <p>
+ * Example:
+ * <pre>
+ * ManagedThreadFactory threadFactory = ...;
+ * ManagedExecutorService executor = 
+ *     new DefaultManagedExecutorService(8, 4, threadFactory);
+ *
+ * Map&lt;String, String&gt; props = new HashMap&lt;String, String&gt;();
+ * props.put(ManagedTask.LONGRUNNING_HINT, "true");
+ * 
+ * // runs on one of the 4 long-running threads
+ * executor.submit(ManagedExecutors.managedTask(nightlyReport, props, null));
+ * 
+ * // runs on one of the 8 work-stealing threads
+ * executor.submit(requestTask);
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class DefaultManagedExecutorService extends AbstractManagedExecutorService {
+
+    private final ForkJoinPool pool;
+    private final ThreadPoolExecutor longRunningPool;
+    // the dispatched futures that no thread has taken yet
+    private final Set<RunnableFuture<?>> queued = 
+            Collections.newSetFromMap(new ConcurrentHashMap<RunnableFuture<?>, Boolean>());
+
+    /**
+     * Creates a {@code DefaultManagedExecutorService} whose long-running 
+     * threads are created with {@link Executors#defaultThreadFactory()}.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @throws IllegalArgumentException if either argument is less than or 
+     *         equal to zero.
+     */
+    public DefaultManagedExecutorService(int parallelism, int longRunningPoolSize) {
+        this(parallelism, longRunningPoolSize, Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a {@code DefaultManagedExecutorService}.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @param threadFactory the factory used to create threads for running 
+     *                      long-running tasks, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @throws IllegalArgumentException if {@code parallelism} or 
+     *         {@code longRunningPoolSize} is less than or equal to zero.
+     * @throws NullPointerException if {@code threadFactory} is null.
+     */
+    public DefaultManagedExecutorService(int parallelism, int longRunningPoolSize, ThreadFactory threadFactory) {
+        this(parallelism, longRunningPoolSize, threadFactory, null);
+    }
+
+    /**
+     * Creates a {@code DefaultManagedExecutorService} that reports its tasks
+     * to the given metrics, such as a {@link DefaultExecutorMetrics}, and 
+     * runs them with the context of the thread that submits them.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @param threadFactory the factory used to create threads for running 
+     *                      long-running tasks, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @param metrics the metrics to report the tasks to, or null.
+     * @param providers the providers of the thread context to capture when
+     *                  a task is submitted and apply when it runs.
+     * @throws IllegalArgumentException if {@code parallelism} or 
+     *         {@code longRunningPoolSize} is less than or equal to zero.
+     * @throws NullPointerException if {@code threadFactory} is null.
+     */
+    public DefaultManagedExecutorService(int parallelism, int longRunningPoolSize, ThreadFactory threadFactory, 
+            ExecutorMetrics metrics, ThreadContextProvider... providers) {
+        this(parallelism, longRunningPoolSize, threadFactory, null, metrics, providers);
+    }
+
+    /**
+     * Creates a {@code DefaultManagedExecutorService} that bounds the 
+     * number of waiting tasks with the given policy, reports its tasks to 
+     * the given metrics, and runs them with the context of the thread that
+     * submits them. The bound applies to the short-duration and 
+     * long-running tasks together.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @param threadFactory the factory used to create threads for running 
+     *                      long-running tasks, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @param admissionPolicy the policy that bounds the waiting tasks, or 
+     *                        null for no bound.
+     * @param metrics the metrics to report the tasks to, or null.
+     * @param providers the providers of the thread context to capture when
+     *                  a task is submitted and apply when it runs.
+     * @throws IllegalArgumentException if {@code parallelism} or 
+     *         {@code longRunningPoolSize} is less than or equal to zero.
+     * @throws NullPointerException if {@code threadFactory} is null.
+     */
+    public DefaultManagedExecutorService(int parallelism, int longRunningPoolSize, ThreadFactory threadFactory, 
+            AdmissionPolicy admissionPolicy, ExecutorMetrics metrics, ThreadContextProvider... providers) {
+        super(admissionPolicy, metrics, providers);
+        if (threadFactory == null) {
+            throw new NullPointerException();
+        }
+        this.pool = new ForkJoinPool(parallelism, new WorkerThreadFactory(), null, true);
+        this.longRunningPool = new ThreadPoolExecutor(longRunningPoolSize, longRunningPoolSize, 
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.longRunningPool.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    protected void dispatch(RunnableFuture<?> future, Object task) throws RejectedExecutionException {
+        queued.add(future);
+        try {
+            if (ManagedExecutors.isLongRunning(task)) {
+                longRunningPool.execute(future);
+            } else {
+                pool.execute(future);
+            }
+        } catch (RejectedExecutionException e) {
+            queued.remove(future);
+            throw e;
+        }
+    }
+
+    /**
+     * Enqueues the short-duration tasks of the batch as one segment, and 
+     * dispatches long-running tasks separately.
+     */
+    @Override
+    protected void dispatchAll(List<? extends RunnableFuture<?>> futures, List<?> tasks) 
+            throws RejectedExecutionException {
+        RunnableFuture<?>[] shortTasks = new RunnableFuture<?>[futures.size()];
+        int count = 0;
+        try {
+            for (int i = 0; i < shortTasks.length; i++) {
+                RunnableFuture<?> future = futures.get(i);
+                if (future.isDone()) {
+                    continue;
+                }
+                queued.add(future);
+                if (ManagedExecutors.isLongRunning(tasks.get(i))) {
+                    longRunningPool.execute(future);
+                } else {
+                    shortTasks[count++] = future;
+                }
+            }
+            if (count == 1) {
+                pool.execute(shortTasks[0]);
+            } else if (count > 1) {
+                pool.execute(new Segment(shortTasks, 0, count));
+            }
+        } catch (RejectedExecutionException e) {
+            // the futures that have not started are aborted by the caller
+            queued.removeAll(futures);
+            throw e;
+        }
+    }
+
+    @Override
+    void taken(ManagedFutureTask<?> future) {
+        queued.remove(future);
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+        longRunningPool.shutdown();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The tasks that have not started are aborted with a 
+     * {@link ManagedRejectedExecutionException} whose reason is 
+     * {@link RejectionReason#SHUTDOWN}.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        // the pools drop their queued tasks without completing them
+        pool.shutdownNow();
+        longRunningPool.shutdownNow();
+        RejectedExecutionException rejection = new ManagedRejectedExecutionException(RejectionReason.SHUTDOWN, 
+                "executor was shut down before the task started");
+        List<Runnable> pending = new ArrayList<Runnable>();
+        for (Iterator<RunnableFuture<?>> i = queued.iterator(); i.hasNext(); ) {
+            RunnableFuture<?> future = i.next();
+            i.remove();
+            if (future instanceof ManagedFutureTask? 
+                    ((ManagedFutureTask<?>) future).rejectUnlessStarted(rejection): future.cancel(false)) {
+                pending.add(future);
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated() && longRunningPool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!pool.awaitTermination(timeout, unit)) {
+            return false;
+        }
+        return longRunningPool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Worker thread of the work-stealing pool, which reports the task it 
+     * runs.
+     */
+    static final class WorkerThread extends ForkJoinWorkerThread 
+        implements ManageableThread, ThreadStatistics.Holder {
+
+        private final ThreadStatistics statistics = new ThreadStatistics(this);
+
+        WorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            statistics.register();
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            statistics.unregister();
+            super.onTermination(exception);
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return getPool().isShutdown();
+        }
+
+        @Override
+        public String getTaskIdentityName() {
+            return statistics.getIdentityName();
+        }
+
+        @Override
+        public long getTaskStartTime() {
+            return statistics.getStartMillis();
+        }
+
+        @Override
+        public long getCpuTime() {
+            return statistics.getCpuTime();
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            return statistics.getAllocatedBytes();
+        }
+
+        @Override
+        public ThreadStatistics statistics() {
+            return statistics;
+        }
+    }
+
+    /**
+     * A range of a batch of tasks, which forks its second half for other
+     * workers to steal and runs its first half, until one task remains.
+     */
+    static final class Segment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RunnableFuture<?>[] futures;
+        private final int from;
+        private final int to;
+
+        Segment(RunnableFuture<?>[] futures, int from, int to) {
+            this.futures = futures;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int end = to;
+            while (end - from > 1) {
+                int middle = (from + end) >>> 1;
+                new Segment(futures, middle, end).fork();
+                end = middle;
+            }
+            futures[from].run();
+        }
+    }
+
+    static final class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            return new WorkerThread(pool);
+        }
+    }
+}
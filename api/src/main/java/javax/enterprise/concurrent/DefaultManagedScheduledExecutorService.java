@@ -0,0 +1,579 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.enterprise.concurrent.spi.ExecutorMetrics;
+import javax.enterprise.concurrent.spi.LeaseManager;
+import javax.enterprise.concurrent.spi.ScheduleStore;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+
+/**
+ * A reference {@link ManagedScheduledExecutorService} for very large numbers
+ * of scheduled tasks.
+ * <p>
+ * Delayed, periodic and {@link Trigger} tasks wait in a 
+ * {@link HierarchicalTimingWheel} rather than in a heap-based delay queue,
+ * so scheduling and cancelling a task take constant time and do not contend
+ * on a lock, regardless of how many tasks are pending. Tasks are run at the
+ * first tick of the wheel that starts at or after their scheduled time; the
+ * tick duration is one millisecond unless specified otherwise. Tasks that 
+ * are due are dispatched to the pools of {@link DefaultManagedExecutorService}.
+ * <p>
+ * {@link #shutdown()} cancels all tasks that are waiting for their scheduled 
+ * time. {@link #shutdownNow()} returns them instead.
+ * <p>
+ * If the executor is created with a {@link ScheduleStore}, such as a 
+ * {@link MappedScheduleStore}, {@code Trigger} tasks whose task and trigger
+ * are {@link java.io.Serializable} are kept in the store until the trigger
+ * ends them or they are cancelled, together with the times of their last 
+ * run. Shutting the executor down leaves them in the store, and 
+ * {@link #restoreSchedules()} schedules them again when the executor is 
+ * next created on the same store. The result of the last run is not kept.
+ * <p>
+ * If the executor is created with a {@link LeaseManager}, such as a 
+ * {@link FileLeaseManager}, the runs of a {@code Trigger} task with a 
+ * {@link ManagedTask#IDENTITY_NAME} only happen on the server that owns the
+ * lease for the identity name. On the other servers, each run is skipped 
+ * as if the trigger had skipped it, with a {@link SkippedException}, and 
+ * the task stays scheduled in case the lease passes to them.
+ * <p>
+ * If the executor is created with an {@link ExecutionHistory}, the recent 
+ * runs of each {@code Trigger} task with a {@link ManagedTask#IDENTITY_NAME}
+ * are kept in it until the task completes, for triggers that look further 
+ * back than the {@link LastExecution} they are given.
+ * <p>
+ * The store, the leases, the history and an {@link AdmissionPolicy} are 
+ * options of a {@link Builder}, which {@link #builder(int, int) builder} 
+ * returns.
+ * <p>
+ * Example:
+ * <pre>
+ * ManagedScheduledExecutorService executor = 
+ *     new DefaultManagedScheduledExecutorService(8, 4, threadFactory);
+ *
+ * for (Tenant tenant : tenants) {
+ *     executor.schedule(new PollTask(tenant), tenant.getPollingTrigger());
+ * }
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class DefaultManagedScheduledExecutorService extends DefaultManagedExecutorService 
+    implements ManagedScheduledExecutorService {
+
+    final HierarchicalTimingWheel wheel;
+    // null unless trigger tasks are kept across restarts
+    final ScheduleStore store;
+    // null unless trigger tasks run on the server that owns their lease
+    final LeaseManager leases;
+    // null unless the recent runs of trigger tasks are kept
+    final ExecutionHistory history;
+    // set once the schedules are restored or a trigger task is stored, 
+    // after which restoring would schedule tasks a second time
+    private final AtomicBoolean storeUsed = new AtomicBoolean();
+
+    /**
+     * Creates a {@code DefaultManagedScheduledExecutorService} whose 
+     * long-running threads are created with 
+     * {@link Executors#defaultThreadFactory()}.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @throws IllegalArgumentException if either argument is less than or 
+     *         equal to zero.
+     */
+    public DefaultManagedScheduledExecutorService(int parallelism, int longRunningPoolSize) {
+        this(parallelism, longRunningPoolSize, Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a {@code DefaultManagedScheduledExecutorService} with a tick 
+     * duration of one millisecond.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @param threadFactory the factory used to create threads for running 
+     *                      long-running tasks, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @throws IllegalArgumentException if {@code parallelism} or 
+     *         {@code longRunningPoolSize} is less than or equal to zero.
+     * @throws NullPointerException if {@code threadFactory} is null.
+     */
+    public DefaultManagedScheduledExecutorService(int parallelism, int longRunningPoolSize, 
+            ThreadFactory threadFactory) {
+        this(parallelism, longRunningPoolSize, threadFactory, 1L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a {@code DefaultManagedScheduledExecutorService}.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @param threadFactory the factory used to create threads for running 
+     *                      long-running tasks, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @param tickDuration the resolution at which scheduled tasks are run.
+     * @param unit the unit of {@code tickDuration}.
+     * @throws IllegalArgumentException if {@code parallelism}, 
+     *         {@code longRunningPoolSize} or {@code tickDuration} is less 
+     *         than or equal to zero.
+     * @throws NullPointerException if {@code threadFactory} is null.
+     */
+    public DefaultManagedScheduledExecutorService(int parallelism, int longRunningPoolSize, 
+            ThreadFactory threadFactory, long tickDuration, TimeUnit unit) {
+        this(parallelism, longRunningPoolSize, threadFactory, tickDuration, unit, null);
+    }
+
+    /**
+     * Creates a {@code DefaultManagedScheduledExecutorService} that reports 
+     * its tasks to the given metrics, and runs them with the context of the
+     * thread that submits or schedules them. Delayed and periodic tasks are 
+     * pending while they wait for their scheduled time, and their queue wait
+     * time is measured from the time they are due.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @param threadFactory the factory used to create threads for running 
+     *                      long-running tasks, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @param tickDuration the resolution at which scheduled tasks are run.
+     * @param unit the unit of {@code tickDuration}.
+     * @param metrics the metrics to report the tasks to, or null.
+     * @param providers the providers of the thread context to capture when
+     *                  a task is submitted or scheduled, and apply each time
+     *                  it runs.
+     * @throws IllegalArgumentException if {@code parallelism}, 
+     *         {@code longRunningPoolSize} or {@code tickDuration} is less 
+     *         than or equal to zero.
+     * @throws NullPointerException if {@code threadFactory} is null.
+     */
+    public DefaultManagedScheduledExecutorService(int parallelism, int longRunningPoolSize, 
+            ThreadFactory threadFactory, long tickDuration, TimeUnit unit, ExecutorMetrics metrics, 
+            ThreadContextProvider... providers) {
+        this(builder(parallelism, longRunningPoolSize)
+                .threadFactory(threadFactory)
+                .tickDuration(tickDuration, unit)
+                .metrics(metrics)
+                .contextProviders(providers));
+    }
+
+    /**
+     * Creates a {@code DefaultManagedScheduledExecutorService} with the 
+     * options of the given builder.
+     * 
+     * @param builder the options of the executor.
+     * @throws IllegalArgumentException if the pool sizes or the tick 
+     *         duration of the builder are less than or equal to zero.
+     */
+    protected DefaultManagedScheduledExecutorService(Builder builder) {
+        super(builder.parallelism, builder.longRunningPoolSize, builder.threadFactory, builder.admissionPolicy, 
+                builder.metrics, builder.providers);
+        this.store = builder.store;
+        this.leases = builder.leases;
+        this.history = builder.history;
+        this.wheel = new HierarchicalTimingWheel(builder.tickDuration, builder.tickUnit);
+        this.wheel.start(new TimerThreadFactory());
+    }
+
+    /**
+     * Returns a builder of a {@code DefaultManagedScheduledExecutorService},
+     * for the options that the constructors do not take.
+     * 
+     * @param parallelism the number of threads for running short-duration tasks.
+     * @param longRunningPoolSize the maximum number of threads for running
+     *                            long-running tasks.
+     * @return a builder with the default options.
+     */
+    public static Builder builder(int parallelism, int longRunningPoolSize) {
+        return new Builder(parallelism, longRunningPoolSize);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        return schedule(new ScheduledManagedFutureTask<Object>(this, command, null, 0L), unit.toNanos(delay));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        if (callable == null || unit == null) {
+            throw new NullPointerException();
+        }
+        return schedule(new ScheduledManagedFutureTask<V>(this, callable, null, 0L), unit.toNanos(delay));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("period " + period);
+        }
+        return schedule(new ScheduledManagedFutureTask<Object>(this, command, null, unit.toNanos(period)), 
+                unit.toNanos(initialDelay));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay " + delay);
+        }
+        return schedule(new ScheduledManagedFutureTask<Object>(this, command, null, -unit.toNanos(delay)), 
+                unit.toNanos(initialDelay));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, Trigger trigger) {
+        if (command == null || trigger == null) {
+            throw new NullPointerException();
+        }
+        return scheduleStored(new ScheduledManagedFutureTask<Object>(this, command, trigger, 0L));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, Trigger trigger) {
+        if (callable == null || trigger == null) {
+            throw new NullPointerException();
+        }
+        return scheduleStored(new ScheduledManagedFutureTask<V>(this, callable, trigger, 0L));
+    }
+
+    /**
+     * Schedules again the {@code Trigger} tasks of the store that have not
+     * ended. It can be called once, after the executor is created and 
+     * before any {@code Trigger} task is scheduled. Each task resumes from
+     * the times of its last run, and runs with the context of the current 
+     * thread.
+     * <p>
+     * A task whose schedule cannot be read, for instance because a class of
+     * the task or trigger cannot be loaded by the context class loader of 
+     * the current thread, is reported to the uncaught exception handler of
+     * the current thread and removed from the store, so that it does not 
+     * fail again on every restart.
+     * 
+     * @return the futures of the restored tasks, in the order the tasks were
+     *         first scheduled.
+     * @throws IllegalStateException if the executor has no store, or the 
+     *         schedules were already restored, or a {@code Trigger} task was
+     *         already scheduled.
+     * @throws RejectedExecutionException if the executor is shut down.
+     */
+    public List<ScheduledFuture<?>> restoreSchedules() {
+        if (store == null) {
+            throw new IllegalStateException("no schedule store");
+        }
+        if (!storeUsed.compareAndSet(false, true)) {
+            throw new IllegalStateException("schedules already restored, or trigger tasks already scheduled");
+        }
+        final List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>();
+        store.restore(new ScheduleStore.Visitor() {
+            @Override
+            public void visit(long id, byte[] schedule, long scheduledStart, long runStart, long runEnd) {
+                ScheduledManagedFutureTask<Object> future;
+                try {
+                    future = ScheduledManagedFutureTask.restore(DefaultManagedScheduledExecutorService.this, 
+                            id, schedule, scheduledStart, runStart, runEnd);
+                } catch (IOException e) {
+                    store.remove(id);
+                    uncaught(e);
+                    return;
+                } catch (ClassNotFoundException e) {
+                    store.remove(id);
+                    uncaught(e);
+                    return;
+                }
+                futures.add(schedule(future, 0L));
+            }
+        });
+        return futures;
+    }
+
+    /**
+     * Schedules a {@code Trigger} task, after adding it to the store.
+     */
+    private <V> ScheduledFuture<V> scheduleStored(ScheduledManagedFutureTask<V> future) {
+        if (store == null || isShutdown()) {
+            return schedule(future, 0L);
+        }
+        if (!storeUsed.get()) {
+            storeUsed.set(true);
+        }
+        try {
+            future.store();
+        } catch (RuntimeException e) {
+            throw new ManagedRejectedExecutionException(RejectionReason.OTHER, "task could not be stored", e);
+        }
+        try {
+            return schedule(future, 0L);
+        } catch (RejectedExecutionException e) {
+            future.unstore();
+            throw e;
+        }
+    }
+
+    private <V> ScheduledFuture<V> schedule(ScheduledManagedFutureTask<V> future, long delayNanos) {
+        future.submitted();
+        future.scheduleFirst(delayNanos);
+        return future;
+    }
+
+    private static void uncaught(Throwable e) {
+        Thread current = Thread.currentThread();
+        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+    }
+
+    @Override
+    public void shutdown() {
+        for (HierarchicalTimingWheel.Timeout timeout : wheel.stop()) {
+            ((ScheduledManagedFutureTask.Expiry) timeout).future.cancel(false);
+        }
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<Runnable>();
+        for (HierarchicalTimingWheel.Timeout timeout : wheel.stop()) {
+            pending.add(((ScheduledManagedFutureTask.Expiry) timeout).future);
+        }
+        pending.addAll(super.shutdownNow());
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return wheel.isStopped();
+    }
+
+    /**
+     * The options of a {@code DefaultManagedScheduledExecutorService}. The 
+     * options that are not set have the default of the constructors: 
+     * long-running threads created with 
+     * {@link Executors#defaultThreadFactory()}, a tick duration of one 
+     * millisecond, and no admission policy, store, leases, history, metrics
+     * or thread context providers.
+     * <p>
+     * Example:
+     * <pre>
+     * DefaultManagedScheduledExecutorService executor = 
+     *     DefaultManagedScheduledExecutorService.builder(8, 4)
+     *         .threadFactory(threadFactory)
+     *         .store(store)
+     *         .leases(leases)
+     *         .build();
+     * </pre>
+     *
+     * @since 1.1
+     */
+    public static final class Builder {
+
+        private final int parallelism;
+        private final int longRunningPoolSize;
+        private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        private long tickDuration = 1L;
+        private TimeUnit tickUnit = TimeUnit.MILLISECONDS;
+        private AdmissionPolicy admissionPolicy;
+        private ScheduleStore store;
+        private LeaseManager leases;
+        private ExecutionHistory history;
+        private ExecutorMetrics metrics;
+        private ThreadContextProvider[] providers = new ThreadContextProvider[0];
+
+        Builder(int parallelism, int longRunningPoolSize) {
+            this.parallelism = parallelism;
+            this.longRunningPoolSize = longRunningPoolSize;
+        }
+
+        /**
+         * Sets the factory used to create threads for running long-running
+         * tasks, typically a {@link ManagedThreadFactory}.
+         * 
+         * @param threadFactory the thread factory.
+         * @return this builder.
+         * @throws NullPointerException if {@code threadFactory} is null.
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            if (threadFactory == null) {
+                throw new NullPointerException();
+            }
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Sets the resolution at which scheduled tasks are run.
+         * 
+         * @param tickDuration the tick duration.
+         * @param unit the unit of {@code tickDuration}.
+         * @return this builder.
+         * @throws NullPointerException if {@code unit} is null.
+         */
+        public Builder tickDuration(long tickDuration, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            this.tickDuration = tickDuration;
+            this.tickUnit = unit;
+            return this;
+        }
+
+        /**
+         * Sets the policy that bounds the number of waiting tasks, 
+         * short-duration and long-running together. The bound applies to
+         * the tasks that are executed or submitted; delayed, periodic and
+         * {@code Trigger} tasks are not admitted when they are due.
+         * 
+         * @param admissionPolicy the policy, or null for no bound.
+         * @return this builder.
+         */
+        public Builder admissionPolicy(AdmissionPolicy admissionPolicy) {
+            this.admissionPolicy = admissionPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the store in which {@code Trigger} tasks are kept across 
+         * restarts.
+         * 
+         * @param store the store of the trigger tasks, or null.
+         * @return this builder.
+         */
+        public Builder store(ScheduleStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Sets the leases that decide on which server the runs of 
+         * {@code Trigger} tasks happen.
+         * 
+         * @param leases the leases of the identity names of the trigger 
+         *               tasks, or null.
+         * @return this builder.
+         */
+        public Builder leases(LeaseManager leases) {
+            this.leases = leases;
+            return this;
+        }
+
+        /**
+         * Sets the history in which the recent runs of {@code Trigger} 
+         * tasks are recorded.
+         * 
+         * @param history the history of the runs of the trigger tasks, or 
+         *                null.
+         * @return this builder.
+         */
+        public Builder history(ExecutionHistory history) {
+            this.history = history;
+            return this;
+        }
+
+        /**
+         * Sets the metrics to which the tasks are reported.
+         * 
+         * @param metrics the metrics, or null.
+         * @return this builder.
+         */
+        public Builder metrics(ExecutorMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the providers of the thread context to capture when a task 
+         * is submitted, scheduled or restored, and apply each time it runs.
+         * 
+         * @param providers the providers.
+         * @return this builder.
+         * @throws NullPointerException if {@code providers} is null.
+         */
+        public Builder contextProviders(ThreadContextProvider... providers) {
+            this.providers = providers.clone();
+            return this;
+        }
+
+        /**
+         * Creates an executor with the options of this builder.
+         * 
+         * @return a new executor.
+         * @throws IllegalArgumentException if a pool size or the tick 
+         *         duration is less than or equal to zero.
+         */
+        public DefaultManagedScheduledExecutorService build() {
+            return new DefaultManagedScheduledExecutorService(this);
+        }
+    }
+
+    /**
+     * Creates the timer thread, which only dispatches tasks that are due and
+     * never runs application code.
+     */
+    private static final class TimerThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ManagedScheduledExecutorService-timer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
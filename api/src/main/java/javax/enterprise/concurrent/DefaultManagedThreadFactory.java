@@ -0,0 +1,316 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+import javax.enterprise.concurrent.spi.ThreadContextRestorer;
+
+/**
+ * A reference {@link ManagedThreadFactory} that runs each task with the
+ * thread context that was present when the factory was created, as 
+ * captured by the supplied {@link ThreadContextProvider}s.
+ * <p>
+ * The factory creates platform threads by default. In virtual-thread mode,
+ * which requires a Java SE runtime that supports virtual threads, 
+ * {@link #newThread(java.lang.Runnable) newThread} returns virtual threads 
+ * instead, so an executor built on this factory can run a very large number
+ * of tasks that block on I/O concurrently.
+ * <p>
+ * Virtual threads cannot implement {@link ManageableThread}. Tasks should 
+ * therefore use {@link ManagedExecutors#isCurrentThreadShutdown()}, which 
+ * behaves identically in both modes, rather than casting the current thread.
+ * Threads created in either mode are daemon threads.
+ * <p>
+ * Example:
+ * <pre>
+ * ManagedThreadFactory threadFactory = 
+ *     new DefaultManagedThreadFactory("blocking-io", true, contextProviders);
+ * ExecutorService executor = 
+ *     new DefaultManagedExecutorService(8, 10000, threadFactory);
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class DefaultManagedThreadFactory implements ManagedThreadFactory {
+
+    private final String name;
+    private final boolean virtual;
+    private final ThreadContext context;
+    private final ThreadFactory virtualThreadFactory;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    // the threads that are running, so that threads that are created but 
+    // never started are not kept
+    private final Map<Thread, Boolean> threads = new ConcurrentHashMap<Thread, Boolean>();
+    private final ManageableThread state = new ManageableThread() {
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+    };
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a {@code DefaultManagedThreadFactory} that creates platform 
+     * threads.
+     * 
+     * @param name prefix for the names of the threads created by this factory.
+     * @param providers the providers of the thread context to capture from the
+     *                  current thread and apply to the created threads.
+     */
+    public DefaultManagedThreadFactory(String name, ThreadContextProvider... providers) {
+        this(name, false, providers);
+    }
+
+    /**
+     * Creates a {@code DefaultManagedThreadFactory}.
+     * 
+     * @param name prefix for the names of the threads created by this factory.
+     * @param virtual true to create virtual threads rather than platform threads.
+     * @param providers the providers of the thread context to capture from the
+     *                  current thread and apply to the created threads.
+     * @throws UnsupportedOperationException if {@code virtual} is true and 
+     *         virtual threads are not supported by the Java SE runtime.
+     */
+    public DefaultManagedThreadFactory(String name, boolean virtual, ThreadContextProvider... providers) {
+        if (name == null || providers == null) {
+            throw new NullPointerException();
+        }
+        if (virtual && !isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this Java runtime");
+        }
+        this.name = name;
+        this.virtual = virtual;
+        this.virtualThreadFactory = virtual? VirtualThreads.factory(name + "-"): null;
+        this.context = ThreadContext.capture(providers.clone(), null);
+    }
+
+    /**
+     * Returns whether virtual-thread mode can be used with the current Java SE 
+     * runtime.
+     * 
+     * @return true if virtual threads are supported.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns whether this factory creates virtual threads.
+     * 
+     * @return true if this factory is in virtual-thread mode.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Creates a new, unstarted thread that runs the given task with the 
+     * thread context captured when this factory was created.
+     * 
+     * @param task the task to run.
+     * @return the new thread. Platform threads implement 
+     *         {@link ManageableThread}.
+     * @throws IllegalStateException if this factory has been shut down.
+     */
+    @Override
+    public Thread newThread(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new IllegalStateException("ManagedThreadFactory " + name + " has been shut down");
+        }
+        Thread thread;
+        if (virtual) {
+            thread = virtualThreadFactory.newThread(new ContextualRunnable(task));
+        } else {
+            thread = new ManagedThread(new ContextualRunnable(task), name + "-" + threadCount.incrementAndGet());
+        }
+        return thread;
+    }
+
+    /**
+     * Marks all threads created by this factory for shutdown, so that 
+     * {@link ManageableThread#isShutdown()} and 
+     * {@link ManagedExecutors#isCurrentThreadShutdown()} return true on them,
+     * and interrupts those that are still running. No further threads can be 
+     * created by this factory.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Thread thread : threads.keySet()) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Returns whether {@link #shutdown()} has been called.
+     * 
+     * @return true if this factory has been shut down.
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Runs a task with the captured context, on either kind of thread.
+     */
+    private final class ContextualRunnable implements Runnable {
+
+        private final Runnable task;
+
+        ContextualRunnable(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            threads.put(current, Boolean.TRUE);
+            if (shutdown) {
+                // shut down before it was registered
+                current.interrupt();
+            }
+            ManageableThread previous = ManagedExecutors.currentManageableThread.get();
+            ManagedExecutors.currentManageableThread.set(state);
+            try {
+                ThreadContextRestorer[] restorers = context.begin();
+                try {
+                    task.run();
+                } finally {
+                    ThreadContext.end(restorers);
+                }
+            } finally {
+                ManagedExecutors.currentManageableThread.set(previous);
+                threads.remove(current);
+            }
+        }
+    }
+
+    /**
+     * Platform thread created by this factory, which reports the tasks that
+     * a {@link DefaultManagedExecutorService} runs on it.
+     */
+    private final class ManagedThread extends Thread implements ManageableThread, ThreadStatistics.Holder {
+
+        private final ThreadStatistics statistics = new ThreadStatistics(this);
+
+        ManagedThread(Runnable task, String name) {
+            super(task, name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            statistics.register();
+            try {
+                super.run();
+            } finally {
+                statistics.unregister();
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public String getTaskIdentityName() {
+            return statistics.getIdentityName();
+        }
+
+        @Override
+        public long getTaskStartTime() {
+            return statistics.getStartMillis();
+        }
+
+        @Override
+        public long getCpuTime() {
+            return statistics.getCpuTime();
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            return statistics.getAllocatedBytes();
+        }
+
+        @Override
+        public ThreadStatistics statistics() {
+            return statistics;
+        }
+    }
+
+    /**
+     * Access to the virtual thread API of Java SE runtimes that provide it.
+     */
+    private static final class VirtualThreads {
+
+        static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+
+        static ThreadFactory factory(String prefix) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderClass = OF_VIRTUAL.getReturnType();
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (InvocationTargetException e) {
+                throw new UnsupportedOperationException(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new UnsupportedOperationException(e);
+            }
+        }
+
+        private static Method lookup(Class<?> type, String name) {
+            try {
+                return type.getMethod(name);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+    }
+}
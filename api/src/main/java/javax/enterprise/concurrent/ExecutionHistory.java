@@ -0,0 +1,338 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The recent executions of scheduled tasks, by 
+ * {@link ManagedTask#IDENTITY_NAME}, for {@link Trigger}s that adapt to 
+ * the history of a task or check it against a service level, beyond the 
+ * single {@link LastExecution} they are given.
+ * <p>
+ * Each identity name has a slot holding the scheduled start, run start 
+ * and run end of its last {@code depth} executions, as epoch milliseconds,
+ * in a ring. The slots are kept in direct buffers outside of the Java heap,
+ * allocated in chunks of 1024 slots, so the off-heap memory of an identity
+ * name is {@code 8 + 24 * depth} bytes whatever the number of executions.
+ * On the heap, the slot of each identity name is found through a 
+ * {@code ConcurrentHashMap} entry holding the name and a boxed slot number,
+ * so a name costs two small objects for the garbage collector to trace 
+ * however deep its history is, rather than {@code 3 * depth} boxed times. 
+ * Recording an execution allocates nothing once the name has a slot.
+ * <p>
+ * The number of identity names is bounded; executions of further names are
+ * not recorded until a slot is freed by {@link #remove(String)}. A 
+ * {@link DefaultManagedScheduledExecutorService} created with a history 
+ * records each run of its {@code Trigger} tasks, including runs that were 
+ * skipped, and removes the history of a task when its future completes.
+ * <p>
+ * Example:
+ * <pre>
+ * public Date getNextRunTime(LastExecution last, Date scheduledTime) {
+ *     if (last != null &amp;&amp; history.size(last.getIdentityName()) == DEPTH) {
+ *         long late = last.getRunStart().getTime() - history.getScheduledStart(last.getIdentityName(), DEPTH - 1);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class ExecutionHistory {
+
+    private static final int SLOTS_PER_CHUNK = 1024;
+    private static final int STRIPES = 64;
+    // the count of executions, followed by the ring
+    private static final int COUNT_SIZE = 8;
+    private static final int EXECUTION_SIZE = 24;
+
+    private final int depth;
+    private final int maxIdentities;
+    private final int slotSize;
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+    // guard the slots, so that an execution is never recorded in a slot 
+    // that was freed and reused
+    private final Object[] stripes = new Object[STRIPES];
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    // guarded by this
+    private int allocated;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    /**
+     * Creates an empty history.
+     * 
+     * @param depth the number of executions kept for each identity name.
+     * @param maxIdentities the greatest number of identity names.
+     * @throws IllegalArgumentException if either argument is less than or
+     *         equal to zero, or the history would need more than 2 GiB per
+     *         chunk.
+     */
+    public ExecutionHistory(int depth, int maxIdentities) {
+        if (depth <= 0 || maxIdentities <= 0 
+                || (COUNT_SIZE + (long) EXECUTION_SIZE * depth) * SLOTS_PER_CHUNK > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("depth " + depth + ", maxIdentities " + maxIdentities);
+        }
+        this.depth = depth;
+        this.maxIdentities = maxIdentities;
+        this.slotSize = COUNT_SIZE + EXECUTION_SIZE * depth;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the number of executions kept for each identity name.
+     * 
+     * @return the depth of the history.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Records an execution.
+     * 
+     * @param identityName the identity name of the task.
+     * @param scheduledStart when the execution was scheduled to start, in 
+     *                       milliseconds since the epoch.
+     * @param runStart when the execution started.
+     * @param runEnd when the execution ended.
+     * @return false if the execution was not recorded because there are 
+     *         already as many identity names as the history can hold.
+     * @throws NullPointerException if {@code identityName} is null.
+     */
+    public boolean record(String identityName, long scheduledStart, long runStart, long runEnd) {
+        Integer slot = slots.get(identityName);
+        if (slot == null && (slot = allocate(identityName)) == null) {
+            return false;
+        }
+        ByteBuffer chunk = chunks[slot / SLOTS_PER_CHUNK];
+        int base = (slot % SLOTS_PER_CHUNK) * slotSize;
+        synchronized (stripes[slot % STRIPES]) {
+            if (!slot.equals(slots.get(identityName))) {
+                // removed meanwhile
+                return false;
+            }
+            long count = chunk.getLong(base);
+            int p = base + COUNT_SIZE + (int) (count % depth) * EXECUTION_SIZE;
+            chunk.putLong(p, scheduledStart);
+            chunk.putLong(p + 8, runStart);
+            chunk.putLong(p + 16, runEnd);
+            chunk.putLong(base, count + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of executions recorded for an identity name since
+     * its history was created.
+     * 
+     * @param identityName the identity name of the task.
+     * @return the number of executions, of which the last {@link #getDepth()}
+     *         are kept.
+     */
+    public long getCount(String identityName) {
+        Integer slot = slots.get(identityName);
+        if (slot == null) {
+            return 0L;
+        }
+        synchronized (stripes[slot % STRIPES]) {
+            return slot.equals(slots.get(identityName))? 
+                    chunks[slot / SLOTS_PER_CHUNK].getLong((slot % SLOTS_PER_CHUNK) * slotSize): 0L;
+        }
+    }
+
+    /**
+     * Returns the number of executions kept for an identity name.
+     * 
+     * @param identityName the identity name of the task.
+     * @return the number of executions that can be retrieved, at most 
+     *         {@link #getDepth()}.
+     */
+    public int size(String identityName) {
+        return (int) Math.min(getCount(identityName), depth);
+    }
+
+    /**
+     * Returns when an execution was scheduled to start.
+     * 
+     * @param identityName the identity name of the task.
+     * @param age 0 for the last execution, 1 for the one before, and so on.
+     * @return the time in milliseconds since the epoch.
+     * @throws IndexOutOfBoundsException if {@code age} is negative, or not
+     *         less than {@link #size(String)}.
+     */
+    public long getScheduledStart(String identityName, int age) {
+        return get(identityName, age, 0);
+    }
+
+    /**
+     * Returns when an execution started.
+     * 
+     * @param identityName the identity name of the task.
+     * @param age 0 for the last execution, 1 for the one before, and so on.
+     * @return the time in milliseconds since the epoch.
+     * @throws IndexOutOfBoundsException if {@code age} is negative, or not
+     *         less than {@link #size(String)}.
+     */
+    public long getRunStart(String identityName, int age) {
+        return get(identityName, age, 8);
+    }
+
+    /**
+     * Returns when an execution ended.
+     * 
+     * @param identityName the identity name of the task.
+     * @param age 0 for the last execution, 1 for the one before, and so on.
+     * @return the time in milliseconds since the epoch.
+     * @throws IndexOutOfBoundsException if {@code age} is negative, or not
+     *         less than {@link #size(String)}.
+     */
+    public long getRunEnd(String identityName, int age) {
+        return get(identityName, age, 16);
+    }
+
+    /**
+     * Returns the executions kept for an identity name, with no result.
+     * 
+     * @param identityName the identity name of the task.
+     * @return the executions, the last one first.
+     */
+    public List<LastExecution> getExecutions(String identityName) {
+        Integer slot = slots.get(identityName);
+        if (slot == null) {
+            return new ArrayList<LastExecution>(0);
+        }
+        ByteBuffer chunk = chunks[slot / SLOTS_PER_CHUNK];
+        int base = (slot % SLOTS_PER_CHUNK) * slotSize;
+        synchronized (stripes[slot % STRIPES]) {
+            if (!slot.equals(slots.get(identityName))) {
+                return new ArrayList<LastExecution>(0);
+            }
+            long count = chunk.getLong(base);
+            int size = (int) Math.min(count, depth);
+            List<LastExecution> executions = new ArrayList<LastExecution>(size);
+            for (int age = 0; age < size; age++) {
+                int p = position(base, count, age);
+                executions.add(new ScheduledManagedFutureTask.Execution(identityName, null, 
+                        chunk.getLong(p), chunk.getLong(p + 8), chunk.getLong(p + 16)));
+            }
+            return executions;
+        }
+    }
+
+    /**
+     * Forgets the executions of an identity name, freeing its slot.
+     * 
+     * @param identityName the identity name of the task.
+     */
+    public void remove(String identityName) {
+        Integer slot = slots.get(identityName);
+        if (slot == null) {
+            return;
+        }
+        synchronized (stripes[slot % STRIPES]) {
+            if (!slots.remove(identityName, slot)) {
+                return;
+            }
+        }
+        synchronized (this) {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = slot;
+        }
+    }
+
+    private long get(String identityName, int age, int field) {
+        Integer slot = slots.get(identityName);
+        if (slot != null) {
+            ByteBuffer chunk = chunks[slot / SLOTS_PER_CHUNK];
+            int base = (slot % SLOTS_PER_CHUNK) * slotSize;
+            synchronized (stripes[slot % STRIPES]) {
+                long count = chunk.getLong(base);
+                if (slot.equals(slots.get(identityName)) && age >= 0 && age < Math.min(count, depth)) {
+                    return chunk.getLong(position(base, count, age) + field);
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException("age " + age + " of " + identityName);
+    }
+
+    private int position(int base, long count, int age) {
+        return base + COUNT_SIZE + (int) ((count - 1 - age) % depth) * EXECUTION_SIZE;
+    }
+
+    /**
+     * Assigns a slot to an identity name, unless there are as many names as
+     * the history can hold.
+     */
+    private synchronized Integer allocate(String identityName) {
+        Integer slot = slots.get(identityName);
+        if (slot != null) {
+            return slot;
+        }
+        if (slots.size() >= maxIdentities) {
+            return null;
+        }
+        int index;
+        if (freeCount > 0) {
+            index = free[--freeCount];
+        } else {
+            index = allocated++;
+            if (index / SLOTS_PER_CHUNK == chunks.length) {
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * slotSize);
+                chunks = grown;
+            }
+        }
+        slot = index;
+        chunks[index / SLOTS_PER_CHUNK].putLong((index % SLOTS_PER_CHUNK) * slotSize, 0L);
+        slots.put(identityName, slot);
+        return slot;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable {@code Map} of execution properties that can be shared by any
+ * number of tasks.
+ * <p>
+ * {@link ManagedExecutors#managedTask(java.lang.Runnable, java.util.Map, javax.enterprise.concurrent.ManagedTaskListener) ManagedExecutors.managedTask()}
+ * must copy a mutable execution properties {@code Map} every time it wraps a
+ * task. An {@code ExecutionProperties} instance is used as is instead, and
+ * the union of the execution properties of a {@link ManagedTask} and the
+ * {@code ExecutionProperties} passed to {@code managedTask()} is only computed
+ * once for repeated calls with the same two instances. Wrapping tasks with
+ * the same {@code ExecutionProperties} therefore allocates nothing beyond the
+ * returned task itself.
+ * <p>
+ * Example:
+ * <pre>
+ * static final ExecutionProperties BATCH_PROPERTIES = ExecutionProperties.EMPTY
+ *     .with(ManagedTask.IDENTITY_NAME, "batch")
+ *     .with(ManagedTask.LONGRUNNING_HINT, "true");
+ * 
+ * executor.submit(ManagedExecutors.managedTask(task, BATCH_PROPERTIES, null));
+ * </pre>
+ * <p>
+ * Values of registered {@link ExecutionProperty} keys are parsed once, when
+ * the {@code ExecutionProperties} is created, and can be read without 
+ * hashing or parsing through 
+ * {@link #get(javax.enterprise.concurrent.ExecutionProperty)}.
+ * <p>
+ * All methods that would modify the map throw 
+ * {@link UnsupportedOperationException}.
+ *
+ * @since 1.1
+ */
+public final class ExecutionProperties extends AbstractMap<String, String> implements Serializable {
+
+    private static final long serialVersionUID = -4610937166387318504L;
+
+    private static final Object[] NO_TYPED_VALUES = new Object[0];
+
+    /**
+     * {@code ExecutionProperties} that contains no properties.
+     */
+    public static final ExecutionProperties EMPTY = new ExecutionProperties(new String[0], new String[0]);
+
+    private final String[] keys;
+    private final String[] values;
+    // Parsed values of registered ExecutionProperty keys, indexed by slot
+    private final transient Object[] typedValues;
+    // Result of the most recent call to with(Map) for an ExecutionProperties
+    // argument, which is returned again for the same argument.
+    private transient volatile Layer lastLayer;
+
+    private ExecutionProperties(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.typedValues = parse(keys, values);
+    }
+
+    private static Object[] parse(String[] keys, String[] values) {
+        if (keys.length == 0) {
+            return NO_TYPED_VALUES;
+        }
+        Object[] typedValues = new Object[ExecutionProperty.slotCount()];
+        for (int i = 0; i < keys.length; i++) {
+            ExecutionProperty<?> property = ExecutionProperty.forName(keys[i]);
+            if (property != null && property.slot < typedValues.length) {
+                typedValues[property.slot] = property.parse(values[i]);
+            }
+        }
+        return typedValues;
+    }
+
+    // a new instance, so that typedValues can be final
+    private Object readResolve() {
+        return keys.length == 0? EMPTY: new ExecutionProperties(keys, values);
+    }
+
+    /**
+     * Returns {@code ExecutionProperties} containing the same entries as the 
+     * given {@code Map}.
+     * 
+     * @param properties the execution properties to copy, or null.
+     * @return {@code properties} itself if it is an 
+     *         {@code ExecutionProperties}, {@link #EMPTY} if it is null or
+     *         empty, or else a copy of {@code properties}.
+     * @throws NullPointerException if {@code properties} contains a null
+     *         key or value.
+     */
+    public static ExecutionProperties copyOf(Map<String, String> properties) {
+        if (properties instanceof ExecutionProperties) {
+            return (ExecutionProperties) properties;
+        }
+        return EMPTY.with(properties);
+    }
+
+    /**
+     * Returns {@code ExecutionProperties} containing the entries of this
+     * instance and of the given {@code Map}, with the latter taking precedence
+     * if the same property key is contained in both.
+     * 
+     * @param overrides the execution properties to add, or null.
+     * @return the union of the execution properties. If {@code overrides} is 
+     *         an {@code ExecutionProperties}, repeated calls with the same 
+     *         instance return the same result.
+     * @throws NullPointerException if {@code overrides} contains a null
+     *         key or value.
+     */
+    public ExecutionProperties with(Map<String, String> overrides) {
+        if (overrides == null || overrides.isEmpty()) {
+            return this;
+        }
+        if (overrides instanceof ExecutionProperties) {
+            if (keys.length == 0) {
+                return (ExecutionProperties) overrides;
+            }
+            Layer layer = lastLayer;
+            if (layer != null && layer.overrides == overrides) {
+                return layer.result;
+            }
+            ExecutionProperties result = merge(overrides);
+            lastLayer = new Layer(overrides, result);
+            return result;
+        }
+        return merge(overrides);
+    }
+
+    /**
+     * Returns {@code ExecutionProperties} containing the entries of this
+     * instance and the given entry, replacing any existing value of the key.
+     * 
+     * @param key the property key.
+     * @param value the property value.
+     * @return the union of the execution properties.
+     * @throws NullPointerException if {@code key} or {@code value} is null.
+     */
+    public ExecutionProperties with(String key, String value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            if (values[index].equals(value)) {
+                return this;
+            }
+            String[] newValues = values.clone();
+            newValues[index] = value;
+            return new ExecutionProperties(keys, newValues);
+        }
+        String[] newKeys = new String[keys.length + 1];
+        String[] newValues = new String[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, keys.length);
+        System.arraycopy(values, 0, newValues, 0, keys.length);
+        newKeys[keys.length] = key;
+        newValues[keys.length] = value;
+        return new ExecutionProperties(newKeys, newValues);
+    }
+
+    private ExecutionProperties merge(Map<String, String> overrides) {
+        String[] newKeys = new String[keys.length + overrides.size()];
+        String[] newValues = new String[newKeys.length];
+        System.arraycopy(keys, 0, newKeys, 0, keys.length);
+        System.arraycopy(values, 0, newValues, 0, keys.length);
+        int size = keys.length;
+        for (Map.Entry<String, String> entry : overrides.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (key == null || value == null) {
+                throw new NullPointerException();
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                newValues[index] = value;
+            } else {
+                newKeys[size] = key;
+                newValues[size++] = value;
+            }
+        }
+        if (size < newKeys.length) {
+            String[] trimmedKeys = new String[size];
+            String[] trimmedValues = new String[size];
+            System.arraycopy(newKeys, 0, trimmedKeys, 0, size);
+            System.arraycopy(newValues, 0, trimmedValues, 0, size);
+            newKeys = trimmedKeys;
+            newValues = trimmedValues;
+        }
+        return new ExecutionProperties(newKeys, newValues);
+    }
+
+    private int indexOf(Object key) {
+        // Standard property keys are usually the same String instance
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the typed value of an execution property.
+     * 
+     * @param <T> the type of the property value.
+     * @param property the typed execution property.
+     * @return the value, or the default value of {@code property} if it is
+     *         not specified or cannot be parsed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ExecutionProperty<T> property) {
+        Object[] typed = typedValues;
+        Object value;
+        if (property.slot < typed.length) {
+            value = typed[property.slot];
+        } else if (keys.length == 0) {
+            value = null;
+        } else {
+            // registered after this instance was created
+            value = property.parse(get(property.getName()));
+        }
+        return value == null? property.getDefaultValue(): (T) value;
+    }
+
+    /**
+     * Returns the value of a {@code Boolean} valued execution property.
+     * 
+     * @param property the typed execution property.
+     * @return the value, or the default value of {@code property} if it is
+     *         not specified.
+     */
+    public boolean getBoolean(ExecutionProperty<Boolean> property) {
+        return get(property).booleanValue();
+    }
+
+    /**
+     * Returns the value of a {@code Long} valued execution property.
+     * 
+     * @param property the typed execution property.
+     * @return the value, or the default value of {@code property} if it is
+     *         not specified or cannot be parsed.
+     */
+    public long getLong(ExecutionProperty<Long> property) {
+        return get(property).longValue();
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index >= 0? values[index]: null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < keys.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (index >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, String> entry = 
+                                new SimpleImmutableEntry<String, String>(keys[index], values[index]);
+                        index++;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    private static final class Layer {
+
+        final Map<String, String> overrides;
+        final ExecutionProperties result;
+
+        Layer(Map<String, String> overrides, ExecutionProperties result) {
+            this.overrides = overrides;
+            this.result = result;
+        }
+    }
+}
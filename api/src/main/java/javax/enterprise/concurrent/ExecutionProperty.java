@@ -0,0 +1,357 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A typed execution property key.
+ * <p>
+ * Each {@code ExecutionProperty} is registered once under the {@code String} 
+ * key of the execution property and is assigned a slot. 
+ * {@link ExecutionProperties} parse the values of registered properties when
+ * they are created, so reading a typed value with 
+ * {@link #get(java.util.Map)} or 
+ * {@link ExecutionProperties#get(javax.enterprise.concurrent.ExecutionProperty)}
+ * is an array read, without hashing the key or parsing the value again.
+ * Reading from any other {@code Map} looks up and parses the {@code String}
+ * value.
+ * <p>
+ * Property values that are missing or cannot be parsed are read as the 
+ * default value of the property.
+ * <p>
+ * Example:
+ * <pre>
+ * ManagedTask task = ...;
+ * boolean longRunning = 
+ *     ExecutionProperty.LONGRUNNING_HINT.get(task.getExecutionProperties());
+ * </pre>
+ *
+ * @param <T> the type of the property value.
+ * @since 1.1
+ */
+public final class ExecutionProperty<T> {
+
+    /**
+     * Values of the {@link ManagedTask#TRANSACTION} execution property.
+     */
+    public enum Transaction {
+        /**
+         * See {@link ManagedTask#SUSPEND}.
+         */
+        SUSPEND,
+        /**
+         * See {@link ManagedTask#USE_TRANSACTION_OF_EXECUTION_THREAD}.
+         */
+        USE_TRANSACTION_OF_EXECUTION_THREAD
+    }
+
+    /**
+     * Values of the {@link ManagedTask#MISFIRE_POLICY} execution property.
+     */
+    public enum MisfirePolicy {
+        /**
+         * Each missed run is run.
+         */
+        FIRE_ALL,
+        /**
+         * A missed run is run once and the missed runs after it are skipped.
+         */
+        FIRE_ONCE,
+        /**
+         * A missed run is skipped together with the missed runs after it.
+         */
+        SKIP_TO_NEXT
+    }
+
+    /**
+     * Values of the {@link ManagedTask#JITTER_MODE} execution property.
+     */
+    public enum JitterMode {
+        /**
+         * Each run is delayed by an amount derived from the identity name.
+         */
+        IDENTITY,
+        /**
+         * Each run is delayed by a random amount.
+         */
+        RANDOM
+    }
+
+    private static final Map<String, ExecutionProperty<?>> registry = 
+            new ConcurrentHashMap<String, ExecutionProperty<?>>();
+    private static int slotCount;
+
+    /**
+     * Typed {@link ManagedTask#IDENTITY_NAME} property, null if unspecified.
+     */
+    public static final ExecutionProperty<String> IDENTITY_NAME = 
+            registerString(ManagedTask.IDENTITY_NAME);
+
+    /**
+     * Typed {@link ManagedTask#LONGRUNNING_HINT} property, false if unspecified.
+     */
+    public static final ExecutionProperty<Boolean> LONGRUNNING_HINT = 
+            registerBoolean(ManagedTask.LONGRUNNING_HINT, false);
+
+    /**
+     * Typed {@link ManagedTask#PRIORITY} property, 
+     * {@link Thread#NORM_PRIORITY} if unspecified.
+     */
+    public static final ExecutionProperty<Long> PRIORITY = 
+            registerLong(ManagedTask.PRIORITY, Thread.NORM_PRIORITY);
+
+    /**
+     * Typed {@link ManagedTask#TRANSACTION} property, 
+     * {@link Transaction#SUSPEND} if unspecified.
+     */
+    public static final ExecutionProperty<Transaction> TRANSACTION = 
+            registerEnum(ManagedTask.TRANSACTION, Transaction.class, Transaction.SUSPEND);
+
+    /**
+     * Typed {@link ManagedTask#MISFIRE_POLICY} property, 
+     * {@link MisfirePolicy#FIRE_ALL} if unspecified.
+     */
+    public static final ExecutionProperty<MisfirePolicy> MISFIRE_POLICY = 
+            registerEnum(ManagedTask.MISFIRE_POLICY, MisfirePolicy.class, MisfirePolicy.FIRE_ALL);
+
+    /**
+     * Typed {@link ManagedTask#MISFIRE_THRESHOLD} property, 1000 milliseconds
+     * if unspecified.
+     */
+    public static final ExecutionProperty<Long> MISFIRE_THRESHOLD = 
+            registerLong(ManagedTask.MISFIRE_THRESHOLD, 1000L);
+
+    /**
+     * Typed {@link ManagedTask#JITTER} property, 0 if unspecified.
+     */
+    public static final ExecutionProperty<Long> JITTER = 
+            registerLong(ManagedTask.JITTER, 0L);
+
+    /**
+     * Typed {@link ManagedTask#JITTER_MODE} property, 
+     * {@link JitterMode#IDENTITY} if unspecified.
+     */
+    public static final ExecutionProperty<JitterMode> JITTER_MODE = 
+            registerEnum(ManagedTask.JITTER_MODE, JitterMode.class, JitterMode.IDENTITY);
+
+    private final String name;
+    private final Class<T> type;
+    private final T defaultValue;
+    final int slot;
+
+    private ExecutionProperty(String name, Class<T> type, T defaultValue, int slot) {
+        this.name = name;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.slot = slot;
+    }
+
+    /**
+     * Registers a {@code String} valued execution property.
+     * 
+     * @param name the execution property key.
+     * @return the typed property. If a {@code String} valued property is 
+     *         already registered with the given name, that property.
+     * @throws IllegalArgumentException if a property of another type is 
+     *         already registered with the given name.
+     */
+    public static ExecutionProperty<String> registerString(String name) {
+        return register(name, String.class, null);
+    }
+
+    /**
+     * Registers a {@code Boolean} valued execution property. Values are parsed 
+     * as by {@link Boolean#parseBoolean(java.lang.String)}.
+     * 
+     * @param name the execution property key.
+     * @param defaultValue the value if the property is unspecified.
+     * @return the typed property. If a {@code Boolean} valued property is 
+     *         already registered with the given name, that property.
+     * @throws IllegalArgumentException if a property of another type or with 
+     *         another default value is already registered with the given name.
+     */
+    public static ExecutionProperty<Boolean> registerBoolean(String name, boolean defaultValue) {
+        return register(name, Boolean.class, Boolean.valueOf(defaultValue));
+    }
+
+    /**
+     * Registers a {@code Long} valued execution property. Values are parsed
+     * as by {@link Long#parseLong(java.lang.String)}.
+     * 
+     * @param name the execution property key.
+     * @param defaultValue the value if the property is unspecified.
+     * @return the typed property. If a {@code Long} valued property is 
+     *         already registered with the given name, that property.
+     * @throws IllegalArgumentException if a property of another type or with 
+     *         another default value is already registered with the given name.
+     */
+    public static ExecutionProperty<Long> registerLong(String name, long defaultValue) {
+        return register(name, Long.class, Long.valueOf(defaultValue));
+    }
+
+    /**
+     * Registers an enumeration valued execution property. Values are parsed
+     * as by {@link Enum#valueOf(java.lang.Class, java.lang.String)}.
+     * 
+     * @param <E> the enumeration type.
+     * @param name the execution property key.
+     * @param type the enumeration type.
+     * @param defaultValue the value if the property is unspecified.
+     * @return the typed property. If a property of the same enumeration type 
+     *         is already registered with the given name, that property.
+     * @throws IllegalArgumentException if a property of another type or with 
+     *         another default value is already registered with the given name.
+     */
+    public static <E extends Enum<E>> ExecutionProperty<E> registerEnum(String name, Class<E> type, E defaultValue) {
+        return register(name, type, defaultValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized <T> ExecutionProperty<T> register(String name, Class<T> type, T defaultValue) {
+        if (name == null || type == null) {
+            throw new NullPointerException();
+        }
+        ExecutionProperty<?> existing = registry.get(name);
+        if (existing != null) {
+            if (existing.type != type || (defaultValue == null? existing.defaultValue != null:
+                    !defaultValue.equals(existing.defaultValue))) {
+                throw new IllegalArgumentException("Execution property " + name 
+                        + " is already registered as " + existing.type.getName());
+            }
+            return (ExecutionProperty<T>) existing;
+        }
+        ExecutionProperty<T> property = new ExecutionProperty<T>(name, type, defaultValue, slotCount++);
+        registry.put(name, property);
+        return property;
+    }
+
+    /**
+     * Returns the registered property for an execution property key.
+     */
+    static ExecutionProperty<?> forName(String name) {
+        return registry.get(name);
+    }
+
+    /**
+     * Returns the number of slots assigned so far.
+     */
+    static synchronized int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Returns the value of this property from a {@code Map} of execution 
+     * properties.
+     * 
+     * @param executionProperties the execution properties, or null.
+     * @return the typed value, or the default value if the property is not
+     *         specified or cannot be parsed.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(Map<String, String> executionProperties) {
+        if (executionProperties instanceof ExecutionProperties) {
+            return ((ExecutionProperties) executionProperties).get(this);
+        }
+        if (executionProperties == null) {
+            return defaultValue;
+        }
+        Object value = parse(executionProperties.get(name));
+        return value == null? defaultValue: (T) value;
+    }
+
+    /**
+     * Parses a value of this property.
+     * 
+     * @return the typed value, or null if {@code value} is null or cannot be
+     *         parsed.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Object parse(String value) {
+        if (value == null || type == String.class) {
+            return value;
+        }
+        if (type == Boolean.class) {
+            return Boolean.valueOf(value);
+        }
+        try {
+            if (type == Long.class) {
+                return Long.valueOf(value.trim());
+            }
+            return Enum.valueOf((Class) type, value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the execution property key.
+     * 
+     * @return the key of the property in a {@code Map} of execution properties.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the type of the property value.
+     * 
+     * @return the type of the property value.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the value of the property when it is not specified.
+     * 
+     * @return the default value.
+     */
+    public T getDefaultValue() {
+        return defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
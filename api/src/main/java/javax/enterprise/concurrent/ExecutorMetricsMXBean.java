@@ -0,0 +1,131 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+/**
+ * Management interface of the measurements taken by 
+ * {@link DefaultExecutorMetrics}, either for all tasks of an executor or 
+ * for the tasks with one {@link ManagedTask#IDENTITY_NAME}.
+ * <p>
+ * Times are in nanoseconds. Percentiles are approximate: they are rounded
+ * up to the bucket of the histogram they fall in, which is at most 12.5% 
+ * wider than its lower bound, but never exceed the greatest time recorded.
+ *
+ * @since 1.1
+ */
+public interface ExecutorMetricsMXBean {
+
+  /**
+   * Returns the identity name of the tasks that are measured, or null for
+   * all tasks of the executor, or tasks without an identity name.
+   */
+  public String getIdentityName();
+
+  /**
+   * Returns the number of times tasks were submitted, including each time 
+   * a periodic task was scheduled again.
+   */
+  public long getSubmittedCount();
+
+  /**
+   * Returns the number of times tasks started running.
+   */
+  public long getStartedCount();
+
+  /**
+   * Returns the number of runs of tasks that ended, including runs that 
+   * failed.
+   */
+  public long getCompletedCount();
+
+  /**
+   * Returns the number of runs of tasks that threw an exception.
+   */
+  public long getFailedCount();
+
+  /**
+   * Returns the number of tasks that were cancelled, aborted or rejected.
+   */
+  public long getAbortedCount();
+
+  /**
+   * Returns the number of tasks that the executor rejected.
+   */
+  public long getRejectedCount();
+
+  /**
+   * Returns the number of tasks that are waiting to run, including delayed
+   * and periodic tasks that are not due yet.
+   */
+  public long getPendingCount();
+
+  public long getQueueWaitMeanNanos();
+
+  public long getQueueWaitP50Nanos();
+
+  public long getQueueWaitP99Nanos();
+
+  public long getQueueWaitMaxNanos();
+
+  public long getRunTimeMeanNanos();
+
+  public long getRunTimeP50Nanos();
+
+  public long getRunTimeP99Nanos();
+
+  public long getRunTimeMaxNanos();
+
+  /**
+   * Returns a percentile of the time that tasks waited to be run.
+   * 
+   * @param percentile the percentile, from 0 to 100.
+   * @throws IllegalArgumentException if {@code percentile} is out of range.
+   */
+  public long queueWaitPercentileNanos(double percentile);
+
+  /**
+   * Returns a percentile of the time that tasks ran.
+   * 
+   * @param percentile the percentile, from 0 to 100.
+   * @throws IllegalArgumentException if {@code percentile} is out of range.
+   */
+  public long runTimePercentileNanos(double percentile);
+}
@@ -0,0 +1,468 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import javax.enterprise.concurrent.spi.LeaseManager;
+
+/**
+ * A {@link LeaseManager} whose leases are kept in a file on storage that 
+ * the servers share, for testing single-owner scheduling without a 
+ * database.
+ * <p>
+ * The file is a table of the leases of all servers: the identity name, 
+ * the server that owns it, and when the lease expires. A lease is granted
+ * to a server that asks for it if no server owns it, or if the lease of 
+ * its owner has expired.
+ * <p>
+ * All leases of a server are acquired, renewed and released together by 
+ * {@link #renew()}, which takes an exclusive lock on a lock file next to 
+ * the lease file once, reads the table, updates the entries of the server
+ * and writes the table to a temporary file, which then replaces the lease
+ * file with an atomic rename. A server that stops while it writes the 
+ * table leaves the previous table in place.
+ * The renewal thread started by {@link #start()} does so three times per 
+ * lease duration, so the cost of renewal does not grow with the number of
+ * schedules. {@link #isOwner(String)} answers from the outcome of the last
+ * renewal, without touching the file. A name that has been registered 
+ * since is not owned yet, and wakes the renewal thread so that the lease is
+ * asked for at once rather than at the next periodic renewal. A server 
+ * that cannot renew stops considering itself the owner when its leases 
+ * expire.
+ * <p>
+ * Expiry times are compared across servers, so their clocks must be 
+ * synchronized to well within the lease duration. A server stops 
+ * considering itself the owner a third of the lease duration before its 
+ * lease expires, so that no other server takes the lease while it still 
+ * runs tasks, as long as the clocks differ by less than that. Several 
+ * instances in the
+ * same virtual machine may share a file, as if they were separate servers.
+ * <p>
+ * Example:
+ * <pre>
+ * FileLeaseManager leases = new FileLeaseManager(Paths.get("/shared/leases"), 
+ *     serverName, 30, TimeUnit.SECONDS, threadFactory);
+ * leases.start();
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class FileLeaseManager implements LeaseManager, AutoCloseable {
+
+    private static final int MAGIC = 0x4A534C31;
+    // file locks are held by the virtual machine, so instances that share a
+    // file take turns
+    private static final Map<Path, FileMonitor> FILE_MONITORS = new ConcurrentHashMap<Path, FileMonitor>();
+
+    private static final BiFunction<Path, FileMonitor, FileMonitor> ACQUIRE = 
+            new BiFunction<Path, FileMonitor, FileMonitor>() {
+        @Override
+        public FileMonitor apply(Path file, FileMonitor monitor) {
+            if (monitor == null) {
+                monitor = new FileMonitor();
+            }
+            monitor.users++;
+            return monitor;
+        }
+    };
+
+    private static final BiFunction<Path, FileMonitor, FileMonitor> RELEASE = 
+            new BiFunction<Path, FileMonitor, FileMonitor>() {
+        @Override
+        public FileMonitor apply(Path file, FileMonitor monitor) {
+            return --monitor.users == 0? null: monitor;
+        }
+    };
+
+    private static final BiFunction<Integer, Integer, Integer> SUM = 
+            new BiFunction<Integer, Integer, Integer>() {
+        @Override
+        public Integer apply(Integer a, Integer b) {
+            return a + b;
+        }
+    };
+
+    private static final BiFunction<String, Integer, Integer> DECREMENT = 
+            new BiFunction<String, Integer, Integer>() {
+        @Override
+        public Integer apply(String name, Integer count) {
+            return count == 1? null: count - 1;
+        }
+    };
+
+    private final Path file;
+    private final Path lockFile;
+    private final Path temporaryFile;
+    private final String owner;
+    private final long durationMillis;
+    // how much earlier than the other servers this server considers its 
+    // leases expired, which is also the period of renewal
+    private final long skewMillis;
+    private final ThreadFactory threadFactory;
+    private final FileMonitor fileMonitor;
+    // the number of registrations of each identity name
+    private final Map<String, Integer> registrations = new ConcurrentHashMap<String, Integer>();
+    // registered since the last renewal
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // unregistered since the last renewal
+    private final Set<String> released = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile Set<String> owned = Collections.emptySet();
+    private volatile long validUntilMillis;
+    private volatile boolean closed;
+    private volatile Thread thread;
+
+    /**
+     * Creates a lease manager.
+     * 
+     * @param file the lease file, which is created if it does not exist.
+     * @param owner the name of this server, which must differ from the 
+     *              names of the other servers.
+     * @param leaseDuration how long a lease lasts after it was last renewed.
+     * @param unit the unit of {@code leaseDuration}.
+     * @param threadFactory the factory used to create the renewal thread.
+     * @throws IllegalArgumentException if {@code leaseDuration} is less 
+     *         than one millisecond.
+     * @throws NullPointerException if {@code file}, {@code owner}, 
+     *         {@code unit} or {@code threadFactory} is null.
+     */
+    public FileLeaseManager(Path file, String owner, long leaseDuration, TimeUnit unit, 
+            ThreadFactory threadFactory) {
+        if (file == null || owner == null || threadFactory == null) {
+            throw new NullPointerException();
+        }
+        this.durationMillis = unit.toMillis(leaseDuration);
+        if (durationMillis <= 0L) {
+            throw new IllegalArgumentException("leaseDuration " + leaseDuration + " " + unit);
+        }
+        this.skewMillis = durationMillis / 3;
+        this.file = file.toAbsolutePath().normalize();
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+        this.temporaryFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        this.owner = owner;
+        this.threadFactory = threadFactory;
+        this.fileMonitor = FILE_MONITORS.compute(this.file, ACQUIRE);
+    }
+
+    /**
+     * Starts the thread that renews the leases.
+     * 
+     * @throws IllegalStateException if the thread was already started, or
+     *         the manager is closed.
+     */
+    public synchronized void start() {
+        if (thread != null || closed) {
+            throw new IllegalStateException(closed? "closed": "already started");
+        }
+        final long periodNanos = TimeUnit.MILLISECONDS.toNanos(skewMillis);
+        thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                boolean failed = false;
+                while (!closed) {
+                    long delay;
+                    // names registered since the last renewal are asked for
+                    // at once, unless the last renewal failed
+                    while (!closed && (failed || pending.isEmpty()) && (delay = next - System.nanoTime()) > 0L) {
+                        LockSupport.parkNanos(this, delay);
+                    }
+                    next = System.nanoTime() + periodNanos;
+                    try {
+                        renew();
+                        failed = false;
+                    } catch (UncheckedIOException e) {
+                        failed = true;
+                        uncaught(e);
+                    } catch (IllegalStateException e) {
+                        // closed
+                        break;
+                    }
+                }
+            }
+        });
+        thread.start();
+    }
+
+    @Override
+    public void register(String identityName) {
+        if (registrations.merge(identityName, 1, SUM) == 1) {
+            pending.add(identityName);
+            released.remove(identityName);
+        }
+    }
+
+    @Override
+    public void unregister(String identityName) {
+        Integer count = registrations.computeIfPresent(identityName, DECREMENT);
+        if (count == null) {
+            pending.remove(identityName);
+            released.add(identityName);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns false for a name that was registered since the last renewal,
+     * and wakes the renewal thread to ask for its lease.
+     */
+    @Override
+    public boolean isOwner(String identityName) {
+        if (pending.contains(identityName)) {
+            Thread thread = this.thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+            return false;
+        }
+        return owned.contains(identityName) && currentTimeMillis() < validUntilMillis;
+    }
+
+    /**
+     * Acquires the leases of the names registered on this server that are 
+     * free or expired, renews the leases it owns, and releases those that 
+     * are no longer registered, with a single lock of the lease file.
+     * 
+     * @throws UncheckedIOException if the lease file cannot be read or 
+     *         written.
+     * @throws IllegalStateException if the manager is closed.
+     */
+    public synchronized void renew() {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        update(false);
+    }
+
+    /**
+     * Returns the identity names whose leases this server owns.
+     * 
+     * @return the names, as of the last renewal.
+     */
+    public Set<String> getOwned() {
+        return owned;
+    }
+
+    /**
+     * Stops the renewal thread and releases the leases of this server, so
+     * that other servers can take them over at their next renewal.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Thread thread = this.thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        try {
+            update(true);
+        } catch (UncheckedIOException e) {
+            // the leases expire
+        } finally {
+            FILE_MONITORS.computeIfPresent(file, RELEASE);
+        }
+        owned = Collections.emptySet();
+    }
+
+    /**
+     * Updates the entries of this server in the lease file.
+     * 
+     * @param releaseAll whether to release every lease of this server.
+     */
+    private void update(boolean releaseAll) {
+        Set<String> attempted = new HashSet<String>(pending);
+        Set<String> wanted = releaseAll? Collections.<String>emptySet(): new HashSet<String>(registrations.keySet());
+        Set<String> unwanted = new HashSet<String>(released);
+        Set<String> acquired = new HashSet<String>();
+        long now;
+        try {
+            synchronized (fileMonitor) {
+                FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE, 
+                        StandardOpenOption.CREATE);
+                try {
+                    FileLock lock = channel.lock();
+                    try {
+                        Map<String, Lease> leases = read(file);
+                        now = currentTimeMillis();
+                        for (String name : wanted) {
+                            Lease lease = leases.get(name);
+                            if (lease == null || lease.owner.equals(owner) || lease.expiresMillis <= now) {
+                                leases.put(name, new Lease(owner, now + durationMillis));
+                                acquired.add(name);
+                            }
+                        }
+                        for (Iterator<Map.Entry<String, Lease>> i = leases.entrySet().iterator(); i.hasNext();) {
+                            Map.Entry<String, Lease> entry = i.next();
+                            Lease lease = entry.getValue();
+                            boolean mine = lease.owner.equals(owner);
+                            if (mine && !acquired.contains(entry.getKey())
+                                    && (releaseAll || unwanted.contains(entry.getKey()))
+                                    || !mine && lease.expiresMillis + durationMillis <= now) {
+                                // released, or abandoned by a server that stopped
+                                i.remove();
+                            }
+                        }
+                        write(temporaryFile, leases);
+                        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, 
+                                StandardCopyOption.REPLACE_EXISTING);
+                    } finally {
+                        lock.release();
+                    }
+                } finally {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        owned = Collections.unmodifiableSet(acquired);
+        validUntilMillis = now + durationMillis - skewMillis;
+        pending.removeAll(attempted);
+        released.removeAll(unwanted);
+    }
+
+    /**
+     * Returns the time against which leases are granted and expire.
+     * 
+     * @return the current time in milliseconds since the epoch.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static Map<String, Lease> read(Path file) throws IOException {
+        Map<String, Lease> leases = new LinkedHashMap<String, Lease>();
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return leases;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a lease file");
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+            String name = in.readUTF();
+            leases.put(name, new Lease(in.readUTF(), in.readLong()));
+        }
+        return leases;
+    }
+
+    private static void write(Path file, Map<String, Lease> leases) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(leases.size());
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue().owner);
+            out.writeLong(entry.getValue().expiresMillis);
+        }
+        out.close();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void uncaught(Throwable e) {
+        Thread current = Thread.currentThread();
+        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+    }
+
+    /**
+     * The monitor of a lease file, shared by the instances that use it.
+     */
+    private static final class FileMonitor {
+
+        // guarded by the map entry
+        int users;
+    }
+
+    /**
+     * An entry of the lease file.
+     */
+    private static final class Lease {
+
+        final String owner;
+        final long expiresMillis;
+
+        Lease(String owner, long expiresMillis) {
+            this.owner = owner;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hierarchical timing wheel that holds scheduled {@link Timeout}s until 
+ * they expire.
+ * <p>
+ * Time is divided into ticks of a fixed duration. The wheel has 
+ * {@value #LEVELS} levels of {@value #SLOTS} slots each; a slot at level 
+ * {@code k} covers {@code 64^k} ticks. A timeout is linked into the slot of
+ * the lowest level that can hold its deadline, and is moved down one or more
+ * levels ("cascaded") when the wheel reaches the start of that slot, so 
+ * inserting and cancelling a timeout are O(1), and every timeout in a 
+ * level 0 slot expires together. Timeouts further away than the top level can
+ * hold are parked in its last slot and placed again when it is cascaded.
+ * <p>
+ * The slots are only accessed by the single thread that runs the wheel, so 
+ * they need no locking. Other threads hand timeouts to that thread through 
+ * lock-free insert and cancel stacks. An occupancy bitmap per level lets the
+ * timer thread find the next tick with work to do without visiting empty 
+ * slots, and sleep until then.
+ */
+final class HierarchicalTimingWheel implements Runnable {
+
+    // wake the timer thread when this many operations are waiting for it, so
+    // that cancelled timeouts do not pile up while it sleeps
+    private static final int DRAIN_THRESHOLD = 1024;
+
+    static final int SLOTS = 64;
+    static final int LEVELS = 7;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELTA = 1L << (SLOT_BITS * LEVELS);
+
+    private static final long AWAKE = Long.MIN_VALUE;
+    private static final long IDLE = Long.MAX_VALUE;
+
+    final long startNanos;
+    final long tickNanos;
+
+    private final Timeout[][] slots = new Timeout[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    // the last tick that was processed, only accessed by the timer thread
+    private long currentTick;
+    private Timeout expired;
+
+    private final AtomicReference<Timeout> inserts = new AtomicReference<Timeout>();
+    private final AtomicReference<Timeout> cancels = new AtomicReference<Timeout>();
+    private Thread timerThread;
+    // the tick the timer thread sleeps until, AWAKE while it is running 
+    private volatile long wakeupTick = AWAKE;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a timing wheel whose tick 0 starts now.
+     * 
+     * @param tickDuration the duration of a tick.
+     * @param unit the unit of {@code tickDuration}.
+     * @throws IllegalArgumentException if {@code tickDuration} is less than 
+     *         or equal to zero.
+     */
+    HierarchicalTimingWheel(long tickDuration, TimeUnit unit) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration " + tickDuration);
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts the timer thread.
+     * 
+     * @param threadFactory the factory to create the timer thread with.
+     */
+    void start(ThreadFactory threadFactory) {
+        timerThread = threadFactory.newThread(this);
+        timerThread.start();
+    }
+
+    /**
+     * Schedules a timeout to expire at the first tick that starts at or after
+     * the deadline. A timeout that has expired can be scheduled again; a
+     * cancelled timeout cannot.
+     * 
+     * @param timeout the timeout to schedule.
+     * @param deadlineNanos the deadline, in terms of {@link System#nanoTime()}.
+     * @return false if the wheel is stopped, in which case the timeout is
+     *         cancelled.
+     * @throws IllegalStateException if the timeout is already scheduled or 
+     *         was cancelled.
+     */
+    boolean schedule(Timeout timeout, long deadlineNanos) {
+        long delay = deadlineNanos - startNanos;
+        long tick = delay <= 0? 0: (delay - 1) / tickNanos + 1;
+        if (!Timeout.STATE.compareAndSet(timeout, Timeout.NEW, Timeout.PENDING)
+                && !Timeout.STATE.compareAndSet(timeout, Timeout.EXPIRED, Timeout.PENDING)) {
+            throw new IllegalStateException("timeout is " 
+                    + (timeout.state == Timeout.PENDING? "already scheduled": "cancelled"));
+        }
+        timeout.deadlineTick = tick;
+        Timeout head;
+        do {
+            head = inserts.get();
+            timeout.nextInsert = head;
+            timeout.insertDepth = head == null? 1: head.insertDepth + 1;
+        } while (!inserts.compareAndSet(head, timeout));
+        if (stopped) {
+            // the stop may have happened before the timeout was pushed, so
+            // it may never be collected by stop()
+            return !Timeout.STATE.compareAndSet(timeout, Timeout.PENDING, Timeout.CANCELLED);
+        }
+        if (tick < wakeupTick || timeout.insertDepth % DRAIN_THRESHOLD == 0) {
+            wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * Cancels a timeout.
+     * 
+     * @return true if the timeout was scheduled and has now been cancelled,
+     *         false if it has already expired, was cancelled or was never 
+     *         scheduled.
+     */
+    boolean cancel(Timeout timeout) {
+        if (!Timeout.STATE.compareAndSet(timeout, Timeout.PENDING, Timeout.CANCELLED)) {
+            return false;
+        }
+        Timeout head;
+        do {
+            head = cancels.get();
+            timeout.nextCancel = head;
+            timeout.cancelDepth = head == null? 1: head.cancelDepth + 1;
+        } while (!cancels.compareAndSet(head, timeout));
+        if (timeout.cancelDepth % DRAIN_THRESHOLD == 0) {
+            wakeup();
+        }
+        return true;
+    }
+
+    private void wakeup() {
+        Thread thread = timerThread;
+        if (thread != null && wakeupTick != AWAKE) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Runs the timer, until {@link #stop()} is called. Must be run by a 
+     * single, dedicated thread.
+     */
+    @Override
+    public void run() {
+        while (!stopped) {
+            advance(tickOf(System.nanoTime()));
+            long next = nextEventTick();
+            wakeupTick = next;
+            if (inserts.get() != null || stopped) {
+                wakeupTick = AWAKE;
+                continue;
+            }
+            if (next == IDLE) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, startNanos + next * tickNanos - System.nanoTime());
+            }
+            wakeupTick = AWAKE;
+        }
+    }
+
+    /**
+     * Stops the timer thread, waits for it to exit and cancels all timeouts
+     * that have not expired.
+     * 
+     * @return the cancelled timeouts.
+     */
+    List<Timeout> stop() {
+        stopped = true;
+        Thread thread = timerThread;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<Timeout> pending = new ArrayList<Timeout>();
+        for (Timeout timeout = inserts.getAndSet(null); timeout != null; timeout = timeout.nextInsert) {
+            collect(timeout, pending);
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                for (Timeout timeout = slots[level][slot]; timeout != null; timeout = timeout.next) {
+                    collect(timeout, pending);
+                }
+                slots[level][slot] = null;
+            }
+            occupied[level] = 0L;
+        }
+        return pending;
+    }
+
+    private static void collect(Timeout timeout, List<Timeout> pending) {
+        if (Timeout.STATE.compareAndSet(timeout, Timeout.PENDING, Timeout.CANCELLED)) {
+            pending.add(timeout);
+        }
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the tick that is in progress at the given time.
+     */
+    long tickOf(long nanos) {
+        long elapsed = nanos - startNanos;
+        return elapsed <= 0? 0: elapsed / tickNanos;
+    }
+
+    /**
+     * Processes pending inserts and cancellations, then advances the wheel
+     * to the given tick, expiring every timeout whose deadline is at or 
+     * before it. Must only be called by the timer thread.
+     */
+    void advance(long tick) {
+        drainCancels();
+        drainInserts();
+        while (true) {
+            expireAll();
+            long next = nextEventTick();
+            if (next > tick) {
+                if (tick > currentTick) {
+                    currentTick = tick;
+                }
+                return;
+            }
+            currentTick = next;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((next & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (next >>> (SLOT_BITS * level)) & SLOT_MASK);
+                }
+            }
+            int slot = (int) next & SLOT_MASK;
+            Timeout timeout = detach(0, slot);
+            while (timeout != null) {
+                Timeout next0 = timeout.next;
+                addExpired(timeout);
+                timeout = next0;
+            }
+        }
+    }
+
+    /**
+     * Returns the next tick at which a slot has to be cascaded or expired, 
+     * or {@link Long#MAX_VALUE} if the wheel is empty.
+     */
+    long nextEventTick() {
+        long result = IDLE;
+        for (int level = 0; level < LEVELS; level++) {
+            long bits = occupied[level];
+            if (bits == 0L) {
+                continue;
+            }
+            int shift = SLOT_BITS * level;
+            long period = currentTick >>> shift;
+            int first = (int) (period + 1) & SLOT_MASK;
+            int distance = Long.numberOfTrailingZeros(Long.rotateRight(bits, first)) + 1;
+            long tick = (period + distance) << shift;
+            if (tick < result) {
+                result = tick;
+            }
+        }
+        return result;
+    }
+
+    private void drainInserts() {
+        Timeout timeout = reverse(inserts.getAndSet(null));
+        while (timeout != null) {
+            Timeout next = timeout.nextInsert;
+            timeout.nextInsert = null;
+            if (timeout.state == Timeout.PENDING) {
+                place(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void drainCancels() {
+        Timeout timeout = cancels.getAndSet(null);
+        while (timeout != null) {
+            Timeout next = timeout.nextCancel;
+            timeout.nextCancel = null;
+            if (timeout.level >= 0) {
+                unlink(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void place(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        if (delta <= 0) {
+            addExpired(timeout);
+            return;
+        }
+        long placement = timeout.deadlineTick;
+        if (delta >= MAX_DELTA) {
+            placement = currentTick + MAX_DELTA - 1;
+            delta = MAX_DELTA - 1;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(delta)) / SLOT_BITS;
+        int slot = (int) (placement >>> (SLOT_BITS * level)) & SLOT_MASK;
+        Timeout head = slots[level][slot];
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        slots[level][slot] = timeout;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timeout timeout) {
+        int level = timeout.level;
+        int slot = timeout.slot;
+        if (timeout.prev == null) {
+            slots[level][slot] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        if (slots[level][slot] == null) {
+            occupied[level] &= ~(1L << slot);
+        }
+        timeout.next = null;
+        timeout.prev = null;
+        timeout.level = -1;
+    }
+
+    private Timeout detach(int level, int slot) {
+        Timeout head = slots[level][slot];
+        slots[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+        return head;
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout timeout = detach(level, slot);
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            timeout.prev = null;
+            timeout.level = -1;
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    private void addExpired(Timeout timeout) {
+        timeout.level = -1;
+        timeout.prev = null;
+        timeout.next = expired;
+        expired = timeout;
+    }
+
+    private void expireAll() {
+        Timeout timeout = expired;
+        expired = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            if (Timeout.STATE.compareAndSet(timeout, Timeout.PENDING, Timeout.EXPIRED)) {
+                try {
+                    timeout.expire();
+                } catch (RuntimeException e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private static Timeout reverse(Timeout head) {
+        Timeout reversed = null;
+        while (head != null) {
+            Timeout next = head.nextInsert;
+            head.nextInsert = reversed;
+            reversed = head;
+            head = next;
+        }
+        return reversed;
+    }
+
+    /**
+     * An entry in the wheel. A timeout is linked directly into its slot, 
+     * so it can be in at most one wheel at a time.
+     */
+    abstract static class Timeout {
+
+        static final int NEW = 0;
+        static final int PENDING = 1;
+        static final int EXPIRED = 2;
+        static final int CANCELLED = 3;
+
+        static final AtomicIntegerFieldUpdater<Timeout> STATE = 
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        volatile int state = NEW;
+        long deadlineTick;
+        // the following are only accessed by the timer thread
+        int level = -1;
+        int slot;
+        Timeout prev;
+        Timeout next;
+        // links and depths of the insert and cancel stacks, published by the 
+        // compareAndSet that pushes the timeout
+        Timeout nextInsert;
+        int insertDepth;
+        Timeout nextCancel;
+        int cancelDepth;
+
+        /**
+         * Called by the timer thread when the timeout expires. Must not 
+         * block.
+         */
+        abstract void expire();
+
+        boolean isCancelled() {
+            return state == CANCELLED;
+        }
+    }
+}
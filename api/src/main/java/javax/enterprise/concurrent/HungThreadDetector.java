@@ -0,0 +1,366 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Finds managed threads that have been running the same task for longer 
+ * than a threshold, which usually means that the task is stuck, and 
+ * samples their stacks.
+ * <p>
+ * A background thread checks, at a fixed interval, the start time of the 
+ * task of every live thread of a {@link DefaultManagedExecutorService} and
+ * every platform thread of a {@link DefaultManagedThreadFactory}. Checking 
+ * a thread only reads a few volatile fields, so the cost of the detector 
+ * does not depend on the number of tasks run. The stack of a thread is 
+ * only taken once the thread is over the threshold, and again at each 
+ * check while it stays over it, so that {@link #getHungThreads()} shows 
+ * where the thread is now.
+ * <p>
+ * The {@link Listener} is told once when a thread is found hung, and once
+ * when its task ends. It is called on the detector thread; exceptions it
+ * throws are passed to the uncaught exception handler of that thread.
+ * <p>
+ * Example:
+ * <pre>
+ * HungThreadDetector detector = new HungThreadDetector(10, TimeUnit.MINUTES, 
+ *     new HungThreadDetector.Listener() {
+ *         public void threadHung(HungThreadDetector.HungThread hungThread) {
+ *             log.warning(hungThread.toString());
+ *         }
+ *
+ *         public void threadRecovered(HungThreadDetector.HungThread hungThread) {
+ *         }
+ *     });
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class HungThreadDetector implements AutoCloseable {
+
+    /**
+     * Notified when threads are found hung and when they recover.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a thread has been running a task for longer than the
+         * threshold.
+         * 
+         * @param hungThread the state of the thread when it was found.
+         */
+        void threadHung(HungThread hungThread);
+
+        /**
+         * Called when a thread that was found hung finishes its task.
+         * 
+         * @param hungThread the state of the thread at the last check before
+         *                   the task ended.
+         */
+        void threadRecovered(HungThread hungThread);
+    }
+
+    /**
+     * The state of a hung thread when it was checked.
+     */
+    public static final class HungThread {
+
+        private final Thread thread;
+        private final String identityName;
+        private final long taskStartTime;
+        private final long runningNanos;
+        private final long cpuTime;
+        private final long allocatedBytes;
+        private final StackTraceElement[] stackTrace;
+
+        HungThread(Thread thread, String identityName, long taskStartTime, long runningNanos, 
+                long cpuTime, long allocatedBytes, StackTraceElement[] stackTrace) {
+            this.thread = thread;
+            this.identityName = identityName;
+            this.taskStartTime = taskStartTime;
+            this.runningNanos = runningNanos;
+            this.cpuTime = cpuTime;
+            this.allocatedBytes = allocatedBytes;
+            this.stackTrace = stackTrace;
+        }
+
+        public Thread getThread() {
+            return thread;
+        }
+
+        /**
+         * Returns the {@link ManagedTask#IDENTITY_NAME} of the task, or null.
+         */
+        public String getIdentityName() {
+            return identityName;
+        }
+
+        /**
+         * Returns when the task started, in milliseconds since the epoch.
+         */
+        public long getTaskStartTime() {
+            return taskStartTime;
+        }
+
+        /**
+         * Returns for how long the task had been running when it was checked.
+         */
+        public long getRunningTime(TimeUnit unit) {
+            return unit.convert(runningNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the CPU time of the thread in nanoseconds, or -1 if it is 
+         * not available. Comparing two samples of a thread tells whether it
+         * is spinning or blocked.
+         */
+        public long getCpuTime() {
+            return cpuTime;
+        }
+
+        /**
+         * Returns the number of bytes allocated by the thread, or -1 if it 
+         * is not available.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public StackTraceElement[] getStackTrace() {
+            return stackTrace.clone();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("Thread ").append(thread.getName())
+                    .append(" has been running task ").append(identityName)
+                    .append(" for ").append(getRunningTime(TimeUnit.MILLISECONDS)).append(" ms");
+            if (cpuTime >= 0L) {
+                text.append(", CPU time ").append(TimeUnit.NANOSECONDS.toMillis(cpuTime)).append(" ms");
+            }
+            for (StackTraceElement element : stackTrace) {
+                text.append("\n\tat ").append(element);
+            }
+            return text.toString();
+        }
+    }
+
+    private static final long MAX_DEFAULT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final long thresholdNanos;
+    private final long intervalNanos;
+    private final Listener listener;
+    private final Thread thread;
+    // only used by the detector thread
+    private final Map<ThreadStatistics, HungThread> hung = new HashMap<ThreadStatistics, HungThread>();
+    private volatile List<HungThread> hungThreads = Collections.emptyList();
+    private volatile boolean closed;
+
+    /**
+     * Creates a detector that checks threads at a quarter of the threshold,
+     * but at least every 5 seconds, on a daemon thread.
+     * 
+     * @param threshold how long a task can run before its thread is hung.
+     * @param unit the unit of {@code threshold}.
+     * @param listener the listener to notify, or null.
+     * @throws IllegalArgumentException if {@code threshold} is less than or 
+     *         equal to zero.
+     * @throws NullPointerException if {@code unit} is null.
+     */
+    public HungThreadDetector(long threshold, TimeUnit unit, Listener listener) {
+        this(unit.toNanos(threshold), Math.min(Math.max(1L, unit.toNanos(threshold) / 4), MAX_DEFAULT_INTERVAL_NANOS), 
+                listener, new DetectorThreadFactory());
+    }
+
+    /**
+     * Creates a detector.
+     * 
+     * @param threshold how long a task can run before its thread is hung.
+     * @param interval how often threads are checked.
+     * @param unit the unit of {@code threshold} and {@code interval}.
+     * @param listener the listener to notify, or null.
+     * @param threadFactory the factory used to create the detector thread.
+     * @throws IllegalArgumentException if {@code threshold} or 
+     *         {@code interval} is less than or equal to zero.
+     * @throws NullPointerException if {@code unit} or {@code threadFactory}
+     *         is null.
+     */
+    public HungThreadDetector(long threshold, long interval, TimeUnit unit, Listener listener, 
+            ThreadFactory threadFactory) {
+        this(unit.toNanos(threshold), unit.toNanos(interval), listener, threadFactory);
+    }
+
+    private HungThreadDetector(long thresholdNanos, long intervalNanos, Listener listener, 
+            ThreadFactory threadFactory) {
+        if (thresholdNanos <= 0L) {
+            throw new IllegalArgumentException("threshold " + thresholdNanos + " ns");
+        }
+        if (intervalNanos <= 0L) {
+            throw new IllegalArgumentException("interval " + intervalNanos + " ns");
+        }
+        if (threadFactory == null) {
+            throw new NullPointerException();
+        }
+        this.thresholdNanos = thresholdNanos;
+        this.intervalNanos = intervalNanos;
+        this.listener = listener;
+        this.thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                detect();
+            }
+        });
+        this.thread.start();
+    }
+
+    /**
+     * Returns the threads that were hung at the last check, with the stack 
+     * that they had then.
+     */
+    public List<HungThread> getHungThreads() {
+        return hungThreads;
+    }
+
+    /**
+     * Stops checking threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns whether {@link #close()} has been called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void detect() {
+        long next = System.nanoTime();
+        while (!closed) {
+            check();
+            next += intervalNanos;
+            long delay;
+            while (!closed && (delay = next - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(this, delay);
+            }
+        }
+    }
+
+    /**
+     * Checks every thread once.
+     */
+    void check() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<ThreadStatistics, HungThread>> it = hung.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<ThreadStatistics, HungThread> entry = it.next();
+            ThreadStatistics statistics = entry.getKey();
+            if (statistics.getStartMillis() == 0L || statistics.getStartMillis() != entry.getValue().getTaskStartTime()
+                    || !ThreadStatistics.LIVE.contains(statistics)) {
+                it.remove();
+                notify(entry.getValue(), false);
+            }
+        }
+        for (ThreadStatistics statistics : ThreadStatistics.LIVE) {
+            long startMillis = statistics.getStartMillis();
+            if (startMillis == 0L) {
+                continue;
+            }
+            long runningNanos = now - statistics.getStartNanos();
+            String identityName = statistics.getIdentityName();
+            if (runningNanos < thresholdNanos) {
+                continue;
+            }
+            StackTraceElement[] stackTrace = statistics.thread.getStackTrace();
+            // the fields are not read atomically: skip the thread until the 
+            // next check if it moved on to another task meanwhile
+            if (statistics.getStartMillis() != startMillis) {
+                continue;
+            }
+            HungThread sample = new HungThread(statistics.thread, identityName, startMillis, runningNanos, 
+                    statistics.getCpuTime(), statistics.getAllocatedBytes(), stackTrace);
+            if (hung.put(statistics, sample) == null) {
+                notify(sample, true);
+            }
+        }
+        hungThreads = Collections.unmodifiableList(new ArrayList<HungThread>(hung.values()));
+    }
+
+    private void notify(HungThread hungThread, boolean isHung) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            if (isHung) {
+                listener.threadHung(hungThread);
+            } else {
+                listener.threadRecovered(hungThread);
+            }
+        } catch (RuntimeException e) {
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        }
+    }
+
+    /**
+     * Creates the daemon thread of the detector.
+     */
+    private static final class DetectorThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "HungThreadDetector");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -40,12 +40,20 @@
 
 package javax.enterprise.concurrent;
 
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.Date;
 
 /**
  * Contains information about the last execution of a task. This is used by
  * the methods in the {@code Trigger} class to determine the next scheduled timeout
  * or whether a run should be skipped.
+ * <p>
+ * Each time is available both as a {@code Date} and, for use by a
+ * {@link ZonedTrigger}, as a {@code ZonedDateTime} in a given time zone.
+ * The default implementations of the {@code ZonedDateTime} methods convert
+ * the {@code Date}; implementations that keep the times in another form
+ * can override them to avoid creating a {@code Date}.
  *
  * @since 1.0
  */
@@ -91,4 +99,42 @@ public interface LastExecution {
     *         null if the task was canceled before it was completed.
     */
    public Date getRunEnd();
+
+   /**
+    * The last time in which task was scheduled to run.
+    * 
+    * @param zone the time zone in which to return the date/time.
+    * @return The last date/time in which the task was scheduled to run.
+    * @since 1.1
+    */
+   public default ZonedDateTime getScheduledStart(ZoneId zone) {
+     Date date = getScheduledStart();
+     return date == null? null: ZonedDateTime.ofInstant(date.toInstant(), zone);
+   }
+
+   /** 
+    * The last time in which the task started running. 
+    * 
+    * @param zone the time zone in which to return the date/time.
+    * @return the last date/time in which the task started running, or 
+    *         null if the task was canceled before it was started.
+    * @since 1.1
+    */
+   public default ZonedDateTime getRunStart(ZoneId zone) {
+     Date date = getRunStart();
+     return date == null? null: ZonedDateTime.ofInstant(date.toInstant(), zone);
+   }
+
+   /** 
+    * The last time in which the task was completed. 
+    * 
+    * @param zone the time zone in which to return the date/time.
+    * @return the last date/time in which the task was completed, or 
+    *         null if the task was canceled before it was completed.
+    * @since 1.1
+    */
+   public default ZonedDateTime getRunEnd(ZoneId zone) {
+     Date date = getRunEnd();
+     return date == null? null: ZonedDateTime.ofInstant(date.toInstant(), zone);
+   }
 }
@@ -45,6 +45,13 @@ package javax.enterprise.concurrent;
  * Interface to be implemented by the Java&trade; EE product providers on threads
  * that are created by calling 
  * {@link ManagedThreadFactory#newThread(java.lang.Runnable) }.
+ * <p>
+ * Threads can also report what they are running, so that threads that are
+ * stuck in a task can be found, for instance by a {@link HungThreadDetector}.
+ * The threads of the reference {@link DefaultManagedExecutorService} and 
+ * the platform threads of {@link DefaultManagedThreadFactory} do so; other
+ * implementations report no task and no statistics unless they override 
+ * these methods.
  * 
  * @since 1.0
  */
@@ -60,4 +67,49 @@ public interface ManageableThread {
      * @return true if this thread has been marked for shutdown.
      */
     public boolean isShutdown();
+
+    /**
+     * Returns the {@link ManagedTask#IDENTITY_NAME} of the task that this 
+     * thread is running.
+     * 
+     * @return the identity name, or null if the thread is not running a 
+     *         task or the task has no identity name.
+     * @since 1.1
+     */
+    public default String getTaskIdentityName() {
+        return null;
+    }
+
+    /**
+     * Returns the time at which the task that this thread is running 
+     * started.
+     * 
+     * @return the start time in milliseconds since the epoch, or 0 if the
+     *         thread is not running a task.
+     * @since 1.1
+     */
+    public default long getTaskStartTime() {
+        return 0L;
+    }
+
+    /**
+     * Returns the CPU time used by this thread since it started.
+     * 
+     * @return the CPU time in nanoseconds, or -1 if it is not available.
+     * @since 1.1
+     */
+    public default long getCpuTime() {
+        return -1L;
+    }
+
+    /**
+     * Returns the amount of heap memory allocated by this thread since it 
+     * started.
+     * 
+     * @return the number of bytes allocated, or -1 if it is not available.
+     * @since 1.1
+     */
+    public default long getAllocatedBytes() {
+        return -1L;
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link CompletableFuture} whose asynchronous dependent stages run on a
+ * {@link ManagedExecutorService}.
+ * <p>
+ * ManagedCompletableFutures are created by the 
+ * {@link ManagedExecutorService#newIncompleteFuture() newIncompleteFuture}, 
+ * {@link ManagedExecutorService#completedFuture(java.lang.Object) completedFuture},
+ * {@link ManagedExecutorService#failedFuture(java.lang.Throwable) failedFuture},
+ * {@link ManagedExecutorService#runAsync(java.lang.Runnable) runAsync} and 
+ * {@link ManagedExecutorService#supplyAsync(java.util.function.Supplier) supplyAsync}
+ * methods of a ManagedExecutorService. Every stage that depends on a 
+ * ManagedCompletableFuture is itself a ManagedCompletableFuture of the same
+ * executor, and the {@code Async} methods that are not given an 
+ * {@code Executor} run the stage on that executor rather than on the 
+ * common {@code ForkJoinPool}.
+ * <p>
+ * The application component context is captured once, when the first 
+ * future of a chain is created, and is shared by every stage of the chain.
+ * Each asynchronous stage runs in that context, so no context is captured
+ * or looked up when a dependent stage is created or run. Stages that are 
+ * not asynchronous run on the thread that completes the stage they depend 
+ * on, or on the thread that creates them if that stage is already 
+ * complete; when the stage they depend on runs on the executor, they run 
+ * within its context too.
+ * <p>
+ * Example:
+ * <pre>
+ * &#64;Resource
+ * ManagedExecutorService mes;
+ *
+ * public CompletionStage&lt;Order&gt; placeOrder(Cart cart) {
+ *     return mes.supplyAsync(() -&gt; inventory.reserve(cart))
+ *               .thenApplyAsync(reservation -&gt; billing.charge(reservation))
+ *               .thenApply(receipt -&gt; new Order(cart, receipt));
+ * }
+ * </pre>
+ *
+ * @param <T> the type of the value of the future.
+ * @since 1.1
+ */
+public class ManagedCompletableFuture<T> extends CompletableFuture<T> {
+
+    // runs the asynchronous stages of the chain, in the captured context
+    private final Executor executor;
+
+    /**
+     * Creates an incomplete future whose asynchronous stages are run by 
+     * the given executor.
+     */
+    ManagedCompletableFuture(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new ManagedCompletableFuture<U>(executor);
+    }
+
+    /**
+     * Returns the executor that runs the asynchronous stages of this 
+     * future that are not given an {@code Executor}.
+     *
+     * @return the executor, which applies the context of the chain to the
+     *         stages it runs.
+     */
+    @Override
+    public Executor defaultExecutor() {
+        return executor;
+    }
+}
@@ -40,7 +40,14 @@
 
 package javax.enterprise.concurrent;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * A manageable version of a {@link java.util.concurrent.ExecutorService}.
@@ -192,4 +199,132 @@ import java.util.concurrent.ExecutorService;
  */
 public interface ManagedExecutorService extends ExecutorService {
 
+  /**
+   * Submits a collection of tasks for execution as a batch, and returns 
+   * their {@code Future}s without waiting for them to complete.
+   * <p>
+   * Unlike submitting each task, an implementation can capture the 
+   * application component context once for all tasks that have the same
+   * execution properties, and hand the batch to its threads in a single
+   * queue operation. Each task still runs, reports its lifecycle events 
+   * and completes independently.
+   * <p>
+   * The default implementation submits each task in turn.
+   * 
+   * @param tasks the tasks to submit.
+   * @return the {@code Future}s of the tasks, in the iteration order of 
+   *         {@code tasks}.
+   * @throws java.util.concurrent.RejectedExecutionException if the tasks
+   *         cannot be accepted for execution. Tasks of the batch that were 
+   *         accepted but have not started may have been aborted.
+   * @throws java.lang.NullPointerException if {@code tasks} or any of its 
+   *         elements is null.
+   * @since 1.1
+   */
+  public default <T> List<Future<T>> submitAll(Collection<? extends Callable<T>> tasks) {
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(submit(task));
+    }
+    return futures;
+  }
+
+  /**
+   * Returns a new incomplete {@link ManagedCompletableFuture} whose 
+   * asynchronous dependent stages run on this executor.
+   * <p>
+   * An implementation captures the application component context of the 
+   * current thread once, and runs every asynchronous stage of the chain 
+   * that starts with the returned future in that context, so no context 
+   * is captured for the dependent stages. Dependent stages that are not
+   * asynchronous run on the thread that completes the stage they depend 
+   * on, as with {@code CompletableFuture}.
+   * <p>
+   * The default implementation submits each asynchronous stage with 
+   * {@link #execute(java.lang.Runnable) execute}.
+   * 
+   * @return the new future.
+   * @since 1.1
+   */
+  public default <U> CompletableFuture<U> newIncompleteFuture() {
+    return new ManagedCompletableFuture<U>(this);
+  }
+
+  /**
+   * Returns a new {@link ManagedCompletableFuture} that is already 
+   * completed with the given value, and whose asynchronous dependent 
+   * stages run on this executor.
+   * 
+   * @param value the value.
+   * @return the completed future.
+   * @since 1.1
+   */
+  public default <U> CompletableFuture<U> completedFuture(U value) {
+    CompletableFuture<U> future = newIncompleteFuture();
+    future.complete(value);
+    return future;
+  }
+
+  /**
+   * Returns a new {@link ManagedCompletableFuture} that is already 
+   * completed exceptionally with the given exception, and whose 
+   * asynchronous dependent stages run on this executor.
+   * 
+   * @param exception the exception.
+   * @return the completed future.
+   * @throws java.lang.NullPointerException if {@code exception} is null.
+   * @since 1.1
+   */
+  public default <U> CompletableFuture<U> failedFuture(Throwable exception) {
+    if (exception == null) {
+      throw new NullPointerException();
+    }
+    CompletableFuture<U> future = newIncompleteFuture();
+    future.completeExceptionally(exception);
+    return future;
+  }
+
+  /**
+   * Runs an action on this executor, and returns a 
+   * {@link ManagedCompletableFuture} that is completed when it has run.
+   * 
+   * @param action the action to run.
+   * @return the future of the action.
+   * @throws java.util.concurrent.RejectedExecutionException if the action
+   *         cannot be accepted for execution.
+   * @throws java.lang.NullPointerException if {@code action} is null.
+   * @since 1.1
+   */
+  public default CompletableFuture<Void> runAsync(final Runnable action) {
+    if (action == null) {
+      throw new NullPointerException();
+    }
+    return supplyAsync(new Supplier<Void>() {
+      @Override
+      public Void get() {
+        action.run();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Runs a supplier on this executor, and returns a 
+   * {@link ManagedCompletableFuture} that is completed with the value it
+   * supplies.
+   * 
+   * @param supplier the supplier of the value.
+   * @return the future of the value.
+   * @throws java.util.concurrent.RejectedExecutionException if the supplier
+   *         cannot be accepted for execution.
+   * @throws java.lang.NullPointerException if {@code supplier} is null.
+   * @since 1.1
+   */
+  public default <U> CompletableFuture<U> supplyAsync(Supplier<U> supplier) {
+    if (supplier == null) {
+      throw new NullPointerException();
+    }
+    CompletableFuture<U> future = newIncompleteFuture();
+    return future.completeAsync(supplier);
+  }
 }
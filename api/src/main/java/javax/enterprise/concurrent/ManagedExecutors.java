@@ -59,10 +59,22 @@ public class ManagedExecutors {
     
     final static String NULL_TASK_ERROR_MSG = "Task cannot be null";
     
+    /**
+     * The {@link ManageableThread} state of the current thread when it cannot
+     * implement {@code ManageableThread} itself, such as a virtual thread 
+     * created by {@link DefaultManagedThreadFactory}.
+     */
+    static final ThreadLocal<ManageableThread> currentManageableThread = new ThreadLocal<ManageableThread>();
+    
     /**
      * Utility method for checking the {@code isShutdown()} value of the current 
      * thread if it is a {@link ManageableThread} created from  
      * {@link ManagedThreadFactory#newThread(java.lang.Runnable) ManagedThreadFactory.newThread() }.
+     * <p>
+     * Virtual threads created by a {@link DefaultManagedThreadFactory} in 
+     * virtual-thread mode do not implement {@code ManageableThread}, but this
+     * method returns the same value for them as it would for a platform thread
+     * created by the same factory.
      * 
      * @return Returns the {@code isShutdown()} value if the current thread is a
      *     {@code ManageableThread} created by {@code ManagedThreadFactory}, or
@@ -74,6 +86,10 @@ public class ManagedExecutors {
         if (currThread instanceof ManageableThread) {
             return ((ManageableThread) currThread).isShutdown();
         }
+        ManageableThread manageableThread = currentManageableThread.get();
+        if (manageableThread != null) {
+            return manageableThread.isShutdown();
+        }
         return false;
     }
     
@@ -129,6 +145,11 @@ public class ManagedExecutors {
      * specified in both.
      * After the method is called, further changes to the {@code Map} 
      * object will not be reflected in the {@code Runnable} returned by this method.
+     * If {@code executionProperties} is an {@link ExecutionProperties} instance,
+     * and so are the execution properties of {@code task}, if any, they are 
+     * shared rather than copied, and the execution properties of the returned 
+     * task are an unmodifiable {@code ExecutionProperties}. Otherwise they are
+     * a modifiable copy, which can contain null values.
      * @return a Runnable object
      * @throws IllegalArgumentException if {@code task} is {@code null}
      */
@@ -183,6 +204,11 @@ public class ManagedExecutors {
      * specified in both.
      * After the method is called, further changes to the {@code Map} 
      * object will not be reflected in the {@code Callable} returned by this method.
+     * If {@code executionProperties} is an {@link ExecutionProperties} instance,
+     * and so are the execution properties of {@code task}, if any, they are 
+     * shared rather than copied, and the execution properties of the returned 
+     * task are an unmodifiable {@code ExecutionProperties}. Otherwise they are
+     * a modifiable copy, which can contain null values.
      * @return a Callable object
      * @throws IllegalArgumentException if {@code task} is {@code null}
      */
@@ -194,6 +220,48 @@ public class ManagedExecutors {
         return new CallableAdapter(task, executionProperties, taskListener);
     }
     
+    /**
+     * Returns the value of a typed execution property of a task submitted
+     * to a {@link ManagedExecutorService} or 
+     * {@link ManagedScheduledExecutorService}.
+     * <p>
+     * For tasks returned by the {@code managedTask} methods of this class, the 
+     * value is read from a slot of the {@link ExecutionProperties} of the task,
+     * without hashing the property key or parsing the property value.
+     * 
+     * @param <T> the type of the property value.
+     * @param task the submitted task.
+     * @param property the typed execution property.
+     * @return the value of the property, or the default value of 
+     *         {@code property} if {@code task} does not implement 
+     *         {@link ManagedTask} or does not specify the property.
+     */
+    public static <T> T getExecutionProperty(Object task, ExecutionProperty<T> property) {
+        if (task instanceof ManagedTask) {
+            return property.get(((ManagedTask) task).getExecutionProperties());
+        }
+        return property.getDefaultValue();
+    }
+
+    /**
+     * Returns whether a task submitted to a {@link ManagedExecutorService}
+     * specifies the {@link ManagedTask#LONGRUNNING_HINT} execution property
+     * with a value of "true".
+     */
+    static boolean isLongRunning(Object task) {
+        return getExecutionProperty(task, ExecutionProperty.LONGRUNNING_HINT).booleanValue();
+    }
+
+    /**
+     * Returns the {@link ManagedTask#PRIORITY} execution property of a task
+     * submitted to a {@link ManagedExecutorService}, limited to the range 
+     * from {@link Thread#MIN_PRIORITY} to {@link Thread#MAX_PRIORITY}.
+     */
+    static int priorityOf(Object task) {
+        long priority = getExecutionProperty(task, ExecutionProperty.PRIORITY).longValue();
+        return (int) Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority));
+    }
+    
     /**
      * Adapter for Runnable to include ManagedTask interface methods
      */
@@ -275,6 +343,10 @@ public class ManagedExecutors {
             if (base == null && override == null) {
                 return null;
             }
+            if ((base == null || base instanceof ExecutionProperties) 
+                    && (override == null || override instanceof ExecutionProperties)) {
+                return ExecutionProperties.copyOf(base).with(override);
+            }
             Map<String, String> props = new HashMap<String, String>();
             if (base != null) {
                 props.putAll(base);
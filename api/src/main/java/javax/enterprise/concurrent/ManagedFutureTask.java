@@ -0,0 +1,733 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import javax.enterprise.concurrent.spi.TaskMetrics;
+import javax.enterprise.concurrent.spi.ThreadContextRestorer;
+
+/**
+ * {@code Future} created by {@link AbstractManagedExecutorService} for each
+ * submitted task. Notifies the {@link ManagedTaskListener} of the task, if
+ * any, of the lifecycle events described in {@code ManagedTaskListener}.
+ * <p>
+ * The phase of the task and whether a listener method is being called are
+ * packed into a single {@code int}, and every transition is one 
+ * compare-and-set of that word, so no lock is ever taken. The thread that 
+ * moves the task to a phase calls the listener for it. If the future is 
+ * completed while another thread is calling the listener, for instance 
+ * when it is cancelled from within {@code taskStarting}, the completion 
+ * events are left to that thread, which calls them when the listener 
+ * method returns. Each event is therefore delivered exactly once, and 
+ * never before an earlier event of the task has returned.
+ * <p>
+ * If the executor has {@link javax.enterprise.concurrent.spi.ExecutorMetrics},
+ * the events are also reported to the {@link TaskMetrics} of the task, 
+ * with the queue wait and run times measured by {@link System#nanoTime()}.
+ * Whether the task is pending is tracked in the state word too, so that a
+ * task that is cancelled concurrently with starting is counted once.
+ * <p>
+ * Likewise, whether the task holds a place in the bound of the 
+ * {@link AdmissionPolicy} of the executor is a bit of the state word, and 
+ * the transition that clears it releases the place.
+ */
+class ManagedFutureTask<V> implements RunnableFuture<V> {
+
+    // phases
+    private static final int NEW = 0;
+    private static final int SUBMITTED = 1;
+    private static final int RUNNING = 2;
+    private static final int COMPLETING = 3;
+    private static final int NORMAL = 4;
+    private static final int EXCEPTIONAL = 5;
+    private static final int ABORTED = 6;
+    private static final int CANCELLED = 7;
+    private static final int INTERRUPTING = 8;
+    private static final int INTERRUPTED = 9;
+    private static final int PHASE = 0xF;
+    // set while a thread is calling the listener for a non-final event
+    private static final int DELIVERING = 0x10;
+    // set from submission until the task starts or completes
+    private static final int PENDING = 0x20;
+    // set while the task holds a place in the admission bound
+    private static final int ADMITTED = 0x40;
+
+    // the updaters apply to tasks of any result type
+    @SuppressWarnings("unchecked")
+    private static final Class<ManagedFutureTask<?>> TASK_CLASS = 
+            (Class<ManagedFutureTask<?>>) (Class<?>) ManagedFutureTask.class;
+    private static final AtomicIntegerFieldUpdater<ManagedFutureTask<?>> STATE = 
+            AtomicIntegerFieldUpdater.newUpdater(TASK_CLASS, "state");
+    private static final AtomicReferenceFieldUpdater<ManagedFutureTask<?>, Waiter> WAITERS = 
+            AtomicReferenceFieldUpdater.newUpdater(TASK_CLASS, Waiter.class, "waiters");
+
+    final AbstractManagedExecutorService executor;
+    // The task as it was submitted by the application, which is the object
+    // passed to the ManagedTaskListener methods.
+    final Object task;
+    final ManagedTaskListener taskListener;
+    // null unless the executor has metrics
+    final TaskMetrics metrics;
+    // null unless the executor has an admission policy
+    private final AdmissionController admission;
+    private final Callable<V> callable;
+    // the context in which the callable runs
+    private final ThreadContext context;
+    private volatile int state;
+    // the result or exception, published by the write of a final phase
+    private Object outcome;
+    private volatile Thread runner;
+    private volatile Waiter waiters;
+    // when the task was last submitted or became due, and when it started
+    long queuedNanos;
+    private long startNanos;
+    // the statistics of the running thread, if they record this task
+    private ThreadStatistics threadStatistics;
+
+    ManagedFutureTask(AbstractManagedExecutorService executor, Callable<V> callable) {
+        this(executor, callable, callable);
+    }
+
+    /**
+     * Creates a future that runs {@code callable} on behalf of {@code task},
+     * which is the object the listener methods are called with, in the 
+     * context that the executor captures from the current thread.
+     */
+    ManagedFutureTask(AbstractManagedExecutorService executor, Callable<V> callable, Object task) {
+        this(executor, callable, task, executor == null? ThreadContext.EMPTY: executor.captureContext(task));
+    }
+
+    /**
+     * Creates a future that runs {@code callable} on behalf of {@code task}
+     * in the given context, which may be shared with other futures.
+     */
+    ManagedFutureTask(AbstractManagedExecutorService executor, Callable<V> callable, Object task, 
+            ThreadContext context) {
+        if (callable == null) {
+            throw new NullPointerException();
+        }
+        this.executor = executor;
+        this.callable = callable;
+        this.context = context;
+        this.task = task;
+        this.taskListener = listenerOf(task);
+        this.metrics = executor == null? null: executor.taskMetrics(task);
+        this.admission = executor == null? null: executor.admission;
+    }
+
+    ManagedFutureTask(AbstractManagedExecutorService executor, Runnable runnable, V result) {
+        this(executor, Executors.callable(runnable, result), runnable);
+    }
+
+    /**
+     * Called by the executor once the task has been accepted for execution,
+     * and by subclasses each time a periodic task is scheduled again.
+     */
+    void submitted() {
+        int previous = beginDelivery(SUBMITTED);
+        if (previous < 0) {
+            return;
+        }
+        try {
+            if (metrics != null || admission != null) {
+                queuedNanos = System.nanoTime();
+            }
+            if (metrics != null && (previous & PENDING) == 0) {
+                metrics.taskSubmitted();
+            }
+            if (taskListener != null) {
+                taskListener.taskSubmitted(this, executor, task);
+            }
+        } finally {
+            endDelivery();
+        }
+    }
+
+    /**
+     * Records that the task holds a place in the admission bound, unless it
+     * has left the submitted phase.
+     * 
+     * @return true if the place is now held by the task.
+     */
+    boolean markAdmitted() {
+        int s;
+        do {
+            s = state;
+            if ((s & PHASE) != SUBMITTED) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, s, s | ADMITTED));
+        return true;
+    }
+
+    boolean isAdmitted() {
+        return (state & ADMITTED) != 0;
+    }
+
+    /**
+     * Notifies the listener that a run of a periodic task ended, or was 
+     * skipped, without completing the future. Nothing is delivered if the
+     * future has completed meanwhile.
+     * 
+     * @param exception the reason why the run was skipped, or null.
+     */
+    void runDone(Throwable exception) {
+        if (taskListener == null || beginDelivery(-1) < 0) {
+            return;
+        }
+        try {
+            if (exception != null) {
+                taskListener.taskAborted(this, executor, task, exception);
+            }
+            taskListener.taskDone(this, executor, task, exception);
+        } finally {
+            endDelivery();
+        }
+    }
+
+    /**
+     * Completes this future with an {@link AbortedException} when the task 
+     * could not be run for a reason other than cancellation.
+     * 
+     * @param cause the reason why the task could not be run.
+     */
+    void abort(Throwable cause) {
+        complete(new AbortedException(cause), ABORTED);
+    }
+
+    /**
+     * Completes this future with an {@link AbortedException} when the 
+     * executor rejected the task.
+     * 
+     * @param cause the exception thrown by the executor.
+     */
+    void reject(RejectedExecutionException cause) {
+        if (metrics != null) {
+            metrics.taskRejected();
+        }
+        complete(rejected(cause), ABORTED);
+    }
+
+    /**
+     * Rejects the task unless it has started, for a batch that the executor
+     * accepted only in part, or a task that is dropped while it waits.
+     * 
+     * @return true if the task was rejected.
+     */
+    boolean rejectUnlessStarted(RejectedExecutionException cause) {
+        if (!complete(rejected(cause), ABORTED, SUBMITTED)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.taskRejected();
+        }
+        return true;
+    }
+
+    private static AbortedException rejected(RejectedExecutionException cause) {
+        return new AbortedException(cause.toString(), cause, 
+                cause instanceof ManagedRejectedExecutionException? 
+                    ((ManagedRejectedExecutionException) cause).getReason(): RejectionReason.OTHER);
+    }
+
+    @Override
+    public void run() {
+        if (executor != null) {
+            executor.taken(this);
+        }
+        if (!start()) {
+            return;
+        }
+        try {
+            V result;
+            try {
+                result = call();
+            } catch (Throwable e) {
+                ran(true);
+                setException(e);
+                return;
+            }
+            ran(false);
+            set(result);
+        } finally {
+            finishRun();
+        }
+    }
+
+    /**
+     * Runs the task without completing the future, for periodic tasks.
+     * 
+     * @return true if the task ran successfully and can be run again, false
+     *         if it failed or the future was completed while it ran.
+     */
+    boolean runAndReset() {
+        if (!start()) {
+            return false;
+        }
+        try {
+            try {
+                call();
+            } catch (Throwable e) {
+                ran(true);
+                setException(e);
+                return false;
+            }
+            ran(false);
+            int s;
+            while (((s = state) & PHASE) == RUNNING) {
+                if (STATE.compareAndSet(this, s, (s & ~PHASE) | SUBMITTED)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            finishRun();
+        }
+    }
+
+    /**
+     * Moves the task to the running phase and notifies the listener that it
+     * is starting.
+     * 
+     * @return true if the task should be run, false if it was already 
+     *         running or completed, or was cancelled by {@code taskStarting}.
+     */
+    private boolean start() {
+        int s;
+        do {
+            s = state;
+            int phase = s & PHASE;
+            if (phase != NEW && phase != SUBMITTED) {
+                return false;
+            }
+            if ((s & ADMITTED) != 0 && shouldDrop()) {
+                rejectUnlessStarted(new ManagedRejectedExecutionException(RejectionReason.QUEUE_DELAY, 
+                        "dropped after waiting longer than the target queue delay"));
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, s, 
+                (s & ~(PHASE | PENDING | ADMITTED)) | RUNNING | (taskListener == null? 0: DELIVERING)));
+        if ((s & ADMITTED) != 0) {
+            admission.released();
+        }
+        if (metrics != null) {
+            startNanos = System.nanoTime();
+            metrics.taskStarted((s & PENDING) == 0? 0L: startNanos - queuedNanos);
+        }
+        runner = Thread.currentThread();
+        if (taskListener != null) {
+            RuntimeException failure = null;
+            try {
+                taskListener.taskStarting(this, executor, task);
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                endDelivery();
+            }
+            if (failure != null) {
+                runner = null;
+                abort(failure);
+                return false;
+            }
+        }
+        // re-read after publishing the runner, so that a cancel either sees 
+        // the runner to interrupt it or is seen here
+        if ((state & PHASE) != RUNNING) {
+            runner = null;
+            return false;
+        }
+        ThreadStatistics statistics = ThreadStatistics.current();
+        if (statistics != null 
+                && statistics.taskStarting(ManagedExecutors.getExecutionProperty(task, ExecutionProperty.IDENTITY_NAME))) {
+            threadStatistics = statistics;
+        }
+        return true;
+    }
+
+    /**
+     * Asks the admission policy whether the task is dropped because of the
+     * time it waited.
+     */
+    private boolean shouldDrop() {
+        long now = System.nanoTime();
+        return admission.shouldDrop(now - queuedNanos, now);
+    }
+
+    private V call() throws Exception {
+        ThreadContextRestorer[] restorers = context.begin();
+        try {
+            return callable.call();
+        } finally {
+            ThreadContext.end(restorers);
+        }
+    }
+
+    private void ran(boolean failed) {
+        if (metrics != null) {
+            metrics.taskCompleted(System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    private void finishRun() {
+        if (threadStatistics != null) {
+            threadStatistics.taskEnded();
+            threadStatistics = null;
+        }
+        runner = null;
+        // let cancel(true) finish interrupting this thread before it moves
+        // on to another task
+        while ((state & PHASE) == INTERRUPTING) {
+            Thread.yield();
+        }
+    }
+
+    void set(V value) {
+        complete(value, NORMAL);
+    }
+
+    void setException(Throwable exception) {
+        complete(exception, EXCEPTIONAL);
+    }
+
+    private boolean complete(Object result, int finalPhase) {
+        return complete(result, finalPhase, RUNNING);
+    }
+
+    /**
+     * Moves the future to a final phase, through a transient completing 
+     * phase while the outcome is stored.
+     * 
+     * @param maxPhase the latest phase from which the future can be completed.
+     */
+    private boolean complete(Object result, int finalPhase, int maxPhase) {
+        int s;
+        do {
+            s = state;
+            if ((s & PHASE) > maxPhase) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, s, (s & ~(PHASE | PENDING | ADMITTED)) | COMPLETING));
+        recordEnd(s, finalPhase);
+        outcome = result;
+        do {
+            s = state;
+        } while (!STATE.compareAndSet(this, s, (s & ~PHASE) | finalPhase));
+        completed(s);
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        int s;
+        do {
+            s = state;
+            if ((s & PHASE) > RUNNING) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, s, 
+                (s & ~(PHASE | PENDING | ADMITTED)) | (mayInterruptIfRunning? INTERRUPTING: CANCELLED)));
+        recordEnd(s, CANCELLED);
+        if (mayInterruptIfRunning) {
+            try {
+                Thread thread = runner;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            } finally {
+                int t;
+                do {
+                    t = state;
+                } while (!STATE.compareAndSet(this, t, (t & ~PHASE) | INTERRUPTED));
+            }
+        }
+        completed(s);
+        return true;
+    }
+
+    /**
+     * Reports to the metrics a completion that did not follow a run of the
+     * task, and releases its place in the admission bound.
+     * 
+     * @param previous the state when the future was completed.
+     */
+    private void recordEnd(int previous, int finalPhase) {
+        if ((previous & ADMITTED) != 0) {
+            admission.released();
+        }
+        boolean pending = (previous & PENDING) != 0;
+        if (metrics != null && (pending || finalPhase >= ABORTED)) {
+            metrics.taskAborted(pending);
+        }
+    }
+
+    /**
+     * Called once when the future completes, before the threads waiting for
+     * the result are woken. Subclasses can override it to release what the
+     * task holds.
+     */
+    void done() {
+    }
+
+    /**
+     * Wakes the threads waiting for the result and, unless another thread 
+     * was calling the listener when the future completed, delivers the 
+     * completion events.
+     * 
+     * @param previous the state just before the final phase was set.
+     */
+    private void completed(int previous) {
+        done();
+        Waiter waiter;
+        while ((waiter = waiters) != null) {
+            if (WAITERS.compareAndSet(this, waiter, null)) {
+                for (; waiter != null; waiter = waiter.next) {
+                    Thread thread = waiter.thread;
+                    if (thread != null) {
+                        waiter.thread = null;
+                        LockSupport.unpark(thread);
+                    }
+                }
+                break;
+            }
+        }
+        if ((previous & DELIVERING) == 0) {
+            deliverCompletion();
+        }
+    }
+
+    /**
+     * Marks that the current thread is calling the listener, unless the 
+     * future has completed.
+     * 
+     * @param phase the phase to move a new or submitted task to, or -1 to
+     *              leave the phase unchanged. A task moved to the submitted
+     *              phase becomes pending.
+     * @return the previous state if the listener should be called, or -1 if
+     *         the future has completed.
+     */
+    private int beginDelivery(int phase) {
+        int s;
+        int next;
+        do {
+            s = state;
+            int current = s & PHASE;
+            if (current >= COMPLETING) {
+                return -1;
+            }
+            next = phase >= 0 && current <= SUBMITTED? (s & ~PHASE) | phase: s;
+            if (phase == SUBMITTED && current <= SUBMITTED) {
+                next |= PENDING;
+            }
+            if (taskListener != null) {
+                next |= DELIVERING;
+            }
+        } while (!STATE.compareAndSet(this, s, next));
+        return s;
+    }
+
+    /**
+     * Marks that the current thread has finished calling the listener, and
+     * delivers the completion events if the future completed meanwhile.
+     */
+    private void endDelivery() {
+        int s;
+        do {
+            s = state;
+            if ((s & DELIVERING) == 0) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, s, s & ~DELIVERING));
+        if ((s & PHASE) > COMPLETING) {
+            deliverCompletion();
+        }
+    }
+
+    private void deliverCompletion() {
+        if (taskListener == null) {
+            return;
+        }
+        int phase = state & PHASE;
+        Throwable exception = null;
+        if (phase >= CANCELLED) {
+            exception = new CancellationException();
+            taskListener.taskAborted(this, executor, task, exception);
+        } else if (phase != NORMAL) {
+            exception = (Throwable) outcome;
+            if (phase == ABORTED || exception instanceof SkippedException) {
+                taskListener.taskAborted(this, executor, task, exception);
+            }
+        }
+        taskListener.taskDone(this, executor, task, exception);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return (state & PHASE) >= CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return (state & PHASE) > COMPLETING;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        int phase = state & PHASE;
+        if (phase <= COMPLETING) {
+            phase = awaitDone(false, 0L);
+        }
+        return report(phase);
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+        int phase = state & PHASE;
+        if (phase <= COMPLETING && (phase = awaitDone(true, unit.toNanos(timeout))) <= COMPLETING) {
+            throw new TimeoutException();
+        }
+        return report(phase);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V report(int phase) throws ExecutionException {
+        if (phase == NORMAL) {
+            return (V) outcome;
+        }
+        if (phase >= CANCELLED) {
+            throw new CancellationException();
+        }
+        throw new ExecutionException((Throwable) outcome);
+    }
+
+    /**
+     * Waits for the future to complete.
+     * 
+     * @return the phase on completion, or on timeout.
+     */
+    private int awaitDone(boolean timed, long nanos) throws InterruptedException {
+        long deadline = timed? System.nanoTime() + nanos: 0L;
+        Waiter waiter = null;
+        boolean queued = false;
+        while (true) {
+            if (Thread.interrupted()) {
+                removeWaiter(waiter);
+                throw new InterruptedException();
+            }
+            int phase = state & PHASE;
+            if (phase > COMPLETING) {
+                if (waiter != null) {
+                    waiter.thread = null;
+                }
+                return phase;
+            } else if (phase == COMPLETING) {
+                Thread.yield();
+            } else if (waiter == null) {
+                waiter = new Waiter();
+            } else if (!queued) {
+                waiter.next = waiters;
+                queued = WAITERS.compareAndSet(this, waiter.next, waiter);
+            } else if (timed) {
+                nanos = deadline - System.nanoTime();
+                if (nanos <= 0L) {
+                    removeWaiter(waiter);
+                    return state & PHASE;
+                }
+                LockSupport.parkNanos(this, nanos);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Unlinks a waiter that timed out or was interrupted, along with any 
+     * other waiters that are no longer waiting.
+     */
+    private void removeWaiter(Waiter node) {
+        if (node == null) {
+            return;
+        }
+        node.thread = null;
+        retry:
+        while (true) {
+            for (Waiter pred = null, q = waiters, next; q != null; q = next) {
+                next = q.next;
+                if (q.thread != null) {
+                    pred = q;
+                } else if (pred != null) {
+                    pred.next = next;
+                    if (pred.thread == null) {
+                        continue retry;
+                    }
+                } else if (!WAITERS.compareAndSet(this, q, next)) {
+                    continue retry;
+                }
+            }
+            break;
+        }
+    }
+
+    private static ManagedTaskListener listenerOf(Object task) {
+        if (task instanceof ManagedTask) {
+            return ((ManagedTask) task).getManagedTaskListener();
+        }
+        return null;
+    }
+
+    private static final class Waiter {
+
+        volatile Thread thread = Thread.currentThread();
+        volatile Waiter next;
+    }
+}
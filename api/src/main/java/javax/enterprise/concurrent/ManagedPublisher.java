@@ -0,0 +1,306 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Publisher} whose items are produced by tasks that run on a
+ * {@link ManagedExecutorService}.
+ * <p>
+ * The items come from an {@code Iterator} that is opened for each 
+ * subscriber by calling the source {@code Callable}, for instance to 
+ * run a query and iterate over its result set. The source is called, and
+ * the iterator is advanced, only by managed tasks that the publisher 
+ * submits to the executor, and only as far as the subscriber has 
+ * requested items with {@link Flow.Subscription#request(long) request(n)}.
+ * When the demand of the subscriber is met the task ends, and no thread 
+ * is held and no item is buffered until more items are requested; so a 
+ * slow subscriber pauses the producer rather than letting the items pile
+ * up in memory. A task delivers at most {@link #BATCH_SIZE} items before
+ * it resubmits itself, so a subscriber with unbounded demand does not 
+ * keep a thread of the executor from other tasks.
+ * <p>
+ * If the executor is an {@link AbstractManagedExecutorService}, the 
+ * context of the thread that subscribes is captured once and every task 
+ * of the subscription runs in it. The execution properties of the source,
+ * if it implements {@link ManagedTask}, apply to these tasks, so for 
+ * example a source with {@link ManagedTask#LONGRUNNING_HINT} set is 
+ * iterated on the threads for long-running tasks. Its 
+ * {@link ManagedTaskListener}, if any, is not notified.
+ * <p>
+ * The subscriber receives {@code onError} if the source or the iterator 
+ * throws an exception or returns null, or if the executor rejects a task.
+ * If the iterator implements {@link AutoCloseable}, it is closed when 
+ * the subscription completes, fails or is cancelled; if closing it after 
+ * the last item fails, the subscriber receives {@code onError} rather 
+ * than {@code onComplete}.
+ *
+ * @param <T> the type of the items.
+ * @since 1.1
+ */
+public class ManagedPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * The largest number of items that one task of a subscription delivers
+     * before it resubmits itself.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    private final ManagedExecutorService executor;
+    private final Callable<? extends Iterator<? extends T>> source;
+
+    /**
+     * Creates a publisher of the items of the iterators returned by 
+     * {@code source}.
+     * 
+     * @param executor the executor that runs the source.
+     * @param source called once for each subscriber, by a task running on
+     *               {@code executor}, to return the iterator of the items.
+     * @throws java.lang.NullPointerException if either argument is null.
+     */
+    public ManagedPublisher(ManagedExecutorService executor, Callable<? extends Iterator<? extends T>> source) {
+        if (executor == null || source == null) {
+            throw new NullPointerException();
+        }
+        this.executor = executor;
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        ThreadContext context = executor instanceof AbstractManagedExecutorService?
+                ((AbstractManagedExecutorService) executor).captureContext(source): null;
+        new Subscription<T>(this, subscriber, context).start();
+    }
+
+    /**
+     * The state of a subscriber, which is also the task that iterates the 
+     * source for it.
+     * <p>
+     * Only the thread that moves {@code wip} from zero runs the task, or 
+     * signals the subscriber, until {@code wip} falls back to zero; requests
+     * and cancellation from other threads only increment it, so the 
+     * signals are never concurrent.
+     */
+    private static final class Subscription<T> implements Flow.Subscription, Runnable, ManagedTask {
+
+        private final ManagedPublisher<T> publisher;
+        private final Flow.Subscriber<? super T> subscriber;
+        // the context of the tasks, or null to capture it per task
+        private final ThreadContext context;
+        private final AtomicLong demand = new AtomicLong();
+        // held by onSubscribe until it returns
+        private final AtomicInteger wip = new AtomicInteger(1);
+        private volatile boolean cancelled;
+        // set if the subscriber requested a number of items that is not positive
+        private volatile IllegalArgumentException invalidRequest;
+        // accessed only by the thread that holds wip
+        private Iterator<? extends T> iterator;
+        private boolean done;
+
+        Subscription(ManagedPublisher<T> publisher, Flow.Subscriber<? super T> subscriber, ThreadContext context) {
+            this.publisher = publisher;
+            this.subscriber = subscriber;
+            this.context = context;
+        }
+
+        void start() {
+            try {
+                subscriber.onSubscribe(this);
+            } finally {
+                if (wip.decrementAndGet() != 0) {
+                    dispatch();
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request(" + n + ") is not positive");
+                cancelled = true;
+            } else {
+                long d;
+                do {
+                    d = demand.get();
+                } while (!demand.compareAndSet(d, d + n < 0? Long.MAX_VALUE: d + n));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                dispatch();
+            }
+        }
+
+        /**
+         * Submits this subscription to the executor, by the thread that 
+         * holds {@code wip}.
+         */
+        private void dispatch() {
+            try {
+                if (context != null) {
+                    ((AbstractManagedExecutorService) publisher.executor).execute(this, context);
+                } else {
+                    publisher.executor.execute(this);
+                }
+            } catch (RejectedExecutionException e) {
+                cancelled = true;
+                fail(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = wip.get();
+            for (;;) {
+                if (!done) {
+                    if (cancelled) {
+                        done = true;
+                        closeQuietly();
+                        if (invalidRequest != null) {
+                            subscriber.onError(invalidRequest);
+                        }
+                    } else if (demand.get() > 0 && !emit()) {
+                        // the batch is delivered and demand remains
+                        dispatch();
+                        return;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Delivers up to {@link #BATCH_SIZE} items within the demand.
+         * 
+         * @return false if the batch is full and more items are requested.
+         */
+        private boolean emit() {
+            int emitted = 0;
+            try {
+                if (iterator == null) {
+                    iterator = publisher.source.call();
+                    if (iterator == null) {
+                        throw new NullPointerException("source returned null");
+                    }
+                }
+                while (!cancelled && demand.get() > 0) {
+                    if (!iterator.hasNext()) {
+                        // a failure to close is reported instead of completion
+                        close();
+                        done = true;
+                        subscriber.onComplete();
+                        return true;
+                    }
+                    if (emitted == BATCH_SIZE) {
+                        return false;
+                    }
+                    T item = iterator.next();
+                    if (item == null) {
+                        throw new NullPointerException("iterator returned null");
+                    }
+                    demand.decrementAndGet();
+                    emitted++;
+                    subscriber.onNext(item);
+                }
+            } catch (Exception e) {
+                if (!done) {
+                    fail(e);
+                }
+            }
+            return true;
+        }
+
+        private void fail(Throwable failure) {
+            done = true;
+            closeQuietly();
+            subscriber.onError(failure);
+        }
+
+        private void close() throws Exception {
+            Iterator<? extends T> it = iterator;
+            iterator = null;
+            if (it instanceof AutoCloseable) {
+                ((AutoCloseable) it).close();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (Exception e) {
+                // the subscriber is already told the outcome
+            }
+        }
+
+        @Override
+        public Map<String, String> getExecutionProperties() {
+            Object source = publisher.source;
+            return source instanceof ManagedTask? ((ManagedTask) source).getExecutionProperties(): null;
+        }
+
+        @Override
+        public ManagedTaskListener getManagedTaskListener() {
+            return null;
+        }
+    }
+}
@@ -66,6 +66,87 @@ public interface ManagedTask {
    */
   public static final String LONGRUNNING_HINT = "javax.enterprise.concurrent.LONGRUNNING_HINT";
   
+  /**
+   * Execution property to be returned in {@link #getExecutionProperties()} or
+   * {@link ContextService#createContextualProxy(java.lang.Object, java.util.Map, java.lang.Class) ContextService.createContextualProxy()}
+   * to provide hint about how urgently the task should run relative to other
+   * tasks that are waiting to run on the same executor.
+   * Java&trade; EE Product Providers may make use of this hint value to 
+   * decide the order in which waiting tasks are run.
+   * Valid values are integers from {@link Thread#MIN_PRIORITY} to 
+   * {@link Thread#MAX_PRIORITY}; tasks with a higher value are preferred.
+   * The default if unspecified is {@link Thread#NORM_PRIORITY}.
+   * 
+   * @since 1.1
+   */
+  public static final String PRIORITY = "javax.enterprise.concurrent.PRIORITY";
+  
+  /**
+   * Execution property to be returned in {@link #getExecutionProperties()} 
+   * to tell a {@link ManagedScheduledExecutorService} what to do with the 
+   * runs of a task scheduled with a {@link Trigger} that are missed, 
+   * because the executor or the server was paused or too busy to run them 
+   * on time. A run is missed when it is due more than 
+   * {@link #MISFIRE_THRESHOLD} milliseconds ago.
+   * Valid values are:
+   * <p>
+   * "FIRE_ALL" (the default if unspecified) - Each missed run is run, as soon
+   * as possible.
+   * <p>
+   * "FIRE_ONCE" - A missed run is run once, as soon as possible, and the runs
+   * after it that are also missed are skipped together.
+   * <p>
+   * "SKIP_TO_NEXT" - A missed run is skipped, together with the runs after it
+   * that are also missed, and the task next runs at its first run that is 
+   * not missed.
+   * <p>
+   * Runs that are skipped together are reported once, with a 
+   * {@link MissedRunsException}, rather than once per run.
+   * 
+   * @since 1.1
+   */
+  public static final String MISFIRE_POLICY = "javax.enterprise.concurrent.MISFIRE_POLICY";
+  
+  /**
+   * Execution property to be returned in {@link #getExecutionProperties()} 
+   * to provide the number of milliseconds after which a run of a task 
+   * scheduled with a {@link Trigger} is missed, for its 
+   * {@link #MISFIRE_POLICY}. The default if unspecified is 1000.
+   * 
+   * @since 1.1
+   */
+  public static final String MISFIRE_THRESHOLD = "javax.enterprise.concurrent.MISFIRE_THRESHOLD";
+  
+  /**
+   * Execution property to be returned in {@link #getExecutionProperties()} 
+   * to provide the greatest number of milliseconds by which a 
+   * {@link ManagedScheduledExecutorService} may delay each run of a task 
+   * scheduled with a {@link Trigger}, so that tasks whose triggers return 
+   * the same times, such as every five minutes on the minute, do not all
+   * run at once. The run times that the trigger returns, and that it is 
+   * given back as the scheduled start of the {@link LastExecution}, are not
+   * changed. The default if unspecified is 0, for no delay.
+   * 
+   * @since 1.1
+   */
+  public static final String JITTER = "javax.enterprise.concurrent.JITTER";
+  
+  /**
+   * Execution property to be returned in {@link #getExecutionProperties()} 
+   * to tell how the delay of the runs of a task with a {@link #JITTER} is 
+   * chosen. Valid values are:
+   * <p>
+   * "IDENTITY" (the default if unspecified) - Each run is delayed by the same
+   * amount, which is derived from the {@link #IDENTITY_NAME} of the task, so
+   * that the task runs at the same offset on every server and after every
+   * restart. Tasks without an identity name are delayed as for "RANDOM".
+   * <p>
+   * "RANDOM" - Each run is delayed by a random amount.
+   * 
+   * @since 1.1
+   */
+  public static final String JITTER_MODE = "javax.enterprise.concurrent.JITTER_MODE";
+  
   /**
    * Execution property to be returned in {@link #getExecutionProperties()} or
    * {@link ContextService#createContextualProxy(java.lang.Object, java.util.Map, java.lang.Class) ContextService.createContextualProxy()}
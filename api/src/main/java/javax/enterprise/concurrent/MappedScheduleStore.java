@@ -0,0 +1,684 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+import javax.enterprise.concurrent.spi.ScheduleStore;
+
+/**
+ * A {@link ScheduleStore} that journals schedules to an append-only, 
+ * memory-mapped file.
+ * <p>
+ * Every change is appended to the mapped file as a record, so adding a 
+ * schedule, recording a run or removing a schedule is a copy into memory 
+ * with no system call. The records survive a crash of the process as soon
+ * as they are written; {@link #force()} also writes them to the storage 
+ * device. Each record carries a CRC-32 checksum, and a record that was 
+ * only partly written when the process or the system stopped ends the 
+ * journal.
+ * <p>
+ * When the store is opened, the file is read once, sequentially, to 
+ * rebuild the index of the schedules that have not been removed, so the 
+ * time to restore the schedules is dominated by reading the file. The 
+ * index keeps the position of each schedule in the file and the times of
+ * its last run, not the schedule itself.
+ * <p>
+ * Records of removed schedules and of runs that were superseded are 
+ * garbage. When there is more garbage than live data, and more than the 
+ * compaction threshold, a compaction thread writes the live records to a 
+ * new file, which then replaces the journal with an atomic rename. 
+ * {@link #compact()} does so on demand. Changes are only blocked while 
+ * the live records are copied and while the records appended in the 
+ * meantime are copied after them, not while the new file is written to 
+ * the storage device.
+ * <p>
+ * The file is limited to 2 GiB. Instances are thread-safe.
+ * <p>
+ * Example:
+ * <pre>
+ * MappedScheduleStore store = new MappedScheduleStore(Paths.get("schedules.journal"));
+ * DefaultManagedScheduledExecutorService executor = DefaultManagedScheduledExecutorService.builder(8, 4)
+ *     .threadFactory(threadFactory)
+ *     .store(store)
+ *     .build();
+ * executor.restoreSchedules();
+ * </pre>
+ *
+ * @since 1.1
+ */
+public class MappedScheduleStore implements ScheduleStore, Closeable {
+
+    private static final int MAGIC = 0x4A534A31;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // length and checksum, followed by the body: type, id and data
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = RECORD_HEADER_SIZE + 1 + 8;
+    private static final int EXECUTED_SIZE = RECORD_OVERHEAD + 3 * 8;
+    private static final byte ADDED = 1;
+    private static final byte EXECUTED = 2;
+    private static final byte REMOVED = 3;
+    private static final int MIN_MAPPING_SIZE = 1 << 16;
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 1L << 20;
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        // a mapping is otherwise only released when its buffer is collected
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException e) {
+            unsafe = null;
+        } catch (RuntimeException e) {
+            unsafe = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = unsafe == null? null: invokeCleaner;
+    }
+
+    private final Path path;
+    private final long compactionThreshold;
+    private final ThreadFactory threadFactory;
+    // held for the whole of a compaction, which only holds the monitor of 
+    // the store while it copies records
+    private final Object compactionLock = new Object();
+    // the schedules that have not been removed, in the order they were added
+    private final Map<Long, Entry> schedules = new LinkedHashMap<Long, Entry>();
+    private final CRC32 checksum = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    // the size of the records that are needed to restore the schedules
+    private long liveBytes;
+    private long nextId;
+    private boolean closed;
+    private Thread compactionThread;
+
+    /**
+     * Opens or creates a journal with a compaction threshold of one MiB.
+     * 
+     * @param path the journal file.
+     * @throws IOException if the file cannot be opened or created, or is 
+     *         not a journal.
+     */
+    public MappedScheduleStore(Path path) throws IOException {
+        this(path, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens or creates a journal, which is compacted by a daemon thread.
+     * 
+     * @param path the journal file.
+     * @param compactionThreshold the number of bytes of garbage below which
+     *                            the journal is not compacted.
+     * @throws IOException if the file cannot be opened or created, or is 
+     *         not a journal.
+     * @throws IllegalArgumentException if {@code compactionThreshold} is 
+     *         negative.
+     */
+    public MappedScheduleStore(Path path, long compactionThreshold) throws IOException {
+        this(path, compactionThreshold, new CompactionThreadFactory());
+    }
+
+    /**
+     * Opens or creates a journal.
+     * 
+     * @param path the journal file.
+     * @param compactionThreshold the number of bytes of garbage below which
+     *                            the journal is not compacted.
+     * @param threadFactory the factory used to create the compaction 
+     *                      thread, when the journal first needs to be 
+     *                      compacted.
+     * @throws IOException if the file cannot be opened or created, or is 
+     *         not a journal.
+     * @throws IllegalArgumentException if {@code compactionThreshold} is 
+     *         negative.
+     * @throws NullPointerException if {@code threadFactory} is null.
+     */
+    public MappedScheduleStore(Path path, long compactionThreshold, ThreadFactory threadFactory) 
+            throws IOException {
+        if (compactionThreshold < 0) {
+            throw new IllegalArgumentException("compactionThreshold " + compactionThreshold);
+        }
+        if (threadFactory == null) {
+            throw new NullPointerException();
+        }
+        this.path = path;
+        this.compactionThreshold = compactionThreshold;
+        this.threadFactory = threadFactory;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, 
+                StandardOpenOption.CREATE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large for a journal");
+            }
+            map(Math.max((int) size, MIN_MAPPING_SIZE));
+            if (size == 0) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                position = HEADER_SIZE;
+            } else if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException(path + " is not a schedule journal");
+            } else {
+                scan();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the journal, rebuilding the index, and discards a partly 
+     * written record at its end.
+     */
+    private void scan() {
+        int limit = buffer.capacity();
+        int p = HEADER_SIZE;
+        while (p <= limit - RECORD_OVERHEAD) {
+            int length = buffer.getInt(p);
+            if (length < RECORD_OVERHEAD - RECORD_HEADER_SIZE || length > limit - p - RECORD_HEADER_SIZE
+                    || buffer.getInt(p + 4) != checksum(buffer, p + RECORD_HEADER_SIZE, length)) {
+                break;
+            }
+            int size = RECORD_HEADER_SIZE + length;
+            long id = buffer.getLong(p + RECORD_HEADER_SIZE + 1);
+            byte type = buffer.get(p + RECORD_HEADER_SIZE);
+            if (type == ADDED) {
+                schedules.put(id, new Entry(id, p, size));
+                liveBytes += size;
+                nextId = Math.max(nextId, id + 1);
+            } else if (type == EXECUTED) {
+                Entry entry = schedules.get(id);
+                if (entry != null) {
+                    if (!entry.hasRun()) {
+                        liveBytes += EXECUTED_SIZE;
+                    }
+                    int data = p + RECORD_OVERHEAD;
+                    entry.scheduledStart = buffer.getLong(data);
+                    entry.runStart = buffer.getLong(data + 8);
+                    entry.runEnd = buffer.getLong(data + 16);
+                }
+            } else if (type == REMOVED) {
+                Entry entry = schedules.remove(id);
+                if (entry != null) {
+                    liveBytes -= entry.liveSize();
+                }
+            } else {
+                break;
+            }
+            p += size;
+        }
+        position = p;
+        if (p <= limit - 4 && buffer.getInt(p) != 0) {
+            // so that the rest of a torn record is never read as records
+            for (int i = p; i < limit; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    @Override
+    public synchronized long add(byte[] schedule) {
+        ensureOpen();
+        int size = RECORD_OVERHEAD + schedule.length;
+        int p = reserve(size);
+        long id = nextId++;
+        buffer.put(p + RECORD_HEADER_SIZE, ADDED);
+        buffer.putLong(p + RECORD_HEADER_SIZE + 1, id);
+        ByteBuffer data = buffer.duplicate();
+        data.position(p + RECORD_OVERHEAD);
+        data.put(schedule);
+        commit(buffer, p, size);
+        schedules.put(id, new Entry(id, p, size));
+        liveBytes += size;
+        return id;
+    }
+
+    @Override
+    public synchronized void executed(long id, long scheduledStart, long runStart, long runEnd) {
+        ensureOpen();
+        Entry entry = schedules.get(id);
+        if (entry == null) {
+            return;
+        }
+        int p = reserve(EXECUTED_SIZE);
+        writeExecuted(buffer, p, id, scheduledStart, runStart, runEnd);
+        if (!entry.hasRun()) {
+            liveBytes += EXECUTED_SIZE;
+        }
+        entry.scheduledStart = scheduledStart;
+        entry.runStart = runStart;
+        entry.runEnd = runEnd;
+        requestCompactionIfWasteful();
+    }
+
+    @Override
+    public synchronized void remove(long id) {
+        ensureOpen();
+        Entry entry = schedules.remove(id);
+        if (entry == null) {
+            return;
+        }
+        int p = reserve(RECORD_OVERHEAD);
+        buffer.put(p + RECORD_HEADER_SIZE, REMOVED);
+        buffer.putLong(p + RECORD_HEADER_SIZE + 1, id);
+        commit(buffer, p, RECORD_OVERHEAD);
+        liveBytes -= entry.liveSize();
+        requestCompactionIfWasteful();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The visitor is called without holding the lock of the store, so it 
+     * can add, update and remove schedules. Schedules that are removed 
+     * while the store is restored are not visited.
+     */
+    @Override
+    public void restore(Visitor visitor) {
+        List<Entry> entries;
+        synchronized (this) {
+            ensureOpen();
+            entries = new ArrayList<Entry>(schedules.values());
+        }
+        for (Entry entry : entries) {
+            byte[] schedule;
+            long scheduledStart;
+            long runStart;
+            long runEnd;
+            synchronized (this) {
+                if (closed || schedules.get(entry.id) != entry) {
+                    continue;
+                }
+                schedule = new byte[entry.size - RECORD_OVERHEAD];
+                ByteBuffer data = buffer.duplicate();
+                data.position(entry.offset + RECORD_OVERHEAD);
+                data.get(schedule);
+                scheduledStart = entry.scheduledStart;
+                runStart = entry.runStart;
+                runEnd = entry.runEnd;
+            }
+            visitor.visit(entry.id, schedule, scheduledStart, runStart, runEnd);
+        }
+    }
+
+    /**
+     * Returns the number of schedules that have not been removed.
+     * 
+     * @return the number of schedules.
+     */
+    public synchronized int size() {
+        return schedules.size();
+    }
+
+    /**
+     * Returns the number of bytes of the journal that are in use.
+     * 
+     * @return the size of the header and of the records.
+     */
+    public synchronized long getJournalSize() {
+        return position;
+    }
+
+    /**
+     * Writes the live records to a new file, which replaces the journal.
+     * <p>
+     * Schedules can be added, updated and removed while the new file is 
+     * written to the storage device; the records of these changes are 
+     * copied to the new file before it replaces the journal.
+     * 
+     * @throws UncheckedIOException if the new file cannot be written or 
+     *         renamed, in which case the journal is unchanged.
+     * @throws IllegalStateException if the store is closed.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+            FileChannel target = null;
+            MappedByteBuffer out = null;
+            boolean replaced = false;
+            try {
+                int p = HEADER_SIZE;
+                // the records from here on are appended to the new file 
+                // after the live ones
+                int copied;
+                synchronized (this) {
+                    ensureOpen();
+                    target = FileChannel.open(compacted, StandardOpenOption.READ, StandardOpenOption.WRITE, 
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                    out = target.map(FileChannel.MapMode.READ_WRITE, 0L, 
+                            Math.max(HEADER_SIZE + liveBytes, MIN_MAPPING_SIZE));
+                    out.putInt(0, MAGIC);
+                    out.putInt(4, VERSION);
+                    ByteBuffer in = buffer.duplicate();
+                    for (Entry entry : schedules.values()) {
+                        in.limit(entry.offset + entry.size).position(entry.offset);
+                        out.position(p);
+                        out.put(in);
+                        entry.compactedOffset = p;
+                        p += entry.size;
+                        if (entry.hasRun()) {
+                            writeExecuted(out, p, entry.id, entry.scheduledStart, entry.runStart, entry.runEnd);
+                            p += EXECUTED_SIZE;
+                        }
+                    }
+                    copied = position;
+                }
+                out.force();
+                synchronized (this) {
+                    ensureOpen();
+                    int appended = position - copied;
+                    if (appended > out.capacity() - p) {
+                        MappedByteBuffer previous = out;
+                        out = target.map(FileChannel.MapMode.READ_WRITE, 0L, 
+                                Math.min(Math.max((long) p + appended, 2L * out.capacity()), Integer.MAX_VALUE));
+                        unmap(previous);
+                    }
+                    ByteBuffer in = buffer.duplicate();
+                    in.limit(position).position(copied);
+                    out.position(p);
+                    out.put(in);
+                    // only the pages of the appended records are written
+                    out.force();
+                    Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE);
+                    replaced = true;
+                    for (Entry entry : schedules.values()) {
+                        // entries added in the meantime keep their distance
+                        // from the appended records
+                        entry.offset = entry.offset < copied? entry.compactedOffset: p + entry.offset - copied;
+                    }
+                    // the open channel now refers to the journal
+                    channel.close();
+                    unmap(buffer);
+                    channel = target;
+                    buffer = out;
+                    position = p + appended;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (!replaced) {
+                    discard(target, out, compacted);
+                }
+            }
+        }
+    }
+
+    private void discard(FileChannel target, MappedByteBuffer out, Path compacted) {
+        if (out != null) {
+            unmap(out);
+        }
+        try {
+            if (target != null) {
+                target.close();
+            }
+            Files.deleteIfExists(compacted);
+        } catch (IOException e) {
+            // the file is truncated by the next compaction
+        }
+    }
+
+    /**
+     * Writes the records to the storage device, so that they survive a 
+     * crash of the system.
+     * 
+     * @throws IllegalStateException if the store is closed.
+     */
+    public synchronized void force() {
+        ensureOpen();
+        buffer.force();
+    }
+
+    /**
+     * Writes the records to the storage device and closes the journal.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (compactionThread != null) {
+            LockSupport.unpark(compactionThread);
+        }
+        buffer.force();
+        unmap(buffer);
+        buffer = null;
+        channel.close();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("schedule store is closed");
+        }
+    }
+
+    private boolean isWasteful() {
+        long garbage = position - HEADER_SIZE - liveBytes;
+        return garbage > compactionThreshold && garbage > liveBytes;
+    }
+
+    /**
+     * Wakes up the compaction thread, starting it if needed, when the 
+     * journal is wasteful.
+     */
+    private void requestCompactionIfWasteful() {
+        if (!isWasteful()) {
+            return;
+        }
+        if (compactionThread == null) {
+            compactionThread = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    compactWhileWasteful();
+                }
+            });
+            compactionThread.start();
+        } else {
+            LockSupport.unpark(compactionThread);
+        }
+    }
+
+    private void compactWhileWasteful() {
+        while (true) {
+            boolean wasteful;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                wasteful = isWasteful();
+            }
+            if (wasteful) {
+                try {
+                    compact();
+                    continue;
+                } catch (UncheckedIOException e) {
+                    // tried again when the journal grows
+                    uncaught(e);
+                } catch (IllegalStateException e) {
+                    // closed
+                    return;
+                }
+            }
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Returns the position of a new record of the given size, extending 
+     * the mapping if needed.
+     */
+    private int reserve(int size) {
+        if (size > buffer.capacity() - position) {
+            long needed = (long) position + size;
+            if (needed > Integer.MAX_VALUE) {
+                throw new UncheckedIOException(new IOException(path + " is full"));
+            }
+            MappedByteBuffer previous = buffer;
+            try {
+                map((int) Math.min(Math.max(needed, 2L * buffer.capacity()), Integer.MAX_VALUE));
+                unmap(previous);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int p = position;
+        position += size;
+        return p;
+    }
+
+    private void map(int size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+    }
+
+    /**
+     * Releases a mapping that is no longer used. Every use of the buffers 
+     * of the journal holds the monitor of the store, so none is in use.
+     */
+    private static void unmap(MappedByteBuffer mapping) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, mapping);
+        } catch (ReflectiveOperationException e) {
+            // released when the buffer is collected
+        }
+    }
+
+    private static void uncaught(Throwable e) {
+        Thread current = Thread.currentThread();
+        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+    }
+
+    private void writeExecuted(ByteBuffer target, int p, long id, long scheduledStart, long runStart, long runEnd) {
+        target.put(p + RECORD_HEADER_SIZE, EXECUTED);
+        target.putLong(p + RECORD_HEADER_SIZE + 1, id);
+        target.putLong(p + RECORD_OVERHEAD, scheduledStart);
+        target.putLong(p + RECORD_OVERHEAD + 8, runStart);
+        target.putLong(p + RECORD_OVERHEAD + 16, runEnd);
+        commit(target, p, EXECUTED_SIZE);
+    }
+
+    /**
+     * Completes a record whose body has been written. The length is written
+     * last, so that a record is never read before it is complete.
+     */
+    private void commit(ByteBuffer target, int p, int size) {
+        int length = size - RECORD_HEADER_SIZE;
+        target.putInt(p + 4, checksum(target, p + RECORD_HEADER_SIZE, length));
+        target.putInt(p, length);
+    }
+
+    private int checksum(ByteBuffer source, int offset, int length) {
+        ByteBuffer body = source.duplicate();
+        body.limit(offset + length).position(offset);
+        checksum.reset();
+        checksum.update(body);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * A schedule that has not been removed.
+     */
+    private static final class Entry {
+
+        final long id;
+        // the position and size of the record that added the schedule
+        int offset;
+        // the position of the record in the journal being compacted
+        int compactedOffset;
+        final int size;
+        long scheduledStart = NEVER;
+        long runStart = NEVER;
+        long runEnd = NEVER;
+
+        Entry(long id, int offset, int size) {
+            this.id = id;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        boolean hasRun() {
+            return scheduledStart != NEVER;
+        }
+
+        int liveSize() {
+            return hasRun()? size + EXECUTED_SIZE: size;
+        }
+    }
+
+    private static final class CompactionThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "MappedScheduleStore-compaction");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
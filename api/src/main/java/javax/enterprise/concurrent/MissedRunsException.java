@@ -0,0 +1,110 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.time.Instant;
+
+/**
+ * Exception indicating that consecutive runs of a task scheduled with a 
+ * {@link Trigger} were skipped together, as its 
+ * {@link ManagedTask#MISFIRE_POLICY} requires when they are missed.
+ * <p>
+ * The runs are reported once, to the {@link ManagedTaskListener} and as the
+ * result of the future, rather than once per run. The first run may have 
+ * been skipped for another reason, such as the trigger skipping it, in 
+ * which case the cause is the {@link SkippedException} of that run.
+ *
+ * @since 1.1
+ */
+public class MissedRunsException extends SkippedException {
+
+  private static final long serialVersionUID = -2291406339519478162L;
+
+  private final int count;
+  private final long firstScheduledStart;
+  private final long lastScheduledStart;
+
+  /**
+   * Constructs a MissedRunsException for the runs scheduled between two 
+   * times.
+   * 
+   * @param count the number of runs skipped.
+   * @param firstScheduledStart when the first run was scheduled to start,
+   *                            in milliseconds since the epoch.
+   * @param lastScheduledStart when the last run was scheduled to start.
+   * @param cause the exception with which the first run was skipped, or 
+   *              null if it was missed.
+   */
+  public MissedRunsException(int count, long firstScheduledStart, long lastScheduledStart, Throwable cause) {
+    super(count + " runs from " + Instant.ofEpochMilli(firstScheduledStart) + " to " 
+        + Instant.ofEpochMilli(lastScheduledStart) + " skipped", cause);
+    this.count = count;
+    this.firstScheduledStart = firstScheduledStart;
+    this.lastScheduledStart = lastScheduledStart;
+  }
+
+  /**
+   * Returns the number of runs skipped.
+   * 
+   * @return the number of runs.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns when the first run was scheduled to start.
+   * 
+   * @return the time in milliseconds since the epoch.
+   */
+  public long getFirstScheduledStart() {
+    return firstScheduledStart;
+  }
+
+  /**
+   * Returns when the last run was scheduled to start.
+   * 
+   * @return the time in milliseconds since the epoch.
+   */
+  public long getLastScheduledStart() {
+    return lastScheduledStart;
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.enterprise.concurrent.spi.ExecutorMetrics;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+
+/**
+ * A reference {@link ManagedExecutorService} that runs waiting tasks in 
+ * the order of their {@link ManagedTask#PRIORITY} execution property,
+ * rather than in the order they were submitted.
+ * <p>
+ * Waiting tasks are kept in a concurrent priority queue, ordered by a 
+ * deadline that is the time the task was submitted plus one aging 
+ * interval for each priority level below {@link Thread#MAX_PRIORITY}. A 
+ * task of the highest priority is therefore due as soon as it is 
+ * submitted, and a task of priority {@code p} is due 
+ * {@code MAX_PRIORITY - p} aging intervals later. Tasks with the same 
+ * deadline run in the order they were submitted.
+ * <p>
+ * Because a task's place in the queue only depends on when it was 
+ * submitted, a task that waits grows older relative to the tasks that are
+ * submitted after it: once it has waited {@code MAX_PRIORITY - p} aging 
+ * intervals, no task submitted later, whatever its priority, runs before
+ * it. So interactive tasks with a high priority overtake a growing backlog
+ * of background tasks, but never starve it, and the ordering costs a 
+ * single insertion into the queue per task, with no periodic re-sorting.
+ * <p>
+ * Tasks without a {@code PRIORITY} execution property have 
+ * {@link Thread#NORM_PRIORITY}. Values outside of the range from 
+ * {@link Thread#MIN_PRIORITY} to {@link Thread#MAX_PRIORITY} are treated
+ * as the nearest value in the range.
+ * <p>
+ * Example:
+ * <pre>
+ * ManagedThreadFactory threadFactory = ...;
+ * ManagedExecutorService executor = 
+ *     new PriorityManagedExecutorService(8, 50, TimeUnit.MILLISECONDS, threadFactory);
+ *
+ * Map&lt;String, String&gt; props = new HashMap&lt;String, String&gt;();
+ * props.put(ManagedTask.PRIORITY, String.valueOf(Thread.MIN_PRIORITY));
+ * 
+ * // waits up to 450 milliseconds behind tasks of the highest priority
+ * executor.submit(ManagedExecutors.managedTask(reindexTask, props, null));
+ * </pre>
+ * <p>
+ * The number of threads can be changed while the executor runs, for 
+ * instance by an {@link AdaptivePoolSizer}.
+ *
+ * @since 1.1
+ */
+public class PriorityManagedExecutorService extends AbstractManagedExecutorService 
+    implements AdaptivePoolSizer.Pool {
+
+    private final ThreadPoolExecutor pool;
+    private final long agingNanos;
+    // breaks ties between tasks with the same deadline
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates a {@code PriorityManagedExecutorService} whose threads are 
+     * created with {@link Executors#defaultThreadFactory()}.
+     * 
+     * @param poolSize the number of threads.
+     * @param agingInterval how long a waiting task must wait to overtake the 
+     *                      tasks of the next higher priority that are 
+     *                      submitted after it.
+     * @param unit the unit of {@code agingInterval}.
+     * @throws IllegalArgumentException if {@code poolSize} is less than or 
+     *         equal to zero, or {@code agingInterval} is negative.
+     * @throws NullPointerException if {@code unit} is null.
+     */
+    public PriorityManagedExecutorService(int poolSize, long agingInterval, TimeUnit unit) {
+        this(poolSize, agingInterval, unit, Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a {@code PriorityManagedExecutorService}.
+     * 
+     * @param poolSize the number of threads.
+     * @param agingInterval how long a waiting task must wait to overtake the 
+     *                      tasks of the next higher priority that are 
+     *                      submitted after it.
+     * @param unit the unit of {@code agingInterval}.
+     * @param threadFactory the factory used to create threads, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @throws IllegalArgumentException if {@code poolSize} is less than or 
+     *         equal to zero, or {@code agingInterval} is negative.
+     * @throws NullPointerException if {@code unit} or {@code threadFactory} 
+     *         is null.
+     */
+    public PriorityManagedExecutorService(int poolSize, long agingInterval, TimeUnit unit, 
+            ThreadFactory threadFactory) {
+        this(poolSize, agingInterval, unit, threadFactory, null);
+    }
+
+    /**
+     * Creates a {@code PriorityManagedExecutorService} that reports its tasks
+     * to the given metrics, such as a {@link DefaultExecutorMetrics}, and 
+     * runs them with the context of the thread that submits them.
+     * 
+     * @param poolSize the number of threads.
+     * @param agingInterval how long a waiting task must wait to overtake the 
+     *                      tasks of the next higher priority that are 
+     *                      submitted after it.
+     * @param unit the unit of {@code agingInterval}.
+     * @param threadFactory the factory used to create threads, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @param metrics the metrics to report the tasks to, or null.
+     * @param providers the providers of the thread context to capture when
+     *                  a task is submitted and apply when it runs.
+     * @throws IllegalArgumentException if {@code poolSize} is less than or 
+     *         equal to zero, or {@code agingInterval} is negative.
+     * @throws NullPointerException if {@code unit} or {@code threadFactory} 
+     *         is null.
+     */
+    public PriorityManagedExecutorService(int poolSize, long agingInterval, TimeUnit unit, 
+            ThreadFactory threadFactory, ExecutorMetrics metrics, ThreadContextProvider... providers) {
+        this(poolSize, agingInterval, unit, threadFactory, null, metrics, providers);
+    }
+
+    /**
+     * Creates a {@code PriorityManagedExecutorService} that bounds the 
+     * number of waiting tasks with the given policy, reports its tasks to 
+     * the given metrics, and runs them with the context of the thread that
+     * submits them.
+     * 
+     * @param poolSize the number of threads.
+     * @param agingInterval how long a waiting task must wait to overtake the 
+     *                      tasks of the next higher priority that are 
+     *                      submitted after it.
+     * @param unit the unit of {@code agingInterval}.
+     * @param threadFactory the factory used to create threads, typically a 
+     *                      {@link ManagedThreadFactory}.
+     * @param admissionPolicy the policy that bounds the waiting tasks, or 
+     *                        null for no bound.
+     * @param metrics the metrics to report the tasks to, or null.
+     * @param providers the providers of the thread context to capture when
+     *                  a task is submitted and apply when it runs.
+     * @throws IllegalArgumentException if {@code poolSize} is less than or 
+     *         equal to zero, or {@code agingInterval} is negative.
+     * @throws NullPointerException if {@code unit} or {@code threadFactory} 
+     *         is null.
+     */
+    public PriorityManagedExecutorService(int poolSize, long agingInterval, TimeUnit unit, 
+            ThreadFactory threadFactory, AdmissionPolicy admissionPolicy, ExecutorMetrics metrics, 
+            ThreadContextProvider... providers) {
+        super(admissionPolicy, metrics, providers);
+        if (agingInterval < 0) {
+            throw new IllegalArgumentException("agingInterval " + agingInterval);
+        }
+        if (threadFactory == null) {
+            throw new NullPointerException();
+        }
+        // bounded so that deadlines stay comparable by their difference
+        this.agingNanos = Math.min(unit.toNanos(agingInterval), Long.MAX_VALUE / (4 * Thread.MAX_PRIORITY));
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, 
+                new PriorityBlockingQueue<Runnable>(), threadFactory);
+        // so that every task goes through the queue
+        this.pool.prestartAllCoreThreads();
+    }
+
+    @Override
+    protected void dispatch(RunnableFuture<?> future, Object task) throws RejectedExecutionException {
+        long deadline = System.nanoTime() + (Thread.MAX_PRIORITY - ManagedExecutors.priorityOf(task)) * agingNanos;
+        pool.execute(new Entry(future, deadline, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Returns the number of tasks that are waiting to run.
+     * 
+     * @return the number of waiting tasks.
+     */
+    @Override
+    public int getQueueSize() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * Returns the number of threads the executor is sized to.
+     * 
+     * @return the pool size.
+     */
+    @Override
+    public int getPoolSize() {
+        return pool.getCorePoolSize();
+    }
+
+    /**
+     * Changes the number of threads. Threads beyond the new size end once
+     * they finish their current task.
+     * 
+     * @param poolSize the new number of threads.
+     * @throws IllegalArgumentException if {@code poolSize} is less than or 
+     *         equal to zero.
+     */
+    @Override
+    public synchronized void setPoolSize(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize " + poolSize);
+        }
+        if (poolSize > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(poolSize);
+            pool.setCorePoolSize(poolSize);
+        } else {
+            pool.setCorePoolSize(poolSize);
+            pool.setMaximumPoolSize(poolSize);
+        }
+        pool.prestartAllCoreThreads();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The tasks are returned in no particular order.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> entries = pool.shutdownNow();
+        List<Runnable> pending = new ArrayList<Runnable>(entries.size());
+        for (Runnable entry : entries) {
+            pending.add(((Entry) entry).future);
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * A waiting task, ordered by its deadline and then by when it was 
+     * submitted.
+     */
+    static final class Entry implements Runnable, Comparable<Entry> {
+
+        final RunnableFuture<?> future;
+        private final long deadline;
+        private final long sequence;
+
+        Entry(RunnableFuture<?> future, long deadline, long sequence) {
+            this.future = future;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            future.run();
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            // nanoTime values are only comparable by their difference
+            long difference = deadline - other.deadline;
+            if (difference != 0) {
+                return difference < 0? -1: 1;
+            }
+            return sequence < other.sequence? -1: sequence == other.sequence? 0: 1;
+        }
+    }
+}
@@ -0,0 +1,827 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import javax.enterprise.concurrent.spi.LeaseManager;
+import javax.enterprise.concurrent.spi.ScheduleStore;
+
+/**
+ * {@code ScheduledFuture} created by {@link DefaultManagedScheduledExecutorService}
+ * for each delayed, periodic or {@link Trigger} task. The future is held in
+ * the executor's {@link HierarchicalTimingWheel} until it is due, and then 
+ * dispatched like a submitted task.
+ * <p>
+ * Each run of a periodic or trigger task is reported to the 
+ * {@link ManagedTaskListener} as {@code taskStarting} and {@code taskDone}, 
+ * followed by {@code taskSubmitted} when the next run is scheduled. A run
+ * that the trigger skips is reported as {@code taskAborted} and 
+ * {@code taskDone} with a {@link SkippedException}, and is recorded as the
+ * last execution, with no result, so that the trigger can move on. If the 
+ * trigger ends the task after a skipped run, the future completes with the
+ * {@code SkippedException}.
+ * <p>
+ * A {@link ZonedTrigger} is called through its {@code ZonedDateTime} 
+ * methods, and the last execution keeps its times as epoch milliseconds, so
+ * evaluating a trigger only creates the date/time objects the trigger asks 
+ * for.
+ * <p>
+ * If the executor has a {@link ScheduleStore} and the task and trigger are
+ * serializable, the task is added to the store when it is scheduled, each
+ * run is recorded in it, and it is removed when the future completes, 
+ * unless it completes because the executor is shut down.
+ * <p>
+ * If the executor has a {@link LeaseManager}, the identity name of a 
+ * trigger task is registered with it from the first scheduling until the 
+ * future completes, and a run is skipped unless this server owns the 
+ * lease.
+ * <p>
+ * Runs of a trigger task that are missed, because they are due more than 
+ * its {@link ManagedTask#MISFIRE_THRESHOLD} ago, are run or skipped as its
+ * {@link ManagedTask#MISFIRE_POLICY} requires. Missed runs that are skipped
+ * are recorded as last executions, one after the other, without going 
+ * through the timing wheel, and are reported as one skipped run with a 
+ * {@link MissedRunsException}.
+ * <p>
+ * The runs of a trigger task with a {@link ManagedTask#JITTER} are put in
+ * the timing wheel later than the run times that the trigger returns, by 
+ * an amount derived from the identity name or from a random seed of the 
+ * task and the run time, so that the delay of a run is known again when 
+ * telling whether it is missed. The last execution keeps the run time 
+ * returned by the trigger as its scheduled start.
+ * <p>
+ * If the executor has an {@link ExecutionHistory}, each run of a trigger 
+ * task with an identity name is recorded in it, and the executions of the
+ * identity name are removed when the future completes, unless it completes
+ * because the executor is shut down.
+ */
+class ScheduledManagedFutureTask<V> extends ManagedFutureTask<V> implements ScheduledFuture<V> {
+
+    // keeps deadlines far enough from Long.MAX_VALUE that they cannot overflow
+    private static final long MAX_DELAY = Long.MAX_VALUE >> 2;
+    // returned by nextTriggerRunTime when there is no next run
+    private static final long NO_RUN = Long.MIN_VALUE;
+    // bounds the missed runs skipped at once, for triggers that never catch up
+    private static final int MAX_MISSED_RUNS = 1 << 16;
+    // the updater applies to tasks of any result type
+    @SuppressWarnings("unchecked")
+    private static final Class<ScheduledManagedFutureTask<?>> TASK_CLASS = 
+            (Class<ScheduledManagedFutureTask<?>>) (Class<?>) ScheduledManagedFutureTask.class;
+    private static final AtomicReferenceFieldUpdater<ScheduledManagedFutureTask<?>, String> LEASE_NAME = 
+            AtomicReferenceFieldUpdater.newUpdater(TASK_CLASS, String.class, "leaseName");
+
+    private final DefaultManagedScheduledExecutorService scheduler;
+    // null unless this is a trigger task
+    private final ResultRecorder<V> recorder;
+    private final Trigger trigger;
+    // null unless the trigger is a ZonedTrigger
+    private final ZonedTrigger zonedTrigger;
+    private final long taskScheduledMillis;
+    private final Date taskScheduledTime;
+    private final ZonedDateTime zonedTaskScheduledTime;
+    // greater than zero for fixed rate, less than zero for fixed delay 
+    private final long period;
+    final Expiry expiry = new Expiry(this);
+    private volatile long nextRunNanos;
+    // the next run time of a trigger task, as returned by the trigger
+    private Date nextRunTime;
+    private ZonedDateTime nextZonedRunTime;
+    private long nextRunMillis;
+    private LastExecution lastExecution;
+    // the identifier of the task in the schedule store, or -1
+    private long storeId = -1L;
+    // the identity name registered with the lease manager, or null
+    private volatile String leaseName;
+    // null unless this is a trigger task
+    private final ExecutionProperty.MisfirePolicy misfirePolicy;
+    private final long misfireThreshold;
+    // the missed runs skipped since the last report, and when the first was due
+    private int missedRuns;
+    private long firstMissedRun;
+    // the greatest delay of the runs of a trigger task, in milliseconds
+    private final long jitter;
+    // the delay of every run, or the seed of the delay of each run
+    private final long jitterSeed;
+    private final boolean randomJitter;
+
+    @SuppressWarnings("unchecked")
+    private ScheduledManagedFutureTask(DefaultManagedScheduledExecutorService scheduler, Callable<V> callable,
+            Object task, Trigger trigger, long period, long taskScheduledMillis) {
+        super(scheduler, callable, task);
+        this.scheduler = scheduler;
+        this.recorder = callable instanceof ResultRecorder? (ResultRecorder<V>) callable: null;
+        this.trigger = trigger;
+        this.zonedTrigger = trigger instanceof ZonedTrigger? (ZonedTrigger) trigger: null;
+        this.taskScheduledMillis = taskScheduledMillis;
+        this.taskScheduledTime = trigger == null || zonedTrigger != null? null: new Date(taskScheduledMillis);
+        this.zonedTaskScheduledTime = zonedTrigger == null? null: 
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(taskScheduledMillis), zonedTrigger.getZoneId());
+        this.period = period;
+        this.misfirePolicy = trigger == null? null: 
+                ManagedExecutors.getExecutionProperty(task, ExecutionProperty.MISFIRE_POLICY);
+        this.misfireThreshold = trigger == null? 0L: 
+                ManagedExecutors.getExecutionProperty(task, ExecutionProperty.MISFIRE_THRESHOLD).longValue();
+        this.jitter = trigger == null? 0L: 
+                Math.max(0L, ManagedExecutors.getExecutionProperty(task, ExecutionProperty.JITTER).longValue());
+        String name = jitter == 0L? null: 
+                ManagedExecutors.getExecutionProperty(task, ExecutionProperty.IDENTITY_NAME);
+        this.randomJitter = jitter > 0L && (name == null 
+                || ManagedExecutors.getExecutionProperty(task, ExecutionProperty.JITTER_MODE) 
+                        == ExecutionProperty.JitterMode.RANDOM);
+        this.jitterSeed = randomJitter? ThreadLocalRandom.current().nextLong(): 
+                name == null? 0L: identityJitter(name, jitter);
+    }
+
+    /**
+     * Returns the delay of the runs of a task with the given identity name, 
+     * which is the same in every process.
+     * 
+     * @param identityName the identity name of the task.
+     * @param jitter the greatest delay.
+     * @return the delay, from 0 to {@code jitter}.
+     */
+    static long identityJitter(String identityName, long jitter) {
+        return Math.floorMod(mix(identityName.hashCode()), jitter + 1);
+    }
+
+    /**
+     * Returns the delay of a run, which is the same each time it is asked 
+     * for so that it can tell whether the run is missed.
+     */
+    private long jitter(long runTimeMillis) {
+        if (!randomJitter) {
+            return jitterSeed;
+        }
+        return Math.floorMod(mix(jitterSeed + runTimeMillis), jitter + 1);
+    }
+
+    /**
+     * Spreads the bits of a value, as the finalizer of MurmurHash3 does.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    ScheduledManagedFutureTask(DefaultManagedScheduledExecutorService scheduler, Callable<V> callable, 
+            Trigger trigger, long period) {
+        this(scheduler, trigger == null? callable: new ResultRecorder<V>(callable), callable, trigger, period, 
+                System.currentTimeMillis());
+    }
+
+    ScheduledManagedFutureTask(DefaultManagedScheduledExecutorService scheduler, Runnable runnable, 
+            Trigger trigger, long period) {
+        this(scheduler, trigger == null? Executors.<V>callable(runnable, null): 
+                new ResultRecorder<V>(Executors.<V>callable(runnable, null)), runnable, trigger, period, 
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Recreates a trigger task from its schedule in the store, to be 
+     * scheduled again after a restart.
+     * 
+     * @param schedule the bytes written by {@link #store()}.
+     * @param scheduledStart when the last run was scheduled to start, or
+     *                       {@link ScheduleStore#NEVER} if it has not run.
+     * @throws IOException if the schedule cannot be read.
+     * @throws ClassNotFoundException if a class of the task or trigger 
+     *         cannot be found.
+     */
+    @SuppressWarnings("unchecked")
+    static ScheduledManagedFutureTask<Object> restore(DefaultManagedScheduledExecutorService scheduler, long id, 
+            byte[] schedule, long scheduledStart, long runStart, long runEnd) 
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ScheduleInputStream(schedule);
+        Object task;
+        Trigger trigger;
+        boolean callable;
+        long taskScheduledMillis;
+        try {
+            callable = in.readBoolean();
+            taskScheduledMillis = in.readLong();
+            task = in.readObject();
+            trigger = (Trigger) in.readObject();
+        } catch (ClassCastException e) {
+            throw new IOException("not a schedule", e);
+        } finally {
+            in.close();
+        }
+        Callable<Object> call = callable? (Callable<Object>) task: Executors.callable((Runnable) task, null);
+        ScheduledManagedFutureTask<Object> future = new ScheduledManagedFutureTask<Object>(scheduler, 
+                new ResultRecorder<Object>(call), task, trigger, 0L, taskScheduledMillis);
+        future.storeId = id;
+        if (scheduledStart != ScheduleStore.NEVER) {
+            future.lastExecution = new Execution(future.identityName(), null, scheduledStart, runStart, runEnd);
+        }
+        return future;
+    }
+
+    /**
+     * Adds this trigger task to the schedule store of the executor, if the 
+     * task and the trigger are serializable.
+     */
+    void store() {
+        if (!(task instanceof Serializable) || !(trigger instanceof Serializable)) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            // whether the task was scheduled as a Callable or a Runnable
+            out.writeBoolean(recorder.callable == task);
+            out.writeLong(taskScheduledMillis);
+            out.writeObject(task);
+            out.writeObject(trigger);
+            out.close();
+        } catch (IOException e) {
+            // a field of the task or trigger is not serializable
+            return;
+        }
+        storeId = scheduler.store.add(bytes.toByteArray());
+    }
+
+    /**
+     * Removes this task from the schedule store, when the executor refused 
+     * it after it was stored.
+     */
+    void unstore() {
+        if (storeId >= 0) {
+            scheduler.store.remove(storeId);
+            storeId = -1L;
+        }
+    }
+    /**
+     * Schedules the first run, after the listener has been notified that the
+     * task was submitted.
+     * 
+     * @param delayNanos the delay of the first run, ignored for trigger tasks.
+     * @throws RejectedExecutionException if the executor is shut down.
+     */
+    void scheduleFirst(long delayNanos) {
+        if (isDone()) {
+            // cancelled from within taskSubmitted
+            return;
+        }
+        long deadlineNanos;
+        if (trigger != null) {
+            registerLease();
+            long next = nextTriggerRunTime();
+            if (isDone()) {
+                return;
+            }
+            if (next == NO_RUN) {
+                set(null);
+                return;
+            }
+            deadlineNanos = deadlineAt(next);
+        } else {
+            deadlineNanos = deadline(delayNanos);
+        }
+        if (!scheduler.wheel.schedule(expiry, deadlineNanos)) {
+            RejectedExecutionException e = new ManagedRejectedExecutionException(RejectionReason.SHUTDOWN, 
+                    "executor is shut down");
+            reject(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Called by the timer thread when the task is due.
+     */
+    void fire() {
+        if (isDone()) {
+            return;
+        }
+        if (metrics != null) {
+            queuedNanos = System.nanoTime();
+        }
+        try {
+            scheduler.dispatch(this, task);
+        } catch (RejectedExecutionException e) {
+            reject(scheduler.rejection(e));
+        }
+    }
+
+    @Override
+    public void run() {
+        if (trigger == null && period == 0) {
+            super.run();
+            return;
+        }
+        scheduler.taken(this);
+        if (isDone()) {
+            return;
+        }
+        if (trigger != null) {
+            SkippedException skipped = null;
+            if (!ownsLease()) {
+                skipped(new SkippedException("run at " + Instant.ofEpochMilli(nextRunMillis) 
+                        + " skipped because another server owns the lease of " + leaseName));
+                return;
+            }
+            if (misfirePolicy == ExecutionProperty.MisfirePolicy.SKIP_TO_NEXT && isMissed(nextRunMillis)) {
+                skipped(null);
+                return;
+            }
+            try {
+                if (zonedTrigger != null? zonedTrigger.skipRun(lastExecution, nextZonedRunTime): 
+                        trigger.skipRun(lastExecution, nextRunTime)) {
+                    skipped = new SkippedException("run at " + Instant.ofEpochMilli(nextRunMillis) 
+                            + " skipped by trigger");
+                }
+            } catch (RuntimeException e) {
+                skipped = new SkippedException(e);
+            }
+            if (skipped != null) {
+                skipped(skipped);
+                return;
+            }
+        }
+        long runStart = System.currentTimeMillis();
+        if (!runAndReset()) {
+            // failed or cancelled, and the listener has been notified
+            return;
+        }
+        if (trigger == null) {
+            runDone(null);
+            reschedule(period > 0? nextRunNanos + period: deadline(-period));
+            return;
+        }
+        V result = recorder.result;
+        long runEnd = System.currentTimeMillis();
+        lastExecution = new Execution(identityName(), result, nextRunMillis, runStart, runEnd);
+        recordExecution(runStart, runEnd);
+        long next = skipMissedRuns(nextTriggerRunTime());
+        if (isDone()) {
+            return;
+        }
+        if (next == NO_RUN) {
+            missedRuns = 0;
+            set(result);
+            return;
+        }
+        runDone(null);
+        if (missedRuns > 0) {
+            // reported as one skipped run between this run and the next
+            MissedRunsException missed = new MissedRunsException(missedRuns, firstMissedRun, nextRunMillis, null);
+            missedRuns = 0;
+            submitted();
+            runDone(missed);
+        }
+        reschedule(deadlineAt(next));
+    }
+
+    /**
+     * Records a run that the trigger skipped and schedules the next one.
+     * 
+     * @param skipped the reason why the run was skipped, or null if it was
+     *                missed.
+     */
+    private void skipped(SkippedException skipped) {
+        long skippedRun = nextRunMillis;
+        long now = System.currentTimeMillis();
+        lastExecution = new Execution(identityName(), null, skippedRun, now, now);
+        recordExecution(now, now);
+        long next = skipMissedRuns(nextTriggerRunTime());
+        if (isDone()) {
+            return;
+        }
+        if (skipped == null || missedRuns > 0) {
+            skipped = new MissedRunsException(missedRuns + 1, skippedRun, nextRunMillis, skipped);
+            missedRuns = 0;
+        }
+        if (next == NO_RUN) {
+            setException(skipped);
+            return;
+        }
+        runDone(skipped);
+        reschedule(deadlineAt(next));
+    }
+
+    /**
+     * Returns whether a run is missed, unless the misfire policy is to run 
+     * every run.
+     */
+    private boolean isMissed(long runTimeMillis) {
+        return misfirePolicy != ExecutionProperty.MisfirePolicy.FIRE_ALL 
+                && System.currentTimeMillis() - runTimeMillis - jitter(runTimeMillis) > misfireThreshold;
+    }
+
+    /**
+     * Skips the runs that the trigger returns after they are missed, 
+     * recording each as the last execution so that the trigger moves on, 
+     * and counting them to be reported together.
+     * 
+     * @param next the next run time returned by the trigger.
+     * @return the first next run time that is not skipped, or 
+     *         {@link #NO_RUN}.
+     */
+    private long skipMissedRuns(long next) {
+        while (next != NO_RUN && missedRuns < MAX_MISSED_RUNS && isMissed(next)) {
+            if (missedRuns++ == 0) {
+                firstMissedRun = next;
+            }
+            nextRunMillis = next;
+            long now = System.currentTimeMillis();
+            lastExecution = new Execution(identityName(), null, next, now, now);
+            recordExecution(now, now);
+            next = nextTriggerRunTime();
+        }
+        return next;
+    }
+
+    /**
+     * Records the last execution in the schedule store and in the execution
+     * history.
+     */
+    private void recordExecution(long runStart, long runEnd) {
+        String name;
+        if (scheduler.history != null && (name = lastExecution.getIdentityName()) != null) {
+            scheduler.history.record(name, nextRunMillis, runStart, runEnd);
+        }
+        if (storeId < 0) {
+            return;
+        }
+        try {
+            scheduler.store.executed(storeId, nextRunMillis, runStart, runEnd);
+        } catch (RuntimeException e) {
+            uncaught(e);
+        }
+    }
+
+    /**
+     * Removes the task from the schedule store and its executions from the
+     * history when it will not run again. A task whose future completes 
+     * because the executor is shut down stays in the store, to be restored 
+     * when the executor is started again.
+     */
+    @Override
+    void done() {
+        releaseLease();
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        String name;
+        if (scheduler.history != null && trigger != null && (name = identityName()) != null) {
+            scheduler.history.remove(name);
+        }
+        if (storeId < 0) {
+            return;
+        }
+        try {
+            scheduler.store.remove(storeId);
+        } catch (RuntimeException e) {
+            uncaught(e);
+        }
+    }
+
+    /**
+     * Registers the identity name of the task with the lease manager of the
+     * executor, if any.
+     */
+    private void registerLease() {
+        String name;
+        if (scheduler.leases == null || (name = identityName()) == null) {
+            return;
+        }
+        scheduler.leases.register(name);
+        leaseName = name;
+        if (isDone()) {
+            // completed before the name was recorded for done()
+            releaseLease();
+        }
+    }
+
+    private void releaseLease() {
+        String name = LEASE_NAME.getAndSet(this, null);
+        if (name != null) {
+            scheduler.leases.unregister(name);
+        }
+    }
+
+    /**
+     * Returns whether this server should run the task, which it should not
+     * if the lease manager cannot tell.
+     */
+    private boolean ownsLease() {
+        String name = leaseName;
+        if (name == null) {
+            return true;
+        }
+        try {
+            return scheduler.leases.isOwner(name);
+        } catch (RuntimeException e) {
+            uncaught(e);
+            return false;
+        }
+    }
+
+    private static void uncaught(Throwable e) {
+        Thread current = Thread.currentThread();
+        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+    }
+
+    /**
+     * Asks the trigger for the next run time.
+     * 
+     * @return the next run time in milliseconds since the epoch, or 
+     *         {@link #NO_RUN} if the trigger ended the task or failed, in 
+     *         which case the future has been aborted.
+     */
+    private long nextTriggerRunTime() {
+        try {
+            if (zonedTrigger != null) {
+                ZonedDateTime next = zonedTrigger.getNextRunTime(lastExecution, zonedTaskScheduledTime);
+                if (next == null) {
+                    return NO_RUN;
+                }
+                nextZonedRunTime = next;
+                return next.toInstant().toEpochMilli();
+            }
+            Date next = trigger.getNextRunTime(lastExecution, taskScheduledTime);
+            if (next == null) {
+                return NO_RUN;
+            }
+            nextRunTime = next;
+            return next.getTime();
+        } catch (RuntimeException e) {
+            abort(e);
+            return NO_RUN;
+        }
+    }
+
+    private String identityName() {
+        return ManagedExecutors.getExecutionProperty(task, ExecutionProperty.IDENTITY_NAME);
+    }
+
+    /**
+     * Schedules a subsequent run, notifying the listener that the task was 
+     * submitted again.
+     */
+    private void reschedule(long deadlineNanos) {
+        nextRunNanos = deadlineNanos;
+        if (isDone()) {
+            // cancelled while running
+            return;
+        }
+        submitted();
+        if (isDone()) {
+            return;
+        }
+        if (!scheduler.wheel.schedule(expiry, deadlineNanos)) {
+            reject(new ManagedRejectedExecutionException(RejectionReason.SHUTDOWN, "executor is shut down"));
+        }
+    }
+
+    private long deadlineAt(long runTimeMillis) {
+        nextRunMillis = runTimeMillis;
+        long delayMillis = runTimeMillis - System.currentTimeMillis();
+        if (jitter > 0L) {
+            delayMillis += jitter(runTimeMillis);
+        }
+        return deadline(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+    }
+
+    private long deadline(long delayNanos) {
+        long deadline = System.nanoTime() + Math.min(Math.max(delayNanos, 0L), MAX_DELAY);
+        nextRunNanos = deadline;
+        return deadline;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            scheduler.wheel.cancel(expiry);
+        }
+        return cancelled;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws SkippedException if the last run was skipped.
+     */
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        try {
+            return super.get();
+        } catch (ExecutionException e) {
+            throw unwrapSkipped(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws SkippedException if the last run was skipped.
+     */
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return super.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw unwrapSkipped(e);
+        }
+    }
+
+    private static ExecutionException unwrapSkipped(ExecutionException e) {
+        return e.getCause() instanceof SkippedException? (SkippedException) e.getCause(): e;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(nextRunNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other == this) {
+            return 0;
+        }
+        long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+        return diff < 0? -1: diff > 0? 1: 0;
+    }
+
+    /**
+     * The entry of a scheduled future in the timing wheel.
+     */
+    static final class Expiry extends HierarchicalTimingWheel.Timeout {
+
+        final ScheduledManagedFutureTask<?> future;
+
+        Expiry(ScheduledManagedFutureTask<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        void expire() {
+            future.fire();
+        }
+    }
+
+    /**
+     * Keeps the result of the last run of a trigger task, which 
+     * {@code runAndReset} discards.
+     */
+    private static final class ResultRecorder<V> implements Callable<V> {
+
+        final Callable<V> callable;
+        V result;
+
+        ResultRecorder(Callable<V> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public V call() throws Exception {
+            V value = callable.call();
+            result = value;
+            return value;
+        }
+    }
+
+    /**
+     * Reads a schedule, resolving the classes of the task and trigger with
+     * the context class loader of the thread that restores it.
+     */
+    private static final class ScheduleInputStream extends ObjectInputStream {
+
+        ScheduleInputStream(byte[] schedule) throws IOException {
+            super(new ByteArrayInputStream(schedule));
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader != null) {
+                try {
+                    return Class.forName(description.getName(), false, loader);
+                } catch (ClassNotFoundException e) {
+                    // fall back to the default resolution
+                }
+            }
+            return super.resolveClass(description);
+        }
+    }
+
+    /**
+     * The last execution of a trigger task. The times are kept as epoch 
+     * milliseconds and converted when the trigger asks for them.
+     */
+    static final class Execution implements LastExecution {
+
+        private final String identityName;
+        private final Object result;
+        private final long scheduledStart;
+        private final long runStart;
+        private final long runEnd;
+
+        Execution(String identityName, Object result, long scheduledStart, long runStart, long runEnd) {
+            this.identityName = identityName;
+            this.result = result;
+            this.scheduledStart = scheduledStart;
+            this.runStart = runStart;
+            this.runEnd = runEnd;
+        }
+
+        @Override
+        public String getIdentityName() {
+            return identityName;
+        }
+
+        @Override
+        public Object getResult() {
+            return result;
+        }
+
+        @Override
+        public Date getScheduledStart() {
+            return new Date(scheduledStart);
+        }
+
+        @Override
+        public Date getRunStart() {
+            return new Date(runStart);
+        }
+
+        @Override
+        public Date getRunEnd() {
+            return new Date(runEnd);
+        }
+
+        @Override
+        public ZonedDateTime getScheduledStart(ZoneId zone) {
+            return ZonedDateTime.ofInstant(Instant.ofEpochMilli(scheduledStart), zone);
+        }
+
+        @Override
+        public ZonedDateTime getRunStart(ZoneId zone) {
+            return ZonedDateTime.ofInstant(Instant.ofEpochMilli(runStart), zone);
+        }
+
+        @Override
+        public ZonedDateTime getRunEnd(ZoneId zone) {
+            return ZonedDateTime.ofInstant(Instant.ofEpochMilli(runEnd), zone);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.Serializable;
+import java.util.Map;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+import javax.enterprise.concurrent.spi.ThreadContextRestorer;
+import javax.enterprise.concurrent.spi.ThreadContextSnapshot;
+
+/**
+ * Immutable set of {@link ThreadContextSnapshot}s, one for each 
+ * {@link ThreadContextProvider}, captured from a single thread. It is 
+ * serializable if all of its snapshots are.
+ */
+final class ThreadContext implements Serializable {
+
+    private static final long serialVersionUID = -7110617452946342453L;
+
+    static final ThreadContext EMPTY = new ThreadContext(new ThreadContextSnapshot[0]);
+
+    private final ThreadContextSnapshot[] snapshots;
+
+    private ThreadContext(ThreadContextSnapshot[] snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Captures the context of each of the given providers from the current
+     * thread.
+     */
+    static ThreadContext capture(ThreadContextProvider[] providers, Map<String, String> executionProperties) {
+        if (providers.length == 0) {
+            return EMPTY;
+        }
+        ThreadContextSnapshot[] snapshots = new ThreadContextSnapshot[providers.length];
+        for (int i = 0; i < providers.length; i++) {
+            snapshots[i] = providers[i].currentContext(executionProperties);
+            if (snapshots[i] == null) {
+                throw new IllegalStateException(providers[i].getThreadContextType() 
+                        + " context provider returned a null snapshot");
+            }
+        }
+        return new ThreadContext(snapshots);
+    }
+
+    /**
+     * Applies the captured context to the current thread.
+     * 
+     * @return the restorers to pass to {@link #end(ThreadContextRestorer[])}, 
+     *         or null if there is no context to apply.
+     */
+    ThreadContextRestorer[] begin() {
+        if (snapshots.length == 0) {
+            return null;
+        }
+        ThreadContextRestorer[] restorers = new ThreadContextRestorer[snapshots.length];
+        int i = 0;
+        try {
+            for (; i < snapshots.length; i++) {
+                restorers[i] = snapshots[i].begin();
+            }
+        } catch (RuntimeException e) {
+            endFrom(restorers, i - 1);
+            throw e;
+        } catch (Error e) {
+            endFrom(restorers, i - 1);
+            throw e;
+        }
+        return restorers;
+    }
+
+    /**
+     * Restores the context that was on the current thread before 
+     * {@link #begin()}, in the reverse order in which it was applied.
+     */
+    static void end(ThreadContextRestorer[] restorers) {
+        if (restorers != null) {
+            endFrom(restorers, restorers.length - 1);
+        }
+    }
+
+    private static void endFrom(ThreadContextRestorer[] restorers, int last) {
+        RuntimeException failure = null;
+        for (int i = last; i >= 0; i--) {
+            try {
+                restorers[i].endContext();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What a thread of a reference executor or thread factory is running, for
+ * {@link ManageableThread} and {@link HungThreadDetector}.
+ * <p>
+ * {@link ManagedFutureTask} records the start and end of each task on the
+ * statistics of the current thread, which takes a few volatile writes and
+ * no allocation. CPU time and allocated bytes are read from the 
+ * {@link ThreadMXBean} when they are asked for. Threads are registered 
+ * while they are alive so that the detector can find them.
+ */
+final class ThreadStatistics {
+
+    /**
+     * Implemented by threads that have statistics.
+     */
+    interface Holder {
+
+        ThreadStatistics statistics();
+    }
+
+    // the statistics of all live threads that have them
+    static final Set<ThreadStatistics> LIVE = 
+            Collections.newSetFromMap(new ConcurrentHashMap<ThreadStatistics, Boolean>());
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    // com.sun.management.ThreadMXBean.getThreadAllocatedBytes, if available
+    private static final Method GET_THREAD_ALLOCATED_BYTES = allocatedBytesMethod();
+
+    final Thread thread;
+    private volatile String identityName;
+    private volatile long startNanos;
+    // zero while the thread is not running a task
+    private volatile long startMillis;
+
+    ThreadStatistics(Thread thread) {
+        this.thread = thread;
+    }
+
+    /**
+     * Returns the statistics of the current thread, or null if it has none.
+     */
+    static ThreadStatistics current() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof Holder? ((Holder) thread).statistics(): null;
+    }
+
+    void register() {
+        LIVE.add(this);
+    }
+
+    void unregister() {
+        taskEnded();
+        LIVE.remove(this);
+    }
+
+    /**
+     * Records that the thread started running a task, unless it is already
+     * running one, as when a task runs another task directly.
+     * 
+     * @return true if the task was recorded, in which case 
+     *         {@link #taskEnded()} must be called when it ends.
+     */
+    boolean taskStarting(String identityName) {
+        if (startMillis != 0L) {
+            return false;
+        }
+        this.identityName = identityName;
+        startNanos = System.nanoTime();
+        startMillis = Math.max(1L, System.currentTimeMillis());
+        return true;
+    }
+
+    void taskEnded() {
+        startMillis = 0L;
+        identityName = null;
+    }
+
+    String getIdentityName() {
+        return startMillis == 0L? null: identityName;
+    }
+
+    long getStartMillis() {
+        return startMillis;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    long getCpuTime() {
+        if (!THREAD_MX_BEAN.isThreadCpuTimeSupported() || !THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+            return -1L;
+        }
+        return THREAD_MX_BEAN.getThreadCpuTime(thread.getId());
+    }
+
+    long getAllocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null) {
+            return -1L;
+        }
+        try {
+            return ((Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_MX_BEAN, thread.getId())).longValue();
+        } catch (ReflectiveOperationException e) {
+            return -1L;
+        }
+    }
+
+    private static Method allocatedBytesMethod() {
+        try {
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            return type.isInstance(THREAD_MX_BEAN)? type.getMethod("getThreadAllocatedBytes", long.class): null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+/**
+ * A {@link Trigger} that computes run times as {@code ZonedDateTime}s in 
+ * its own time zone, rather than as {@code Date}s. Because the time zone
+ * is part of each date/time, rules such as "every day at 09:00 in Paris"
+ * remain correct across daylight saving time transitions.
+ * <p>
+ * A {@link ManagedScheduledExecutorService} calls the {@code ZonedDateTime}
+ * methods of a ZonedTrigger directly. The {@code Date} methods of 
+ * {@code Trigger} have default implementations that adapt to them, so a
+ * ZonedTrigger can also be used wherever a Trigger is expected.
+ * <p>
+ * 
+ * Example:
+ * <pre>
+ * &#47;**
+ *  * A trigger that runs every day at a given local time.
+ *  *&#47;
+ *  public class DailyTrigger implements ZonedTrigger {
+ *      private final LocalTime time;
+ *      private final ZoneId zone;
+ *
+ *      public DailyTrigger(LocalTime time, ZoneId zone) {
+ *          this.time = time;
+ *          this.zone = zone;
+ *      }
+ *
+ *      public ZonedDateTime getNextRunTime(LastExecution lastExecutionInfo, 
+ *                                          ZonedDateTime taskScheduledTime) {
+ *          ZonedDateTime after = lastExecutionInfo == null? 
+ *                  taskScheduledTime: lastExecutionInfo.getScheduledStart(zone);
+ *          ZonedDateTime next = after.with(time);
+ *          return next.isAfter(after)? next: after.plusDays(1).with(time);
+ *      }
+ *
+ *      public ZoneId getZoneId() {
+ *          return zone;
+ *      }
+ *  }
+ * </pre>
+ * <P>
+ *
+ * @since 1.1
+ */
+public interface ZonedTrigger extends Trigger {
+
+  /**
+   * Retrieve the next time that the task should run after.
+   * 
+   * @param lastExecutionInfo information about the last execution of the task. 
+   *                   This value will be null if the task has not yet run.
+   * @param taskScheduledTime the date/time in which the task was scheduled using
+   *                          the {@code ManagedScheduledExecutorService.schedule} 
+   *                          method, in the time zone of this trigger.
+   * @return the date/time in which the next task iteration should execute on or 
+   *         after, or null if the task should not run again.
+   */
+  public ZonedDateTime getNextRunTime(LastExecution lastExecutionInfo,
+                                      ZonedDateTime taskScheduledTime);
+
+  /**
+   * Return true if this run instance should be skipped.
+   * <p>
+   * The default implementation returns false.
+   * 
+   * @param lastExecutionInfo information about the last execution of the task. 
+   *                   This value will be null if the task has not yet run.
+   * @param scheduledRunTime the date/time that the task was originally scheduled 
+   *                         to run.
+   * @return true if the task should be skipped and rescheduled.
+   * @see Trigger#skipRun(LastExecution, Date)
+   */
+  public default boolean skipRun(LastExecution lastExecutionInfo,
+                                 ZonedDateTime scheduledRunTime) {
+    return false;
+  }
+
+  /**
+   * The time zone of the date/times passed to and returned by this trigger.
+   * <p>
+   * The default implementation returns the system default time zone.
+   * 
+   * @return the time zone of this trigger.
+   */
+  public default ZoneId getZoneId() {
+    return ZoneId.systemDefault();
+  }
+
+  /**
+   * Retrieve the next time that the task should run after, by converting
+   * {@code taskScheduledTime} to the time zone of this trigger and calling 
+   * {@link #getNextRunTime(LastExecution, ZonedDateTime)}.
+   * 
+   * @param lastExecutionInfo information about the last execution of the task. 
+   *                   This value will be null if the task has not yet run.
+   * @param taskScheduledTime the date/time in which the task was scheduled using
+   *                          the {@code ManagedScheduledExecutorService.schedule} 
+   *                          method.
+   * @return the date/time in which the next task iteration should execute on or 
+   *         after.
+   */
+  @Override
+  public default Date getNextRunTime(LastExecution lastExecutionInfo,
+                                     Date taskScheduledTime) {
+    ZonedDateTime next = getNextRunTime(lastExecutionInfo, 
+        ZonedDateTime.ofInstant(taskScheduledTime.toInstant(), getZoneId()));
+    return next == null? null: Date.from(next.toInstant());
+  }
+
+  /**
+   * Return true if this run instance should be skipped, by converting 
+   * {@code scheduledRunTime} to the time zone of this trigger and calling 
+   * {@link #skipRun(LastExecution, ZonedDateTime)}.
+   * 
+   * @param lastExecutionInfo information about the last execution of the task. 
+   *                   This value will be null if the task has not yet run.
+   * @param scheduledRunTime the date/time that the task was originally scheduled 
+   *                         to run.
+   * @return true if the task should be skipped and rescheduled.
+   */
+  @Override
+  public default boolean skipRun(LastExecution lastExecutionInfo,
+                                 Date scheduledRunTime) {
+    return skipRun(lastExecutionInfo, 
+        ZonedDateTime.ofInstant(scheduledRunTime.toInstant(), getZoneId()));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.spi;
+
+/**
+ * Receives the measurements that a managed executor takes of the tasks 
+ * submitted to it, so that queue depth, queue wait time, run time and 
+ * rejections can be monitored.
+ * <p>
+ * Measurements are broken down by the {@link javax.enterprise.concurrent.ManagedTask#IDENTITY_NAME}
+ * execution property of the tasks. The executor asks for the 
+ * {@link TaskMetrics} of a task once, when the task is submitted, and 
+ * reports every lifecycle event of the task to it.
+ * <p>
+ * Implementations are called on the task submission and execution paths,
+ * so they must be thread-safe, must not block, and should not allocate
+ * memory for identity names they have seen before.
+ *
+ * @since 1.1
+ */
+public interface ExecutorMetrics {
+
+  /**
+   * Returns the metrics to which the events of a task are reported.
+   * 
+   * @param identityName the {@code IDENTITY_NAME} execution property of the
+   *                     task, or null if the task does not specify one.
+   * @return the metrics for tasks with the given identity name. Must not
+   *         be null.
+   */
+  public TaskMetrics getTaskMetrics(String identityName);
+}
@@ -0,0 +1,87 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.spi;
+
+/**
+ * Decides which of several servers runs the scheduled tasks of a given 
+ * {@link javax.enterprise.concurrent.ManagedTask#IDENTITY_NAME}, so that a
+ * schedule that every server registers fires on one server only.
+ * <p>
+ * The executor registers the identity name of a task when the task is 
+ * scheduled, and unregisters it when the task ends. Each time the task is 
+ * due, the executor asks whether this server owns the lease for the 
+ * identity name, and skips the run if it does not. The task stays 
+ * scheduled, so that it runs here if the lease passes to this server.
+ * <p>
+ * {@link #isOwner(String)} is called on the timer path for every run, so 
+ * implementations should answer it from memory, and acquire and renew 
+ * leases in batches rather than per task.
+ *
+ * @since 1.1
+ */
+public interface LeaseManager {
+
+  /**
+   * Registers interest in the lease for an identity name. A name can be 
+   * registered several times, by several tasks, and is held until it has
+   * been unregistered as many times.
+   * 
+   * @param identityName the identity name of a scheduled task.
+   */
+  public void register(String identityName);
+
+  /**
+   * Withdraws a registration of an identity name, releasing the lease when
+   * no registration remains.
+   * 
+   * @param identityName the identity name of a task that ended.
+   */
+  public void unregister(String identityName);
+
+  /**
+   * Returns whether this server currently owns the lease for a registered
+   * identity name.
+   * 
+   * @param identityName the identity name of a task that is due.
+   * @return true if the task should run on this server.
+   */
+  public boolean isOwner(String identityName);
+}
@@ -0,0 +1,124 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.spi;
+
+/**
+ * Keeps the {@link javax.enterprise.concurrent.Trigger} tasks of a managed 
+ * scheduled executor across restarts.
+ * <p>
+ * The executor adds a schedule when a task is scheduled, reports each run
+ * of the task, and removes the schedule when the trigger ends the task or
+ * the task is cancelled. A schedule is opaque to the store: it is the task
+ * and its trigger as serialized by the executor. The times of the last run
+ * are kept so that the trigger can resume from them.
+ * <p>
+ * When the executor starts, it asks the store for the schedules that have
+ * not been removed, in the order they were added, and schedules them 
+ * again.
+ * <p>
+ * Implementations are called on the scheduling and execution paths, so 
+ * they must be thread-safe and should not block for long. Failures to 
+ * write are reported as unchecked exceptions.
+ *
+ * @since 1.1
+ */
+public interface ScheduleStore {
+
+  /**
+   * Time value passed to {@link Visitor#visit} for a schedule that has not
+   * run yet.
+   */
+  public static final long NEVER = Long.MIN_VALUE;
+
+  /**
+   * Adds a schedule.
+   * 
+   * @param schedule the serialized task and trigger.
+   * @return the identifier of the schedule, which is never negative.
+   */
+  public long add(byte[] schedule);
+
+  /**
+   * Records a run of a schedule, or a run that its trigger skipped, 
+   * replacing the previous one.
+   * 
+   * @param id the identifier returned by {@link #add(byte[])}.
+   * @param scheduledStart when the run was scheduled to start, in 
+   *                       milliseconds since the epoch.
+   * @param runStart when the run started, in milliseconds since the epoch.
+   * @param runEnd when the run ended, in milliseconds since the epoch.
+   */
+  public void executed(long id, long scheduledStart, long runStart, long runEnd);
+
+  /**
+   * Removes a schedule that will not run again. Unknown identifiers are 
+   * ignored.
+   * 
+   * @param id the identifier returned by {@link #add(byte[])}.
+   */
+  public void remove(long id);
+
+  /**
+   * Passes each schedule that has not been removed to the visitor, in the
+   * order the schedules were added.
+   * 
+   * @param visitor the visitor.
+   */
+  public void restore(Visitor visitor);
+
+  /**
+   * Receives the schedules of a store.
+   */
+  public interface Visitor {
+
+    /**
+     * Called for a schedule of the store.
+     * 
+     * @param id the identifier of the schedule.
+     * @param schedule the serialized task and trigger.
+     * @param scheduledStart when the last run was scheduled to start, or 
+     *                       {@link #NEVER} if the schedule has not run.
+     * @param runStart when the last run started, or {@code NEVER}.
+     * @param runEnd when the last run ended, or {@code NEVER}.
+     */
+    public void visit(long id, byte[] schedule, long scheduledStart, long runStart, long runEnd);
+  }
+}
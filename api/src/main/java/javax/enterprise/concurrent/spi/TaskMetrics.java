@@ -0,0 +1,99 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.spi;
+
+/**
+ * Records the lifecycle events of the tasks that share an identity name, as
+ * reported by a managed executor. See {@link ExecutorMetrics}.
+ * <p>
+ * A task is <em>pending</em> from the time it is submitted, or a periodic 
+ * task is scheduled again, until it starts or is aborted. The number of 
+ * pending tasks is therefore the number of submitted tasks minus the 
+ * number of started tasks and of tasks aborted while pending.
+ * <p>
+ * Methods are called concurrently by the threads that submit, run and 
+ * cancel tasks. They must not block or throw exceptions, and should not 
+ * allocate memory.
+ *
+ * @since 1.1
+ */
+public interface TaskMetrics {
+
+  /**
+   * Called when a task is submitted, or a periodic task is scheduled to 
+   * run again.
+   */
+  public void taskSubmitted();
+
+  /**
+   * Called when a pending task starts running.
+   * 
+   * @param queueWaitNanos the time in nanoseconds that the task waited to 
+   *                       be run, measured from the time it was submitted,
+   *                       or for a delayed or periodic task, from the time
+   *                       it was due.
+   */
+  public void taskStarted(long queueWaitNanos);
+
+  /**
+   * Called when a run of a task ends, even if the task was cancelled while 
+   * it was running.
+   * 
+   * @param runNanos the time in nanoseconds that the task ran.
+   * @param failed true if the task threw an exception.
+   */
+  public void taskCompleted(long runNanos, boolean failed);
+
+  /**
+   * Called when a task is cancelled or aborted, or ends without running 
+   * because its trigger returned no further run time.
+   * 
+   * @param pending true if the task was pending, false if it was running
+   *                or waiting to be scheduled again.
+   */
+  public void taskAborted(boolean pending);
+
+  /**
+   * Called when a task is rejected by the executor, for instance because 
+   * the executor is shut down. The task is also reported as aborted.
+   */
+  public void taskRejected();
+}
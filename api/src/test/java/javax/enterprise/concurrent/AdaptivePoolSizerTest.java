@@ -0,0 +1,240 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.spi.TaskMetrics;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.After;
+import org.junit.Test;
+
+public class AdaptivePoolSizerTest {
+
+    AdaptivePoolSizer sizer;
+
+    @After
+    public void tearDown() {
+        if (sizer != null) {
+            sizer.close();
+        }
+    }
+
+    /**
+     * A backlog of tasks that block grows the pool by a quarter at a time, 
+     * up to the maximum pool size
+     */
+    @Test
+    public void testGrowWithBlockingBacklog() throws Exception {
+        sizer = new AdaptivePoolSizer(2, 8, 1, TimeUnit.HOURS);
+        TestPool pool = new TestPool(2, 20);
+        sizer.control(pool);
+        TaskMetrics metrics = sizer.getTaskMetrics(null);
+        for (int i = 0; i < 2 * AdaptivePoolSizer.SAMPLE_PERIOD; i++) {
+            metrics.taskStarted(TimeUnit.MILLISECONDS.toNanos(50));
+            long start = System.nanoTime();
+            Thread.sleep(2);
+            metrics.taskCompleted(System.nanoTime() - start, false);
+        }
+        sizer.adjust();
+        assertEquals(3, pool.poolSize);
+        assertTrue(sizer.getBlockingRatio() > 0.5);
+        assertTrue(sizer.getThroughput() > 0.0);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), sizer.getMeanQueueWaitNanos());
+        assertTrue(sizer.getMeanRunTimeNanos() >= TimeUnit.MILLISECONDS.toNanos(2));
+        assertTrue(sizer.getLastDecision(), sizer.getLastDecision().startsWith("grow 2 -> 3"));
+
+        // no task starts while tasks are queued
+        for (int i = 0; i < 10; i++) {
+            sizer.adjust();
+        }
+        assertEquals(8, pool.poolSize);
+        assertEquals(6, sizer.getGrowCount());
+        assertEquals(0, sizer.getShrinkCount());
+        assertEquals(20, sizer.getQueueSize());
+        assertTrue(sizer.getLastDecision(), sizer.getLastDecision().startsWith("hold 8 -> 8"));
+    }
+
+    /**
+     * Tasks that mostly use CPU do not grow the pool beyond the ceiling 
+     * given by their blocking ratio, however long the backlog
+     */
+    @Test
+    public void testCpuBoundCeiling() throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isCurrentThreadCpuTimeSupported() 
+                && threadMXBean.isThreadCpuTimeEnabled());
+        int cpus = Runtime.getRuntime().availableProcessors();
+        sizer = new AdaptivePoolSizer(1, 100 * cpus, 1, TimeUnit.HOURS);
+        TestPool pool = new TestPool(1, 100);
+        sizer.control(pool);
+        TaskMetrics metrics = sizer.getTaskMetrics("cpu");
+        for (int i = 0; i < 2 * AdaptivePoolSizer.SAMPLE_PERIOD; i++) {
+            metrics.taskStarted(TimeUnit.MILLISECONDS.toNanos(50));
+            long start = System.nanoTime();
+            long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+            while (threadMXBean.getCurrentThreadCpuTime() - cpuStart < TimeUnit.MILLISECONDS.toNanos(2)) {
+                // spin
+            }
+            metrics.taskCompleted(System.nanoTime() - start, false);
+        }
+        for (int i = 0; i < 20; i++) {
+            sizer.adjust();
+        }
+        // other threads may take the CPU while the tasks spin
+        assertTrue(String.valueOf(sizer.getBlockingRatio()), sizer.getBlockingRatio() < 0.9);
+        assertTrue(sizer.getCeilingPoolSize() <= 10 * cpus);
+        assertEquals(sizer.getCeilingPoolSize(), pool.poolSize);
+        assertTrue(sizer.getLastDecision(), sizer.getLastDecision().contains("at the ceiling"));
+    }
+
+    /**
+     * An idle pool shrinks by an eighth at a time down to the minimum size
+     */
+    @Test
+    public void testShrinkWhenIdle() throws Exception {
+        sizer = new AdaptivePoolSizer(2, 16, 1, TimeUnit.HOURS);
+        TestPool pool = new TestPool(16, 0);
+        sizer.control(pool);
+        sizer.adjust();
+        assertEquals(14, pool.poolSize);
+        assertTrue(sizer.getLastDecision(), sizer.getLastDecision().startsWith("shrink 16 -> 14"));
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (int i = 0; i < 20; i++) {
+            sizer.adjust();
+            sizes.add(pool.poolSize);
+        }
+        for (int i = 1; i < sizes.size(); i++) {
+            assertTrue(sizes.toString(), sizes.get(i) <= sizes.get(i - 1));
+        }
+        assertEquals(2, pool.poolSize);
+        assertEquals(0, sizer.getGrowCount());
+    }
+
+    /**
+     * The sizer resizes a running executor under load, forwards the events
+     * to its delegate, and is published as an MBean until it is closed
+     */
+    @Test
+    public void testControlExecutor() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        DefaultExecutorMetrics metrics = new DefaultExecutorMetrics("sized", 16, null);
+        sizer = new AdaptivePoolSizer("sized", 1, 4, 20, TimeUnit.MILLISECONDS, metrics, server, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("sizer-"));
+        PriorityManagedExecutorService executor = new PriorityManagedExecutorService(1, 1, TimeUnit.MILLISECONDS, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("sized-"), sizer);
+        ObjectName objectName = new ObjectName(DefaultExecutorMetrics.DOMAIN 
+                + ":type=AdaptivePoolSizer,name=" + ObjectName.quote("sized"));
+        try {
+            sizer.control(executor);
+            try {
+                sizer.control(executor);
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 40; i++) {
+                futures.add(executor.submit(new DefaultExecutorMetricsTest.Sleep(20)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (executor.getPoolSize() == 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(executor.getPoolSize() > 1);
+            assertEquals(executor.getPoolSize(), server.getAttribute(objectName, "PoolSize"));
+            assertEquals(4, server.getAttribute(objectName, "MaxPoolSize"));
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(40L, metrics.getMetrics().getCompletedCount());
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (executor.getPoolSize() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, executor.getPoolSize());
+            assertTrue(sizer.getGrowCount() > 0);
+            assertTrue(sizer.getShrinkCount() > 0);
+        } finally {
+            sizer.close();
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertTrue(sizer.isClosed());
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    /**
+     * A pool whose size is only recorded.
+     */
+    static class TestPool implements AdaptivePoolSizer.Pool {
+
+        volatile int poolSize;
+        volatile int queueSize;
+
+        TestPool(int poolSize, int queueSize) {
+            this.poolSize = poolSize;
+            this.queueSize = queueSize;
+        }
+
+        @Override
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        @Override
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        @Override
+        public int getQueueSize() {
+            return queueSize;
+        }
+    }
+}
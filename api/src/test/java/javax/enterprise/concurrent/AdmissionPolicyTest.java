@@ -0,0 +1,367 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.listOf;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+public class AdmissionPolicyTest {
+
+    AbstractManagedExecutorService executor;
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * A task submitted when the bound is reached is refused, and a place is
+     * freed when a waiting task is cancelled
+     */
+    @Test
+    public void testRejectNewest() throws Exception {
+        executor = newExecutor(AdmissionPolicy.rejectNewest(2));
+        block();
+        executor.submit(task("a"));
+        Future<?> b = executor.submit(task("b"));
+        try {
+            executor.submit(task("c"));
+            fail("task admitted beyond the bound");
+        } catch (ManagedRejectedExecutionException e) {
+            assertEquals(RejectionReason.QUEUE_FULL, e.getReason());
+        }
+        assertTrue(b.cancel(false));
+        Future<?> d = executor.submit(task("d"));
+        assertEquals(2, executor.admission.getPending());
+        release.countDown();
+        d.get(10, TimeUnit.SECONDS);
+        assertEquals(listOf("a", "d"), order);
+        assertEquals(0, executor.admission.getPending());
+    }
+
+    /**
+     * The task that waited longest is dropped to make room for a new task,
+     * and its future tells why
+     */
+    @Test
+    public void testRejectOldest() throws Exception {
+        executor = newExecutor(AdmissionPolicy.rejectOldest(2));
+        block();
+        Future<?> a = executor.submit(task("a"));
+        executor.submit(task("b"));
+        Future<?> c = executor.submit(task("c"));
+        AbortedException aborted = abortOf(a);
+        assertEquals(RejectionReason.EVICTED, aborted.getRejectionReason());
+        assertTrue(aborted.getCause() instanceof ManagedRejectedExecutionException);
+        release.countDown();
+        c.get(10, TimeUnit.SECONDS);
+        assertEquals(listOf("b", "c"), order);
+        assertEquals(0, executor.admission.getPending());
+    }
+
+    /**
+     * A batch that does not fit is refused as a whole
+     */
+    @Test
+    public void testSubmitAllBeyondBound() throws Exception {
+        executor = newExecutor(AdmissionPolicy.rejectNewest(2));
+        block();
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (String name : new String[] { "a", "b", "c" }) {
+            tasks.add(Executors.callable(task(name)));
+        }
+        try {
+            executor.submitAll(tasks);
+            fail("batch admitted beyond the bound");
+        } catch (ManagedRejectedExecutionException e) {
+            assertEquals(RejectionReason.QUEUE_FULL, e.getReason());
+        }
+        assertEquals(0, executor.admission.getPending());
+        Future<?> d = executor.submit(task("d"));
+        release.countDown();
+        d.get(10, TimeUnit.SECONDS);
+        assertEquals(listOf("d"), order);
+    }
+
+    /**
+     * Once tasks have waited longer than the target for a whole interval,
+     * some of them are dropped when they are about to start, but not all.
+     * Each task runs for at least 5 ms, so the waits only grow while the 
+     * backlog drains.
+     */
+    @Test
+    public void testCodel() throws Exception {
+        executor = newExecutor(AdmissionPolicy.codel(1000, 1, 20, TimeUnit.MILLISECONDS));
+        block();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(executor.submit(sleep(String.valueOf(i), 5)));
+        }
+        release.countDown();
+        int dropped = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertEquals(RejectionReason.QUEUE_DELAY, abortOf(future).getRejectionReason());
+                dropped++;
+            }
+        }
+        assertTrue("dropped " + dropped, dropped > 0);
+        assertEquals(40, dropped + order.size());
+        assertFalse(order.isEmpty());
+        assertEquals(0, executor.admission.getPending());
+    }
+
+    /**
+     * The first drop comes a whole interval after the wait rose above the 
+     * target, later drops come sooner and sooner, and a wait below the 
+     * target ends the dropping
+     */
+    @Test
+    public void testCodelControlLaw() {
+        AdmissionController admission = new AdmissionController(
+                AdmissionPolicy.codel(1000, 1, 20, TimeUnit.MILLISECONDS));
+        admitWaiting(admission, 10);
+        long above = TimeUnit.MILLISECONDS.toNanos(5);
+        long below = TimeUnit.MICROSECONDS.toNanos(500);
+        long t = TimeUnit.SECONDS.toNanos(1);
+        assertFalse(admission.shouldDrop(below, t));
+        assertFalse(admission.shouldDrop(above, t));
+        assertFalse(admission.shouldDrop(above, t + millis(10)));
+        assertTrue(admission.shouldDrop(above, t + millis(20)));
+        // next drop after the interval
+        assertFalse(admission.shouldDrop(above, t + millis(39)));
+        assertTrue(admission.shouldDrop(above, t + millis(40)));
+        // then after interval / sqrt(2), at 54.1 ms
+        assertFalse(admission.shouldDrop(above, t + millis(54)));
+        assertTrue(admission.shouldDrop(above, t + millis(55)));
+        assertFalse(admission.shouldDrop(below, t + millis(60)));
+        // a whole interval above the target again before the next drop
+        assertFalse(admission.shouldDrop(above, t + millis(61)));
+        assertFalse(admission.shouldDrop(above, t + millis(80)));
+        assertTrue(admission.shouldDrop(above, t + millis(81)));
+    }
+
+    /**
+     * The last waiting task is never dropped, however long it waited
+     */
+    @Test
+    public void testCodelLastTask() {
+        AdmissionController admission = new AdmissionController(
+                AdmissionPolicy.codel(1000, 1, 20, TimeUnit.MILLISECONDS));
+        admitWaiting(admission, 1);
+        long above = TimeUnit.SECONDS.toNanos(1);
+        long t = TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(admission.shouldDrop(above, t + millis(20 * i)));
+        }
+    }
+
+    /**
+     * A task that waited less than the target is never dropped
+     */
+    @Test
+    public void testCodelBelowTarget() throws Exception {
+        executor = newExecutor(AdmissionPolicy.codel(1000, 1, 1, TimeUnit.HOURS));
+        block();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executor.submit(task(String.valueOf(i))));
+        }
+        Thread.sleep(20);
+        release.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(20, order.size());
+    }
+
+    /**
+     * A task submitted after shutdown is refused with the shutdown reason
+     */
+    @Test
+    public void testShutdownReason() throws Exception {
+        executor = new DefaultManagedExecutorService(1, 1);
+        executor.shutdown();
+        try {
+            executor.execute(task("late"));
+            fail("task accepted after shutdown");
+        } catch (ManagedRejectedExecutionException e) {
+            assertEquals(RejectionReason.SHUTDOWN, e.getReason());
+            assertNotNull(e.getCause());
+        }
+    }
+
+    /**
+     * Aborts that are not rejections have no reason
+     */
+    @Test
+    public void testAbortedExceptionReason() {
+        assertNull(new AbortedException("skipped").getRejectionReason());
+        assertEquals(RejectionReason.QUEUE_FULL, 
+                new AbortedException("full", null, RejectionReason.QUEUE_FULL).getRejectionReason());
+    }
+
+    /**
+     * Policy arguments are checked
+     */
+    @Test
+    public void testPolicyArguments() {
+        AdmissionPolicy policy = AdmissionPolicy.codel(10, 5, 100, TimeUnit.MILLISECONDS);
+        assertEquals(AdmissionPolicy.Discipline.CODEL, policy.getDiscipline());
+        assertEquals(10, policy.getCapacity());
+        assertEquals(5, policy.getTarget(TimeUnit.MILLISECONDS));
+        assertEquals(100, policy.getInterval(TimeUnit.MILLISECONDS));
+        assertEquals(0, AdmissionPolicy.rejectOldest(1).getTarget(TimeUnit.NANOSECONDS));
+        try {
+            AdmissionPolicy.rejectNewest(0);
+            fail("zero capacity accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            AdmissionPolicy.codel(10, 0, 100, TimeUnit.MILLISECONDS);
+            fail("zero target accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Admits tasks that stay waiting, as the tasks the controller decides 
+     * about.
+     */
+    private static void admitWaiting(AdmissionController admission, int count) {
+        for (int i = 0; i < count; i++) {
+            ManagedFutureTask<Object> future = new ManagedFutureTask<Object>(null, 
+                    Executors.callable(new Runnable() {
+                        @Override
+                        public void run() {
+                        }
+                    }));
+            future.submitted();
+            admission.admit(future);
+        }
+        assertEquals(count, admission.getPending());
+    }
+
+    private AbstractManagedExecutorService newExecutor(AdmissionPolicy policy) {
+        return new PriorityManagedExecutorService(1, 1, TimeUnit.HOURS, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("admission-"), policy, null);
+    }
+
+    /**
+     * Occupies the only thread until the test releases it. The blocking 
+     * task does not hold a place in the bound once it has started.
+     */
+    private void block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Returns the exception that the aborted task's future reports.
+     */
+    private static AbortedException abortOf(Future<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AbortedException);
+            return (AbortedException) e.getCause();
+        }
+        fail("task was not aborted");
+        return null;
+    }
+
+    private Runnable task(String name) {
+        return sleep(name, 0);
+    }
+
+    /**
+     * Returns a task that records its name and sleeps.
+     */
+    private Runnable sleep(final String name, final long millis) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
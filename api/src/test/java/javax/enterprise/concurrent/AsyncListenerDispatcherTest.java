@@ -0,0 +1,371 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.concurrent.AsyncListenerDispatcher.OverflowPolicy;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.listOf;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for AsyncListenerDispatcher
+ */
+public class AsyncListenerDispatcherTest {
+
+    AsyncListenerDispatcher dispatcher;
+    DefaultManagedExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultManagedExecutorService(2, 1);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+            assertTrue(dispatcher.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Test that the events of each task are delivered in order, on the 
+     * dispatcher thread.
+     */
+    @Test
+    public void testEventOrder() throws Exception {
+        dispatcher = new AsyncListenerDispatcher(64, OverflowPolicy.BLOCK, new NamedThreadFactory("dispatcher"));
+        TaskEventListener listener = new TaskEventListener(1000);
+        ManagedTaskListener async = dispatcher.wrap(listener);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(executor.submit(ManagedExecutors.managedTask(new CountingTask(i), async)));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        // taskDone is published after the future completes
+        assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        assertEquals(1000, listener.events.size());
+        for (List<String> events : listener.events.values()) {
+            assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone"), events);
+        }
+        assertEquals(Collections.singleton("dispatcher"), listener.threads);
+        assertEquals(0, dispatcher.getDiscardedEventCount());
+    }
+
+    /**
+     * Test that events are discarded and counted when the ring buffer is 
+     * full and the overflow policy is DISCARD.
+     */
+    @Test
+    public void testDiscard() throws Exception {
+        dispatcher = new AsyncListenerDispatcher(4, OverflowPolicy.DISCARD, new NamedThreadFactory("dispatcher"));
+        BlockingListener listener = new BlockingListener();
+        ManagedTaskListener async = dispatcher.wrap(listener);
+        async.taskSubmitted(null, null, null);
+        assertTrue(listener.blocked.await(10, TimeUnit.SECONDS));
+        // the event being delivered keeps its slot until it is done
+        for (int i = 0; i < 10; i++) {
+            async.taskSubmitted(null, null, null);
+        }
+        assertEquals(7, dispatcher.getDiscardedEventCount());
+        listener.release.countDown();
+        assertTrue(dispatcher.awaitDelivery(10, TimeUnit.SECONDS));
+        assertEquals(4, listener.count.get());
+    }
+
+    /**
+     * Test that a publishing thread waits when the ring buffer is full and 
+     * the overflow policy is BLOCK.
+     */
+    @Test
+    public void testBlock() throws Exception {
+        dispatcher = new AsyncListenerDispatcher(2, OverflowPolicy.BLOCK, new NamedThreadFactory("dispatcher"));
+        BlockingListener listener = new BlockingListener();
+        final ManagedTaskListener async = dispatcher.wrap(listener);
+        async.taskSubmitted(null, null, null);
+        assertTrue(listener.blocked.await(10, TimeUnit.SECONDS));
+        async.taskSubmitted(null, null, null);
+        final CountDownLatch published = new CountDownLatch(1);
+        Thread publisher = new Thread() {
+            @Override
+            public void run() {
+                async.taskSubmitted(null, null, null);
+                published.countDown();
+            }
+        };
+        publisher.start();
+        assertFalse(published.await(100, TimeUnit.MILLISECONDS));
+        listener.release.countDown();
+        assertTrue(published.await(10, TimeUnit.SECONDS));
+        assertTrue(dispatcher.awaitDelivery(10, TimeUnit.SECONDS));
+        assertEquals(3, listener.count.get());
+        assertEquals(0, dispatcher.getDiscardedEventCount());
+    }
+
+    /**
+     * Test that a Flushable listener is flushed after each batch, and that 
+     * an exception thrown by a listener does not stop delivery.
+     */
+    @Test
+    public void testFlushAndExceptions() throws Exception {
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        dispatcher = new AsyncListenerDispatcher(16, OverflowPolicy.BLOCK, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                        uncaught.add(e);
+                    }
+                });
+                return thread;
+            }
+        });
+        BlockingListener blocking = new BlockingListener();
+        FlushableListener flushable = new FlushableListener();
+        ManagedTaskListener async = dispatcher.wrap(flushable);
+        dispatcher.wrap(blocking).taskSubmitted(null, null, null);
+        assertTrue(blocking.blocked.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            async.taskSubmitted(null, null, null);
+        }
+        async.taskAborted(null, null, null, new IllegalStateException());
+        async.taskSubmitted(null, null, null);
+        blocking.release.countDown();
+        assertTrue(dispatcher.awaitDelivery(10, TimeUnit.SECONDS));
+        assertTrue(flushable.flushed.await(10, TimeUnit.SECONDS));
+        // all events were delivered as one batch
+        assertEquals(listOf("12 events"), flushable.flushes);
+        assertEquals(1, uncaught.size());
+        assertTrue(uncaught.get(0) instanceof IllegalStateException);
+    }
+
+    /**
+     * Test that events are delivered before the dispatcher ends, and that 
+     * events published after shutdown are discarded.
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        dispatcher = new AsyncListenerDispatcher(16);
+        BlockingListener listener = new BlockingListener();
+        ManagedTaskListener async = dispatcher.wrap(listener);
+        async.taskSubmitted(null, null, null);
+        async.taskSubmitted(null, null, null);
+        assertTrue(listener.blocked.await(10, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+        assertTrue(dispatcher.isShutdown());
+        async.taskSubmitted(null, null, null);
+        assertFalse(dispatcher.awaitTermination(50, TimeUnit.MILLISECONDS));
+        listener.release.countDown();
+        assertTrue(dispatcher.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2, listener.count.get());
+        assertEquals(1, dispatcher.getDiscardedEventCount());
+    }
+
+    static class CountingTask implements Runnable {
+
+        final int id;
+
+        CountingTask(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    /**
+     * Records the events of each task, which is only called by the 
+     * dispatcher thread.
+     */
+    static class TaskEventListener implements ManagedTaskListener {
+
+        final Map<Object, List<String>> events = new HashMap<Object, List<String>>();
+        final Set<String> threads = new HashSet<String>();
+        final CountDownLatch done;
+
+        TaskEventListener(int tasks) {
+            done = new CountDownLatch(tasks);
+        }
+
+        private void record(Object task, String event) {
+            threads.add(Thread.currentThread().getName());
+            List<String> list = events.get(task);
+            if (list == null) {
+                list = new ArrayList<String>();
+                events.put(task, list);
+            }
+            list.add(event);
+        }
+
+        @Override
+        public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            record(task, "taskSubmitted");
+        }
+
+        @Override
+        public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            record(task, "taskAborted");
+        }
+
+        @Override
+        public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            record(task, "taskDone");
+            done.countDown();
+        }
+
+        @Override
+        public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            record(task, "taskStarting");
+        }
+    }
+
+    /**
+     * Blocks in its first event until released, and counts events.
+     */
+    static class BlockingListener implements ManagedTaskListener {
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            if (count.getAndIncrement() == 0) {
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * Buffers events and records how many each flush writes.
+     */
+    static class FlushableListener implements ManagedTaskListener, Flushable {
+
+        final List<String> flushes = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch flushed = new CountDownLatch(1);
+        int buffered;
+
+        @Override
+        public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            buffered++;
+        }
+
+        @Override
+        public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            buffered++;
+            throw (RuntimeException) exception;
+        }
+
+        @Override
+        public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            buffered++;
+        }
+
+        @Override
+        public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            buffered++;
+        }
+
+        @Override
+        public void flush() {
+            flushes.add(buffered + " events");
+            buffered = 0;
+            flushed.countDown();
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+
+        final String name;
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for CronTrigger
+ */
+public class CronTriggerTest {
+
+    static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    static Date date(String text, TimeZone timeZone) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        format.setTimeZone(timeZone);
+        return format.parse(text);
+    }
+
+    static String format(Date date, TimeZone timeZone) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss zzz");
+        format.setTimeZone(timeZone);
+        return format.format(date);
+    }
+
+    static String next(String expression, String after) throws ParseException {
+        return next(expression, after, UTC);
+    }
+
+    static String next(String expression, String after, TimeZone timeZone) throws ParseException {
+        Date next = new CronTrigger(expression, timeZone).getNextFireTime(date(after, timeZone));
+        return next == null? null: format(next, timeZone).replaceAll(" \\S+$", "");
+    }
+
+    /**
+     * Test basic fields, ranges, steps, lists and names.
+     */
+    @Test
+    public void testFields() throws Exception {
+        assertEquals("2018-03-01 10:16:00", next("* * * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 10:30:00", next("*/15 * * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 11:05:00", next("5 * * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 12:00:00", next("0 12-14 * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-02 00:10:00", next("10,20 0 * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 10:20:00", next("10-50/10 * * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 10:17:00", next("7/10 * * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-06-01 00:00:00", next("0 0 1 jun,DEC *", "2018-03-01 10:15:00"));
+        assertEquals("2019-01-01 00:00:00", next("@yearly", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 11:00:00", next("@hourly", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 10:15:30", next("30 15 10 * * *", "2018-03-01 10:15:00"));
+        assertEquals("2018-03-01 10:15:05", next("*/5 * * * * ?", "2018-03-01 10:15:02"));
+    }
+
+    /**
+     * Test days of week, and that the day of month and day of week match 
+     * either way when both are restricted.
+     */
+    @Test
+    public void testDays() throws Exception {
+        // 2018-03-01 is a Thursday
+        assertEquals("2018-03-05 09:00:00", next("0 9 * * MON-FRI", "2018-03-02 10:00:00"));
+        assertEquals("2018-03-04 00:00:00", next("0 0 * * 0", "2018-03-01 10:00:00"));
+        assertEquals("2018-03-04 00:00:00", next("0 0 * * 7", "2018-03-01 10:00:00"));
+        assertEquals("2018-03-04 00:00:00", next("0 0 ? * SUN", "2018-03-01 10:00:00"));
+        assertEquals("2018-03-15 00:00:00", next("0 0 15 * *", "2018-03-01 10:00:00"));
+        assertEquals("2018-03-04 00:00:00", next("0 0 15 * SUN", "2018-03-01 10:00:00"));
+        assertEquals("2018-04-15 00:00:00", next("0 0 15 * */7", "2018-03-01 10:00:00"));
+        assertEquals("2018-07-15 00:00:00", next("0 0 15 * */7", "2018-04-16 10:00:00"));
+        assertEquals("2021-02-01 00:00:00", next("0 0 */28 2 MON", "2018-03-01 10:00:00"));
+        assertEquals("2018-03-31 00:00:00", next("0 0 31 * *", "2018-02-01 10:00:00"));
+        assertEquals("2020-02-29 00:00:00", next("0 0 29 2 *", "2018-03-01 10:00:00"));
+        assertEquals("2104-02-29 00:00:00", next("0 0 29 2 *", "2096-03-01 00:00:00"));
+    }
+
+    /**
+     * Test that invalid expressions and expressions that can never match 
+     * are rejected.
+     */
+    @Test
+    public void testInvalidExpressions() {
+        String[] invalid = {"", "* * * *", "* * * * * * *", "60 * * * *", "* 24 * * *", "* * 0 * *",
+            "* * * 13 *", "* * * * 8", "5-1 * * * *", "*/0 * * * *", "? * * * *", "x * * * *", 
+            "1,,2 * * * *", "0 0 30 2 *", "0 0 31 4,6,9,11 *"};
+        for (String expression : invalid) {
+            try {
+                new CronTrigger(expression, UTC);
+                fail("expression should be rejected: " + expression);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Test that a time that does not exist because of a daylight saving time
+     * transition runs after the transition, and that a time that occurs twice
+     * runs once.
+     */
+    @Test
+    public void testDaylightSavingTime() throws Exception {
+        // clocks go from 02:00 EST to 03:00 EDT on 2018-03-11
+        Date next = new CronTrigger("30 2 * * *", NEW_YORK).getNextFireTime(date("2018-03-10 12:00:00", NEW_YORK));
+        assertEquals("2018-03-11 03:30:00 EDT", format(next, NEW_YORK));
+        next = new CronTrigger("30 2 * * *", NEW_YORK).getNextFireTime(next);
+        assertEquals("2018-03-12 02:30:00 EDT", format(next, NEW_YORK));
+
+        // clocks go from 02:00 EDT back to 01:00 EST on 2018-11-04
+        CronTrigger trigger = new CronTrigger("30 1 * * *", NEW_YORK);
+        next = trigger.getNextFireTime(date("2018-11-03 12:00:00", NEW_YORK));
+        assertEquals("2018-11-04 01:30:00 EDT", format(next, NEW_YORK));
+        next = trigger.getNextFireTime(next);
+        assertEquals("2018-11-05 01:30:00 EST", format(next, NEW_YORK));
+
+        // every 20 minutes runs once for each local time from 01:00 to 02:00
+        trigger = new CronTrigger("*/20 * * * *", NEW_YORK);
+        next = date("2018-11-04 00:50:00", NEW_YORK);
+        int runs = 0;
+        while (next.before(date("2018-11-04 02:00:00", NEW_YORK))) {
+            next = trigger.getNextFireTime(next);
+            runs++;
+        }
+        assertEquals(4, runs);
+        assertEquals("2018-11-04 02:00:00 EST", format(next, NEW_YORK));
+    }
+
+    /**
+     * Test getNextRunTime, which continues after the end of the last run.
+     */
+    @Test
+    public void testGetNextRunTime() throws Exception {
+        CronTrigger trigger = new CronTrigger("0 * * * *", UTC);
+        Date scheduled = date("2018-03-01 10:15:00", UTC);
+        Date first = trigger.getNextRunTime(null, scheduled);
+        assertEquals(date("2018-03-01 11:00:00", UTC), first);
+        LastExecution overran = new Execution(first, date("2018-03-01 12:10:00", UTC));
+        assertEquals(date("2018-03-01 13:00:00", UTC), trigger.getNextRunTime(overran, scheduled));
+        assertFalse(trigger.skipRun(overran, first));
+    }
+
+    /**
+     * Test getNextRunTime when the last run ended before its scheduled time,
+     * because the clock was set back: the same time is not returned again.
+     */
+    @Test
+    public void testGetNextRunTime_runEndBeforeScheduledStart() throws Exception {
+        CronTrigger trigger = new CronTrigger("0 * * * *", UTC);
+        Date scheduled = date("2018-03-01 10:15:00", UTC);
+        Date first = trigger.getNextRunTime(null, scheduled);
+        LastExecution early = new Execution(first, date("2018-03-01 10:59:59", UTC));
+        assertEquals(date("2018-03-01 12:00:00", UTC), trigger.getNextRunTime(early, scheduled));
+        ZonedDateTime zonedScheduled = ZonedDateTime.ofInstant(scheduled.toInstant(), ZoneId.of("UTC"));
+        assertEquals(date("2018-03-01 12:00:00", UTC), 
+                Date.from(trigger.getNextRunTime(early, zonedScheduled).toInstant()));
+    }
+
+    /**
+     * Test that the ZonedDateTime methods match in the trigger's time zone.
+     */
+    @Test
+    public void testZonedDateTime() throws Exception {
+        ZoneId paris = ZoneId.of("Europe/Paris");
+        CronTrigger trigger = new CronTrigger("0 9 * * MON-FRI", paris);
+        assertEquals(paris, trigger.getZoneId());
+        ZonedDateTime scheduled = ZonedDateTime.of(2018, 3, 23, 10, 0, 0, 0, paris);
+        ZonedDateTime first = trigger.getNextRunTime(null, scheduled);
+        assertEquals(ZonedDateTime.of(2018, 3, 26, 9, 0, 0, 0, paris), first);
+        LastExecution last = new Execution(Date.from(first.toInstant()), Date.from(first.toInstant().plusSeconds(5)));
+        assertEquals(ZonedDateTime.of(2018, 3, 27, 9, 0, 0, 0, paris), trigger.getNextRunTime(last, scheduled));
+        assertEquals(Date.from(first.toInstant()), trigger.getNextRunTime(null, Date.from(scheduled.toInstant())));
+    }
+
+    /**
+     * Test random expressions against an exhaustive search.
+     */
+    @Test
+    public void testAgainstExhaustiveSearch() throws Exception {
+        Random random = new Random(7);
+        TimeZone[] timeZones = {UTC, TimeZone.getTimeZone("GMT+05:30"), TimeZone.getTimeZone("GMT-08:00")};
+        for (int i = 0; i < 500; i++) {
+            String expression = randomField(random, 0, 59) + " " + randomField(random, 0, 23) + " " 
+                    + randomField(random, 1, 28) + " " + randomField(random, 1, 12) + " " 
+                    + randomField(random, 0, 6);
+            TimeZone timeZone = timeZones[i % timeZones.length];
+            CronTrigger trigger = new CronTrigger(expression, timeZone);
+            Date after = new Date(date("2018-01-01 00:00:00", UTC).getTime() 
+                    + (long) (random.nextDouble() * 4 * 365 * 24 * 3600 * 1000));
+            for (int n = 0; n < 3; n++) {
+                Date expected = exhaustiveSearch(expression, timeZone, after);
+                Date actual = trigger.getNextFireTime(after);
+                assertEquals(expression + " after " + format(after, timeZone), expected, actual);
+                after = actual;
+            }
+        }
+    }
+
+    static String randomField(Random random, int min, int max) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return "*";
+            case 1:
+                return String.valueOf(min + random.nextInt(max - min + 1));
+            case 2:
+                int low = min + random.nextInt(max - min + 1);
+                return low + "-" + (low + random.nextInt(max - low + 1));
+            case 3:
+                return "*/" + (1 + random.nextInt(max - min));
+            default:
+                return (min + random.nextInt(max - min + 1)) + "," + (min + random.nextInt(max - min + 1));
+        }
+    }
+
+    static Date exhaustiveSearch(String expression, TimeZone timeZone, Date after) {
+        String[] fields = expression.split(" ");
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTime(after);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.MINUTE, 1);
+        Date end = new Date(after.getTime() + 10L * 366 * 24 * 3600 * 1000);
+        while (calendar.getTime().before(end)) {
+            boolean dayOfMonth = matches(fields[2], 1, calendar.get(Calendar.DAY_OF_MONTH));
+            boolean dayOfWeek = matches(fields[4], 0, calendar.get(Calendar.DAY_OF_WEEK) - 1);
+            boolean day = fields[2].startsWith("*") || fields[4].startsWith("*")? 
+                    dayOfMonth && dayOfWeek: dayOfMonth || dayOfWeek;
+            if (!day || !matches(fields[3], 1, calendar.get(Calendar.MONTH) + 1)) {
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+            } else if (!matches(fields[1], 0, calendar.get(Calendar.HOUR_OF_DAY))) {
+                calendar.add(Calendar.HOUR_OF_DAY, 1);
+                calendar.set(Calendar.MINUTE, 0);
+            } else if (!matches(fields[0], 0, calendar.get(Calendar.MINUTE))) {
+                calendar.add(Calendar.MINUTE, 1);
+            } else {
+                return calendar.getTime();
+            }
+        }
+        return null;
+    }
+
+    static boolean matches(String field, int min, int value) {
+        for (String part : field.split(",")) {
+            if (part.equals("*")) {
+                return true;
+            }
+            if (part.startsWith("*/")) {
+                if ((value - min) % Integer.parseInt(part.substring(2)) == 0) {
+                    return true;
+                }
+            } else if (part.contains("-")) {
+                String[] range = part.split("-");
+                if (value >= Integer.parseInt(range[0]) && value <= Integer.parseInt(range[1])) {
+                    return true;
+                }
+            } else if (value == Integer.parseInt(part)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Execution implements LastExecution {
+
+        final Date scheduledStart;
+        final Date runEnd;
+
+        Execution(Date scheduledStart, Date runEnd) {
+            this.scheduledStart = scheduledStart;
+            this.runEnd = runEnd;
+        }
+
+        @Override
+        public String getIdentityName() {
+            return null;
+        }
+
+        @Override
+        public Object getResult() {
+            return null;
+        }
+
+        @Override
+        public Date getScheduledStart() {
+            return scheduledStart;
+        }
+
+        @Override
+        public Date getRunStart() {
+            return scheduledStart;
+        }
+
+        @Override
+        public Date getRunEnd() {
+            return runEnd;
+        }
+    }
+}
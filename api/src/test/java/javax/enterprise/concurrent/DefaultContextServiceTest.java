@@ -0,0 +1,448 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+import javax.enterprise.concurrent.spi.ThreadContextRestorer;
+import javax.enterprise.concurrent.spi.ThreadContextSnapshot;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for DefaultContextService
+ */
+public class DefaultContextServiceTest {
+
+    DefaultContextService contextService;
+
+    @Before
+    public void setUp() {
+        contextService = new DefaultContextService(new TestContextProvider());
+        TestContextProvider.context.set("creator");
+    }
+
+    @After
+    public void tearDown() {
+        TestContextProvider.context.remove();
+    }
+
+    /**
+     * Test that proxy methods run with the context of the creator and that
+     * the previous context is restored afterwards.
+     */
+    @Test
+    public void testProxyAppliesContext() {
+        ContextRecorder instance = new ContextRecorder();
+        Runnable proxy = contextService.createContextualProxy(instance, Runnable.class);
+        TestContextProvider.context.set("caller");
+        proxy.run();
+        assertEquals("creator", instance.context);
+        assertEquals("caller", TestContextProvider.context.get());
+    }
+
+    /**
+     * Test that proxies of public interfaces are generated classes, shared by
+     * proxies of the same interfaces.
+     */
+    @Test
+    public void testGeneratedClassIsShared() {
+        Runnable proxy1 = contextService.createContextualProxy(new ContextRecorder(), Runnable.class);
+        Runnable proxy2 = contextService.createContextualProxy(new ContextRecorder(), Runnable.class);
+        assertFalse(Proxy.isProxyClass(proxy1.getClass()));
+        assertSame(proxy1.getClass(), proxy2.getClass());
+        Object proxy3 = contextService.createContextualProxy(new ContextRecorder(), Runnable.class, Callable.class);
+        assertNotSame(proxy1.getClass(), proxy3.getClass());
+    }
+
+    /**
+     * Test primitive arguments and return values of all sizes.
+     */
+    @Test
+    public void testPrimitives() {
+        Primitives proxy = contextService.createContextualProxy(new PrimitivesImpl(), Primitives.class);
+        TestContextProvider.context.set("caller");
+        assertEquals(1L + 2 + 3 + 4 + 1 + 'a' + 5 + 6, 
+                proxy.sum(1L, 2, 3.0d, 4.0f, true, 'a', (short) 5, (byte) 6));
+        assertEquals(2.5d, proxy.half(5.0d), 0.0d);
+        assertEquals("creator", proxy.context());
+        assertTrue(proxy.isCreatorContext());
+        assertEquals("caller", TestContextProvider.context.get());
+    }
+
+    /**
+     * Test that a checked exception is thrown unchanged from a proxy method
+     * and that the previous context is restored.
+     */
+    @Test
+    public void testExceptionRestoresContext() throws Exception {
+        Callable<String> instance = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IOException(TestContextProvider.context.get());
+            }
+        };
+        @SuppressWarnings("unchecked")
+        Callable<String> proxy = contextService.createContextualProxy(instance, Callable.class);
+        TestContextProvider.context.set("caller");
+        try {
+            proxy.call();
+            fail("call() should throw IOException");
+        } catch (IOException e) {
+            assertEquals("creator", e.getMessage());
+        }
+        assertEquals("caller", TestContextProvider.context.get());
+    }
+
+    /**
+     * Test a proxy that implements multiple interfaces.
+     */
+    @Test
+    public void testMultipleInterfaces() throws Exception {
+        ContextRecorder instance = new ContextRecorder();
+        Object proxy = contextService.createContextualProxy(instance, Runnable.class, Callable.class);
+        TestContextProvider.context.set("caller");
+        ((Runnable) proxy).run();
+        assertEquals("creator", instance.context);
+        assertEquals("creator", ((Callable<?>) proxy).call());
+        assertEquals("caller", TestContextProvider.context.get());
+    }
+
+    /**
+     * Test that proxies of non-public interfaces fall back to 
+     * java.lang.reflect.Proxy.
+     */
+    @Test
+    public void testNonPublicInterface() {
+        NonPublic proxy = contextService.createContextualProxy(new NonPublic() {
+            @Override
+            public String context() {
+                return TestContextProvider.context.get();
+            }
+        }, Collections.singletonMap("key", "value"), NonPublic.class);
+        TestContextProvider.context.set("caller");
+        assertTrue(Proxy.isProxyClass(proxy.getClass()));
+        assertEquals("creator", proxy.context());
+        assertEquals("caller", TestContextProvider.context.get());
+        assertEquals("value", contextService.getExecutionProperties(proxy).get("key"));
+    }
+
+    /**
+     * Test that Object methods are invoked on the instance without context.
+     */
+    @Test
+    public void testObjectMethods() {
+        ContextRecorder instance = new ContextRecorder();
+        Runnable proxy = contextService.createContextualProxy(instance, Runnable.class);
+        TestContextProvider.context.set("caller");
+        assertEquals("caller", proxy.toString());
+        assertEquals(instance.hashCode(), proxy.hashCode());
+        assertTrue(proxy.equals(instance));
+    }
+
+    /**
+     * Test getExecutionProperties.
+     */
+    @Test
+    public void testGetExecutionProperties() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(ManagedTask.IDENTITY_NAME, "task");
+        Runnable proxy = contextService.createContextualProxy(new ContextRecorder(), properties, Runnable.class);
+        properties.put(ManagedTask.IDENTITY_NAME, "changed");
+        Map<String, String> result = contextService.getExecutionProperties(proxy);
+        assertEquals("task", result.get(ManagedTask.IDENTITY_NAME));
+        result.clear();
+        assertEquals("task", contextService.getExecutionProperties(proxy).get(ManagedTask.IDENTITY_NAME));
+
+        assertNull(contextService.getExecutionProperties(
+                contextService.createContextualProxy(new ContextRecorder(), Runnable.class)));
+        try {
+            contextService.getExecutionProperties(new ContextRecorder());
+            fail("getExecutionProperties should reject an object that is not a proxy");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Test that invalid arguments are rejected.
+     */
+    @Test
+    public void testInvalidArguments() {
+        try {
+            contextService.createContextualProxy(new Object(), Runnable.class);
+            fail("instance does not implement Runnable");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            contextService.createContextualProxy(new ContextRecorder(), (Class<Runnable>) null);
+            fail("intf is null");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            contextService.createContextualProxy(new ContextRecorder());
+            fail("no interfaces");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Test that a proxy can be serialized and deserialized, and runs with the
+     * serialized context afterwards.
+     */
+    @Test
+    public void testSerialization() throws Exception {
+        ContextRecorder instance = new ContextRecorder();
+        Runnable proxy = contextService.createContextualProxy(instance, 
+                Collections.singletonMap("key", "value"), Runnable.class);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(proxy);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Runnable copy = (Runnable) in.readObject();
+
+        assertSame(proxy.getClass(), copy.getClass());
+        assertEquals("value", contextService.getExecutionProperties(copy).get("key"));
+        TestContextProvider.context.set("caller");
+        copy.run();
+        assertEquals("creator", ((ContextRecorder) ((ContextualProxyGenerator.ContextualProxy) copy).instance).context);
+        assertEquals("caller", TestContextProvider.context.get());
+    }
+
+    /**
+     * Test that a snapshot captures the context once and applies it to every
+     * proxy created from it, regardless of the context of the creating thread.
+     */
+    @Test
+    public void testCaptureContextOnce() throws Exception {
+        int captures = TestContextProvider.captures.get();
+        ContextSnapshot snapshot = contextService.captureContext(
+                Collections.singletonMap(ManagedTask.IDENTITY_NAME, "fan-out"));
+        TestContextProvider.context.set("other");
+        ContextRecorder[] instances = new ContextRecorder[10];
+        Runnable[] proxies = new Runnable[instances.length];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = new ContextRecorder();
+            proxies[i] = snapshot.createContextualProxy(instances[i], Runnable.class);
+        }
+        assertEquals(captures + 1, TestContextProvider.captures.get());
+
+        TestContextProvider.context.set("caller");
+        for (int i = 0; i < instances.length; i++) {
+            proxies[i].run();
+            assertEquals("creator", instances[i].context);
+            assertEquals("fan-out", contextService.getExecutionProperties(proxies[i]).get(ManagedTask.IDENTITY_NAME));
+        }
+        assertEquals("caller", TestContextProvider.context.get());
+        assertEquals("fan-out", snapshot.getExecutionProperties().get(ManagedTask.IDENTITY_NAME));
+        assertNull(contextService.captureContext(null).getExecutionProperties());
+
+        Object proxy = snapshot.createContextualProxy(new ContextRecorder(), Runnable.class, Callable.class);
+        assertEquals("creator", ((Callable<?>) proxy).call());
+        try {
+            snapshot.createContextualProxy(new Object(), Runnable.class);
+            fail("instance does not implement Runnable");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Test that a ContextService that does not implement captureContext 
+     * creates the proxies of a snapshot with createContextualProxy
+     */
+    @Test
+    public void testDefaultCaptureContext() {
+        ContextService delegating = new ContextService() {
+            @Override
+            public <T> T createContextualProxy(T instance, Class<T> intf) {
+                return contextService.createContextualProxy(instance, intf);
+            }
+
+            @Override
+            public Object createContextualProxy(Object instance, Class<?>... interfaces) {
+                return contextService.createContextualProxy(instance, interfaces);
+            }
+
+            @Override
+            public <T> T createContextualProxy(T instance, Map<String, String> executionProperties, 
+                    Class<T> intf) {
+                return contextService.createContextualProxy(instance, executionProperties, intf);
+            }
+
+            @Override
+            public Object createContextualProxy(Object instance, Map<String, String> executionProperties, 
+                    Class<?>... interfaces) {
+                return contextService.createContextualProxy(instance, executionProperties, interfaces);
+            }
+
+            @Override
+            public Map<String, String> getExecutionProperties(Object contextualProxy) {
+                return contextService.getExecutionProperties(contextualProxy);
+            }
+        };
+        Map<String, String> executionProperties = new HashMap<String, String>();
+        executionProperties.put(ManagedTask.IDENTITY_NAME, "fan-out");
+        ContextSnapshot snapshot = delegating.captureContext(executionProperties);
+        executionProperties.clear();
+        ContextRecorder instance = new ContextRecorder();
+        Runnable proxy = snapshot.createContextualProxy(instance, Runnable.class);
+        TestContextProvider.context.set("caller");
+        proxy.run();
+        assertEquals("creator", instance.context);
+        assertEquals("fan-out", delegating.getExecutionProperties(proxy).get(ManagedTask.IDENTITY_NAME));
+        assertEquals("fan-out", snapshot.getExecutionProperties().get(ManagedTask.IDENTITY_NAME));
+        assertNull(delegating.captureContext(null).getExecutionProperties());
+        try {
+            snapshot.createContextualProxy(new Object(), Runnable.class);
+            fail("instance does not implement Runnable");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public interface Primitives {
+        long sum(long l, int i, double d, float f, boolean z, char c, short s, byte b);
+        double half(double d);
+        String context();
+        boolean isCreatorContext();
+    }
+
+    interface NonPublic {
+        String context();
+    }
+
+    static class PrimitivesImpl implements Primitives {
+
+        @Override
+        public long sum(long l, int i, double d, float f, boolean z, char c, short s, byte b) {
+            return l + i + (long) d + (long) f + (z? 1: 0) + c + s + b;
+        }
+
+        @Override
+        public double half(double d) {
+            return d / 2;
+        }
+
+        @Override
+        public String context() {
+            return TestContextProvider.context.get();
+        }
+
+        @Override
+        public boolean isCreatorContext() {
+            return "creator".equals(context());
+        }
+    }
+
+    static class ContextRecorder implements Runnable, Callable<String>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        volatile String context;
+
+        @Override
+        public void run() {
+            context = TestContextProvider.context.get();
+        }
+
+        @Override
+        public String call() {
+            return TestContextProvider.context.get();
+        }
+
+        @Override
+        public String toString() {
+            return TestContextProvider.context.get();
+        }
+    }
+
+    static class TestContextProvider implements ThreadContextProvider {
+
+        static final ThreadLocal<String> context = new ThreadLocal<String>();
+        static final AtomicInteger captures = new AtomicInteger();
+
+        @Override
+        public ThreadContextSnapshot currentContext(Map<String, String> executionProperties) {
+            captures.incrementAndGet();
+            return new Snapshot(context.get());
+        }
+
+        @Override
+        public String getThreadContextType() {
+            return "Test";
+        }
+    }
+
+    static class Snapshot implements ThreadContextSnapshot, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final String captured;
+
+        Snapshot(String captured) {
+            this.captured = captured;
+        }
+
+        @Override
+        public ThreadContextRestorer begin() {
+            final String previous = TestContextProvider.context.get();
+            TestContextProvider.context.set(captured);
+            return new ThreadContextRestorer() {
+                @Override
+                public void endContext() {
+                    TestContextProvider.context.set(previous);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.spi.TaskMetrics;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultExecutorMetricsTest {
+
+    DefaultExecutorMetrics metrics;
+    DefaultManagedExecutorService executor;
+
+    @Before
+    public void setUp() {
+        metrics = new DefaultExecutorMetrics("test", 16, null);
+        executor = new DefaultManagedExecutorService(1, 1, Executors.defaultThreadFactory(), metrics);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Every value falls in a bucket whose greatest value is at most 12.5% 
+     * above it, and buckets increase with the value
+     */
+    @Test
+    public void testHistogramBuckets() {
+        int previous = 0;
+        for (long value = 0L; value < (1L << 44); value += 1L + value / 64) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value + " in bucket " + bucket, bucket >= previous && bucket < LatencyHistogram.BUCKETS);
+            long highest = LatencyHistogram.highestValue(bucket);
+            assertTrue(value + " above " + highest, highest >= value);
+            if (bucket < LatencyHistogram.BUCKETS - 1) {
+                assertTrue(value + " up to " + highest, highest - value <= value / LatencyHistogram.SUB_BUCKETS);
+                assertEquals(bucket + 1, LatencyHistogram.bucket(highest + 1));
+            }
+            previous = bucket;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    /**
+     * Percentiles are rounded up to their bucket but not above the maximum
+     */
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000L);
+        }
+        histogram.record(-5L);
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+        histogram.addTo(snapshot);
+
+        assertEquals(1001L, snapshot.count);
+        assertEquals(0L, snapshot.percentile(0.0));
+        assertEquals(1000000L, snapshot.max);
+        assertEquals(1000000L, snapshot.percentile(100.0));
+        assertEquals(500500000L / 1001L, snapshot.mean());
+        long p50 = snapshot.percentile(50.0);
+        assertTrue("p50 " + p50, p50 >= 500000L && p50 <= 500000L * 9 / 8);
+        long p99 = snapshot.percentile(99.0);
+        assertTrue("p99 " + p99, p99 >= 990000L && p99 <= 1000000L);
+        try {
+            snapshot.percentile(100.5);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tasks are counted and timed by identity name, and in total
+     */
+    @Test
+    public void testCountsByIdentity() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            executor.submit(identityTask("report", new Sleep(20))).get(10, TimeUnit.SECONDS);
+        }
+        try {
+            executor.submit(identityTask("poll", new Failure())).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            // expected
+        }
+        executor.submit(new Sleep(0)).get(10, TimeUnit.SECONDS);
+
+        ExecutorMetricsMXBean report = metrics.getMetrics("report");
+        assertEquals("report", report.getIdentityName());
+        assertEquals(3L, report.getSubmittedCount());
+        assertEquals(3L, report.getStartedCount());
+        assertEquals(3L, report.getCompletedCount());
+        assertEquals(0L, report.getFailedCount());
+        assertEquals(0L, report.getPendingCount());
+        assertTrue(report.getRunTimeP50Nanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(report.getRunTimeMaxNanos() >= report.getRunTimeP99Nanos());
+        assertTrue(report.getRunTimeMeanNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        ExecutorMetricsMXBean poll = metrics.getMetrics("poll");
+        assertEquals(1L, poll.getCompletedCount());
+        assertEquals(1L, poll.getFailedCount());
+        assertEquals(0L, poll.getAbortedCount());
+
+        assertEquals(1L, metrics.getMetrics(null).getCompletedCount());
+        assertNull(metrics.getMetrics("other"));
+        assertEquals(new java.util.TreeSet<String>(java.util.Arrays.asList("poll", "report")), 
+                metrics.getIdentityNames());
+
+        ExecutorMetricsMXBean total = metrics.getMetrics();
+        assertNull(total.getIdentityName());
+        assertEquals(5L, total.getSubmittedCount());
+        assertEquals(5L, total.getCompletedCount());
+        assertEquals(1L, total.getFailedCount());
+        assertEquals(report.getRunTimeMaxNanos(), total.getRunTimeMaxNanos());
+        assertTrue(total.runTimePercentileNanos(50.0) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(total.getQueueWaitMaxNanos() >= total.getQueueWaitP50Nanos());
+    }
+
+    /**
+     * Tasks waiting behind a running task are pending and their wait is 
+     * measured; cancelling a pending task counts it as aborted
+     */
+    @Test
+    public void testPendingAndCancelled() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                running.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        Future<?> waiting = executor.submit(identityTask("waiting", new Sleep(0)));
+        Future<?> cancelled = executor.submit(identityTask("cancelled", new Sleep(0)));
+
+        assertEquals(2L, metrics.getMetrics().getPendingCount());
+        assertTrue(cancelled.cancel(false));
+        assertEquals(1L, metrics.getMetrics().getPendingCount());
+        ExecutorMetricsMXBean cancelledMetrics = metrics.getMetrics("cancelled");
+        assertEquals(1L, cancelledMetrics.getAbortedCount());
+        assertEquals(0L, cancelledMetrics.getPendingCount());
+        assertEquals(0L, cancelledMetrics.getStartedCount());
+
+        Thread.sleep(20);
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        waiting.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0L, metrics.getMetrics().getPendingCount());
+        assertTrue(metrics.getMetrics("waiting").getQueueWaitMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * A rejected task is counted as rejected and aborted, not pending
+     */
+    @Test
+    public void testRejected() {
+        executor.shutdown();
+        try {
+            executor.submit(identityTask("late", new Sleep(0)));
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        ExecutorMetricsMXBean late = metrics.getMetrics("late");
+        assertEquals(1L, late.getSubmittedCount());
+        assertEquals(1L, late.getRejectedCount());
+        assertEquals(1L, late.getAbortedCount());
+        assertEquals(0L, late.getPendingCount());
+    }
+
+    /**
+     * Identity names beyond the limit are measured as tasks without one
+     */
+    @Test
+    public void testMaxIdentities() {
+        DefaultExecutorMetrics limited = new DefaultExecutorMetrics("limited", 1, null);
+        TaskMetrics first = limited.getTaskMetrics("first");
+        assertSame(first, limited.getTaskMetrics("first"));
+        assertSame(limited.getTaskMetrics(null), limited.getTaskMetrics("second"));
+        assertEquals(Collections.singleton("first"), limited.getIdentityNames());
+    }
+
+    /**
+     * Periodic tasks are pending while they wait for their next run, and 
+     * stop being pending when cancelled
+     */
+    @Test
+    public void testPeriodic() throws Exception {
+        DefaultExecutorMetrics scheduledMetrics = new DefaultExecutorMetrics("scheduled", 16, null);
+        DefaultManagedScheduledExecutorService scheduler = new DefaultManagedScheduledExecutorService(1, 1, 
+                Executors.defaultThreadFactory(), 1L, TimeUnit.MILLISECONDS, scheduledMetrics);
+        try {
+            final CountDownLatch runs = new CountDownLatch(3);
+            ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    runs.countDown();
+                }
+            }, 0L, 10L, TimeUnit.MILLISECONDS);
+            assertTrue(runs.await(10, TimeUnit.SECONDS));
+            future.cancel(false);
+            scheduler.shutdown();
+            assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+
+            ExecutorMetricsMXBean total = scheduledMetrics.getMetrics();
+            assertTrue(total.getStartedCount() >= 3L);
+            assertEquals(total.getStartedCount(), total.getCompletedCount());
+            assertEquals(1L, total.getAbortedCount());
+            assertEquals(0L, total.getPendingCount());
+            // waits are measured from the time the task is due, not scheduled
+            assertTrue(total.getQueueWaitP50Nanos() < TimeUnit.MILLISECONDS.toNanos(10));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * The metrics are registered as MXBeans, and unregistered on close
+     */
+    @Test
+    public void testMBeans() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        DefaultExecutorMetrics published = new DefaultExecutorMetrics("jmx", 16, server);
+        DefaultManagedExecutorService jmxExecutor = 
+                new DefaultManagedExecutorService(1, 1, Executors.defaultThreadFactory(), published);
+        try {
+            jmxExecutor.submit(identityTask("a,b", new Sleep(0))).get(10, TimeUnit.SECONDS);
+
+            ObjectName executorName = new ObjectName("javax.enterprise.concurrent:type=ManagedExecutorService,name=\"jmx\"");
+            ObjectName identityName = new ObjectName("javax.enterprise.concurrent:type=ManagedExecutorService,"
+                    + "name=\"jmx\",identity=" + ObjectName.quote("a,b"));
+            assertEquals(1L, server.getAttribute(executorName, "CompletedCount"));
+            assertEquals(1L, server.getAttribute(identityName, "StartedCount"));
+            assertEquals("a,b", server.getAttribute(identityName, "IdentityName"));
+            assertEquals(published.getMetrics().getRunTimeMaxNanos(), 
+                    server.invoke(executorName, "runTimePercentileNanos", new Object[] {100.0}, 
+                            new String[] {"double"}));
+            try {
+                new DefaultExecutorMetrics("jmx", 16, server);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            published.close();
+            assertFalse(server.isRegistered(executorName));
+            assertFalse(server.isRegistered(identityName));
+        } finally {
+            jmxExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Recording the events of a task allocates nothing once its identity 
+     * name has been seen
+     */
+    @Test
+    public void testRecordingAllocationFree() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        String identityName = "allocation";
+        metrics.getTaskMetrics(identityName);
+
+        long allocated = 0;
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 10000; i++) {
+                TaskMetrics taskMetrics = metrics.getTaskMetrics(identityName);
+                taskMetrics.taskSubmitted();
+                taskMetrics.taskStarted(i * 100L);
+                taskMetrics.taskCompleted(i * 1000L, false);
+            }
+            allocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+        }
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1000);
+        assertEquals(50000L, metrics.getMetrics(identityName).getCompletedCount());
+    }
+
+    static <T> Callable<T> identityTask(String identityName, Callable<T> task) {
+        Map<String, String> executionProperties = 
+                Collections.singletonMap(ManagedTask.IDENTITY_NAME, identityName);
+        return ManagedExecutors.managedTask(task, executionProperties, null);
+    }
+
+    static final class Sleep implements Callable<Integer> {
+
+        final long millis;
+
+        Sleep(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public Integer call() throws InterruptedException {
+            Thread.sleep(millis);
+            return 0;
+        }
+    }
+
+    static final class Failure implements Callable<Void> {
+
+        @Override
+        public Void call() {
+            throw new IllegalStateException("failure");
+        }
+    }
+}
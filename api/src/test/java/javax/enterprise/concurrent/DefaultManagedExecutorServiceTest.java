@@ -0,0 +1,536 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultManagedExecutorServiceTest {
+
+    static final String LONG_RUNNING_THREAD_PREFIX = "long-running-";
+
+    DefaultManagedExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultManagedExecutorService(2, 1, new NamedThreadFactory(LONG_RUNNING_THREAD_PREFIX));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tasks with LONGRUNNING_HINT set to "true" run on the long-running pool
+     */
+    @Test
+    public void testLongRunningTaskRoutedToLongRunningPool() throws Exception {
+        Map<String, String> executionProperties = new HashMap<String, String>();
+        executionProperties.put(ManagedTask.LONGRUNNING_HINT, "true");
+
+        Callable<Thread> task = ManagedExecutors.managedTask(new CurrentThreadCallable(), executionProperties, null);
+        Thread thread = executor.submit(task).get(10, TimeUnit.SECONDS);
+
+        assertTrue(thread.getName().startsWith(LONG_RUNNING_THREAD_PREFIX));
+        assertFalse(thread instanceof ForkJoinWorkerThread);
+    }
+
+    /**
+     * Tasks without LONGRUNNING_HINT run on the work-stealing pool
+     */
+    @Test
+    public void testShortTaskRoutedToWorkStealingPool() throws Exception {
+        Map<String, String> executionProperties = new HashMap<String, String>();
+        executionProperties.put(ManagedTask.LONGRUNNING_HINT, "false");
+
+        Thread thread1 = executor.submit(new CurrentThreadCallable()).get(10, TimeUnit.SECONDS);
+        Callable<Thread> task = ManagedExecutors.managedTask(new CurrentThreadCallable(), executionProperties, null);
+        Thread thread2 = executor.submit(task).get(10, TimeUnit.SECONDS);
+
+        assertTrue(thread1 instanceof ForkJoinWorkerThread);
+        assertTrue(thread1 instanceof ManageableThread);
+        assertTrue(thread2 instanceof ForkJoinWorkerThread);
+    }
+
+    /**
+     * Short tasks keep running while the long-running pool is fully occupied
+     */
+    @Test
+    public void testShortTasksNotBlockedByLongRunningTasks() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Map<String, String> executionProperties = new HashMap<String, String>();
+        executionProperties.put(ManagedTask.LONGRUNNING_HINT, "true");
+        Runnable blocker = ManagedExecutors.managedTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, executionProperties, null);
+        Future<?> long1 = executor.submit(blocker);
+        Future<?> long2 = executor.submit(blocker);
+
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(executor.submit(new CurrentThreadCallable()).get(10, TimeUnit.SECONDS));
+        }
+        assertFalse(long1.isDone());
+        assertFalse(long2.isDone());
+        release.countDown();
+        long2.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Lifecycle events of a task that runs normally
+     */
+    @Test
+    public void testListenerEvents() throws Exception {
+        RecordingTaskListener taskListener = new RecordingTaskListener();
+        Runnable task = ManagedExecutors.managedTask(new CurrentThreadRunnable(), taskListener);
+
+        Future<?> future = executor.submit(task);
+        future.get(10, TimeUnit.SECONDS);
+        taskListener.awaitDone();
+
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone"), taskListener.events);
+        assertSame(future, taskListener.future);
+        assertSame(executor, taskListener.executor);
+        assertSame(task, taskListener.task);
+        assertNull(taskListener.exception);
+    }
+
+    /**
+     * Lifecycle events of a task that is cancelled from taskSubmitted
+     */
+    @Test
+    public void testListenerEvents_cancelled() throws Exception {
+        RecordingTaskListener taskListener = new RecordingTaskListener() {
+            @Override
+            public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+                super.taskSubmitted(future, executor, task);
+                future.cancel(false);
+            }
+        };
+        CurrentThreadRunnable runnable = new CurrentThreadRunnable();
+        Future<?> future = executor.submit(ManagedExecutors.managedTask(runnable, taskListener));
+        taskListener.awaitDone();
+
+        assertTrue(future.isCancelled());
+        assertEquals(listOf("taskSubmitted", "taskAborted", "taskDone"), taskListener.events);
+        assertTrue(taskListener.exception instanceof CancellationException);
+        assertNull(runnable.thread);
+    }
+
+    /**
+     * Tasks submitted after shutdown are rejected and reported as aborted
+     */
+    @Test
+    public void testRejectedAfterShutdown() throws Exception {
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        RecordingTaskListener taskListener = new RecordingTaskListener();
+        try {
+            executor.submit(ManagedExecutors.managedTask(new CurrentThreadRunnable(), taskListener));
+            fail("RejectedExecutionException expected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(listOf("taskSubmitted", "taskAborted", "taskDone"), taskListener.events);
+        assertTrue(taskListener.exception instanceof AbortedException);
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Worker threads of the work-stealing pool report isShutdown() after shutdown
+     */
+    @Test
+    public void testWorkerThreadIsShutdown() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                assertFalse(ManagedExecutors.isCurrentThreadShutdown());
+                started.countDown();
+                release.await();
+                return ManagedExecutors.isCurrentThreadShutdown();
+            }
+        });
+        started.await();
+        executor.shutdown();
+        release.countDown();
+        assertTrue(future.get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * submitAll returns the futures in order, and each task runs and reports
+     * its own lifecycle events, on the pool that its hint selects
+     */
+    @Test
+    public void testSubmitAll() throws Exception {
+        Map<String, String> longRunning = Collections.singletonMap(ManagedTask.LONGRUNNING_HINT, "true");
+        List<Callable<Thread>> tasks = new ArrayList<Callable<Thread>>();
+        List<RecordingTaskListener> listeners = new ArrayList<RecordingTaskListener>();
+        for (int i = 0; i < 50; i++) {
+            RecordingTaskListener taskListener = new RecordingTaskListener();
+            listeners.add(taskListener);
+            tasks.add(ManagedExecutors.managedTask(new CurrentThreadCallable(), 
+                    i % 10 == 0? longRunning: null, taskListener));
+        }
+
+        List<Future<Thread>> futures = executor.submitAll(tasks);
+
+        assertEquals(tasks.size(), futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Thread thread = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals(i % 10 == 0, thread.getName().startsWith(LONG_RUNNING_THREAD_PREFIX));
+            RecordingTaskListener taskListener = listeners.get(i);
+            taskListener.awaitDone();
+            assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone"), taskListener.events);
+            assertSame(futures.get(i), taskListener.future);
+            assertSame(tasks.get(i), taskListener.task);
+        }
+        assertTrue(executor.submitAll(new ArrayList<Callable<Thread>>()).isEmpty());
+    }
+
+    /**
+     * submitAll and invokeAll capture the context once for tasks that share
+     * the same execution properties, where submit captures it per task
+     */
+    @Test
+    public void testSubmitAll_contextCapturedOnce() throws Exception {
+        DefaultManagedExecutorService contextual = new DefaultManagedExecutorService(2, 1, 
+                new NamedThreadFactory(LONG_RUNNING_THREAD_PREFIX), null, 
+                new DefaultContextServiceTest.TestContextProvider());
+        AtomicInteger captures = DefaultContextServiceTest.TestContextProvider.captures;
+        ExecutionProperties executionProperties = ExecutionProperties.EMPTY.with(ManagedTask.IDENTITY_NAME, "batch");
+        DefaultContextServiceTest.TestContextProvider.context.set("submitter");
+        try {
+            List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+            for (int i = 0; i < 20; i++) {
+                tasks.add(ManagedExecutors.managedTask((Callable<String>) new DefaultContextServiceTest.ContextRecorder(), 
+                        executionProperties, null));
+            }
+            int before = captures.get();
+            List<Future<String>> futures = contextual.submitAll(tasks);
+            assertEquals(1, captures.get() - before);
+            for (Future<String> future : futures) {
+                assertEquals("submitter", future.get(10, TimeUnit.SECONDS));
+            }
+
+            before = captures.get();
+            for (Future<String> future : contextual.invokeAll(tasks)) {
+                assertEquals("submitter", future.get());
+            }
+            assertEquals(1, captures.get() - before);
+
+            before = captures.get();
+            for (Callable<String> task : tasks) {
+                assertEquals("submitter", contextual.submit(task).get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(tasks.size(), captures.get() - before);
+        } finally {
+            DefaultContextServiceTest.TestContextProvider.context.remove();
+            contextual.shutdownNow();
+        }
+    }
+
+    /**
+     * A batch submitted after shutdown is rejected and every task is 
+     * reported as aborted
+     */
+    @Test
+    public void testSubmitAll_rejected() throws Exception {
+        executor.shutdown();
+        List<RecordingTaskListener> listeners = new ArrayList<RecordingTaskListener>();
+        List<Callable<Thread>> tasks = new ArrayList<Callable<Thread>>();
+        for (int i = 0; i < 3; i++) {
+            RecordingTaskListener taskListener = new RecordingTaskListener();
+            listeners.add(taskListener);
+            tasks.add(ManagedExecutors.managedTask(new CurrentThreadCallable(), taskListener));
+        }
+        try {
+            executor.submitAll(tasks);
+            fail("RejectedExecutionException expected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        for (RecordingTaskListener taskListener : listeners) {
+            assertEquals(listOf("taskSubmitted", "taskAborted", "taskDone"), taskListener.events);
+            assertTrue(taskListener.exception instanceof AbortedException);
+        }
+    }
+
+    /**
+     * shutdownNow aborts and returns the tasks that are waiting in either
+     * pool, and their listeners are notified
+     */
+    @Test
+    public void testShutdownNow_queued() throws Exception {
+        final CountDownLatch started = new CountDownLatch(3);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<Boolean> blocker = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                started.countDown();
+                return release.await(10, TimeUnit.SECONDS);
+            }
+        };
+        Map<String, String> longRunning = new HashMap<String, String>();
+        longRunning.put(ManagedTask.LONGRUNNING_HINT, "true");
+        executor.submit(blocker);
+        executor.submit(blocker);
+        executor.submit(ManagedExecutors.managedTask(blocker, longRunning, null));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        RecordingTaskListener shortListener = new RecordingTaskListener();
+        RecordingTaskListener longListener = new RecordingTaskListener();
+        Future<Thread> queued = executor.submit(ManagedExecutors.managedTask(new CurrentThreadCallable(), 
+                shortListener));
+        Future<Thread> queuedLongRunning = executor.submit(ManagedExecutors.managedTask(
+                new CurrentThreadCallable(), longRunning, longListener));
+
+        List<Runnable> pending = executor.shutdownNow();
+        release.countDown();
+
+        assertEquals(2, pending.size());
+        assertTrue(pending.contains(queued));
+        assertTrue(pending.contains(queuedLongRunning));
+        for (Future<Thread> future : Arrays.asList(queued, queuedLongRunning)) {
+            assertTrue(future.isDone());
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("ExecutionException expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AbortedException);
+                assertEquals(RejectionReason.SHUTDOWN, ((AbortedException) e.getCause()).getRejectionReason());
+            }
+        }
+        for (RecordingTaskListener taskListener : Arrays.asList(shortListener, longListener)) {
+            taskListener.awaitDone();
+            assertEquals(listOf("taskSubmitted", "taskAborted", "taskDone"), taskListener.events);
+        }
+    }
+
+    /**
+     * invokeAll with a timeout cancels the tasks that have not completed
+     */
+    @Test
+    public void testInvokeAll_timeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<Boolean> blocker = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return release.await(10, TimeUnit.SECONDS);
+            }
+        };
+        try {
+            List<Future<Boolean>> futures = executor.invokeAll(
+                    Collections.<Callable<Boolean>>nCopies(4, blocker), 50, TimeUnit.MILLISECONDS);
+            assertEquals(4, futures.size());
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.isCancelled());
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * The default dispatchAll dispatches each task that was not cancelled 
+     * from taskSubmitted
+     */
+    @Test
+    public void testDefaultDispatchAll() throws Exception {
+        final List<Object> dispatched = new ArrayList<Object>();
+        AbstractManagedExecutorService direct = new AbstractManagedExecutorService() {
+            @Override
+            protected void dispatch(RunnableFuture<?> future, Object task) {
+                dispatched.add(task);
+                future.run();
+            }
+
+            @Override
+            public void shutdown() {
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return false;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return false;
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) {
+                return false;
+            }
+        };
+        RecordingTaskListener cancelling = new RecordingTaskListener() {
+            @Override
+            public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+                super.taskSubmitted(future, executor, task);
+                future.cancel(false);
+            }
+        };
+        Callable<Thread> first = new CurrentThreadCallable();
+        Callable<Thread> cancelled = ManagedExecutors.managedTask(new CurrentThreadCallable(), cancelling);
+        Callable<Thread> last = new CurrentThreadCallable();
+
+        List<Future<Thread>> futures = direct.submitAll(Arrays.asList(first, cancelled, last));
+
+        assertEquals(Arrays.<Object>asList(first, last), dispatched);
+        assertSame(Thread.currentThread(), futures.get(0).get());
+        assertTrue(futures.get(1).isCancelled());
+        assertSame(Thread.currentThread(), futures.get(2).get());
+    }
+
+    static List<String> listOf(String... events) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, events);
+        return list;
+    }
+
+    static class CurrentThreadCallable implements Callable<Thread> {
+
+        @Override
+        public Thread call() {
+            return Thread.currentThread();
+        }
+    }
+
+    static class CurrentThreadRunnable implements Runnable {
+
+        volatile Thread thread;
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+
+        final String prefix;
+        final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, prefix + count.incrementAndGet());
+        }
+    }
+
+    static class RecordingTaskListener implements ManagedTaskListener {
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Future<?> future;
+        volatile ManagedExecutorService executor;
+        volatile Object task;
+        volatile Throwable exception;
+
+        void awaitDone() throws InterruptedException {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            this.future = future;
+            this.executor = executor;
+            this.task = task;
+            events.add("taskSubmitted");
+        }
+
+        @Override
+        public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            this.exception = exception;
+            events.add("taskAborted");
+        }
+
+        @Override
+        public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            if (exception != null) {
+                this.exception = exception;
+            }
+            events.add("taskDone");
+            done.countDown();
+        }
+
+        @Override
+        public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            events.add("taskStarting");
+        }
+    }
+}
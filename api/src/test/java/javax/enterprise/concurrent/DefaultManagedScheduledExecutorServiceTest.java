@@ -0,0 +1,374 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.RecordingTaskListener;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.listOf;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for DefaultManagedScheduledExecutorService
+ */
+public class DefaultManagedScheduledExecutorServiceTest {
+
+    DefaultManagedScheduledExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultManagedScheduledExecutorService(2, 1);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Test that a delayed task does not run before its delay has elapsed.
+     */
+    @Test
+    public void testScheduleWithDelay() throws Exception {
+        long start = System.nanoTime();
+        ScheduledFuture<Long> future = executor.schedule(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return System.nanoTime();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(future.getDelay(TimeUnit.MILLISECONDS) > 0);
+        long ran = future.get(10, TimeUnit.SECONDS);
+        assertTrue(ran - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(future.getDelay(TimeUnit.MILLISECONDS) <= 0);
+    }
+
+    /**
+     * Test that a fixed-rate task runs repeatedly and notifies its listener
+     * of each run.
+     */
+    @Test
+    public void testFixedRate() throws Exception {
+        final CountDownLatch runs = new CountDownLatch(3);
+        RecordingTaskListener listener = new RecordingTaskListener();
+        Runnable task = ManagedExecutors.managedTask(new Runnable() {
+            @Override
+            public void run() {
+                runs.countDown();
+            }
+        }, listener);
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(task, 0, 5, TimeUnit.MILLISECONDS);
+        assertTrue(runs.await(10, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone", "taskSubmitted", "taskStarting", 
+                "taskDone"), new ArrayList<String>(listener.events.subList(0, 6)));
+        List<String> events = new ArrayList<String>(listener.events);
+        int aborted = events.indexOf("taskAborted");
+        assertTrue(aborted > 0);
+        assertEquals("taskDone", events.get(aborted + 1));
+    }
+
+    /**
+     * Test that a fixed-delay task waits for the delay after each run.
+     */
+    @Test
+    public void testFixedDelay() throws Exception {
+        final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch runs = new CountDownLatch(3);
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                times.add(System.nanoTime());
+                runs.countDown();
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+        assertTrue(runs.await(10, TimeUnit.SECONDS));
+        future.cancel(false);
+        assertTrue(times.get(1) - times.get(0) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(times.get(2) - times.get(1) >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * Test that a trigger task runs until the trigger ends it, and that the 
+     * future returns the result of the last run.
+     */
+    @Test
+    public void testTrigger() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        CountingTrigger trigger = new CountingTrigger(3, -1);
+        ScheduledFuture<Integer> future = executor.schedule(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return counter.incrementAndGet();
+            }
+        }, trigger);
+        assertEquals(Integer.valueOf(3), future.get(10, TimeUnit.SECONDS));
+        assertEquals(listOf("null", "1", "2", "3"), trigger.lastResults);
+    }
+
+    /**
+     * Test that a trigger that returns no run time completes the task 
+     * without running it.
+     */
+    @Test
+    public void testTriggerWithoutRuns() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                counter.incrementAndGet();
+            }
+        }, new CountingTrigger(0, -1));
+        assertNull(future.get(10, TimeUnit.SECONDS));
+        assertEquals(0, counter.get());
+    }
+
+    /**
+     * Test that skipped runs are reported to the listener with a 
+     * SkippedException, and that the future completes with a 
+     * SkippedException if the last run was skipped.
+     */
+    @Test
+    public void testSkippedRun() throws Exception {
+        RecordingTaskListener listener = new RecordingTaskListener();
+        final AtomicInteger counter = new AtomicInteger();
+        Callable<Integer> task = ManagedExecutors.managedTask(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return counter.incrementAndGet();
+            }
+        }, listener);
+        ScheduledFuture<Integer> future = executor.schedule(task, new CountingTrigger(2, 2));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("last run was skipped");
+        } catch (SkippedException expected) {
+        }
+        assertEquals(1, counter.get());
+        // the future completes before the listener is notified
+        for (int i = 0; i < 1000 && listener.events.size() < 6; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone", "taskSubmitted", "taskAborted", 
+                "taskDone"), listener.events);
+        assertTrue(listener.exception instanceof SkippedException);
+    }
+
+    /**
+     * Test that a pending task can be cancelled.
+     */
+    @Test
+    public void testCancelPending() throws Exception {
+        RecordingTaskListener listener = new RecordingTaskListener();
+        ScheduledFuture<?> future = executor.schedule(
+                ManagedExecutors.managedTask(new CountingRunnable(), listener), 1, TimeUnit.HOURS);
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        listener.awaitDone();
+        assertEquals(listOf("taskSubmitted", "taskAborted", "taskDone"), listener.events);
+        assertTrue(listener.exception instanceof CancellationException);
+    }
+
+    /**
+     * Test that shutdown() cancels pending tasks and that shutdownNow() 
+     * returns them.
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        ScheduledFuture<?> future = executor.schedule(new CountingRunnable(), 1, TimeUnit.HOURS);
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        assertTrue(future.isCancelled());
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        executor = new DefaultManagedScheduledExecutorService(2, 1);
+        future = executor.schedule(new CountingRunnable(), 1, TimeUnit.HOURS);
+        List<Runnable> pending = executor.shutdownNow();
+        assertEquals(1, pending.size());
+        assertSame(future, pending.get(0));
+    }
+
+    /**
+     * Test that tasks are rejected after shutdown.
+     */
+    @Test
+    public void testRejectedAfterShutdown() throws Exception {
+        executor.shutdown();
+        RecordingTaskListener listener = new RecordingTaskListener();
+        try {
+            executor.schedule(ManagedExecutors.managedTask(new CountingRunnable(), listener), 
+                    new CountingTrigger(1, -1));
+            fail("executor is shut down");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(listOf("taskSubmitted", "taskAborted", "taskDone"), listener.events);
+        assertTrue(listener.exception instanceof AbortedException);
+    }
+
+    /**
+     * Test scheduling and cancelling many far-future trigger tasks.
+     */
+    @Test
+    public void testManyPendingTriggers() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>();
+        for (int i = 0; i < 100000; i++) {
+            futures.add(executor.schedule(new CountingRunnable(), new FixedDateTrigger(
+                    new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1 + i % 30)))));
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, new FixedDateTrigger(new Date()));
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        for (ScheduledFuture<?> future : futures) {
+            assertTrue(future.cancel(false));
+        }
+    }
+
+    /**
+     * Test that the admission policy of the builder bounds the submitted
+     * tasks.
+     */
+    @Test
+    public void testBuilder_admissionPolicy() throws Exception {
+        executor.shutdownNow();
+        executor = DefaultManagedScheduledExecutorService.builder(1, 1)
+                .admissionPolicy(AdmissionPolicy.rejectNewest(1))
+                .build();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                started.countDown();
+                release.await();
+                return null;
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<?> waiting = executor.submit(new CountingRunnable());
+        try {
+            executor.submit(new CountingRunnable());
+            fail("task admitted beyond the bound");
+        } catch (ManagedRejectedExecutionException e) {
+            assertEquals(RejectionReason.QUEUE_FULL, e.getReason());
+        } finally {
+            release.countDown();
+        }
+        blocker.get(10, TimeUnit.SECONDS);
+        waiting.get(10, TimeUnit.SECONDS);
+    }
+
+    static class CountingRunnable implements Runnable {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public void run() {
+            runs.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fires every 5 milliseconds for the given number of runs, optionally 
+     * skipping one of them, and records the last results it is passed.
+     */
+    static class CountingTrigger implements Trigger {
+
+        final int runs;
+        final int skip;
+        final List<String> lastResults = Collections.synchronizedList(new ArrayList<String>());
+        int count;
+
+        CountingTrigger(int runs, int skip) {
+            this.runs = runs;
+            this.skip = skip;
+        }
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecutionInfo, Date taskScheduledTime) {
+            lastResults.add(String.valueOf(lastExecutionInfo == null? null: lastExecutionInfo.getResult()));
+            return count++ < runs? new Date(System.currentTimeMillis() + 5): null;
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecutionInfo, Date scheduledRunTime) {
+            return count == skip;
+        }
+    }
+
+    static class FixedDateTrigger implements Trigger {
+
+        final Date date;
+
+        FixedDateTrigger(Date date) {
+            this.date = date;
+        }
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecutionInfo, Date taskScheduledTime) {
+            return lastExecutionInfo == null? date: null;
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecutionInfo, Date scheduledRunTime) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+import javax.enterprise.concurrent.spi.ThreadContextRestorer;
+import javax.enterprise.concurrent.spi.ThreadContextSnapshot;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for DefaultManagedThreadFactory in platform-thread mode. The same
+ * tests run in virtual-thread mode in DefaultManagedThreadFactoryVirtualTest.
+ */
+public class DefaultManagedThreadFactoryTest {
+
+    DefaultManagedThreadFactory threadFactory;
+
+    boolean isVirtual() {
+        return false;
+    }
+
+    @Before
+    public void setUp() {
+        TestContextProvider.context.set("creator");
+        try {
+            threadFactory = new DefaultManagedThreadFactory("test", isVirtual(), new TestContextProvider());
+        } finally {
+            TestContextProvider.context.remove();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        threadFactory.shutdown();
+    }
+
+    @Test
+    public void testMode() throws Exception {
+        assertEquals(isVirtual(), threadFactory.isVirtual());
+        Thread thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        assertTrue(thread.isDaemon());
+        assertTrue(thread.getName().startsWith("test-"));
+        assertEquals(!isVirtual(), thread instanceof ManageableThread);
+    }
+
+    /**
+     * Virtual-thread mode can only be requested on runtimes that support it
+     */
+    @Test
+    public void testVirtualModeAvailability() {
+        try {
+            new DefaultManagedThreadFactory("test", true).shutdown();
+            assertTrue(DefaultManagedThreadFactory.isVirtualThreadSupported());
+        } catch (UnsupportedOperationException e) {
+            assertFalse(DefaultManagedThreadFactory.isVirtualThreadSupported());
+        }
+    }
+
+    /**
+     * Tasks run with the context of the thread that created the factory,
+     * which is removed again when the task completes
+     */
+    @Test
+    public void testContextPropagation() throws Exception {
+        final AtomicReference<String> contextInTask = new AtomicReference<String>();
+        final AtomicReference<String> contextAfterTask = new AtomicReference<String>();
+        TestContextProvider.context.set("other");
+        Thread thread;
+        try {
+            thread = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    contextInTask.set(TestContextProvider.context.get());
+                }
+            });
+        } finally {
+            TestContextProvider.context.remove();
+        }
+        thread.start();
+        thread.join(10000);
+
+        assertEquals("creator", contextInTask.get());
+
+        Thread nested = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                TestContextProvider.context.set("previous");
+                threadFactory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }).run();
+                contextAfterTask.set(TestContextProvider.context.get());
+            }
+        });
+        nested.start();
+        nested.join(10000);
+
+        assertEquals("previous", contextAfterTask.get());
+    }
+
+    /**
+     * isShutdown() is false until the factory is shut down, and true afterwards
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean shutdownBefore = new AtomicBoolean(true);
+        final AtomicBoolean shutdownAfter = new AtomicBoolean(false);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        Thread thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                shutdownBefore.set(ManagedExecutors.isCurrentThreadShutdown());
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                shutdownAfter.set(ManagedExecutors.isCurrentThreadShutdown());
+            }
+        });
+        thread.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        if (thread instanceof ManageableThread) {
+            assertFalse(((ManageableThread) thread).isShutdown());
+        }
+        threadFactory.shutdown();
+        thread.join(10000);
+
+        assertTrue(threadFactory.isShutdown());
+        assertFalse(shutdownBefore.get());
+        assertTrue(interrupted.get());
+        assertTrue(shutdownAfter.get());
+        if (thread instanceof ManageableThread) {
+            assertTrue(((ManageableThread) thread).isShutdown());
+        }
+        assertFalse(ManagedExecutors.isCurrentThreadShutdown());
+    }
+
+    /**
+     * A thread that is created before and started after shutdown is 
+     * interrupted when it starts
+     */
+    @Test
+    public void testStartAfterShutdown() throws Exception {
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        Thread thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        threadFactory.shutdown();
+        thread.start();
+        thread.join(10000);
+
+        assertTrue(interrupted.get());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testNewThreadAfterShutdown() {
+        threadFactory.shutdown();
+        threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    /**
+     * A ManagedExecutorService built on the factory runs tasks with the
+     * captured context
+     */
+    @Test
+    public void testExecutorServiceOnFactory() throws Exception {
+        Map<String, String> executionProperties = new java.util.HashMap<String, String>();
+        executionProperties.put(ManagedTask.LONGRUNNING_HINT, "true");
+        DefaultManagedExecutorService executor = new DefaultManagedExecutorService(1, 2, threadFactory);
+        try {
+            String context = executor.submit(ManagedExecutors.managedTask(new java.util.concurrent.Callable<String>() {
+                @Override
+                public String call() {
+                    return TestContextProvider.context.get();
+                }
+            }, executionProperties, null)).get(10, TimeUnit.SECONDS);
+            assertEquals("creator", context);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Propagates the value of a ThreadLocal
+     */
+    static class TestContextProvider implements ThreadContextProvider {
+
+        static final ThreadLocal<String> context = new ThreadLocal<String>();
+
+        @Override
+        public ThreadContextSnapshot currentContext(Map<String, String> executionProperties) {
+            final String captured = context.get();
+            return new ThreadContextSnapshot() {
+                @Override
+                public ThreadContextRestorer begin() {
+                    final String previous = context.get();
+                    context.set(captured);
+                    return new ThreadContextRestorer() {
+                        @Override
+                        public void endContext() {
+                            context.set(previous);
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public String getThreadContextType() {
+            return "Test";
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ExecutionHistoryTest {
+
+    /**
+     * The last executions are kept, the last one first, once the ring has 
+     * wrapped around
+     */
+    @Test
+    public void testRing() {
+        ExecutionHistory history = new ExecutionHistory(3, 10);
+        assertEquals(0, history.size("poll"));
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(history.record("poll", i * 100, i * 100 + 1, i * 100 + 2));
+        }
+        assertEquals(5L, history.getCount("poll"));
+        assertEquals(3, history.size("poll"));
+        assertEquals(500L, history.getScheduledStart("poll", 0));
+        assertEquals(401L, history.getRunStart("poll", 1));
+        assertEquals(302L, history.getRunEnd("poll", 2));
+        List<LastExecution> executions = history.getExecutions("poll");
+        assertEquals(3, executions.size());
+        assertEquals("poll", executions.get(0).getIdentityName());
+        assertNull(executions.get(0).getResult());
+        assertEquals(new Date(500), executions.get(0).getScheduledStart());
+        assertEquals(new Date(301), executions.get(2).getRunStart());
+        try {
+            history.getRunStart("poll", 3);
+            fail("age beyond depth");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            history.getRunStart("other", 0);
+            fail("no executions");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    /**
+     * No further identity names are recorded once the history is full, 
+     * until one is removed, and a removed name starts over
+     */
+    @Test
+    public void testCapacity() {
+        ExecutionHistory history = new ExecutionHistory(2, 2);
+        assertTrue(history.record("a", 1, 2, 3));
+        assertTrue(history.record("b", 1, 2, 3));
+        assertFalse(history.record("c", 1, 2, 3));
+        assertEquals(0, history.size("c"));
+        history.remove("a");
+        assertEquals(0L, history.getCount("a"));
+        assertTrue(history.getExecutions("a").isEmpty());
+        assertTrue(history.record("c", 4, 5, 6));
+        assertEquals(1, history.size("c"));
+        assertEquals(4L, history.getScheduledStart("c", 0));
+        assertTrue(history.record("b", 7, 8, 9));
+        assertEquals(2L, history.getCount("b"));
+        assertFalse(history.record("a", 1, 2, 3));
+    }
+
+    /**
+     * Identity names beyond the first chunk of slots are kept apart
+     */
+    @Test
+    public void testManyIdentities() {
+        ExecutionHistory history = new ExecutionHistory(4, 5000);
+        for (int round = 0; round < 6; round++) {
+            for (int i = 0; i < 5000; i++) {
+                assertTrue(history.record("tenant-" + i, i, round, round));
+            }
+        }
+        for (int i = 0; i < 5000; i += 499) {
+            assertEquals(6L, history.getCount("tenant-" + i));
+            assertEquals(4, history.size("tenant-" + i));
+            assertEquals(i, history.getScheduledStart("tenant-" + i, 3));
+            assertEquals(5L, history.getRunStart("tenant-" + i, 0));
+            assertEquals(2L, history.getRunEnd("tenant-" + i, 3));
+        }
+    }
+
+    /**
+     * The runs of a trigger task, including skipped ones, are recorded by
+     * its identity name until it completes
+     */
+    @Test
+    public void testScheduledExecutor() throws Exception {
+        final ExecutionHistory history = new ExecutionHistory(8, 16);
+        DefaultManagedScheduledExecutorService executor = DefaultManagedScheduledExecutorService.builder(1, 1)
+                .threadFactory(new DefaultManagedExecutorServiceTest.NamedThreadFactory("history-"))
+                .history(history)
+                .build();
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            Runnable task = ManagedExecutors.managedTask(new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            }, ExecutionProperties.EMPTY.with(ManagedTask.IDENTITY_NAME, "poll"), null);
+            ScheduledFuture<?> future = executor.schedule(task, new Trigger() {
+                @Override
+                public Date getNextRunTime(LastExecution lastExecution, Date taskScheduledTime) {
+                    return history.getCount("poll") < 10? new Date(System.currentTimeMillis() + 2): null;
+                }
+
+                @Override
+                public boolean skipRun(LastExecution lastExecution, Date scheduledRunTime) {
+                    // every third run
+                    return history.getCount("poll") % 3 == 2;
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!future.isDone() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(future.isDone());
+            assertEquals(7, runs.get());
+            assertEquals(0L, history.getCount("poll"));
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
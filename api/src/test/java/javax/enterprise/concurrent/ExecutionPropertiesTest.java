@@ -0,0 +1,240 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ExecutionPropertiesTest {
+
+    @Test
+    public void testCopyOf() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put(ManagedTask.IDENTITY_NAME, "task1");
+        map.put("custom", "value");
+
+        ExecutionProperties properties = ExecutionProperties.copyOf(map);
+        map.put("custom", "changed");
+
+        assertEquals(2, properties.size());
+        assertEquals("task1", properties.get(ManagedTask.IDENTITY_NAME));
+        assertEquals("value", properties.get(new String("custom")));
+        assertNull(properties.get("missing"));
+        assertTrue(properties.containsKey("custom"));
+        assertSame(properties, ExecutionProperties.copyOf(properties));
+        assertSame(ExecutionProperties.EMPTY, ExecutionProperties.copyOf(null));
+        assertSame(ExecutionProperties.EMPTY, ExecutionProperties.copyOf(new HashMap<String, String>()));
+    }
+
+    @Test
+    public void testEqualsHashCode() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put(ManagedTask.IDENTITY_NAME, "task1");
+        map.put(ManagedTask.LONGRUNNING_HINT, "true");
+
+        ExecutionProperties properties = ExecutionProperties.EMPTY
+                .with(ManagedTask.LONGRUNNING_HINT, "true")
+                .with(ManagedTask.IDENTITY_NAME, "task1");
+
+        assertEquals(map, properties);
+        assertEquals(properties, map);
+        assertEquals(map.hashCode(), properties.hashCode());
+        assertEquals(map, new HashMap<String, String>(properties));
+    }
+
+    /**
+     * Overrides take precedence over existing entries
+     */
+    @Test
+    public void testWith() {
+        ExecutionProperties base = ExecutionProperties.EMPTY
+                .with(ManagedTask.LONGRUNNING_HINT, "false")
+                .with("custom", "true");
+        Map<String, String> overrides = new HashMap<String, String>();
+        overrides.put(ManagedTask.LONGRUNNING_HINT, "true");
+        overrides.put(ManagedTask.IDENTITY_NAME, "task1");
+
+        ExecutionProperties merged = base.with(overrides);
+
+        assertEquals(3, merged.size());
+        assertEquals("true", merged.get(ManagedTask.LONGRUNNING_HINT));
+        assertEquals("task1", merged.get(ManagedTask.IDENTITY_NAME));
+        assertEquals("true", merged.get("custom"));
+        assertEquals("false", base.get(ManagedTask.LONGRUNNING_HINT));
+        assertSame(base, base.with((Map<String, String>) null));
+        assertSame(base, base.with("custom", "true"));
+    }
+
+    /**
+     * The union of two ExecutionProperties instances is computed once
+     */
+    @Test
+    public void testWith_shared() {
+        ExecutionProperties base = ExecutionProperties.EMPTY.with("custom", "true");
+        ExecutionProperties overrides = ExecutionProperties.EMPTY.with(ManagedTask.IDENTITY_NAME, "task1");
+
+        ExecutionProperties merged = base.with(overrides);
+
+        assertSame(merged, base.with(overrides));
+        assertSame(overrides, ExecutionProperties.EMPTY.with(overrides));
+        assertEquals(2, merged.size());
+    }
+
+    /**
+     * Typed values of registered properties
+     */
+    @Test
+    public void testTypedGet() {
+        ExecutionProperty<Long> timeout = ExecutionProperty.registerLong("vendor.timeout", -1L);
+        ExecutionProperties properties = ExecutionProperties.EMPTY
+                .with(ManagedTask.IDENTITY_NAME, "task1")
+                .with(ManagedTask.LONGRUNNING_HINT, "TRUE")
+                .with(ManagedTask.TRANSACTION, ManagedTask.USE_TRANSACTION_OF_EXECUTION_THREAD)
+                .with("vendor.timeout", "15000");
+
+        assertEquals("task1", properties.get(ExecutionProperty.IDENTITY_NAME));
+        assertTrue(properties.getBoolean(ExecutionProperty.LONGRUNNING_HINT));
+        assertEquals(ExecutionProperty.Transaction.USE_TRANSACTION_OF_EXECUTION_THREAD, 
+                properties.get(ExecutionProperty.TRANSACTION));
+        assertEquals(15000L, properties.getLong(timeout));
+        assertSame(properties.get(timeout), properties.get(timeout));
+    }
+
+    /**
+     * Typed values are parsed again when an instance is deserialized
+     */
+    @Test
+    public void testSerialization() throws Exception {
+        ExecutionProperties properties = ExecutionProperties.EMPTY
+                .with(ManagedTask.IDENTITY_NAME, "task1")
+                .with(ManagedTask.LONGRUNNING_HINT, "true");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(properties);
+        out.writeObject(ExecutionProperties.EMPTY);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ExecutionProperties copy = (ExecutionProperties) in.readObject();
+        assertEquals(properties, copy);
+        assertEquals("task1", copy.get(ExecutionProperty.IDENTITY_NAME));
+        assertTrue(copy.getBoolean(ExecutionProperty.LONGRUNNING_HINT));
+        assertSame(ExecutionProperties.EMPTY, in.readObject());
+    }
+
+    /**
+     * Default values for unspecified or unparsable properties
+     */
+    @Test
+    public void testTypedGet_defaults() {
+        ExecutionProperty<Long> timeout = ExecutionProperty.registerLong("vendor.timeout", -1L);
+        ExecutionProperties properties = ExecutionProperties.EMPTY
+                .with(ManagedTask.TRANSACTION, "UNKNOWN")
+                .with("vendor.timeout", "soon");
+
+        assertNull(properties.get(ExecutionProperty.IDENTITY_NAME));
+        assertFalse(properties.getBoolean(ExecutionProperty.LONGRUNNING_HINT));
+        assertEquals(ExecutionProperty.Transaction.SUSPEND, properties.get(ExecutionProperty.TRANSACTION));
+        assertEquals(-1L, properties.getLong(timeout));
+        assertFalse(ExecutionProperties.EMPTY.getBoolean(ExecutionProperty.LONGRUNNING_HINT));
+    }
+
+    /**
+     * Properties registered after the ExecutionProperties was created
+     */
+    @Test
+    public void testTypedGet_registeredLater() {
+        ExecutionProperties properties = ExecutionProperties.EMPTY.with("vendor.retries", "3");
+        ExecutionProperty<Long> retries = ExecutionProperty.registerLong("vendor.retries", 0L);
+
+        assertEquals(3L, properties.getLong(retries));
+    }
+
+    /**
+     * Typed values read from a plain Map
+     */
+    @Test
+    public void testTypedGet_map() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put(ManagedTask.LONGRUNNING_HINT, "true");
+
+        assertTrue(ExecutionProperty.LONGRUNNING_HINT.get(map));
+        assertEquals(ExecutionProperty.Transaction.SUSPEND, ExecutionProperty.TRANSACTION.get(map));
+        assertNull(ExecutionProperty.IDENTITY_NAME.get(null));
+    }
+
+    @Test
+    public void testRegister() {
+        assertSame(ExecutionProperty.LONGRUNNING_HINT, 
+                ExecutionProperty.registerBoolean(ManagedTask.LONGRUNNING_HINT, false));
+        assertEquals(ManagedTask.IDENTITY_NAME, ExecutionProperty.IDENTITY_NAME.getName());
+        assertEquals(Boolean.class, ExecutionProperty.LONGRUNNING_HINT.getType());
+        try {
+            ExecutionProperty.registerLong(ManagedTask.LONGRUNNING_HINT, 0L);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test (expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        ExecutionProperties.EMPTY.with("custom", "true").put("custom", "false");
+    }
+
+    @Test (expected = UnsupportedOperationException.class)
+    public void testImmutable_entrySet() {
+        ExecutionProperties.EMPTY.with("custom", "true").entrySet().clear();
+    }
+
+    @Test (expected = NullPointerException.class)
+    public void testNullValue() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("custom", null);
+        ExecutionProperties.copyOf(map);
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileLeaseManagerTest {
+
+    Path directory;
+    Path file;
+    FileLeaseManager a;
+    FileLeaseManager b;
+    DefaultManagedScheduledExecutorService executorA;
+    DefaultManagedScheduledExecutorService executorB;
+    // added to the time of both servers
+    final AtomicLong clock = new AtomicLong();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("leases");
+        file = directory.resolve("leases");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (DefaultManagedScheduledExecutorService executor : new DefaultManagedScheduledExecutorService[] {
+                executorA, executorB }) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+        if (a != null) {
+            a.close();
+        }
+        if (b != null) {
+            b.close();
+        }
+        for (Path leaseFile : Files.newDirectoryStream(directory)) {
+            Files.delete(leaseFile);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * The first server to ask for a lease gets it, and keeps it when both 
+     * renew
+     */
+    @Test
+    public void testSingleOwner() {
+        a = manager("a", 1, TimeUnit.HOURS);
+        b = manager("b", 1, TimeUnit.HOURS);
+        a.register("poll");
+        b.register("poll");
+        a.renew();
+        b.renew();
+        assertTrue(a.isOwner("poll"));
+        assertFalse(b.isOwner("poll"));
+        b.renew();
+        a.renew();
+        assertTrue(a.isOwner("poll"));
+        assertFalse(b.isOwner("poll"));
+        assertFalse(a.isOwner("unregistered"));
+    }
+
+    /**
+     * A lease passes to another server once the owner unregisters the last
+     * task with the name, or closes
+     */
+    @Test
+    public void testRelease() {
+        a = manager("a", 1, TimeUnit.HOURS);
+        b = manager("b", 1, TimeUnit.HOURS);
+        a.register("poll");
+        a.register("poll");
+        a.register("report");
+        b.register("poll");
+        b.register("report");
+        a.renew();
+        b.renew();
+        a.unregister("poll");
+        a.renew();
+        b.renew();
+        assertFalse(b.isOwner("poll"));
+        a.unregister("poll");
+        a.renew();
+        b.renew();
+        assertTrue(b.isOwner("poll"));
+        assertFalse(b.isOwner("report"));
+        a.close();
+        b.renew();
+        assertTrue(b.isOwner("report"));
+        assertFalse(a.isOwner("report"));
+    }
+
+    /**
+     * A lease that its owner stopped renewing passes to another server when
+     * it expires, and the former owner no longer considers itself the owner
+     */
+    @Test
+    public void testExpiry() {
+        a = manager("a", 9, TimeUnit.SECONDS);
+        b = manager("b", 9, TimeUnit.SECONDS);
+        a.register("poll");
+        b.register("poll");
+        a.renew();
+        b.renew();
+        assertTrue(a.isOwner("poll"));
+        assertFalse(b.isOwner("poll"));
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(a.isOwner("poll"));
+        b.renew();
+        assertTrue(b.isOwner("poll"));
+    }
+
+    /**
+     * The owner stops considering itself the owner a third of the lease 
+     * duration before the lease expires, so that two servers whose clocks 
+     * are apart by less than that never both run a task
+     */
+    @Test
+    public void testSkewMargin() {
+        a = manager("a", 9, TimeUnit.SECONDS);
+        b = manager("b", 9, TimeUnit.SECONDS);
+        a.register("poll");
+        b.register("poll");
+        a.renew();
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(5));
+        assertTrue(a.isOwner("poll"));
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(2));
+        assertFalse(a.isOwner("poll"));
+        b.renew();
+        assertFalse(b.isOwner("poll"));
+        clock.addAndGet(TimeUnit.SECONDS.toMillis(2));
+        b.renew();
+        assertTrue(b.isOwner("poll"));
+    }
+
+    /**
+     * The table is replaced as a whole, so a temporary file left by a 
+     * server that stopped while writing it does not affect the leases
+     */
+    @Test
+    public void testTornWrite() throws Exception {
+        a = manager("a", 1, TimeUnit.HOURS);
+        a.register("poll");
+        a.renew();
+        Files.write(directory.resolve("leases.tmp"), new byte[] {1, 2, 3});
+        b = manager("b", 1, TimeUnit.HOURS);
+        b.register("poll");
+        b.renew();
+        a.renew();
+        assertTrue(a.isOwner("poll"));
+        assertFalse(b.isOwner("poll"));
+    }
+
+    /**
+     * All leases of a server are acquired by one renewal
+     */
+    @Test
+    public void testBatchedRenewal() {
+        a = manager("a", 1, TimeUnit.HOURS);
+        for (int i = 0; i < 1000; i++) {
+            a.register("tenant-" + i);
+        }
+        a.renew();
+        assertEquals(1000, a.getOwned().size());
+        assertTrue(a.isOwner("tenant-999"));
+    }
+
+    /**
+     * A name registered since the last renewal is not owned until the 
+     * renewal thread, which it wakes, asks for its lease
+     */
+    @Test
+    public void testPending() throws Exception {
+        a = manager("a", 1, TimeUnit.HOURS);
+        a.start();
+        a.register("poll");
+        assertFalse(a.isOwner("poll"));
+        awaitOwner(a, "poll");
+        a.register("report");
+        awaitOwner(a, "report");
+        assertTrue(a.isOwner("poll"));
+    }
+
+    /**
+     * The renewal thread keeps the leases
+     */
+    @Test
+    public void testRenewalThread() throws Exception {
+        a = manager("a", 3, TimeUnit.SECONDS);
+        a.register("poll");
+        a.start();
+        awaitOwner(a, "poll");
+        Set<String> owned = a.getOwned();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (a.getOwned() == owned && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertNotSame("not renewed", owned, a.getOwned());
+        assertTrue(a.isOwner("poll"));
+        try {
+            a.start();
+            fail("started twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A trigger task that two executors schedule runs on the server that 
+     * owns its lease, and moves to the other when the owner stops
+     */
+    @Test
+    public void testScheduledExecutors() throws Exception {
+        a = manager("a", 1, TimeUnit.HOURS);
+        b = manager("b", 1, TimeUnit.HOURS);
+        a.start();
+        b.start();
+        executorA = executor(a);
+        executorB = executor(b);
+        AtomicInteger runsA = new AtomicInteger();
+        AtomicInteger runsB = new AtomicInteger();
+        // so that a owns the lease whichever executor fires first
+        a.register("poll");
+        awaitOwner(a, "poll");
+        ScheduledFuture<?> futureA = executorA.schedule(poll(runsA), new EveryFiveMillis());
+        executorB.schedule(poll(runsB), new EveryFiveMillis());
+        awaitRuns(runsA, 5);
+        assertEquals(0, runsB.get());
+        assertTrue(futureA.cancel(false));
+        a.unregister("poll");
+        a.renew();
+        b.renew();
+        awaitRuns(runsB, 5);
+    }
+
+    private FileLeaseManager manager(String owner, long duration, TimeUnit unit) {
+        return new FileLeaseManager(file, owner, duration, unit, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("lease-" + owner + "-")) {
+            @Override
+            long currentTimeMillis() {
+                return super.currentTimeMillis() + clock.get();
+            }
+        };
+    }
+
+    private static DefaultManagedScheduledExecutorService executor(FileLeaseManager leases) {
+        return DefaultManagedScheduledExecutorService.builder(1, 1)
+                .threadFactory(new DefaultManagedExecutorServiceTest.NamedThreadFactory("leased-"))
+                .leases(leases)
+                .build();
+    }
+
+    private static Runnable poll(final AtomicInteger runs) {
+        return ManagedExecutors.managedTask(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, ExecutionProperties.EMPTY.with(ManagedTask.IDENTITY_NAME, "poll"), null);
+    }
+
+    private static void awaitOwner(FileLeaseManager leases, String name) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!leases.isOwner(name) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(leases.isOwner(name));
+    }
+
+    private static void awaitRuns(AtomicInteger runs, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (runs.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue("runs " + runs.get(), runs.get() >= count);
+    }
+
+    static class EveryFiveMillis implements Trigger {
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecution, Date taskScheduledTime) {
+            return new Date(System.currentTimeMillis() + 5);
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecution, Date scheduledRunTime) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for HierarchicalTimingWheel
+ */
+public class HierarchicalTimingWheelTest {
+
+    HierarchicalTimingWheel wheel;
+    // the tick the wheel is being advanced to
+    long now;
+
+    @Before
+    public void setUp() {
+        // one tick per nanosecond, so that deadlines beyond the top level do
+        // not overflow
+        wheel = new HierarchicalTimingWheel(1, TimeUnit.NANOSECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    long deadline(long tick) {
+        return wheel.startNanos + tick * wheel.tickNanos;
+    }
+
+    /**
+     * Test that timeouts on every level, and beyond the top level, expire 
+     * exactly at their deadline tick.
+     */
+    @Test
+    public void testExpiresAtDeadline() {
+        Random random = new Random(42);
+        List<RecordingTimeout> timeouts = new ArrayList<RecordingTimeout>();
+        long[] ticks = {1, 2, 63, 64, 65, 127, 128, 4095, 4096, 4097, 262143, 262144, 262145,
+                (1L << 42) - 1, 1L << 42, (1L << 42) + 4097, (1L << 50) + 3};
+        for (long tick : ticks) {
+            timeouts.add(new RecordingTimeout(tick));
+        }
+        for (int i = 0; i < 10000; i++) {
+            timeouts.add(new RecordingTimeout(1 + (random.nextLong() >>> (64 - 1 - random.nextInt(30)))));
+        }
+        TreeSet<Long> steps = new TreeSet<Long>();
+        for (RecordingTimeout timeout : timeouts) {
+            assertTrue(wheel.schedule(timeout, deadline(timeout.deadline)));
+            steps.add(timeout.deadline - 1);
+            steps.add(timeout.deadline);
+        }
+        for (long step : steps) {
+            now = step;
+            wheel.advance(step);
+        }
+        for (RecordingTimeout timeout : timeouts) {
+            assertEquals("expiry of timeout due at " + timeout.deadline, timeout.deadline, timeout.expiredAt);
+        }
+        assertEquals(Long.MAX_VALUE, wheel.nextEventTick());
+    }
+
+    /**
+     * Test that timeouts inserted while the wheel advances are placed 
+     * relative to the current tick.
+     */
+    @Test
+    public void testInsertAfterAdvance() {
+        now = 100000;
+        wheel.advance(now);
+        RecordingTimeout past = new RecordingTimeout(5);
+        RecordingTimeout future = new RecordingTimeout(now + 5000);
+        wheel.schedule(past, deadline(past.deadline));
+        wheel.schedule(future, deadline(future.deadline));
+        wheel.advance(now);
+        assertEquals(now, past.expiredAt);
+        assertEquals(-1L, future.expiredAt);
+        long next = wheel.nextEventTick();
+        assertTrue(next > now && next <= future.deadline);
+        now = future.deadline - 1;
+        wheel.advance(now);
+        assertEquals(-1L, future.expiredAt);
+        now = future.deadline;
+        wheel.advance(now);
+        assertEquals(future.deadline, future.expiredAt);
+    }
+
+    /**
+     * Test cancelling timeouts before and after they are placed in the wheel.
+     */
+    @Test
+    public void testCancel() {
+        RecordingTimeout unplaced = new RecordingTimeout(10);
+        RecordingTimeout placed = new RecordingTimeout(5000);
+        RecordingTimeout expired = new RecordingTimeout(1);
+        wheel.schedule(unplaced, deadline(unplaced.deadline));
+        wheel.schedule(placed, deadline(placed.deadline));
+        wheel.schedule(expired, deadline(expired.deadline));
+        assertTrue(wheel.cancel(unplaced));
+        now = 1;
+        wheel.advance(now);
+        assertTrue(wheel.cancel(placed));
+        assertFalse(wheel.cancel(placed));
+        assertFalse(wheel.cancel(expired));
+        assertTrue(placed.isCancelled());
+
+        now = 10000;
+        wheel.advance(now);
+        assertEquals(-1L, unplaced.expiredAt);
+        assertEquals(-1L, placed.expiredAt);
+        assertEquals(1L, expired.expiredAt);
+        assertEquals(Long.MAX_VALUE, wheel.nextEventTick());
+    }
+
+    /**
+     * Test that an expired timeout can be scheduled again, and that a 
+     * pending or cancelled timeout cannot.
+     */
+    @Test
+    public void testReschedule() {
+        RecordingTimeout timeout = new RecordingTimeout(3);
+        wheel.schedule(timeout, deadline(3));
+        try {
+            wheel.schedule(timeout, deadline(4));
+            fail("timeout is already scheduled");
+        } catch (IllegalStateException expected) {
+        }
+        now = 3;
+        wheel.advance(now);
+        assertEquals(3L, timeout.expiredAt);
+        wheel.schedule(timeout, deadline(300));
+        now = 300;
+        wheel.advance(now);
+        assertEquals(300L, timeout.expiredAt);
+        assertEquals(2, timeout.expirations.get());
+
+        wheel.schedule(timeout, deadline(400));
+        wheel.cancel(timeout);
+        try {
+            wheel.schedule(timeout, deadline(500));
+            fail("timeout is cancelled");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * Test that stop() cancels and returns pending timeouts, and that 
+     * timeouts cannot be scheduled afterwards.
+     */
+    @Test
+    public void testStop() {
+        RecordingTimeout unplaced = new RecordingTimeout(10);
+        RecordingTimeout placed = new RecordingTimeout(5000);
+        wheel.schedule(placed, deadline(placed.deadline));
+        wheel.advance(0);
+        wheel.schedule(unplaced, deadline(unplaced.deadline));
+        List<HierarchicalTimingWheel.Timeout> pending = wheel.stop();
+        assertEquals(2, pending.size());
+        assertTrue(pending.contains(unplaced));
+        assertTrue(pending.contains(placed));
+        assertTrue(placed.isCancelled());
+        assertTrue(wheel.isStopped());
+        assertFalse(wheel.schedule(new RecordingTimeout(1), deadline(1)));
+    }
+
+    /**
+     * Test that the timer thread expires timeouts in real time, never early.
+     */
+    @Test
+    public void testTimerThread() throws Exception {
+        wheel = new HierarchicalTimingWheel(1, TimeUnit.MILLISECONDS);
+        wheel.start(Executors.defaultThreadFactory());
+        final CountDownLatch latch = new CountDownLatch(200);
+        final AtomicInteger early = new AtomicInteger();
+        Random random = new Random();
+        for (int i = 0; i < 200; i++) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(random.nextInt(100));
+            wheel.schedule(new HierarchicalTimingWheel.Timeout() {
+                @Override
+                void expire() {
+                    if (System.nanoTime() < deadline) {
+                        early.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }, deadline);
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+    }
+
+    class RecordingTimeout extends HierarchicalTimingWheel.Timeout {
+
+        final long deadline;
+        final AtomicInteger expirations = new AtomicInteger();
+        volatile long expiredAt = -1;
+
+        RecordingTimeout(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        void expire() {
+            expiredAt = now;
+            expirations.incrementAndGet();
+        }
+    }
+}
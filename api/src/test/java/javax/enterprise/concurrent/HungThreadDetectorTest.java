@@ -0,0 +1,244 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static javax.enterprise.concurrent.DefaultExecutorMetricsTest.identityTask;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HungThreadDetectorTest {
+
+    DefaultManagedThreadFactory threadFactory;
+    DefaultManagedExecutorService executor;
+    HungThreadDetector detector;
+
+    @Before
+    public void setUp() {
+        threadFactory = new DefaultManagedThreadFactory("long-running");
+        executor = new DefaultManagedExecutorService(2, 1, threadFactory);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (detector != null) {
+            detector.close();
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        threadFactory.shutdown();
+    }
+
+    /**
+     * Worker threads report the identity name and start time of the task 
+     * they run, and their CPU time and allocated bytes
+     */
+    @Test
+    public void testWorkerThreadStatistics() throws Exception {
+        long before = System.currentTimeMillis();
+        ThreadState state = executor.submit(identityTask("statistics", new ThreadStateCallable()))
+                .get(10, TimeUnit.SECONDS);
+
+        assertTrue(state.thread instanceof DefaultManagedExecutorService.WorkerThread);
+        assertEquals("statistics", state.identityName);
+        assertTrue(state.taskStartTime >= before && state.taskStartTime <= System.currentTimeMillis());
+        assertTrue(state.cpuTime >= -1L);
+        assertTrue(state.allocatedBytes >= -1L);
+        awaitIdle(state.thread);
+    }
+
+    /**
+     * Platform threads of DefaultManagedThreadFactory report the tasks that
+     * an executor runs on them
+     */
+    @Test
+    public void testManagedThreadStatistics() throws Exception {
+        Callable<ThreadState> task = ManagedExecutors.managedTask(new ThreadStateCallable(), 
+                Collections.singletonMap(ManagedTask.LONGRUNNING_HINT, "true"), null);
+        ThreadState state = executor.submit(task).get(10, TimeUnit.SECONDS);
+
+        assertTrue(state.thread.getName().startsWith("long-running"));
+        assertNull(state.identityName);
+        assertTrue(state.taskStartTime > 0L);
+        awaitIdle(state.thread);
+    }
+
+    /**
+     * ManageableThread implementations that do not report statistics
+     */
+    @Test
+    public void testDefaultStatistics() {
+        ManageableThread thread = new ManageableThread() {
+            @Override
+            public boolean isShutdown() {
+                return false;
+            }
+        };
+        assertNull(thread.getTaskIdentityName());
+        assertEquals(0L, thread.getTaskStartTime());
+        assertEquals(-1L, thread.getCpuTime());
+        assertEquals(-1L, thread.getAllocatedBytes());
+    }
+
+    /**
+     * A thread running a task past the threshold is reported once with its
+     * stack, and reported again when the task ends
+     */
+    @Test
+    public void testDetectsHungThread() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        detector = new HungThreadDetector(100, 10, TimeUnit.MILLISECONDS, listener, 
+                new DefaultManagedThreadFactory("detector"));
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<?> stuck = executor.submit(identityTask("stuck", new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }));
+
+        HungThreadDetector.HungThread hungThread = listener.hung.poll(10, TimeUnit.SECONDS);
+        assertNotNull(hungThread);
+        assertEquals("stuck", hungThread.getIdentityName());
+        assertTrue(hungThread.getRunningTime(TimeUnit.MILLISECONDS) >= 100L);
+        assertTrue(hungThread.getThread() instanceof DefaultManagedExecutorService.WorkerThread);
+        assertTrue(hungThread.toString(), hungThread.toString().contains("CountDownLatch.await"));
+        boolean inTask = false;
+        for (StackTraceElement element : hungThread.getStackTrace()) {
+            inTask |= element.getClassName().startsWith(HungThreadDetectorTest.class.getName());
+        }
+        assertTrue(inTask);
+
+        Thread.sleep(50);
+        List<HungThreadDetector.HungThread> hungThreads = detector.getHungThreads();
+        assertEquals(1, hungThreads.size());
+        assertTrue(hungThreads.get(0).getRunningTime(TimeUnit.MILLISECONDS) 
+                > hungThread.getRunningTime(TimeUnit.MILLISECONDS));
+        assertTrue(listener.hung.isEmpty());
+
+        release.countDown();
+        stuck.get(10, TimeUnit.SECONDS);
+        HungThreadDetector.HungThread recovered = listener.recovered.poll(10, TimeUnit.SECONDS);
+        assertNotNull(recovered);
+        assertSame(hungThread.getThread(), recovered.getThread());
+        Thread.sleep(50);
+        assertTrue(detector.getHungThreads().isEmpty());
+        assertTrue(listener.hung.isEmpty());
+    }
+
+    /**
+     * Short tasks are never reported, and a closed detector stops checking
+     */
+    @Test
+    public void testShortTasksNotReported() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        detector = new HungThreadDetector(200, 5, TimeUnit.MILLISECONDS, listener, 
+                new DefaultManagedThreadFactory("detector"));
+        for (int i = 0; i < 20; i++) {
+            executor.submit(identityTask("short", new DefaultExecutorMetricsTest.Sleep(10))).get(10, TimeUnit.SECONDS);
+        }
+        detector.close();
+        assertTrue(detector.isClosed());
+        assertTrue(listener.hung.isEmpty());
+        assertTrue(detector.getHungThreads().isEmpty());
+    }
+
+    private static void awaitIdle(Thread thread) throws InterruptedException {
+        ManageableThread manageableThread = (ManageableThread) thread;
+        for (int i = 0; i < 1000 && manageableThread.getTaskStartTime() != 0L; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0L, manageableThread.getTaskStartTime());
+        assertNull(manageableThread.getTaskIdentityName());
+    }
+
+    static final class ThreadState {
+
+        Thread thread;
+        String identityName;
+        long taskStartTime;
+        long cpuTime;
+        long allocatedBytes;
+    }
+
+    static final class ThreadStateCallable implements Callable<ThreadState> {
+
+        @Override
+        public ThreadState call() {
+            ThreadState state = new ThreadState();
+            state.thread = Thread.currentThread();
+            ManageableThread thread = (ManageableThread) state.thread;
+            state.identityName = thread.getTaskIdentityName();
+            state.taskStartTime = thread.getTaskStartTime();
+            state.cpuTime = thread.getCpuTime();
+            state.allocatedBytes = thread.getAllocatedBytes();
+            return state;
+        }
+    }
+
+    static final class RecordingListener implements HungThreadDetector.Listener {
+
+        final BlockingQueue<HungThreadDetector.HungThread> hung = 
+                new LinkedBlockingQueue<HungThreadDetector.HungThread>();
+        final BlockingQueue<HungThreadDetector.HungThread> recovered = 
+                new LinkedBlockingQueue<HungThreadDetector.HungThread>();
+
+        @Override
+        public void threadHung(HungThreadDetector.HungThread hungThread) {
+            hung.add(hungThread);
+        }
+
+        @Override
+        public void threadRecovered(HungThreadDetector.HungThread hungThread) {
+            recovered.add(hungThread);
+        }
+    }
+}
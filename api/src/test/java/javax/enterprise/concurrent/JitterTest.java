@@ -0,0 +1,193 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JitterTest {
+
+    DefaultManagedScheduledExecutorService executor;
+    List<LastExecution> executions;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultManagedScheduledExecutorService(2, 1, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("jitter-"));
+        executions = new CopyOnWriteArrayList<LastExecution>();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The delay of an identity name is stable, within bounds, and spread 
+     * across them
+     */
+    @Test
+    public void testIdentityJitter() {
+        Set<Long> delays = new HashSet<Long>();
+        for (int i = 0; i < 1000; i++) {
+            long delay = ScheduledManagedFutureTask.identityJitter("tenant-" + i, 1000);
+            assertTrue(delay >= 0 && delay <= 1000);
+            assertEquals(delay, ScheduledManagedFutureTask.identityJitter("tenant-" + i, 1000));
+            delays.add(delay);
+        }
+        assertTrue("distinct delays " + delays.size(), delays.size() > 500);
+        assertEquals(0L, ScheduledManagedFutureTask.identityJitter("tenant-1", 0));
+    }
+
+    /**
+     * A run is delayed by the delay of the identity name, and the trigger 
+     * is given back the run time it returned
+     */
+    @Test
+    public void testIdentity() throws Exception {
+        long jitter = 200;
+        String name = "poll";
+        long delay = ScheduledManagedFutureTask.identityJitter(name, jitter);
+        Runs trigger = new Runs(System.currentTimeMillis() + 20, 1, 0);
+        awaitDone(executor.schedule(task(name, jitter, null), trigger));
+        assertEquals(1, executions.size());
+        LastExecution execution = executions.get(0);
+        assertEquals(trigger.first, execution.getScheduledStart().getTime());
+        long late = execution.getRunStart().getTime() - trigger.first;
+        assertTrue("late " + late + ", delay " + delay, late >= delay - 1 && late < delay + 1000);
+    }
+
+    /**
+     * Runs with a random delay are delayed by no more than the jitter
+     */
+    @Test
+    public void testRandom() throws Exception {
+        long jitter = 50;
+        Runs trigger = new Runs(System.currentTimeMillis() + 10, 10, 60);
+        awaitDone(executor.schedule(task("poll", jitter, "RANDOM"), trigger));
+        assertEquals(10, executions.size());
+        long latest = 0;
+        for (int i = 0; i < executions.size(); i++) {
+            LastExecution execution = executions.get(i);
+            assertEquals(trigger.first + i * 60, execution.getScheduledStart().getTime());
+            long late = execution.getRunStart().getTime() - execution.getScheduledStart().getTime();
+            assertTrue("late " + late, late >= -1 && late < jitter + 1000);
+            latest = Math.max(latest, late);
+        }
+        assertTrue("latest " + latest, latest >= 5);
+    }
+
+    /**
+     * Tasks without a jitter run at the run times of the trigger
+     */
+    @Test
+    public void testNoJitter() throws Exception {
+        Runs trigger = new Runs(System.currentTimeMillis() + 20, 3, 20);
+        awaitDone(executor.schedule(task("poll", 0, null), trigger));
+        assertEquals(3, executions.size());
+        for (LastExecution execution : executions) {
+            long late = execution.getRunStart().getTime() - execution.getScheduledStart().getTime();
+            assertTrue("late " + late, late >= -1 && late < 1000);
+        }
+    }
+
+    private static Runnable task(String name, long jitter, String mode) {
+        ExecutionProperties properties = ExecutionProperties.EMPTY.with(ManagedTask.IDENTITY_NAME, name)
+                .with(ManagedTask.JITTER, Long.toString(jitter));
+        if (mode != null) {
+            properties = properties.with(ManagedTask.JITTER_MODE, mode);
+        }
+        return ManagedExecutors.managedTask(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, properties, null);
+    }
+
+    private static void awaitDone(Future<?> future) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!future.isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(future.isDone());
+    }
+
+    /**
+     * A trigger for a number of runs at a fixed rate, which keeps the last
+     * execution of each run.
+     */
+    class Runs implements Trigger {
+
+        final long first;
+        final int count;
+        final long period;
+
+        Runs(long first, int count, long period) {
+            this.first = first;
+            this.count = count;
+            this.period = period;
+        }
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecution, Date taskScheduledTime) {
+            if (lastExecution == null) {
+                return new Date(first);
+            }
+            executions.add(lastExecution);
+            return executions.size() < count? new Date(lastExecution.getScheduledStart().getTime() + period): null;
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecution, Date scheduledRunTime) {
+            return false;
+        }
+    }
+}
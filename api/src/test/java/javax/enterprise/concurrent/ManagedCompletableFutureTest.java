@@ -0,0 +1,324 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.LONG_RUNNING_THREAD_PREFIX;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.listOf;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagedCompletableFutureTest {
+
+    DefaultManagedExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultManagedExecutorService(2, 1, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory(LONG_RUNNING_THREAD_PREFIX), null, 
+                new DefaultContextServiceTest.TestContextProvider());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        DefaultContextServiceTest.TestContextProvider.context.remove();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * supplyAsync runs the supplier on a managed thread of the executor
+     */
+    @Test
+    public void testSupplyAsync() throws Exception {
+        CompletableFuture<Thread> future = executor.supplyAsync(new CurrentThreadSupplier());
+        assertTrue(future instanceof ManagedCompletableFuture);
+        assertTrue(future.get(10, TimeUnit.SECONDS) instanceof ManageableThread);
+        assertNotSame(Thread.currentThread(), future.get());
+    }
+
+    /**
+     * Asynchronous dependent stages are managed futures that run on the 
+     * executor, rather than on the common pool
+     */
+    @Test
+    public void testDependentStagesRunOnExecutor() throws Exception {
+        CompletableFuture<Thread> stage = executor.completedFuture("value")
+                .thenApplyAsync(new Function<String, Thread>() {
+                    @Override
+                    public Thread apply(String value) {
+                        return Thread.currentThread();
+                    }
+                });
+        assertTrue(stage instanceof ManagedCompletableFuture);
+        assertTrue(stage.get(10, TimeUnit.SECONDS) instanceof ManageableThread);
+
+        CompletableFuture<Thread> copy = stage.thenCompose(new Function<Thread, CompletableFuture<Thread>>() {
+            @Override
+            public CompletableFuture<Thread> apply(Thread thread) {
+                return CompletableFuture.completedFuture(thread);
+            }
+        }).toCompletableFuture().copy();
+        assertTrue(copy instanceof ManagedCompletableFuture);
+        assertSame(stage.get(), copy.get(10, TimeUnit.SECONDS));
+        assertSame(stage.defaultExecutor(), copy.defaultExecutor());
+    }
+
+    /**
+     * The context is captured once for a chain and every asynchronous stage
+     * runs in it, even after the context of the creating thread changed
+     */
+    @Test
+    public void testContextCapturedOncePerChain() throws Exception {
+        AtomicInteger captures = DefaultContextServiceTest.TestContextProvider.captures;
+        DefaultContextServiceTest.TestContextProvider.context.set("request");
+        int before = captures.get();
+        final List<String> seen = Collections.synchronizedList(new ArrayList<String>());
+        CompletableFuture<String> first = executor.supplyAsync(new ContextSupplier(seen));
+        DefaultContextServiceTest.TestContextProvider.context.set("other");
+        CompletableFuture<String> last = first
+                .thenApplyAsync(new ContextFunction(seen))
+                .thenCombineAsync(first.thenApplyAsync(new ContextFunction(seen)), 
+                        new BiFunction<String, String, String>() {
+                            @Override
+                            public String apply(String a, String b) {
+                                seen.add(DefaultContextServiceTest.TestContextProvider.context.get());
+                                return a + "," + b;
+                            }
+                        })
+                .thenApplyAsync(new ContextFunction(seen));
+        assertEquals("request,request", last.get(10, TimeUnit.SECONDS));
+        assertEquals(listOf("request", "request", "request", "request", "request"), seen);
+        assertEquals(1, captures.get() - before);
+        assertEquals("other", DefaultContextServiceTest.TestContextProvider.context.get());
+    }
+
+    /**
+     * Futures completed up front are managed, and their failure is seen by
+     * dependent stages
+     */
+    @Test
+    public void testCompletedAndFailedFutures() throws Exception {
+        assertEquals("value", executor.completedFuture("value").get());
+        IllegalStateException failure = new IllegalStateException();
+        CompletableFuture<Object> failed = executor.failedFuture(failure);
+        assertTrue(failed instanceof ManagedCompletableFuture);
+        assertTrue(failed.isCompletedExceptionally());
+        CompletableFuture<Object> recovered = failed.exceptionally(new Function<Throwable, Object>() {
+            @Override
+            public Object apply(Throwable t) {
+                return t;
+            }
+        });
+        assertSame(failure, recovered.get());
+        try {
+            executor.failedFuture(null);
+            fail();
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    /**
+     * runAsync completes with null once the action ran on the executor
+     */
+    @Test
+    public void testRunAsync() throws Exception {
+        final List<Thread> ran = Collections.synchronizedList(new ArrayList<Thread>());
+        CompletableFuture<Void> future = executor.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                ran.add(Thread.currentThread());
+            }
+        });
+        assertNull(future.get(10, TimeUnit.SECONDS));
+        assertEquals(1, ran.size());
+        assertTrue(ran.get(0) instanceof ManageableThread);
+    }
+
+    /**
+     * An executor that is shut down rejects asynchronous stages
+     */
+    @Test
+    public void testRejected() throws Exception {
+        CompletableFuture<String> future = executor.newIncompleteFuture();
+        executor.shutdown();
+        try {
+            executor.supplyAsync(new ContextSupplier(new ArrayList<String>()));
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        try {
+            future.completeAsync(new ContextSupplier(new ArrayList<String>()));
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertFalse(future.isDone());
+    }
+
+    /**
+     * The default methods of ManagedExecutorService run every asynchronous
+     * stage through execute
+     */
+    @Test
+    public void testDefaultImplementation() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        ManagedExecutorService direct = new DirectExecutorService() {
+            @Override
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                command.run();
+            }
+        };
+        CompletableFuture<Thread> future = direct.supplyAsync(new CurrentThreadSupplier());
+        assertTrue(future instanceof ManagedCompletableFuture);
+        assertSame(Thread.currentThread(), future.get());
+        CompletableFuture<String> stage = future.thenApplyAsync(new Function<Thread, String>() {
+            @Override
+            public String apply(Thread thread) {
+                return thread.getName();
+            }
+        });
+        assertEquals(Thread.currentThread().getName(), stage.get());
+        assertEquals(2, executed.get());
+        assertNull(direct.runAsync(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get());
+        assertEquals(3, executed.get());
+    }
+
+    /**
+     * Supplies the thread it runs on.
+     */
+    static class CurrentThreadSupplier implements Supplier<Thread> {
+
+        @Override
+        public Thread get() {
+            return Thread.currentThread();
+        }
+    }
+
+    /**
+     * Supplies the test context it runs with, and records it.
+     */
+    static class ContextSupplier implements Supplier<String> {
+
+        final List<String> seen;
+
+        ContextSupplier(List<String> seen) {
+            this.seen = seen;
+        }
+
+        @Override
+        public String get() {
+            String context = DefaultContextServiceTest.TestContextProvider.context.get();
+            seen.add(context);
+            return context;
+        }
+    }
+
+    /**
+     * Records the test context it runs with, and returns its argument.
+     */
+    static class ContextFunction implements Function<String, String> {
+
+        final List<String> seen;
+
+        ContextFunction(List<String> seen) {
+            this.seen = seen;
+        }
+
+        @Override
+        public String apply(String value) {
+            seen.add(DefaultContextServiceTest.TestContextProvider.context.get());
+            return value;
+        }
+    }
+
+    /**
+     * A ManagedExecutorService that only has the default methods of the 
+     * interface.
+     */
+    abstract static class DirectExecutorService extends AbstractExecutorService 
+        implements ManagedExecutorService {
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
@@ -40,12 +40,15 @@
 
 package javax.enterprise.concurrent;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import static org.junit.Assert.*;
+import org.junit.Assume;
 import org.junit.Test;
 
 public class ManagedExecutorsTest {
@@ -222,6 +225,88 @@ public class ManagedExecutorsTest {
         assertEquals("true", managedTask.getExecutionProperties().get("custom"));
     }
 
+    /**
+     * Test for ManagedExecutors.managedTask(Runnable, Map, ManagedTaskListener)
+     * with ExecutionProperties, for both a plain task and a task that already
+     * implements ManagedTask: no allocation other than the returned task.
+     */
+    @Test
+    public void testManagedTask_Runnable_ExecutionProperties_allocation() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+        allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        ManagedTaskListenerImpl taskListener = new ManagedTaskListenerImpl();
+        ExecutionProperties executionProperties = ExecutionProperties.EMPTY
+                .with(ManagedTask.IDENTITY_NAME, "task1")
+                .with(ManagedTask.LONGRUNNING_HINT, "true");
+        ManagedTaskRunnableImpl managedTask = new ManagedTaskRunnableImpl("task1 description", 
+                ExecutionProperties.EMPTY.with("custom", "true"), taskListener);
+        RunnableImpl task = new RunnableImpl();
+        Runnable[] wrapped = new Runnable[10000];
+        long threadId = Thread.currentThread().getId();
+
+        long perTask = 0;
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < wrapped.length; i += 2) {
+                wrapped[i] = ManagedExecutors.managedTask(task, executionProperties, taskListener);
+                wrapped[i + 1] = ManagedExecutors.managedTask(managedTask, executionProperties, taskListener);
+            }
+            perTask = (allocationMXBean.getThreadAllocatedBytes(threadId) - before) / wrapped.length;
+        }
+
+        // The RunnableAdapter itself is 32 bytes with compressed references
+        assertTrue("allocated " + perTask + " bytes per task", perTask <= 48);
+        assertSame(((ManagedTask) wrapped[0]).getExecutionProperties(), executionProperties);
+        assertEquals("true", ((ManagedTask) wrapped[1]).getExecutionProperties().get("custom"));
+        assertEquals("task1", ((ManagedTask) wrapped[1]).getExecutionProperties().get(ManagedTask.IDENTITY_NAME));
+    }
+
+    /**
+     * Test for ManagedExecutors.managedTask(Runnable, Map, ManagedTaskListener)
+     * with a Map that is not ExecutionProperties: the execution properties are
+     * a modifiable copy that accepts null values.
+     */
+    @Test
+    public void testManagedTask_Runnable_Map_null_value() {
+        Map<String, String> executionProperties = new HashMap<String, String>();
+        executionProperties.put(ManagedTask.IDENTITY_NAME, "task1");
+        executionProperties.put("custom", null);
+        ManagedTaskRunnableImpl managedTask = new ManagedTaskRunnableImpl("task1 description", 
+                ExecutionProperties.EMPTY.with(ManagedTask.LONGRUNNING_HINT, "true"), null);
+
+        Runnable wrapped = ManagedExecutors.managedTask(managedTask, executionProperties, null);
+        Map<String, String> copy = ((ManagedTask) wrapped).getExecutionProperties();
+        assertEquals("task1", copy.get(ManagedTask.IDENTITY_NAME));
+        assertEquals("true", copy.get(ManagedTask.LONGRUNNING_HINT));
+        assertTrue(copy.containsKey("custom"));
+        assertNull(copy.get("custom"));
+        copy.put("other", "value");
+        assertFalse(executionProperties.containsKey("other"));
+    }
+
+    /**
+     * Test for ManagedExecutors.getExecutionProperty()
+     */
+    @Test
+    public void testGetExecutionProperty() {
+        Map<String, String> executionProperties = new HashMap<String, String>();
+        executionProperties.put(ManagedTask.IDENTITY_NAME, "task1");
+        executionProperties.put(ManagedTask.LONGRUNNING_HINT, "true");
+        ManagedTaskRunnableImpl managedTask = new ManagedTaskRunnableImpl("task1 description", 
+                executionProperties, null);
+        Runnable wrapped = ManagedExecutors.managedTask(new RunnableImpl(), executionProperties, null);
+
+        assertTrue(ManagedExecutors.getExecutionProperty(managedTask, ExecutionProperty.LONGRUNNING_HINT));
+        assertTrue(ManagedExecutors.getExecutionProperty(wrapped, ExecutionProperty.LONGRUNNING_HINT));
+        assertEquals("task1", ManagedExecutors.getExecutionProperty(wrapped, ExecutionProperty.IDENTITY_NAME));
+        assertFalse(ManagedExecutors.getExecutionProperty(new RunnableImpl(), ExecutionProperty.LONGRUNNING_HINT));
+        assertNull(ManagedExecutors.getExecutionProperty(new RunnableImpl(), ExecutionProperty.IDENTITY_NAME));
+    }
+
     @Test (expected = IllegalArgumentException.class)
     public void testManagedTask_null_Runnable_task() {
         Runnable task = null;
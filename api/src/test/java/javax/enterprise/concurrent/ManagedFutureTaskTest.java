@@ -0,0 +1,351 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.listOf;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for the lifecycle of ManagedFutureTask
+ */
+public class ManagedFutureTaskTest {
+
+    /**
+     * Test that cancelling from within taskSubmitted delivers taskAborted 
+     * and taskDone after taskSubmitted returns, and the task never runs.
+     */
+    @Test
+    public void testCancelInTaskSubmitted() throws Exception {
+        SequenceListener listener = new SequenceListener() {
+            @Override
+            public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+                super.taskSubmitted(future, executor, task);
+                assertTrue(future.cancel(false));
+                events.add("cancelled");
+            }
+        };
+        CountingCallable callable = new CountingCallable();
+        ManagedFutureTask<Integer> future = newFuture(callable, listener);
+        future.submitted();
+        future.run();
+        assertEquals(listOf("taskSubmitted", "cancelled", "taskAborted", "taskDone"), listener.events);
+        assertEquals(0, callable.calls.get());
+        assertTrue(future.isCancelled());
+        assertTrue(listener.exception instanceof CancellationException);
+    }
+
+    /**
+     * Test that cancelling from within taskStarting delivers taskAborted 
+     * and taskDone after taskStarting returns, and the task never runs.
+     */
+    @Test
+    public void testCancelInTaskStarting() throws Exception {
+        SequenceListener listener = new SequenceListener() {
+            @Override
+            public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+                super.taskStarting(future, executor, task);
+                assertTrue(future.cancel(true));
+                events.add("cancelled");
+            }
+        };
+        CountingCallable callable = new CountingCallable();
+        ManagedFutureTask<Integer> future = newFuture(callable, listener);
+        future.submitted();
+        future.run();
+        assertEquals(listOf("taskSubmitted", "taskStarting", "cancelled", "taskAborted", "taskDone"), 
+                listener.events);
+        assertEquals(0, callable.calls.get());
+        // cancel(true) interrupted the runner, which is this thread
+        assertTrue(Thread.interrupted());
+    }
+
+    /**
+     * Test the events of a task that runs normally, fails, or is aborted.
+     */
+    @Test
+    public void testCompletion() throws Exception {
+        SequenceListener listener = new SequenceListener();
+        ManagedFutureTask<Integer> future = newFuture(new CountingCallable(), listener);
+        future.submitted();
+        future.run();
+        future.run();
+        assertEquals(Integer.valueOf(1), future.get());
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone"), listener.events);
+        assertFalse(future.cancel(true));
+
+        listener = new SequenceListener();
+        final IllegalStateException failure = new IllegalStateException();
+        future = newFuture(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw failure;
+            }
+        }, listener);
+        future.submitted();
+        future.run();
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone"), listener.events);
+        assertSame(failure, listener.exception);
+
+        listener = new SequenceListener();
+        future = newFuture(new CountingCallable(), listener);
+        future.submitted();
+        future.abort(failure);
+        future.run();
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AbortedException);
+        }
+        assertEquals(listOf("taskSubmitted", "taskAborted", "taskDone"), listener.events);
+    }
+
+    /**
+     * Test that an exception thrown by taskStarting aborts the task.
+     */
+    @Test
+    public void testTaskStartingFails() throws Exception {
+        SequenceListener listener = new SequenceListener() {
+            @Override
+            public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+                super.taskStarting(future, executor, task);
+                throw new IllegalStateException();
+            }
+        };
+        CountingCallable callable = new CountingCallable();
+        ManagedFutureTask<Integer> future = newFuture(callable, listener);
+        future.submitted();
+        future.run();
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskAborted", "taskDone"), listener.events);
+        assertEquals(0, callable.calls.get());
+        assertTrue(listener.exception instanceof AbortedException);
+        assertTrue(listener.exception.getCause() instanceof IllegalStateException);
+    }
+
+    /**
+     * Test that runAndReset runs the task repeatedly and reports each run.
+     */
+    @Test
+    public void testRunAndReset() throws Exception {
+        SequenceListener listener = new SequenceListener();
+        CountingCallable callable = new CountingCallable();
+        ManagedFutureTask<Integer> future = newFuture(callable, listener);
+        future.submitted();
+        assertTrue(future.runAndReset());
+        future.runDone(null);
+        future.submitted();
+        assertTrue(future.runAndReset());
+        assertFalse(future.isDone());
+        future.cancel(false);
+        assertFalse(future.runAndReset());
+        future.runDone(null);
+        assertEquals(2, callable.calls.get());
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskDone", "taskSubmitted", "taskStarting", 
+                "taskAborted", "taskDone"), listener.events);
+    }
+
+    /**
+     * Test get with a timeout, and that cancel(true) interrupts the task.
+     */
+    @Test
+    public void testGetAndInterrupt() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        SequenceListener listener = new SequenceListener();
+        final ManagedFutureTask<Integer> future = newFuture(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 0;
+            }
+        }, listener);
+        future.submitted();
+        Thread runner = new Thread(future);
+        runner.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+        assertTrue(future.cancel(true));
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        runner.join(10000);
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+        assertEquals(listOf("taskSubmitted", "taskStarting", "taskAborted", "taskDone"), listener.events);
+    }
+
+    /**
+     * Test that the events of tasks that are cancelled while they start and
+     * run are delivered exactly once, in order and never concurrently.
+     */
+    @Test
+    public void testCancelRaces() throws Exception {
+        DefaultManagedExecutorService executor = new DefaultManagedExecutorService(2, 1);
+        try {
+            List<SequenceListener> listeners = new ArrayList<SequenceListener>();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 2000; i++) {
+                SequenceListener listener = new SequenceListener();
+                listeners.add(listener);
+                futures.add(executor.submit(ManagedExecutors.managedTask(new CountingCallable(), listener)));
+                if (i % 3 != 0) {
+                    futures.get(i).cancel(i % 2 == 0);
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get(10, TimeUnit.SECONDS);
+                } catch (CancellationException expected) {
+                }
+            }
+            for (SequenceListener listener : listeners) {
+                listener.awaitDone();
+                List<String> events = listener.events;
+                assertNull(listener.error, listener.error);
+                assertEquals("taskSubmitted", events.get(0));
+                assertEquals("taskDone", events.get(events.size() - 1));
+                assertTrue(events.toString(), events.size() <= 4);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static ManagedFutureTask<Integer> newFuture(Callable<Integer> callable, ManagedTaskListener listener) {
+        return new ManagedFutureTask<Integer>(null, ManagedExecutors.managedTask(callable, listener));
+    }
+
+    static class CountingCallable implements Callable<Integer> {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Integer call() {
+            return calls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records events, and checks that they are never delivered concurrently
+     * and follow the order of the ManagedTaskListener state diagram.
+     */
+    static class SequenceListener implements ManagedTaskListener {
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable exception;
+        volatile String error;
+
+        void awaitDone() throws InterruptedException {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+
+        private void event(String event, String... allowedAfter) {
+            if (inFlight.incrementAndGet() != 1) {
+                error = "concurrent " + event;
+            }
+            String last = events.isEmpty()? null: events.get(events.size() - 1);
+            boolean allowed = false;
+            for (String after : allowedAfter) {
+                allowed |= after == null? last == null: after.equals(last);
+            }
+            if (!allowed && !"cancelled".equals(last)) {
+                error = event + " after " + last;
+            }
+            events.add(event);
+            inFlight.decrementAndGet();
+        }
+
+        @Override
+        public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            event("taskSubmitted", null, "taskDone");
+        }
+
+        @Override
+        public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            event("taskStarting", "taskSubmitted");
+        }
+
+        @Override
+        public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            this.exception = exception;
+            event("taskAborted", "taskSubmitted", "taskStarting");
+        }
+
+        @Override
+        public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            if (exception != null) {
+                this.exception = exception;
+            }
+            event("taskDone", "taskStarting", "taskAborted");
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.LONG_RUNNING_THREAD_PREFIX;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagedPublisherTest {
+
+    DefaultManagedExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultManagedExecutorService(2, 1, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory(LONG_RUNNING_THREAD_PREFIX), null, 
+                new DefaultContextServiceTest.TestContextProvider());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        DefaultContextServiceTest.TestContextProvider.context.remove();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Every item is delivered in order, followed by onComplete
+     */
+    @Test
+    public void testPublish() throws Exception {
+        CountingSource source = new CountingSource(1000);
+        TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+        new ManagedPublisher<Integer>(executor, source).subscribe(subscriber);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.error);
+        assertTrue(subscriber.completed);
+        assertEquals(1000, subscriber.items.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), subscriber.items.get(i));
+        }
+        assertTrue(source.iterator.closed);
+    }
+
+    /**
+     * The iterator is not advanced beyond the items that were requested,
+     * and resumes when more are requested
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        CountingSource source = new CountingSource(100);
+        TestSubscriber subscriber = new TestSubscriber(10);
+        new ManagedPublisher<Integer>(executor, source).subscribe(subscriber);
+        subscriber.awaitItems(10);
+        Thread.sleep(100);
+        assertEquals(10, source.iterator.nexts.get());
+        assertEquals(10, subscriber.items.size());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(25);
+        subscriber.awaitItems(35);
+        Thread.sleep(100);
+        assertEquals(35, source.iterator.nexts.get());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertTrue(subscriber.completed);
+        assertEquals(100, subscriber.items.size());
+    }
+
+    /**
+     * The source and the iterator run on managed threads, in the context 
+     * captured once when subscribing
+     */
+    @Test
+    public void testContext() throws Exception {
+        AtomicInteger captures = DefaultContextServiceTest.TestContextProvider.captures;
+        DefaultContextServiceTest.TestContextProvider.context.set("subscriber");
+        CountingSource source = new CountingSource(ManagedPublisher.BATCH_SIZE * 3);
+        TestSubscriber subscriber = new TestSubscriber(1);
+        int before = captures.get();
+        new ManagedPublisher<Integer>(executor, source).subscribe(subscriber);
+        DefaultContextServiceTest.TestContextProvider.context.set("other");
+        subscriber.awaitItems(1);
+        for (int i = 2; i <= 5; i++) {
+            subscriber.subscription.request(1);
+            subscriber.awaitItems(i);
+        }
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertEquals(1, captures.get() - before);
+        assertEquals(Collections.singleton("subscriber"), source.contexts);
+        for (Thread thread : source.threads) {
+            assertTrue(thread instanceof ManageableThread);
+        }
+    }
+
+    /**
+     * A source with LONGRUNNING_HINT is iterated on the long-running pool
+     */
+    @Test
+    public void testLongRunningSource() throws Exception {
+        final CountingSource source = new CountingSource(10);
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(ManagedTask.LONGRUNNING_HINT, "true");
+        Callable<Iterator<Integer>> managed = ManagedExecutors.managedTask(source, properties, null);
+        TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+        new ManagedPublisher<Integer>(executor, managed).subscribe(subscriber);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertEquals(10, subscriber.items.size());
+        for (Thread thread : source.threads) {
+            assertTrue(thread.getName().startsWith(LONG_RUNNING_THREAD_PREFIX));
+        }
+    }
+
+    /**
+     * Cancelling stops the iteration and closes the iterator
+     */
+    @Test
+    public void testCancel() throws Exception {
+        CountingSource source = new CountingSource(100);
+        TestSubscriber subscriber = new TestSubscriber(5);
+        new ManagedPublisher<Integer>(executor, source).subscribe(subscriber);
+        subscriber.awaitItems(5);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!source.iterator.closed && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(source.iterator.closed);
+        Thread.sleep(100);
+        assertEquals(5, subscriber.items.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    /**
+     * Failures of the source, invalid requests and rejection are reported
+     * with onError
+     */
+    @Test
+    public void testErrors() throws Exception {
+        final IllegalStateException failure = new IllegalStateException();
+        TestSubscriber subscriber = new TestSubscriber(1);
+        new ManagedPublisher<Integer>(executor, new Callable<Iterator<Integer>>() {
+            @Override
+            public Iterator<Integer> call() {
+                throw failure;
+            }
+        }).subscribe(subscriber);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertSame(failure, subscriber.error);
+
+        subscriber = new TestSubscriber(0);
+        CountingSource source = new CountingSource(10);
+        new ManagedPublisher<Integer>(executor, source).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, subscriber.items.size());
+
+        executor.shutdown();
+        subscriber = new TestSubscriber(1);
+        new ManagedPublisher<Integer>(executor, new CountingSource(10)).subscribe(subscriber);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertTrue(subscriber.error instanceof RejectedExecutionException);
+    }
+
+    /**
+     * A failure to close the iterator after the last item is reported with
+     * onError instead of onComplete
+     */
+    @Test
+    public void testCloseFailure() throws Exception {
+        final IllegalStateException failure = new IllegalStateException();
+        CountingSource source = new CountingSource(3) {
+            @Override
+            public Iterator<Integer> call() {
+                record();
+                iterator = new CountingIterator(this) {
+                    @Override
+                    public void close() {
+                        super.close();
+                        throw failure;
+                    }
+                };
+                return iterator;
+            }
+        };
+        TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+        new ManagedPublisher<Integer>(executor, source).subscribe(subscriber);
+        assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        assertSame(failure, subscriber.error);
+        assertFalse(subscriber.completed);
+        assertEquals(3, subscriber.items.size());
+        assertTrue(source.iterator.closed);
+    }
+
+    /**
+     * Returns an iterator over the first {@code size} integers, and records
+     * the threads and contexts it runs with.
+     */
+    static class CountingSource implements Callable<Iterator<Integer>> {
+
+        final int size;
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final Set<String> contexts = Collections.synchronizedSet(new HashSet<String>());
+        volatile CountingIterator iterator;
+
+        CountingSource(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Iterator<Integer> call() {
+            record();
+            iterator = new CountingIterator(this);
+            return iterator;
+        }
+
+        void record() {
+            threads.add(Thread.currentThread());
+            contexts.add(String.valueOf(DefaultContextServiceTest.TestContextProvider.context.get()));
+        }
+    }
+
+    static class CountingIterator implements Iterator<Integer>, AutoCloseable {
+
+        final CountingSource source;
+        final AtomicInteger nexts = new AtomicInteger();
+        volatile boolean closed;
+
+        CountingIterator(CountingSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nexts.get() < source.size;
+        }
+
+        @Override
+        public Integer next() {
+            source.record();
+            return nexts.getAndIncrement();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Requests an initial number of items and records what it receives.
+     */
+    static class TestSubscriber implements Flow.Subscriber<Integer> {
+
+        final long initialRequest;
+        final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        TestSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            finished.countDown();
+        }
+
+        void awaitItems(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (items.size() < count) {
+                assertTrue("received " + items.size() + " of " + count, System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.concurrent.spi.ScheduleStore;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedScheduleStoreTest {
+
+    Path directory;
+    Path journal;
+    MappedScheduleStore store;
+    DefaultManagedScheduledExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("schedules");
+        journal = directory.resolve("schedules.journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        if (store != null) {
+            store.close();
+        }
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Schedules and the times of their last run are restored in the order
+     * they were added, without the removed ones
+     */
+    @Test
+    public void testReopen() throws Exception {
+        store = new MappedScheduleStore(journal);
+        long a = store.add(bytes("a"));
+        long b = store.add(bytes("b"));
+        long c = store.add(bytes("c"));
+        store.executed(a, 10, 11, 12);
+        store.executed(a, 20, 21, 22);
+        store.executed(c, 30, 31, 32);
+        store.remove(b);
+        store.remove(b);
+        store.close();
+
+        store = new MappedScheduleStore(journal);
+        assertEquals(2, store.size());
+        List<String> visited = restore(store);
+        assertEquals(Arrays.asList(a + " a 20 21 22", c + " c 30 31 32"), visited);
+        long d = store.add(bytes("d"));
+        assertTrue(d > c);
+    }
+
+    /**
+     * A record that was only partly written ends the journal, and is 
+     * overwritten by the next record
+     */
+    @Test
+    public void testTornRecord() throws Exception {
+        store = new MappedScheduleStore(journal);
+        long a = store.add(bytes("a"));
+        long size = store.getJournalSize();
+        long b = store.add(bytes("b"));
+        store.close();
+        store = null;
+        FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE);
+        try {
+            // corrupt the last byte of the schedule of b
+            channel.write(ByteBuffer.wrap(new byte[] { 'x' }), size + 17 + bytes("b").length - 1);
+        } finally {
+            channel.close();
+        }
+
+        store = new MappedScheduleStore(journal);
+        assertEquals(Arrays.asList(a + " a"), restore(store));
+        assertEquals(size, store.getJournalSize());
+        long c = store.add(bytes("c"));
+        assertTrue(c > a);
+        store.close();
+        store = new MappedScheduleStore(journal);
+        assertEquals(Arrays.asList(a + " a", c + " c"), restore(store));
+    }
+
+    /**
+     * Runs that were superseded and removed schedules are compacted away,
+     * and the journal stays usable
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        DefaultManagedExecutorServiceTest.NamedThreadFactory threadFactory 
+                = new DefaultManagedExecutorServiceTest.NamedThreadFactory("compaction-");
+        store = new MappedScheduleStore(journal, 4096L, threadFactory);
+        long a = store.add(bytes("a"));
+        for (int i = 0; i < 10000; i++) {
+            long b = store.add(bytes("b" + i));
+            store.executed(a, i, i + 1, i + 2);
+            store.remove(b);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (store.getJournalSize() >= 3 * 4096 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("journal size " + store.getJournalSize(), store.getJournalSize() < 3 * 4096);
+        assertEquals(1, threadFactory.count.get());
+        store.executed(a, 1, 2, 3);
+        store.compact();
+        assertFalse(Files.exists(directory.resolve("schedules.journal.compact")));
+        store.close();
+
+        store = new MappedScheduleStore(journal);
+        assertEquals(Arrays.asList(a + " a 1 2 3"), restore(store));
+    }
+
+    /**
+     * Schedules added, updated and removed while the journal is compacted
+     * are kept
+     */
+    @Test
+    public void testChangesDuringCompaction() throws Exception {
+        store = new MappedScheduleStore(journal, Long.MAX_VALUE);
+        final long a = store.add(bytes("a"));
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger compactions = new AtomicInteger();
+        Thread compactor = new Thread() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    store.compact();
+                    compactions.incrementAndGet();
+                }
+            }
+        };
+        compactor.start();
+        List<String> expected = new ArrayList<String>();
+        int i = 0;
+        while (compactions.get() < 20 || i < 2000) {
+            long b = store.add(bytes("b" + i));
+            store.executed(a, i, i + 1, i + 2);
+            if (i % 3 == 0) {
+                expected.add(b + " b" + i);
+            } else {
+                store.remove(b);
+            }
+            i++;
+        }
+        stop.set(true);
+        compactor.join();
+        store.close();
+        expected.add(0, a + " a " + (i - 1) + " " + i + " " + (i + 1));
+
+        store = new MappedScheduleStore(journal);
+        assertEquals(expected, restore(store));
+    }
+
+    /**
+     * The journal grows beyond its initial mapping
+     */
+    @Test
+    public void testGrowth() throws Exception {
+        store = new MappedScheduleStore(journal);
+        byte[] large = new byte[10000];
+        for (int i = 0; i < 100; i++) {
+            store.add(large);
+        }
+        store.close();
+        store = new MappedScheduleStore(journal);
+        assertEquals(100, store.size());
+    }
+
+    /**
+     * A file that is not a journal is refused
+     */
+    @Test
+    public void testNotJournal() throws Exception {
+        Files.write(journal, bytes("not a journal"));
+        try {
+            store = new MappedScheduleStore(journal);
+            fail("file accepted as a journal");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Trigger tasks are restored after the executor is shut down and 
+     * created again on the same store, and resume from their last run
+     */
+    @Test
+    public void testRestoreSchedules() throws Exception {
+        store = new MappedScheduleStore(journal);
+        executor = DefaultManagedScheduledExecutorService.builder(1, 1)
+                .threadFactory(new DefaultManagedExecutorServiceTest.NamedThreadFactory("stored-"))
+                .store(store)
+                .build();
+        CountingTask.runs.set(0);
+        ScheduledFuture<Integer> future = executor.schedule(new CountingTask(), new EveryTrigger(5));
+        // ended by its trigger, and so removed from the store
+        assertTrue(executor.schedule(new CountingTask(), new EveryTrigger(0)).isDone());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (CountingTask.runs.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, store.size());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(future.isDone());
+        assertEquals(1, store.size());
+        store.close();
+
+        store = new MappedScheduleStore(journal);
+        executor = DefaultManagedScheduledExecutorService.builder(1, 1)
+                .threadFactory(new DefaultManagedExecutorServiceTest.NamedThreadFactory("stored-"))
+                .store(store)
+                .build();
+        EveryTrigger.lastExecutions.clear();
+        int runs = CountingTask.runs.get();
+        List<ScheduledFuture<?>> restored = executor.restoreSchedules();
+        assertEquals(1, restored.size());
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (CountingTask.runs.get() < runs + 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(CountingTask.runs.get() >= runs + 2);
+        assertNotNull(EveryTrigger.lastExecutions.get(0));
+        assertTrue(restored.get(0).cancel(false));
+        assertEquals(0, store.size());
+        try {
+            executor.restoreSchedules();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // restored once only
+        }
+    }
+
+    /**
+     * Schedules that cannot be read are reported and removed from the 
+     * store, and restoring is refused once trigger tasks are stored
+     */
+    @Test
+    public void testRestoreSchedules_unreadable() throws Exception {
+        store = new MappedScheduleStore(journal);
+        store.add(bytes("not a schedule"));
+        executor = DefaultManagedScheduledExecutorService.builder(1, 1)
+                .threadFactory(new DefaultManagedExecutorServiceTest.NamedThreadFactory("stored-"))
+                .store(store)
+                .build();
+        final List<Throwable> uncaught = new ArrayList<Throwable>();
+        Thread current = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = current.getUncaughtExceptionHandler();
+        current.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                uncaught.add(e);
+            }
+        });
+        try {
+            assertTrue(executor.restoreSchedules().isEmpty());
+        } finally {
+            current.setUncaughtExceptionHandler(handler);
+        }
+        assertEquals(1, uncaught.size());
+        assertEquals(0, store.size());
+
+        executor.shutdownNow();
+        executor = DefaultManagedScheduledExecutorService.builder(1, 1)
+                .threadFactory(new DefaultManagedExecutorServiceTest.NamedThreadFactory("stored-"))
+                .store(store)
+                .build();
+        executor.schedule(new CountingTask(), new EveryTrigger(1000));
+        try {
+            executor.restoreSchedules();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // the stored task would be scheduled twice
+        }
+    }
+
+    /**
+     * Tasks that are not serializable are scheduled, but not stored
+     */
+    @Test
+    public void testNotSerializable() throws Exception {
+        store = new MappedScheduleStore(journal);
+        executor = DefaultManagedScheduledExecutorService.builder(1, 1)
+                .threadFactory(new DefaultManagedExecutorServiceTest.NamedThreadFactory("stored-"))
+                .store(store)
+                .build();
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, new EveryTrigger(60000));
+        assertEquals(0, store.size());
+        future.cancel(false);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the schedules of the store, with the times of their last run
+     * if they ran.
+     */
+    private static List<String> restore(ScheduleStore store) {
+        final List<String> visited = new ArrayList<String>();
+        store.restore(new ScheduleStore.Visitor() {
+            @Override
+            public void visit(long id, byte[] schedule, long scheduledStart, long runStart, long runEnd) {
+                String text = id + " " + new String(schedule, StandardCharsets.UTF_8);
+                if (scheduledStart != ScheduleStore.NEVER) {
+                    text += " " + scheduledStart + " " + runStart + " " + runEnd;
+                }
+                visited.add(text);
+            }
+        });
+        return visited;
+    }
+
+    static class CountingTask implements Callable<Integer>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+        static final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public Integer call() {
+            return runs.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fires at a fixed delay after the scheduled start of the last run, or 
+     * never if the delay is zero, and records the last executions it is 
+     * given.
+     */
+    static class EveryTrigger implements Trigger, Serializable {
+
+        private static final long serialVersionUID = 1L;
+        static final List<LastExecution> lastExecutions = 
+                Collections.synchronizedList(new ArrayList<LastExecution>());
+        private final long millis;
+
+        EveryTrigger(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecution, Date taskScheduledTime) {
+            if (millis == 0) {
+                return null;
+            }
+            lastExecutions.add(lastExecution);
+            Date last = lastExecution == null? taskScheduledTime: lastExecution.getScheduledStart();
+            return new Date(last.getTime() + millis);
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecution, Date scheduledRunTime) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MisfirePolicyTest {
+
+    static final long PERIOD = 100;
+
+    DefaultManagedScheduledExecutorService executor;
+    AtomicInteger runs;
+    List<Throwable> aborted;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultManagedScheduledExecutorService(2, 1, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("misfire-"));
+        runs = new AtomicInteger();
+        aborted = new CopyOnWriteArrayList<Throwable>();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Without a policy, every run that was missed is run
+     */
+    @Test
+    public void testFireAll() throws Exception {
+        FixedRate trigger = new FixedRate(10, 13);
+        awaitDone(executor.schedule(task(null), trigger));
+        assertEquals(13, runs.get());
+        assertTrue(aborted.isEmpty());
+    }
+
+    /**
+     * The first missed run is run, and the missed runs after it are 
+     * reported once
+     */
+    @Test
+    public void testFireOnce() throws Exception {
+        FixedRate trigger = new FixedRate(10, 13);
+        awaitDone(executor.schedule(task("FIRE_ONCE"), trigger));
+        assertEquals(1, aborted.size());
+        MissedRunsException missed = (MissedRunsException) aborted.get(0);
+        assertEquals(trigger.start + PERIOD, missed.getFirstScheduledStart());
+        assertNull(missed.getCause());
+        assertEquals(13, runs.get() + missed.getCount());
+        assertTrue("runs " + runs.get(), runs.get() >= 3 && runs.get() <= 4);
+    }
+
+    /**
+     * The missed runs are skipped together and the task next runs on time
+     */
+    @Test
+    public void testSkipToNext() throws Exception {
+        FixedRate trigger = new FixedRate(10, 13);
+        awaitDone(executor.schedule(task("SKIP_TO_NEXT"), trigger));
+        assertEquals(1, aborted.size());
+        MissedRunsException missed = (MissedRunsException) aborted.get(0);
+        assertEquals(trigger.start, missed.getFirstScheduledStart());
+        assertEquals(13, runs.get() + missed.getCount());
+        assertTrue("runs " + runs.get(), runs.get() >= 2 && runs.get() <= 3);
+    }
+
+    /**
+     * A run that the trigger skips is reported with the missed runs after it,
+     * and the future completes with them when the trigger ends
+     */
+    @Test
+    public void testSkippedByTrigger() throws Exception {
+        FixedRate trigger = new FixedRate(10, 10) {
+            @Override
+            public boolean skipRun(LastExecution lastExecution, Date scheduledRunTime) {
+                return true;
+            }
+        };
+        Future<?> future = executor.schedule(task("FIRE_ONCE"), trigger);
+        awaitDone(future);
+        try {
+            future.get();
+            fail("skipped");
+        } catch (MissedRunsException e) {
+            assertEquals(10, e.getCount());
+            assertEquals(trigger.start, e.getFirstScheduledStart());
+            assertEquals(trigger.start + 9 * PERIOD, e.getLastScheduledStart());
+            assertTrue(e.getCause() instanceof SkippedException);
+        }
+        assertEquals(0, runs.get());
+    }
+
+    private Runnable task(String policy) {
+        ExecutionProperties properties = ExecutionProperties.EMPTY.with(ManagedTask.MISFIRE_THRESHOLD, "50");
+        if (policy != null) {
+            properties = properties.with(ManagedTask.MISFIRE_POLICY, policy);
+        }
+        return ManagedExecutors.managedTask(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, properties, new ManagedTaskListener() {
+            @Override
+            public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            }
+
+            @Override
+            public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, 
+                    Throwable exception) {
+                aborted.add(exception);
+            }
+
+            @Override
+            public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, 
+                    Throwable exception) {
+            }
+
+            @Override
+            public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            }
+        });
+    }
+
+    private static void awaitDone(Future<?> future) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!future.isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(future.isDone());
+    }
+
+    /**
+     * A fixed-rate trigger whose first runs are already due when it is 
+     * scheduled.
+     */
+    static class FixedRate implements Trigger {
+
+        final long start;
+        final int count;
+
+        FixedRate(int missed, int count) {
+            this.start = System.currentTimeMillis() - missed * PERIOD;
+            this.count = count;
+        }
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecution, Date taskScheduledTime) {
+            if (lastExecution == null) {
+                return new Date(start);
+            }
+            long next = lastExecution.getScheduledStart().getTime() + PERIOD;
+            return next < start + count * PERIOD? new Date(next): null;
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecution, Date scheduledRunTime) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static javax.enterprise.concurrent.DefaultManagedExecutorServiceTest.listOf;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+public class PriorityManagedExecutorServiceTest {
+
+    PriorityManagedExecutorService executor;
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waiting tasks run in order of priority, and in submission order 
+     * within a priority
+     */
+    @Test
+    public void testPriorityOrder() throws Exception {
+        executor = new PriorityManagedExecutorService(1, 1, TimeUnit.HOURS, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("priority-"));
+        block();
+        executor.submit(task("low-1", "1"));
+        executor.submit(task("normal-1", null));
+        executor.submit(task("high", "10"));
+        executor.submit(task("low-2", "1"));
+        Future<?> last = executor.submit(task("normal-2", "5"));
+        assertEquals(5, executor.getQueueSize());
+        release.countDown();
+        last.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(listOf("high", "normal-1", "normal-2", "low-1", "low-2"), order);
+    }
+
+    /**
+     * A low priority task that waited longer than its aging allowance runs 
+     * before a high priority task submitted later
+     */
+    @Test
+    public void testAging() throws Exception {
+        executor = new PriorityManagedExecutorService(1, 5, TimeUnit.MILLISECONDS, 
+                new DefaultManagedExecutorServiceTest.NamedThreadFactory("priority-"));
+        block();
+        executor.submit(task("old-low", "1"));
+        Thread.sleep(200);
+        executor.submit(task("new-high", "10"));
+        executor.submit(task("new-low", "1"));
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(listOf("old-low", "new-high", "new-low"), order);
+    }
+
+    /**
+     * Priorities outside of the valid range are limited to it, and values 
+     * that are not numbers are the default priority
+     */
+    @Test
+    public void testPriorityValues() throws Exception {
+        executor = new PriorityManagedExecutorService(1, 1, TimeUnit.HOURS);
+        block();
+        executor.submit(task("unparsable", "urgent"));
+        executor.submit(task("below", "-3"));
+        executor.submit(task("max", "10"));
+        executor.submit(task("above", "100"));
+        executor.submit(task("min", "1"));
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(listOf("max", "above", "unparsable", "below", "min"), order);
+        assertEquals(Thread.NORM_PRIORITY, ExecutionProperty.PRIORITY.getDefaultValue().intValue());
+    }
+
+    /**
+     * shutdownNow returns the futures of the waiting tasks
+     */
+    @Test
+    public void testShutdownNow() throws Exception {
+        executor = new PriorityManagedExecutorService(1, 1, TimeUnit.HOURS);
+        block();
+        Future<?> low = executor.submit(task("low", "1"));
+        Future<?> high = executor.submit(task("high", "9"));
+        List<Runnable> pending = executor.shutdownNow();
+        assertEquals(2, pending.size());
+        assertTrue(pending.contains(low));
+        assertTrue(pending.contains(high));
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(order.isEmpty());
+    }
+
+    /**
+     * Occupies the only thread until the test releases it.
+     */
+    private void block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Returns a task with the given priority, or no priority if null, which
+     * records its name when it runs.
+     */
+    private Runnable task(final String name, String priority) {
+        ExecutionProperties properties = ExecutionProperties.EMPTY.with(ManagedTask.IDENTITY_NAME, name);
+        if (priority != null) {
+            properties = properties.with(ManagedTask.PRIORITY, priority);
+        }
+        return ManagedExecutors.managedTask(new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        }, properties, null);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests for ZonedTrigger and the ZonedDateTime methods of LastExecution
+ */
+public class ZonedTriggerTest {
+
+    static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    /**
+     * Test that the Date methods of a ZonedTrigger convert to and from its 
+     * time zone.
+     */
+    @Test
+    public void testDateAdapters() {
+        final List<ZonedDateTime> received = new ArrayList<ZonedDateTime>();
+        ZonedTrigger trigger = new ZonedTrigger() {
+            @Override
+            public ZonedDateTime getNextRunTime(LastExecution lastExecutionInfo, ZonedDateTime taskScheduledTime) {
+                received.add(taskScheduledTime);
+                return taskScheduledTime.getHour() < 12? taskScheduledTime.plusHours(1): null;
+            }
+
+            @Override
+            public boolean skipRun(LastExecution lastExecutionInfo, ZonedDateTime scheduledRunTime) {
+                received.add(scheduledRunTime);
+                return scheduledRunTime.getDayOfMonth() == 1;
+            }
+
+            @Override
+            public ZoneId getZoneId() {
+                return PARIS;
+            }
+        };
+        Instant instant = Instant.parse("2018-03-01T08:00:00Z");
+        assertEquals(Date.from(instant.plusSeconds(3600)), trigger.getNextRunTime(null, Date.from(instant)));
+        assertEquals(ZonedDateTime.of(2018, 3, 1, 9, 0, 0, 0, PARIS), received.get(0));
+        assertNull(trigger.getNextRunTime(null, Date.from(instant.plusSeconds(6 * 3600))));
+        assertTrue(trigger.skipRun(null, Date.from(instant)));
+        assertEquals(PARIS, received.get(2).getZone());
+        assertFalse(trigger.skipRun(null, Date.from(instant.plusSeconds(24 * 3600))));
+    }
+
+    /**
+     * Test the defaults of a ZonedTrigger.
+     */
+    @Test
+    public void testDefaults() {
+        ZonedTrigger trigger = new ZonedTrigger() {
+            @Override
+            public ZonedDateTime getNextRunTime(LastExecution lastExecutionInfo, ZonedDateTime taskScheduledTime) {
+                return taskScheduledTime;
+            }
+        };
+        assertEquals(ZoneId.systemDefault(), trigger.getZoneId());
+        assertFalse(trigger.skipRun(null, ZonedDateTime.now()));
+        assertFalse(trigger.skipRun(null, new Date()));
+    }
+
+    /**
+     * Test that the ZonedDateTime methods of LastExecution convert its Dates.
+     */
+    @Test
+    public void testLastExecution() {
+        Instant instant = Instant.parse("2018-07-01T10:00:00Z");
+        LastExecution execution = new CronTriggerTest.Execution(Date.from(instant), null);
+        assertEquals(ZonedDateTime.of(2018, 7, 1, 12, 0, 0, 0, PARIS), execution.getScheduledStart(PARIS));
+        assertEquals(ZonedDateTime.of(2018, 7, 1, 12, 0, 0, 0, PARIS), execution.getRunStart(PARIS));
+        assertNull(execution.getRunEnd(PARIS));
+    }
+
+    /**
+     * Test that the scheduler calls the ZonedDateTime methods of a 
+     * ZonedTrigger, and passes the last execution in its time zone.
+     */
+    @Test
+    public void testScheduleZonedTrigger() throws Exception {
+        DefaultManagedScheduledExecutorService executor = new DefaultManagedScheduledExecutorService(1, 1);
+        try {
+            final List<ZonedDateTime> runTimes = Collections.synchronizedList(new ArrayList<ZonedDateTime>());
+            final List<ZonedDateTime> scheduledStarts = Collections.synchronizedList(new ArrayList<ZonedDateTime>());
+            ZonedTrigger trigger = new ZonedTrigger() {
+                @Override
+                public ZonedDateTime getNextRunTime(LastExecution lastExecutionInfo, 
+                        ZonedDateTime taskScheduledTime) {
+                    assertEquals(PARIS, taskScheduledTime.getZone());
+                    if (lastExecutionInfo != null) {
+                        scheduledStarts.add(lastExecutionInfo.getScheduledStart(PARIS));
+                        assertEquals("done", lastExecutionInfo.getResult());
+                        assertFalse(lastExecutionInfo.getRunEnd(PARIS).isBefore(
+                                lastExecutionInfo.getRunStart(PARIS)));
+                    }
+                    if (runTimes.size() == 3) {
+                        return null;
+                    }
+                    ZonedDateTime next = ZonedDateTime.now(PARIS).plusNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                    runTimes.add(next);
+                    return next;
+                }
+
+                @Override
+                public boolean skipRun(LastExecution lastExecutionInfo, ZonedDateTime scheduledRunTime) {
+                    assertEquals(runTimes.get(runTimes.size() - 1), scheduledRunTime);
+                    return false;
+                }
+
+                @Override
+                public ZoneId getZoneId() {
+                    return PARIS;
+                }
+
+                @Override
+                public Date getNextRunTime(LastExecution lastExecutionInfo, Date taskScheduledTime) {
+                    throw new AssertionError("Date method called");
+                }
+
+                @Override
+                public boolean skipRun(LastExecution lastExecutionInfo, Date scheduledRunTime) {
+                    throw new AssertionError("Date method called");
+                }
+            };
+            ScheduledFuture<String> future = executor.schedule(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "done";
+                }
+            }, trigger);
+            assertEquals("done", future.get(10, TimeUnit.SECONDS));
+            assertEquals(3, scheduledStarts.size());
+            for (int i = 0; i < 3; i++) {
+                // the scheduled start has millisecond precision
+                assertEquals(runTimes.get(i).toInstant().toEpochMilli(), 
+                        scheduledStarts.get(i).toInstant().toEpochMilli());
+                assertEquals(PARIS, scheduledStarts.get(i).getZone());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.ContextService;
+import javax.enterprise.concurrent.ContextSnapshot;
+import javax.enterprise.concurrent.DefaultContextService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of creating contextual proxies and of invoking methods on them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ContextualProxyBenchmark {
+
+    /**
+     * A callback interface with arguments and a primitive return value, so
+     * that boxing and argument array costs show up.
+     */
+    public interface Callback {
+        long onEvent(long sequence, Object event);
+    }
+
+    @Param({"reflective", "generated"})
+    String contextService;
+
+    ContextService service;
+    Callback instance;
+    Callback proxy;
+    ContextSnapshot snapshot;
+    Object event;
+
+    @Setup
+    public void setUp() {
+        ThreadLocalContextProvider.context.set("creator");
+        service = newContextService(contextService);
+        instance = new CallbackImpl();
+        proxy = service.createContextualProxy(instance, Callback.class);
+        snapshot = service.captureContext(null);
+        event = new Object();
+        ThreadLocalContextProvider.context.remove();
+    }
+
+    static ContextService newContextService(String kind) {
+        if ("reflective".equals(kind)) {
+            return new ReflectiveContextService(new ThreadLocalContextProvider());
+        }
+        if ("generated".equals(kind)) {
+            return new DefaultContextService(new ThreadLocalContextProvider());
+        }
+        throw new IllegalArgumentException(kind);
+    }
+
+    @Benchmark
+    public Callback createProxy() {
+        return service.createContextualProxy(instance, Callback.class);
+    }
+
+    @Benchmark
+    public Callback createProxyFromSnapshot() {
+        return snapshot.createContextualProxy(instance, Callback.class);
+    }
+
+    @Benchmark
+    public long invokeProxy() {
+        return proxy.onEvent(42L, event);
+    }
+
+    @Benchmark
+    public long invokeDirect() {
+        return instance.onEvent(42L, event);
+    }
+
+    static final class CallbackImpl implements Callback {
+
+        @Override
+        public long onEvent(long sequence, Object event) {
+            return sequence + (ThreadLocalContextProvider.context.get() == null? 0: 1);
+        }
+    }
+}
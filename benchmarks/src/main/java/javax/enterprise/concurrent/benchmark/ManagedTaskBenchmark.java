@@ -0,0 +1,142 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.ExecutionProperties;
+import javax.enterprise.concurrent.ExecutionProperty;
+import javax.enterprise.concurrent.ManagedExecutors;
+import javax.enterprise.concurrent.ManagedTask;
+import javax.enterprise.concurrent.ManagedTaskListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of wrapping tasks with {@link ManagedExecutors#managedTask} and of
+ * reading execution properties at dispatch time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ManagedTaskBenchmark {
+
+    Runnable task;
+    ManagedTaskListener taskListener;
+    Map<String, String> mapProperties;
+    ExecutionProperties executionProperties;
+    Runnable managedTask;
+    Runnable managedTaskWithMap;
+
+    @Setup
+    public void setUp() {
+        task = new NoOpRunnable();
+        taskListener = new NoOpTaskListener();
+        mapProperties = new HashMap<String, String>();
+        mapProperties.put(ManagedTask.IDENTITY_NAME, "benchmark");
+        mapProperties.put(ManagedTask.LONGRUNNING_HINT, "false");
+        executionProperties = ExecutionProperties.copyOf(mapProperties);
+        managedTask = ManagedExecutors.managedTask(task, ExecutionProperties.EMPTY.with("custom", "true"), null);
+        managedTaskWithMap = new MapManagedTask(mapProperties);
+    }
+
+    @Benchmark
+    public Runnable wrap() {
+        return ManagedExecutors.managedTask(task, taskListener);
+    }
+
+    @Benchmark
+    public Runnable wrapWithMap() {
+        return ManagedExecutors.managedTask(task, mapProperties, taskListener);
+    }
+
+    @Benchmark
+    public Runnable wrapWithExecutionProperties() {
+        return ManagedExecutors.managedTask(task, executionProperties, taskListener);
+    }
+
+    @Benchmark
+    public Runnable rewrapManagedTask() {
+        return ManagedExecutors.managedTask(managedTask, executionProperties, taskListener);
+    }
+
+    @Benchmark
+    public boolean readLongRunningHintFromMap() {
+        return Boolean.parseBoolean(((ManagedTask) managedTaskWithMap).getExecutionProperties()
+                .get(ManagedTask.LONGRUNNING_HINT));
+    }
+
+    @Benchmark
+    public boolean readLongRunningHintTyped() {
+        return ManagedExecutors.getExecutionProperty(managedTask, ExecutionProperty.LONGRUNNING_HINT);
+    }
+
+    static final class MapManagedTask extends NoOpRunnable implements ManagedTask {
+
+        final Map<String, String> executionProperties;
+
+        MapManagedTask(Map<String, String> executionProperties) {
+            this.executionProperties = executionProperties;
+        }
+
+        @Override
+        public ManagedTaskListener getManagedTaskListener() {
+            return null;
+        }
+
+        @Override
+        public Map<String, String> getExecutionProperties() {
+            return executionProperties;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.benchmark;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import javax.enterprise.concurrent.ContextService;
+import javax.enterprise.concurrent.ContextSnapshot;
+import javax.enterprise.concurrent.spi.ThreadContextProvider;
+import javax.enterprise.concurrent.spi.ThreadContextRestorer;
+import javax.enterprise.concurrent.spi.ThreadContextSnapshot;
+
+/**
+ * A {@link ContextService} implemented with {@link java.lang.reflect.Proxy},
+ * as a baseline for contextual proxy benchmarks.
+ */
+class ReflectiveContextService implements ContextService {
+
+    final ThreadContextProvider[] providers;
+
+    ReflectiveContextService(ThreadContextProvider... providers) {
+        this.providers = providers;
+    }
+
+    @Override
+    public <T> T createContextualProxy(T instance, Class<T> intf) {
+        return intf.cast(createContextualProxy(instance, null, new Class<?>[] {intf}));
+    }
+
+    @Override
+    public Object createContextualProxy(Object instance, Class<?>... interfaces) {
+        return createContextualProxy(instance, null, interfaces);
+    }
+
+    @Override
+    public <T> T createContextualProxy(T instance, Map<String, String> executionProperties, Class<T> intf) {
+        return intf.cast(createContextualProxy(instance, executionProperties, new Class<?>[] {intf}));
+    }
+
+    @Override
+    public Object createContextualProxy(Object instance, Map<String, String> executionProperties, Class<?>... interfaces) {
+        return captureContext(executionProperties).createContextualProxy(instance, interfaces);
+    }
+
+    @Override
+    public ContextSnapshot captureContext(Map<String, String> executionProperties) {
+        ThreadContextSnapshot[] snapshots = new ThreadContextSnapshot[providers.length];
+        for (int i = 0; i < providers.length; i++) {
+            snapshots[i] = providers[i].currentContext(executionProperties);
+        }
+        return new Snapshot(snapshots, 
+                executionProperties == null? null: new HashMap<String, String>(executionProperties));
+    }
+
+    @Override
+    public Map<String, String> getExecutionProperties(Object contextualProxy) {
+        if (!Proxy.isProxyClass(contextualProxy.getClass()) 
+                || !(Proxy.getInvocationHandler(contextualProxy) instanceof Handler)) {
+            throw new IllegalArgumentException();
+        }
+        Map<String, String> executionProperties = 
+                ((Handler) Proxy.getInvocationHandler(contextualProxy)).executionProperties;
+        return executionProperties == null? null: new HashMap<String, String>(executionProperties);
+    }
+
+    static final class Snapshot implements ContextSnapshot {
+
+        final ThreadContextSnapshot[] snapshots;
+        final Map<String, String> executionProperties;
+
+        Snapshot(ThreadContextSnapshot[] snapshots, Map<String, String> executionProperties) {
+            this.snapshots = snapshots;
+            this.executionProperties = executionProperties;
+        }
+
+        @Override
+        public <T> T createContextualProxy(T instance, Class<T> intf) {
+            return intf.cast(createContextualProxy(instance, new Class<?>[] {intf}));
+        }
+
+        @Override
+        public Object createContextualProxy(Object instance, Class<?>... interfaces) {
+            if (instance == null || interfaces == null || interfaces.length == 0) {
+                throw new IllegalArgumentException();
+            }
+            for (Class<?> intf : interfaces) {
+                if (!intf.isInstance(instance)) {
+                    throw new IllegalArgumentException(instance + " does not implement " + intf.getName());
+                }
+            }
+            Handler handler = new Handler(instance, snapshots, executionProperties);
+            return Proxy.newProxyInstance(interfaces[0].getClassLoader(), interfaces, handler);
+        }
+
+        @Override
+        public Map<String, String> getExecutionProperties() {
+            return executionProperties == null? null: new HashMap<String, String>(executionProperties);
+        }
+    }
+
+    static final class Handler implements InvocationHandler, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final Object instance;
+        final transient ThreadContextSnapshot[] snapshots;
+        final Map<String, String> executionProperties;
+
+        Handler(Object instance, ThreadContextSnapshot[] snapshots, Map<String, String> executionProperties) {
+            this.instance = instance;
+            this.snapshots = snapshots;
+            this.executionProperties = executionProperties;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(instance, args);
+            }
+            ThreadContextRestorer[] restorers = new ThreadContextRestorer[snapshots.length];
+            for (int i = 0; i < snapshots.length; i++) {
+                restorers[i] = snapshots[i].begin();
+            }
+            try {
+                return method.invoke(instance, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                for (int i = restorers.length - 1; i >= 0; i--) {
+                    restorers[i].endContext();
+                }
+            }
+        }
+    }
+}
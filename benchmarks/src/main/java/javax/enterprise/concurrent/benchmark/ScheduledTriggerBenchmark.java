@@ -0,0 +1,155 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.benchmark;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.enterprise.concurrent.DefaultManagedScheduledExecutorService;
+import javax.enterprise.concurrent.LastExecution;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.concurrent.Trigger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of scheduling and cancelling a task while a large number of other 
+ * tasks, such as per-tenant polling triggers, are pending. 
+ * <p>
+ * {@code timingWheel} schedules trigger tasks on 
+ * {@link DefaultManagedScheduledExecutorService}; {@code scheduledThreadPool}
+ * schedules delayed tasks with the same run times on a 
+ * {@link ScheduledThreadPoolExecutor}, whose heap-based delay queue is the
+ * baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ScheduledTriggerBenchmark {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Param({"timingWheel", "scheduledThreadPool"})
+    String scheduler;
+
+    @Param({"1000000"})
+    int pending;
+
+    ScheduledExecutorService executor;
+    Runnable task;
+
+    @Setup
+    public void setUp() {
+        task = new NoOpRunnable();
+        if ("timingWheel".equals(scheduler)) {
+            executor = new DefaultManagedScheduledExecutorService(
+                    Runtime.getRuntime().availableProcessors(), 1);
+        } else if ("scheduledThreadPool".equals(scheduler)) {
+            ScheduledThreadPoolExecutor threadPool = 
+                    new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors());
+            threadPool.setRemoveOnCancelPolicy(true);
+            executor = threadPool;
+        } else {
+            throw new IllegalArgumentException(scheduler);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < pending; i++) {
+            schedule(DAY + (long) (random.nextDouble() * DAY));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    ScheduledFuture<?> schedule(long delayMillis) {
+        if (executor instanceof ManagedScheduledExecutorService) {
+            return ((ManagedScheduledExecutorService) executor).schedule(task, 
+                    new SingleDateTrigger(System.currentTimeMillis() + delayMillis));
+        }
+        return executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        return schedule(DAY + ThreadLocalRandom.current().nextLong(DAY)).cancel(false);
+    }
+
+    /**
+     * The single-date trigger from the {@link Trigger} documentation.
+     */
+    static final class SingleDateTrigger implements Trigger {
+
+        final Date fireTime;
+
+        SingleDateTrigger(long fireTime) {
+            this.fireTime = new Date(fireTime);
+        }
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecutionInfo, Date taskScheduledTime) {
+            return lastExecutionInfo == null? fireTime: null;
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecutionInfo, Date scheduledRunTime) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.benchmark;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.AsyncListenerDispatcher;
+import javax.enterprise.concurrent.DefaultManagedExecutorService;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedExecutors;
+import javax.enterprise.concurrent.ManagedTaskListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Round trip of a task through {@link DefaultManagedExecutorService}, with
+ * and without a {@code ManagedTaskListener} receiving its lifecycle events.
+ * The listener is either called directly, or through an 
+ * {@link AsyncListenerDispatcher}, and does {@code listenerWork} tokens of
+ * work per event, standing in for a listener that writes an audit log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TaskListenerBenchmark {
+
+    @Param({"none", "sync", "async"})
+    String listener;
+
+    @Param({"0", "2000"})
+    long listenerWork;
+
+    DefaultManagedExecutorService executor;
+    AsyncListenerDispatcher dispatcher;
+    Runnable task;
+
+    @Setup
+    public void setUp() {
+        executor = new DefaultManagedExecutorService(Runtime.getRuntime().availableProcessors(), 1);
+        ManagedTaskListener taskListener = listenerWork == 0? new NoOpTaskListener(): 
+                new WorkingTaskListener(listenerWork);
+        if ("none".equals(listener)) {
+            task = new NoOpRunnable();
+        } else if ("sync".equals(listener)) {
+            task = ManagedExecutors.managedTask(new NoOpRunnable(), taskListener);
+        } else if ("async".equals(listener)) {
+            dispatcher = new AsyncListenerDispatcher(1 << 16, AsyncListenerDispatcher.OverflowPolicy.DISCARD, 
+                    new DaemonThreadFactory());
+            task = ManagedExecutors.managedTask(new NoOpRunnable(), dispatcher.wrap(taskListener));
+        } else {
+            throw new IllegalArgumentException(listener);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+            dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    public Object submitAndGet() throws InterruptedException, ExecutionException {
+        return executor.submit(task).get();
+    }
+
+    /**
+     * Listener that consumes CPU for each event.
+     */
+    static final class WorkingTaskListener implements ManagedTaskListener {
+
+        final long tokens;
+
+        WorkingTaskListener(long tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void taskSubmitted(Future<?> future, ManagedExecutorService executor, Object task) {
+            Blackhole.consumeCPU(tokens);
+        }
+
+        @Override
+        public void taskAborted(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            Blackhole.consumeCPU(tokens);
+        }
+
+        @Override
+        public void taskDone(Future<?> future, ManagedExecutorService executor, Object task, Throwable exception) {
+            Blackhole.consumeCPU(tokens);
+        }
+
+        @Override
+        public void taskStarting(Future<?> future, ManagedExecutorService executor, Object task) {
+            Blackhole.consumeCPU(tokens);
+        }
+    }
+
+    static final class DaemonThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "listener-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
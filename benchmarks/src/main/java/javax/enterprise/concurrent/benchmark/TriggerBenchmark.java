@@ -0,0 +1,178 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.enterprise.concurrent.benchmark;
+
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.CronTrigger;
+import javax.enterprise.concurrent.LastExecution;
+import javax.enterprise.concurrent.Trigger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of evaluating {@link Trigger}s. A single trigger instance and 
+ * {@link LastExecution} are shared by all benchmark threads, as they are 
+ * when a scheduler evaluates the same trigger for many firings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TriggerBenchmark {
+
+    @Param({"fixedRate", "cron", "cronYearly"})
+    String trigger;
+
+    Trigger instance;
+    LastExecution lastExecution;
+    Date scheduledTime;
+
+    @Setup
+    public void setUp() {
+        long now = System.currentTimeMillis();
+        instance = newTrigger(trigger, now);
+        lastExecution = new FixedLastExecution(now, now + 5, now + 10);
+        scheduledTime = new Date(now - 1000);
+    }
+
+    static Trigger newTrigger(String kind, long startTime) {
+        if ("fixedRate".equals(kind)) {
+            return new FixedRateTrigger(startTime, TimeUnit.MINUTES.toMillis(1));
+        }
+        if ("cron".equals(kind)) {
+            return new CronTrigger("0/15 9-17 * * MON-FRI", TimeZone.getTimeZone("Europe/Paris"));
+        }
+        if ("cronYearly".equals(kind)) {
+            // a distant match, which a minute by minute search would take 
+            // hundreds of thousands of steps to find
+            return new CronTrigger("0 0 29 2 *", TimeZone.getTimeZone("Europe/Paris"));
+        }
+        throw new IllegalArgumentException(kind);
+    }
+
+    @Benchmark
+    public Date getNextRunTime() {
+        return instance.getNextRunTime(lastExecution, scheduledTime);
+    }
+
+    @Benchmark
+    public boolean skipRun() {
+        return instance.skipRun(lastExecution, scheduledTime);
+    }
+
+    /**
+     * The fixed-rate trigger from the {@link Trigger} documentation.
+     */
+    static final class FixedRateTrigger implements Trigger {
+
+        final Date startTime;
+        final long delta;
+
+        FixedRateTrigger(long startTime, long delta) {
+            this.startTime = new Date(startTime);
+            this.delta = delta;
+        }
+
+        @Override
+        public Date getNextRunTime(LastExecution lastExecutionInfo, Date taskScheduledTime) {
+            if (lastExecutionInfo == null) {
+                return startTime;
+            }
+            return new Date(lastExecutionInfo.getScheduledStart().getTime() + delta);
+        }
+
+        @Override
+        public boolean skipRun(LastExecution lastExecutionInfo, Date scheduledRunTime) {
+            return false;
+        }
+    }
+
+    static final class FixedLastExecution implements LastExecution {
+
+        final long scheduledStart;
+        final long runStart;
+        final long runEnd;
+
+        FixedLastExecution(long scheduledStart, long runStart, long runEnd) {
+            this.scheduledStart = scheduledStart;
+            this.runStart = runStart;
+            this.runEnd = runEnd;
+        }
+
+        @Override
+        public String getIdentityName() {
+            return "benchmark";
+        }
+
+        @Override
+        public Object getResult() {
+            return null;
+        }
+
+        @Override
+        public Date getScheduledStart() {
+            return new Date(scheduledStart);
+        }
+
+        @Override
+        public Date getRunStart() {
+            return new Date(runStart);
+        }
+
+        @Override
+        public Date getRunEnd() {
+            return new Date(runEnd);
+        }
+    }
+}